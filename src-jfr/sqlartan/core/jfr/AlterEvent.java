@@ -0,0 +1,48 @@
+package sqlartan.core.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event for a phase of the alteration of a table.
+ */
+@Name("sqlartan.Alter")
+@Label("Alter Table")
+@Category({ "Sqlartan", "Structure" })
+@Description("Phase of the rebuild of an altered table")
+public class AlterEvent extends Event implements Flight.Alter {
+	/**
+	 * The name of the altered table
+	 */
+	@Label("Table")
+	private String table;
+
+	/**
+	 * The phase of the alteration
+	 */
+	@Label("Phase")
+	private String phase;
+
+	/**
+	 * The number of structures processed by the phase
+	 */
+	@Label("Count")
+	private int count;
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @param table the name of the altered table
+	 * @param phase the phase of the alteration
+	 * @param count the number of structures processed by the phase
+	 */
+	@Override
+	public void record(String table, String phase, int count) {
+		end();
+		if (shouldCommit()) {
+			this.table = table;
+			this.phase = phase;
+			this.count = count;
+			commit();
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package sqlartan.core.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event for a chunk of an import or an export.
+ */
+@Name("sqlartan.Chunk")
+@Label("Transfer Chunk")
+@Category({ "Sqlartan", "Transfer" })
+@Description("Chunk of data imported to or exported from a table")
+public class ChunkEvent extends Event implements Flight.Chunk {
+	/**
+	 * The kind of transfer
+	 */
+	@Label("Operation")
+	private String operation;
+
+	/**
+	 * The name of the table
+	 */
+	@Label("Table")
+	private String table;
+
+	/**
+	 * The number of rows in the chunk
+	 */
+	@Label("Rows")
+	private long rows;
+
+	/**
+	 * The size of the chunk
+	 */
+	@Label("Size")
+	@DataAmount
+	private long size;
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @param operation the kind of transfer
+	 * @param table     the name of the table
+	 * @param rows      the number of rows in the chunk
+	 * @param size      the size of the chunk, in bytes or chars
+	 */
+	@Override
+	public void record(String operation, String table, long rows, long size) {
+		end();
+		if (shouldCommit()) {
+			this.operation = operation;
+			this.table = table;
+			this.rows = rows;
+			this.size = size;
+			commit();
+		}
+	}
+}
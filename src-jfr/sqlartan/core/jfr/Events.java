@@ -0,0 +1,76 @@
+package sqlartan.core.jfr;
+
+/**
+ * The flight recorder events, loaded by Flight when jdk.jfr is available.
+ */
+class Events extends Flight {
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	Tokenize startTokenize() {
+		TokenizeEvent event = new TokenizeEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	Parse startParse() {
+		ParseEvent event = new ParseEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	Prepare startPrepare() {
+		PrepareEvent event = new PrepareEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	Execute startExecute() {
+		ExecuteEvent event = new ExecuteEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	Fetch startFetch() {
+		FetchEvent event = new FetchEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	Alter startAlter() {
+		AlterEvent event = new AlterEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	Chunk startChunk() {
+		ChunkEvent event = new ChunkEvent();
+		event.begin();
+		return event;
+	}
+}
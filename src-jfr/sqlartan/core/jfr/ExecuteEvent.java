@@ -0,0 +1,56 @@
+package sqlartan.core.jfr;
+
+import jdk.jfr.*;
+import sqlartan.core.QueryStatistics;
+
+/**
+ * Flight recorder event for the execution of a statement on a database.
+ */
+@Name("sqlartan.Execute")
+@Label("Execute")
+@Category({ "Sqlartan", "Database" })
+@Description("Execution of a statement, until its first row is available")
+public class ExecuteEvent extends Event implements Flight.Execute {
+	/**
+	 * The fingerprint of the normalized query
+	 */
+	@Label("Fingerprint")
+	private long fingerprint;
+
+	/**
+	 * The SQL query
+	 */
+	@Label("SQL")
+	private String sql;
+
+	/**
+	 * The database name
+	 */
+	@Label("Database")
+	private String database;
+
+	/**
+	 * The number of updated rows
+	 */
+	@Label("Updated Rows")
+	private long rows;
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @param database the name of the database
+	 * @param sql      the SQL query
+	 * @param rows     the number of updated rows, 0 for a query result
+	 */
+	@Override
+	public void record(String database, String sql, long rows) {
+		end();
+		if (shouldCommit()) {
+			this.fingerprint = QueryStatistics.fingerprint(QueryStatistics.normalize(sql));
+			this.sql = sql;
+			this.database = database;
+			this.rows = rows;
+			commit();
+		}
+	}
+}
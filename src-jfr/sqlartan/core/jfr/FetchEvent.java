@@ -0,0 +1,58 @@
+package sqlartan.core.jfr;
+
+import jdk.jfr.*;
+import sqlartan.core.QueryStatistics;
+
+/**
+ * Flight recorder event for the iteration over the rows of a result, from
+ * the creation of its iterator to the closing of the result.
+ */
+@Name("sqlartan.Fetch")
+@Label("Fetch")
+@Category({ "Sqlartan", "Database" })
+@Description("Iteration over the rows of a query result")
+public class FetchEvent extends Event implements Flight.Fetch {
+	/**
+	 * The fingerprint of the normalized query
+	 */
+	@Label("Fingerprint")
+	private long fingerprint;
+
+	/**
+	 * The SQL query
+	 */
+	@Label("SQL")
+	private String sql;
+
+	/**
+	 * The number of fetched rows
+	 */
+	@Label("Rows")
+	private long rows;
+
+	/**
+	 * The approximate size of the fetched values
+	 */
+	@Label("Bytes Read")
+	@DataAmount
+	private long bytes;
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @param sql   the SQL query
+	 * @param rows  the number of fetched rows
+	 * @param bytes the approximate size of the fetched values
+	 */
+	@Override
+	public void record(String sql, long rows, long bytes) {
+		end();
+		if (shouldCommit()) {
+			this.fingerprint = QueryStatistics.fingerprint(QueryStatistics.normalize(sql));
+			this.sql = sql;
+			this.rows = rows;
+			this.bytes = bytes;
+			commit();
+		}
+	}
+}
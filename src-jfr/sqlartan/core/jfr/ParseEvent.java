@@ -0,0 +1,49 @@
+package sqlartan.core.jfr;
+
+import jdk.jfr.*;
+import sqlartan.core.QueryStatistics;
+
+/**
+ * Flight recorder event for the parsing of a SQL query.
+ */
+@Name("sqlartan.Parse")
+@Label("Parse")
+@Category({ "Sqlartan", "Parser" })
+@Description("Parsing of a SQL query, including its tokenization")
+@Threshold("1 ms")
+public class ParseEvent extends Event implements Flight.Parse {
+	/**
+	 * The fingerprint of the normalized query
+	 */
+	@Label("Fingerprint")
+	private long fingerprint;
+
+	/**
+	 * The length of the query
+	 */
+	@Label("Length")
+	private int length;
+
+	/**
+	 * Whether the query was parsed successfully
+	 */
+	@Label("Success")
+	private boolean success;
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @param sql     the SQL query
+	 * @param success whether the query was parsed successfully
+	 */
+	@Override
+	public void record(String sql, boolean success) {
+		end();
+		if (shouldCommit()) {
+			this.fingerprint = QueryStatistics.fingerprint(QueryStatistics.normalize(sql));
+			this.length = sql.length();
+			this.success = success;
+			commit();
+		}
+	}
+}
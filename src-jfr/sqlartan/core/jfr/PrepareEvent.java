@@ -0,0 +1,48 @@
+package sqlartan.core.jfr;
+
+import jdk.jfr.*;
+import sqlartan.core.QueryStatistics;
+
+/**
+ * Flight recorder event for the preparation of a statement.
+ */
+@Name("sqlartan.Prepare")
+@Label("Prepare")
+@Category({ "Sqlartan", "Database" })
+@Description("Preparation of a statement with placeholders")
+public class PrepareEvent extends Event implements Flight.Prepare {
+	/**
+	 * The fingerprint of the normalized query
+	 */
+	@Label("Fingerprint")
+	private long fingerprint;
+
+	/**
+	 * The SQL query
+	 */
+	@Label("SQL")
+	private String sql;
+
+	/**
+	 * The database name
+	 */
+	@Label("Database")
+	private String database;
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @param database the name of the database
+	 * @param sql      the SQL query
+	 */
+	@Override
+	public void record(String database, String sql) {
+		end();
+		if (shouldCommit()) {
+			this.fingerprint = QueryStatistics.fingerprint(QueryStatistics.normalize(sql));
+			this.sql = sql;
+			this.database = database;
+			commit();
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package sqlartan.core.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event for the tokenization of SQL source.
+ */
+@Name("sqlartan.Tokenize")
+@Label("Tokenize")
+@Category({ "Sqlartan", "Parser" })
+@Description("Tokenization of SQL source")
+@Threshold("1 ms")
+public class TokenizeEvent extends Event implements Flight.Tokenize {
+	/**
+	 * The length of the source
+	 */
+	@Label("Length")
+	private int length;
+
+	/**
+	 * The number of tokens
+	 */
+	@Label("Tokens")
+	private int tokens;
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @param length the length of the source
+	 * @param tokens the number of tokens, 0 if the source is invalid
+	 */
+	@Override
+	public void record(int length, int tokens) {
+		end();
+		if (shouldCommit()) {
+			this.length = length;
+			this.tokens = tokens;
+			commit();
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package sqlartan.core;
 
-import java.util.TreeMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * SQLite affinities
@@ -27,7 +28,7 @@ public enum Affinity {
 	/**
 	 * Cache of affinity for a each types
 	 */
-	private static TreeMap<String, Affinity> affinityCache = new TreeMap<>();
+	private static final Map<String, Affinity> affinityCache = new ConcurrentHashMap<>();
 
 	/**
 	 * Returns the affinity associated to the given type.
@@ -38,15 +39,7 @@ public enum Affinity {
 	 * @return the affinity associated with he given type
 	 */
 	public static Affinity forType(String type) {
-		type = type.toUpperCase().trim();
-
-		if (affinityCache.containsKey(type)) {
-			return affinityCache.get(type);
-		}
-
-		Affinity a = parseType(type);
-		affinityCache.put(type, a);
-		return a;
+		return affinityCache.computeIfAbsent(type.toUpperCase().trim(), Affinity::parseType);
 	}
 
 	/**
@@ -1,5 +1,6 @@
 package sqlartan.core;
 
+import sqlartan.core.ast.BeginStatement;
 import sqlartan.core.util.UncheckedSQLException;
 import java.io.File;
 import java.sql.SQLException;
@@ -42,11 +43,45 @@ public class AttachedDatabase extends Database {
 	void detach() {
 		try {
 			assemble("DETACH DATABASE ", name()).execute();
+			metrics.unregister();
 		} catch (SQLException e) {
 			throw new UncheckedSQLException(e);
 		}
 	}
 
+	/**
+	 * Attached databases share the concurrent access of the main database.
+	 */
+	@Override
+	ConcurrentAccess access() {
+		return main.access();
+	}
+
+	/**
+	 * Changes are tracked by the main database, which owns the connection.
+	 */
+	@Override
+	ChangeTracker changes(boolean create) {
+		return main.changes(create);
+	}
+
+	/**
+	 * The transaction state is followed by the main database, which owns the
+	 * connection.
+	 */
+	@Override
+	TransactionState transactionState() {
+		return main.transactionState();
+	}
+
+	/**
+	 * Transactions are run on the main database, which owns the connection.
+	 */
+	@Override
+	public void transaction(BeginStatement.Mode mode, TransactionBody body) throws SQLException {
+		main.transaction(mode, body);
+	}
+
 	/**
 	 * Closes the attached database by detaching it.
 	 * <p>
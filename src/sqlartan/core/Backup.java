@@ -0,0 +1,111 @@
+package sqlartan.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+
+/**
+ * Online backup and restore of a database.
+ * <p>
+ * Page-level copies rely on the SQLite backup API, through the "backup to"
+ * and "restore from" commands of the driver. The driver runs the whole copy
+ * natively, by steps of 100 pages, and releases the lock on the source
+ * database between two steps. Writes made by other connections during the
+ * backup restart it, as specified by SQLite.
+ */
+class Backup {
+	/**
+	 * The database to back up or restore
+	 */
+	private final Database database;
+
+	/**
+	 * The backup options
+	 */
+	private final BackupOptions options;
+
+	/**
+	 * @param database the database to back up or restore
+	 * @param options  the backup options
+	 */
+	Backup(Database database, BackupOptions options) {
+		this.database = database;
+		this.options = options;
+	}
+
+	/**
+	 * Backs up the database to a file.
+	 *
+	 * @param target the backup file
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	void backupTo(Path target) throws SQLException, IOException {
+		if (options.method() == BackupOptions.Method.Compact) {
+			compactTo(target);
+		} else {
+			copy("backup", target);
+		}
+	}
+
+	/**
+	 * Restores the database from a backup file.
+	 *
+	 * @param source the backup file
+	 * @throws SQLException
+	 */
+	void restoreFrom(Path source) throws SQLException {
+		copy("restore", source);
+	}
+
+	/**
+	 * Writes a compacted copy of the database to a file.
+	 * <p>
+	 * With SQLite 3.27 or later, VACUUM INTO is used. With older versions,
+	 * the database is copied with the backup API and the copy is then
+	 * vacuumed on its own connection. In both cases, the source database
+	 * is not modified.
+	 *
+	 * @param target the backup file
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	private void compactTo(Path target) throws SQLException, IOException {
+		if (supportsVacuumInto()) {
+			Files.deleteIfExists(target);
+			database.assemble("VACUUM ", database.name(), " INTO '" + target.toString().replace("'", "''") + "'")
+			        .execute()
+			        .close();
+		} else {
+			copy("backup", target);
+			try (Database copy = Database.open(target.toFile())) {
+				copy.execute("VACUUM").close();
+			}
+		}
+	}
+
+	/**
+	 * Checks if the SQLite library supports VACUUM INTO.
+	 */
+	private boolean supportsVacuumInto() throws SQLException {
+		String[] version = database.execute("SELECT sqlite_version()").mapFirst(Row::getString).split("\\.");
+		int major = Integer.parseInt(version[0]);
+		int minor = version.length > 1 ? Integer.parseInt(version[1]) : 0;
+		return major > 3 || (major == 3 && minor >= 27);
+	}
+
+	/**
+	 * Copies the database to or from a file with the "backup to" and
+	 * "restore from" commands of the driver.
+	 *
+	 * @param operation "backup" or "restore"
+	 * @param file      the backup file
+	 * @throws SQLException
+	 */
+	private void copy(String operation, Path file) throws SQLException {
+		// The driver commands do not support escapes in quoted names
+		String direction = operation.equals("backup") ? " to " : " from ";
+		database.execute(operation + " \"" + database.name() + "\"" + direction + "\"" + file + "\"").close();
+	}
+}
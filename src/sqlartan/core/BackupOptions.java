@@ -0,0 +1,44 @@
+package sqlartan.core;
+
+/**
+ * Options of a database backup.
+ */
+public class BackupOptions {
+	/**
+	 * Backup methods
+	 */
+	public enum Method {
+		/**
+		 * Page-level copy of the database with the SQLite backup API
+		 */
+		Online,
+
+		/**
+		 * Compacted copy of the database, without free pages
+		 */
+		Compact
+	}
+
+	/**
+	 * The backup method
+	 */
+	private Method method = Method.Online;
+
+	/**
+	 * Returns the backup method.
+	 */
+	public Method method() {
+		return method;
+	}
+
+	/**
+	 * Sets the backup method, online by default.
+	 *
+	 * @param method the backup method
+	 * @return this object
+	 */
+	public BackupOptions method(Method method) {
+		this.method = method;
+		return this;
+	}
+}
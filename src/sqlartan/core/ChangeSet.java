@@ -0,0 +1,173 @@
+package sqlartan.core;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The changes made to a table by a committed transaction.
+ * <p>
+ * Changes to a same row are coalesced: a row inserted then updated is only
+ * reported as inserted, a row inserted then deleted is not reported at all.
+ * <p>
+ * If the driver does not report individual rows, the change set is not
+ * precise: it only tells which operations were executed on the table, and
+ * its sets of row ids are empty.
+ */
+public class ChangeSet {
+	/**
+	 * The operations changing rows
+	 */
+	public enum Operation {
+		Insert,
+		Update,
+		Delete
+	}
+
+	/**
+	 * The name of the database containing the table
+	 */
+	private final String database;
+
+	/**
+	 * The name of the table
+	 */
+	private final String table;
+
+	/**
+	 * The operations executed on the table
+	 */
+	private final Set<Operation> operations = EnumSet.noneOf(Operation.class);
+
+	/**
+	 * The row ids of inserted rows
+	 */
+	private final Set<Long> inserted = new LinkedHashSet<>();
+
+	/**
+	 * The row ids of updated rows
+	 */
+	private final Set<Long> updated = new LinkedHashSet<>();
+
+	/**
+	 * The row ids of deleted rows
+	 */
+	private final Set<Long> deleted = new LinkedHashSet<>();
+
+	/**
+	 * Whether row ids are reported
+	 */
+	private boolean precise = true;
+
+	/**
+	 * @param database the name of the database containing the table
+	 * @param table    the name of the table
+	 */
+	ChangeSet(String database, String table) {
+		this.database = database;
+		this.table = table;
+	}
+
+	/**
+	 * Returns the name of the database containing the table.
+	 */
+	public String database() {
+		return database;
+	}
+
+	/**
+	 * Returns the name of the table.
+	 */
+	public String table() {
+		return table;
+	}
+
+	/**
+	 * Returns the operations executed on the table.
+	 */
+	public Set<Operation> operations() {
+		return Collections.unmodifiableSet(operations);
+	}
+
+	/**
+	 * Returns the row ids of the rows changed by an operation.
+	 *
+	 * @param operation the operation
+	 */
+	public Set<Long> rowIds(Operation operation) {
+		switch (operation) {
+			case Insert:
+				return Collections.unmodifiableSet(inserted);
+			case Update:
+				return Collections.unmodifiableSet(updated);
+			default:
+				return Collections.unmodifiableSet(deleted);
+		}
+	}
+
+	/**
+	 * Checks if the row ids of changed rows are reported.
+	 */
+	public boolean isPrecise() {
+		return precise;
+	}
+
+	/**
+	 * Checks if the changes cancel each other.
+	 */
+	boolean isEmpty() {
+		return precise && inserted.isEmpty() && updated.isEmpty() && deleted.isEmpty();
+	}
+
+	/**
+	 * Adds the change of a row.
+	 *
+	 * @param operation the operation
+	 * @param rowId     the row id of the changed row
+	 */
+	void add(Operation operation, long rowId) {
+		operations.add(operation);
+		if (!precise) return;
+		switch (operation) {
+			case Insert:
+				// A row deleted then inserted again was replaced
+				if (deleted.remove(rowId)) {
+					updated.add(rowId);
+				} else {
+					inserted.add(rowId);
+				}
+				break;
+			case Update:
+				if (!inserted.contains(rowId)) updated.add(rowId);
+				break;
+			case Delete:
+				if (!inserted.remove(rowId)) {
+					updated.remove(rowId);
+					deleted.add(rowId);
+				}
+				break;
+		}
+	}
+
+	/**
+	 * Adds an operation whose changed rows are unknown.
+	 *
+	 * @param operation the operation
+	 */
+	void add(Operation operation) {
+		operations.add(operation);
+		precise = false;
+		inserted.clear();
+		updated.clear();
+		deleted.clear();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return database + "." + table + " " + operations;
+	}
+}
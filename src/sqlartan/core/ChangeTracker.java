@@ -0,0 +1,350 @@
+package sqlartan.core;
+
+import sqlartan.core.ast.DeleteStatement;
+import sqlartan.core.ast.InsertStatement;
+import sqlartan.core.ast.Statement;
+import sqlartan.core.ast.UpdateStatement;
+import sqlartan.core.ast.parser.ParseCache;
+import sqlartan.core.ast.parser.Parser;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Tracks the rows changed on the connection of a database and notifies
+ * table change listeners once the changes are committed.
+ * <p>
+ * Changes are collected by the update hook of SQLite, through the update
+ * and commit listeners of the native driver. Changes are coalesced until
+ * the transaction is committed, and dropped if it is rolled back. Changes
+ * rolled back to a savepoint are still reported.
+ * <p>
+ * Hooks are called by SQLite while a statement is executed, when the
+ * connection cannot be used. Committed change sets are therefore delivered
+ * later, by the thread that executed the statement, once it returns.
+ * <p>
+ * If the driver does not expose hooks, data modification statements are
+ * parsed instead to find the table they modify. Change sets are then not
+ * precise, and miss the changes made by triggers and foreign key actions.
+ */
+class ChangeTracker {
+	/**
+	 * The parser of executed statements, shared so that parses are cached
+	 */
+	private static final Parser<Statement> statementParser = Statement::parse;
+
+	/**
+	 * The listeners of each table, by lowercase qualified name
+	 */
+	private final Map<String, List<Consumer<ChangeSet>>> listeners = new ConcurrentHashMap<>();
+
+	/**
+	 * The observers of the changes of transactions, called by the hooks
+	 */
+	private final List<Consumer<Collection<ChangeSet>>> observers = new CopyOnWriteArrayList<>();
+
+	/**
+	 * The changes of the current transaction, by lowercase qualified name
+	 */
+	private final Map<String, ChangeSet> pending = new LinkedHashMap<>();
+
+	/**
+	 * The change sets of committed transactions, not yet delivered
+	 */
+	private final Queue<Collection<ChangeSet>> committed = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Whether changes are reported by the hooks of the driver
+	 */
+	private final boolean hooked;
+
+	/**
+	 * The database owning the tracked connection
+	 */
+	private final Database database;
+
+	/**
+	 * @param database the database owning the connection to track
+	 */
+	ChangeTracker(Database database) {
+		this.database = database;
+		hooked = install(database.connection);
+	}
+
+	/**
+	 * Registers the update and commit listeners on the native driver.
+	 *
+	 * @param connection the connection to track
+	 * @return false if the driver does not expose them
+	 */
+	private boolean install(Connection connection) {
+		Method addUpdateListener = listenerMethod(connection, "addUpdateListener");
+		Method addCommitListener = listenerMethod(connection, "addCommitListener");
+		if (addUpdateListener == null || addCommitListener == null) return false;
+
+		Object updateListener = proxy(addUpdateListener.getParameterTypes()[0], (proxy, m, args) -> {
+			if (m.getName().equals("onUpdate")) {
+				update(args[0].toString(), (String) args[1], (String) args[2], ((Number) args[3]).longValue());
+			}
+			return proxyMethod(proxy, m, args);
+		});
+		Object commitListener = proxy(addCommitListener.getParameterTypes()[0], (proxy, m, args) -> {
+			if (m.getName().equals("onCommit")) {
+				commit();
+			} else if (m.getName().equals("onRollback")) {
+				rollback();
+			}
+			return proxyMethod(proxy, m, args);
+		});
+
+		try {
+			addUpdateListener.invoke(connection, updateListener);
+			addCommitListener.invoke(connection, commitListener);
+			return true;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Finds a method of the connection registering a listener.
+	 *
+	 * @param connection the connection
+	 * @param name       the name of the method
+	 * @return the method, null if not found
+	 */
+	private static Method listenerMethod(Connection connection, String name) {
+		for (Method method : connection.getClass().getMethods()) {
+			Class<?>[] params = method.getParameterTypes();
+			if (method.getName().equals(name) && params.length == 1 && params[0].isInterface()) return method;
+		}
+		return null;
+	}
+
+	/**
+	 * Creates a listener implementing a driver interface.
+	 *
+	 * @param type    the interface
+	 * @param handler the handler of its methods
+	 */
+	private static Object proxy(Class<?> type, InvocationHandler handler) {
+		return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+	}
+
+	/**
+	 * Implements the methods of Object for listener proxies.
+	 *
+	 * @param proxy the proxy
+	 * @param m     the called method
+	 * @param args  the arguments
+	 */
+	private static Object proxyMethod(Object proxy, Method m, Object[] args) {
+		switch (m.getName()) {
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			case "toString":
+				return "ChangeListener";
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Registers a listener of the changes of a table.
+	 *
+	 * @param database the name of the database containing the table
+	 * @param table    the name of the table
+	 * @param listener the listener
+	 */
+	void register(String database, String table, Consumer<ChangeSet> listener) {
+		listeners.computeIfAbsent(key(database, table), k -> new CopyOnWriteArrayList<>()).add(listener);
+	}
+
+	/**
+	 * Removes a registered listener.
+	 *
+	 * @param database the name of the database containing the table
+	 * @param table    the name of the table
+	 * @param listener the listener to remove
+	 */
+	void remove(String database, String table, Consumer<ChangeSet> listener) {
+		List<Consumer<ChangeSet>> list = listeners.get(key(database, table));
+		if (list != null) list.remove(listener);
+	}
+
+	/**
+	 * Registers an observer called with the changes of each transaction as
+	 * soon as it is committed or rolled back, before the connection is
+	 * released. Observers must not use the connection.
+	 *
+	 * @param observer the observer
+	 */
+	void observe(Consumer<Collection<ChangeSet>> observer) {
+		observers.add(observer);
+	}
+
+	/**
+	 * Removes a registered observer.
+	 *
+	 * @param observer the observer to remove
+	 */
+	void removeObserver(Consumer<Collection<ChangeSet>> observer) {
+		observers.remove(observer);
+	}
+
+	/**
+	 * Notifies observers of the pending changes.
+	 */
+	private void notifyObservers() {
+		if (pending.isEmpty()) return;
+		Collection<ChangeSet> changes = Collections.unmodifiableCollection(pending.values());
+		for (Consumer<Collection<ChangeSet>> observer : observers) {
+			try {
+				observer.accept(changes);
+			} catch (Throwable ignored) {}
+		}
+	}
+
+	/**
+	 * Returns the key of a table.
+	 *
+	 * @param database the name of the database
+	 * @param table    the name of the table
+	 */
+	private static String key(String database, String table) {
+		return (database + "." + table).toLowerCase();
+	}
+
+	/**
+	 * Records the change of a row, called by the update hook.
+	 *
+	 * @param type     the name of the operation
+	 * @param database the name of the database
+	 * @param table    the name of the table
+	 * @param rowId    the row id of the changed row
+	 */
+	private synchronized void update(String type, String database, String table, long rowId) {
+		ChangeSet.Operation operation;
+		switch (type.toUpperCase()) {
+			case "INSERT":
+				operation = ChangeSet.Operation.Insert;
+				break;
+			case "UPDATE":
+				operation = ChangeSet.Operation.Update;
+				break;
+			case "DELETE":
+				operation = ChangeSet.Operation.Delete;
+				break;
+			default:
+				return;
+		}
+		changeSet(database, table).add(operation, rowId);
+	}
+
+	/**
+	 * Returns the pending change set of a table, creating it if needed.
+	 *
+	 * @param database the name of the database
+	 * @param table    the name of the table
+	 */
+	private ChangeSet changeSet(String database, String table) {
+		return pending.computeIfAbsent(key(database, table), k -> new ChangeSet(database, table));
+	}
+
+	/**
+	 * Moves pending changes to the committed change sets.
+	 */
+	private synchronized void commit() {
+		if (pending.isEmpty()) return;
+		notifyObservers();
+		committed.add(new ArrayList<>(pending.values()));
+		pending.clear();
+	}
+
+	/**
+	 * Drops pending changes.
+	 */
+	private synchronized void rollback() {
+		notifyObservers();
+		pending.clear();
+	}
+
+	/**
+	 * Records the changes of an executed statement, if the driver does not
+	 * report them. The transaction state of the database, already updated
+	 * for the statement, tells whether its changes are committed.
+	 *
+	 * @param query the executed statement
+	 */
+	synchronized void executed(String query) {
+		if (hooked) return;
+		boolean open = database.transactionState().isOpen();
+		if (Database.startsWith(query, "ROLLBACK")) {
+			if (!open) rollback();
+			return;
+		}
+
+		ChangeSet target = target(query);
+		if (target != null) {
+			for (ChangeSet.Operation operation : target.operations()) {
+				changeSet(target.database(), target.table()).add(operation);
+			}
+		}
+		if (!open) commit();
+	}
+
+	/**
+	 * Parses a data modification statement to find the table it modifies.
+	 *
+	 * @param query the statement
+	 * @return a change set without row ids, null if the statement does not
+	 * modify a table
+	 */
+	static ChangeSet target(String query) {
+		Statement statement = ParseCache.shared.tryParse(query, statementParser).orElse(null);
+		ChangeSet target;
+		if (statement instanceof InsertStatement) {
+			InsertStatement insert = (InsertStatement) statement;
+			target = new ChangeSet(insert.schema.orElse("main"), insert.table);
+			target.add(ChangeSet.Operation.Insert);
+		} else if (statement instanceof UpdateStatement) {
+			UpdateStatement update = (UpdateStatement) statement;
+			target = new ChangeSet(update.table.schema.orElse("main"), update.table.name);
+			target.add(ChangeSet.Operation.Update);
+		} else if (statement instanceof DeleteStatement) {
+			DeleteStatement delete = (DeleteStatement) statement;
+			target = new ChangeSet(delete.table.schema.orElse("main"), delete.table.name);
+			target.add(ChangeSet.Operation.Delete);
+		} else {
+			return null;
+		}
+		return target;
+	}
+
+	/**
+	 * Delivers the committed change sets to the listeners of their table.
+	 * Listeners are called on the current thread.
+	 */
+	void deliver() {
+		for (Collection<ChangeSet> changes; (changes = committed.poll()) != null; ) {
+			for (ChangeSet change : changes) {
+				if (change.isEmpty()) continue;
+				List<Consumer<ChangeSet>> targets = listeners.get(key(change.database(), change.table()));
+				if (targets == null) continue;
+				for (Consumer<ChangeSet> listener : targets) {
+					try {
+						listener.accept(change);
+					} catch (Throwable ignored) {}
+				}
+			}
+		}
+	}
+}
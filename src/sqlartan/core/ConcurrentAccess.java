@@ -0,0 +1,529 @@
+package sqlartan.core;
+
+import sqlartan.core.ast.Keyword;
+import sqlartan.core.ast.Operator;
+import sqlartan.core.ast.token.Token;
+import sqlartan.core.ast.token.TokenSource;
+import sqlartan.core.ast.token.TokenizeException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrent access to a database from many threads.
+ * <p>
+ * Every statement that may write is funnelled into the queue of a single
+ * writer thread, which owns the connection of the database. Callers wait
+ * for their statement to be executed, statements are therefore executed
+ * one at a time, in submission order. Statements submitted by the writer
+ * thread itself, for instance by a transaction it is running, are executed
+ * directly. Query results produced by the writer for another thread are
+ * fully read before being handed over, so that the caller never uses the
+ * connection of the writer.
+ * <p>
+ * With group commit, INSERT, UPDATE, DELETE and REPLACE statements
+ * submitted within a window are executed by the writer in a single
+ * transaction, and their callers are only released once it is committed.
+ * Each statement is executed in a savepoint, if one of them fails, only its
+ * changes are rolled back and the failure is given to its caller only.
+ * Statements are never grouped while a transaction started by a BEGIN or
+ * SAVEPOINT statement is open on the connection.
+ * <p>
+ * SELECT, VALUES and EXPLAIN statements are executed on a pool of read-only
+ * connections instead, without waiting for the writer. The database is put
+ * in WAL mode so that readers and the writer do not block each other,
+ * readers see the last committed state of the database. A reader is
+ * returned to the pool once its result is closed. Reads fall back to the
+ * writer when every reader is in use, when the database is in-memory or
+ * has attached databases or temporary objects, which readers do not see.
+ * While a transaction is open on the writer, reads are also executed by
+ * the writer, so that they see the uncommitted changes of the transaction.
+ */
+class ConcurrentAccess implements AutoCloseable {
+	/**
+	 * A statement executed on a connection.
+	 *
+	 * @param <T> the type of result
+	 */
+	@FunctionalInterface
+	interface Task<T> {
+		T run() throws SQLException;
+	}
+
+	/**
+	 * A task queued for the writer thread.
+	 *
+	 * @param <T> the type of result
+	 */
+	private static class Job<T> {
+		/**
+		 * The task to execute
+		 */
+		private final Task<T> task;
+
+		/**
+		 * The SQL statement executed by the task, null if unknown
+		 */
+		private final String sql;
+
+		/**
+		 * The result of the task
+		 */
+		private final CompletableFuture<T> future = new CompletableFuture<>();
+
+		/**
+		 * @param task the task to execute
+		 * @param sql  the SQL statement executed by the task
+		 */
+		private Job(Task<T> task, String sql) {
+			this.task = task;
+			this.sql = sql;
+		}
+
+		/**
+		 * Executes the task and completes its future.
+		 */
+		private void run() {
+			T result = null;
+			try {
+				result = task.run();
+				if (result instanceof Result.QueryResult) {
+					((Result.QueryResult) result).materialize();
+				}
+				future.complete(result);
+			} catch (Throwable e) {
+				if (result instanceof Result) ((Result) result).close();
+				future.completeExceptionally(e);
+			}
+		}
+
+		/**
+		 * Completes the future with the result of a grouped execution.
+		 *
+		 * @param result the result of the task
+		 */
+		@SuppressWarnings("unchecked")
+		private void complete(Object result) {
+			future.complete((T) result);
+		}
+	}
+
+	/**
+	 * The sequence number of writer threads
+	 */
+	private static final AtomicInteger threadCount = new AtomicInteger();
+
+	/**
+	 * The job stopping the writer thread
+	 */
+	private static final Job<Void> stop = new Job<>(() -> null, null);
+
+	/**
+	 * The database
+	 */
+	private final Database database;
+
+	/**
+	 * The maximum number of reader connections
+	 */
+	private final int maxReaders;
+
+	/**
+	 * The number of reader connections opened
+	 */
+	private final AtomicInteger readers = new AtomicInteger();
+
+	/**
+	 * The idle reader connections
+	 */
+	private final Queue<Connection> idle = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * The queue of the writer thread
+	 */
+	private final BlockingQueue<Job<?>> queue = new LinkedBlockingQueue<>();
+
+	/**
+	 * The writer thread
+	 */
+	private final Thread writerThread;
+
+	/**
+	 * Whether this access was closed, guarded by the queue
+	 */
+	private volatile boolean closed = false;
+
+	/**
+	 * The group commit window in nanoseconds, 0 if disabled
+	 */
+	private volatile long groupWindow = 0;
+
+	/**
+	 * The maximum number of statements in a group
+	 */
+	private volatile int groupSize = 1;
+
+	/**
+	 * Whether temporary objects were created on the connection of the
+	 * writer, reads are then executed by the writer
+	 */
+	private volatile boolean temporary;
+
+	/**
+	 * @param database   the database
+	 * @param maxReaders the maximum number of reader connections
+	 * @throws SQLException
+	 */
+	ConcurrentAccess(Database database, int maxReaders) throws SQLException {
+		this.database = database;
+		this.maxReaders = database.isEphemeral() ? 0 : maxReaders;
+
+		try (Statement statement = database.connection.createStatement();
+		     ResultSet rs = statement.executeQuery("SELECT count(*) FROM sqlite_temp_master")) {
+			temporary = rs.next() && rs.getInt(1) > 0;
+		}
+
+		writerThread = new Thread(this::runWriter, "sqlartan-writer-" + threadCount.incrementAndGet());
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Enables group commit.
+	 *
+	 * @param window        the time during which statements are gathered,
+	 *                      in nanoseconds
+	 * @param maxStatements the maximum number of statements in a group
+	 */
+	void groupCommit(long window, int maxStatements) {
+		groupSize = Math.max(1, maxStatements);
+		groupWindow = Math.max(0, window);
+	}
+
+	/**
+	 * Checks if the current thread is the writer thread.
+	 */
+	boolean isWriterThread() {
+		return Thread.currentThread() == writerThread;
+	}
+
+	/**
+	 * Executes a task on the writer thread and waits for its result.
+	 *
+	 * @param task the task
+	 * @param <T>  the type of result
+	 * @return the result of the task
+	 *
+	 * @throws SQLException
+	 */
+	<T> T write(Task<T> task) throws SQLException {
+		return write(task, null);
+	}
+
+	/**
+	 * Executes a statement on the writer thread and waits for its result.
+	 * Data modification statements can be grouped with others in a single
+	 * transaction.
+	 *
+	 * @param task the task executing the statement
+	 * @param sql  the SQL statement
+	 * @param <T>  the type of result
+	 * @return the result of the task
+	 *
+	 * @throws SQLException
+	 */
+	<T> T write(Task<T> task, String sql) throws SQLException {
+		if (isWriterThread()) return task.run();
+
+		Job<T> job = new Job<>(task, sql);
+		synchronized (queue) {
+			if (closed) throw new SQLException("Database is closed");
+			queue.add(job);
+		}
+
+		try {
+			return job.future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for the writer", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof SQLException) throw (SQLException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Executes a read-only query on a reader connection.
+	 *
+	 * @param target     the database targeted by the query
+	 * @param query      the SQL query
+	 * @param parameters the values of the placeholders, null if the query
+	 *                   is not prepared
+	 * @return the result, null if the query must be executed by the writer
+	 *
+	 * @throws SQLException
+	 */
+	Result read(Database target, String query, Object[] parameters) throws SQLException {
+		if (!isRead(query) || isWriterThread() || temporary || !database.attached.isEmpty()) return null;
+		if (database.transactionState().isOpen()) return null;
+
+		Connection reader = acquire();
+		if (reader == null) return null;
+
+		try {
+			Result result;
+			if (parameters == null) {
+				result = Result.fromQuery(target, reader, query);
+			} else {
+				long start = System.nanoTime();
+				PreparedStatement statement = reader.prepareStatement(query);
+				long prepare_time = System.nanoTime() - start;
+				for (int i = 0; i < parameters.length; i++) {
+					statement.setObject(i + 1, parameters[i]);
+				}
+				target.metrics.openStatements.increment();
+				result = Result.fromPreparedStatement(target, statement, query, parameters, prepare_time);
+			}
+			result.onComplete(r -> release(reader));
+			return result;
+		} catch (SQLException | RuntimeException e) {
+			release(reader);
+			throw e;
+		}
+	}
+
+	/**
+	 * Checks if a query only reads the database.
+	 *
+	 * @param query the SQL query
+	 */
+	private static boolean isRead(String query) {
+		return Database.startsWith(query, "SELECT")
+			|| Database.startsWith(query, "VALUES")
+			|| Database.startsWith(query, "EXPLAIN");
+	}
+
+	/**
+	 * Updates the state of this access once a statement was executed by the
+	 * writer.
+	 *
+	 * @param sql the executed statement
+	 */
+	void executed(String sql) {
+		if (!temporary && createsTemporary(sql)) temporary = true;
+	}
+
+	/**
+	 * Checks if a statement creates a temporary object, either with the
+	 * TEMP keyword or in the temp schema.
+	 *
+	 * @param sql the SQL statement
+	 */
+	private static boolean createsTemporary(String sql) {
+		if (!Database.startsWith(sql, "CREATE")) return false;
+		try {
+			List<Token> tokens = TokenSource.from(sql).tokens();
+			if (tokens.size() > 1 && (tokens.get(1).equals(Keyword.TEMP) || tokens.get(1).equals(Keyword.TEMPORARY))) {
+				return true;
+			}
+			for (int i = 1; i + 1 < tokens.size(); i++) {
+				Token token = tokens.get(i);
+				boolean temp = token.equals(Keyword.TEMP)
+					|| (token instanceof Token.Identifier && ((Token.Identifier) token).value().equalsIgnoreCase("temp"));
+				if (temp && tokens.get(i + 1).equals(Operator.DOT)) return true;
+			}
+			return false;
+		} catch (TokenizeException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Takes an idle reader connection, opening a new one if the pool is not
+	 * full.
+	 *
+	 * @return a reader connection, null if none is available
+	 */
+	private Connection acquire() {
+		Connection reader = idle.poll();
+		if (reader != null) return reader;
+
+		for (int count = readers.get(); count < maxReaders; count = readers.get()) {
+			if (!readers.compareAndSet(count, count + 1)) continue;
+			try {
+				reader = DriverManager.getConnection("jdbc:sqlite:" + database.path().getPath());
+				try (Statement statement = reader.createStatement()) {
+					statement.execute("PRAGMA query_only = 1");
+				}
+				return reader;
+			} catch (SQLException e) {
+				readers.decrementAndGet();
+				if (reader != null) close(reader);
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns a reader connection to the pool.
+	 *
+	 * @param reader the reader connection
+	 */
+	private void release(Connection reader) {
+		if (closed) {
+			close(reader);
+		} else {
+			idle.offer(reader);
+			if (closed && idle.remove(reader)) close(reader);
+		}
+	}
+
+	/**
+	 * Closes a connection, ignoring errors.
+	 *
+	 * @param connection the connection
+	 */
+	private static void close(Connection connection) {
+		try {
+			connection.close();
+		} catch (SQLException ignored) {}
+	}
+
+	/**
+	 * Executes queued jobs until stopped.
+	 */
+	private void runWriter() {
+		for (;;) {
+			Job<?> job;
+			try {
+				job = queue.take();
+			} catch (InterruptedException e) {
+				continue;
+			}
+			if (job == stop) return;
+			if (!groupable(job)) {
+				job.run();
+				continue;
+			}
+
+			// Gather the statements submitted within the window
+			List<Job<?>> group = new ArrayList<>();
+			group.add(job);
+			Job<?> next = null;
+			long deadline = System.nanoTime() + groupWindow;
+			while (group.size() < groupSize) {
+				long wait = deadline - System.nanoTime();
+				try {
+					next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+				} catch (InterruptedException e) {
+					next = null;
+				}
+				if (next == null) break;
+				if (next == stop || !groupable(next)) break;
+				group.add(next);
+				next = null;
+			}
+
+			commit(group);
+			if (next == stop) return;
+			if (next != null) next.run();
+		}
+	}
+
+	/**
+	 * Checks if a job can be grouped with others.
+	 *
+	 * @param job the job
+	 */
+	private boolean groupable(Job<?> job) {
+		return groupWindow > 0 && !database.transactionState().isOpen() && job.sql != null && (
+			Database.startsWith(job.sql, "INSERT")
+				|| Database.startsWith(job.sql, "UPDATE")
+				|| Database.startsWith(job.sql, "DELETE")
+				|| Database.startsWith(job.sql, "REPLACE"));
+	}
+
+	/**
+	 * Executes a group of statements in a single transaction. Each statement
+	 * is executed in a savepoint, a failing statement is rolled back on its
+	 * own and the others are committed.
+	 *
+	 * @param group the group of jobs
+	 */
+	private void commit(List<Job<?>> group) {
+		Connection connection = database.connection;
+		Object[] results = new Object[group.size()];
+		Throwable[] errors = new Throwable[group.size()];
+		try (Statement savepoint = connection.createStatement()) {
+			connection.setAutoCommit(false);
+			try {
+				boolean succeeded = false;
+				for (int i = 0; i < group.size(); i++) {
+					savepoint.execute("SAVEPOINT sqlartan_group");
+					try {
+						results[i] = group.get(i).task.run();
+						succeeded = true;
+					} catch (SQLException | RuntimeException e) {
+						errors[i] = e;
+						savepoint.execute("ROLLBACK TO sqlartan_group");
+					}
+					savepoint.execute("RELEASE sqlartan_group");
+				}
+				connection.commit();
+				if (succeeded) database.metrics.transactions.increment();
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			// The transaction itself failed, no statement can be blamed
+			for (Job<?> job : group) job.future.completeExceptionally(e);
+			return;
+		}
+
+		for (int i = 0; i < group.size(); i++) {
+			if (errors[i] != null) {
+				group.get(i).future.completeExceptionally(errors[i]);
+			} else {
+				group.get(i).complete(results[i]);
+			}
+		}
+	}
+
+	/**
+	 * Stops the writer thread once queued statements are executed, and
+	 * closes idle readers. Readers in use are closed once released.
+	 */
+	@Override
+	public void close() {
+		synchronized (queue) {
+			if (closed) return;
+			closed = true;
+			queue.add(stop);
+		}
+		if (!isWriterThread()) {
+			try {
+				writerThread.join(TimeUnit.MINUTES.toMillis(1));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		for (Connection reader; (reader = idle.poll()) != null; ) {
+			close(reader);
+		}
+	}
+}
@@ -1,29 +1,74 @@
 package sqlartan.core;
 
+import sqlartan.core.ast.BeginStatement;
+import sqlartan.core.ast.CommitStatement;
+import sqlartan.core.ast.ReleaseStatement;
+import sqlartan.core.ast.RollbackStatement;
+import sqlartan.core.ast.SavepointStatement;
+import sqlartan.core.ast.SelectStatement;
+import sqlartan.core.ast.parser.ParseCache;
 import sqlartan.core.ast.token.Token;
 import sqlartan.core.ast.token.TokenSource;
 import sqlartan.core.ast.token.TokenizeException;
+import sqlartan.core.ast.token.Tokenizer;
+import sqlartan.core.io.BinaryDumpReader;
+import sqlartan.core.io.BinaryDumpWriter;
+import sqlartan.core.io.Compression;
+import sqlartan.core.io.CsvImporter;
+import sqlartan.core.io.CsvOptions;
+import sqlartan.core.io.SqlExporter;
 import sqlartan.core.stream.IterableStream;
 import sqlartan.core.util.UncheckedSQLException;
+import sqlartan.util.EventBus;
 import sqlartan.util.Optionals;
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 import static sqlartan.core.ast.Keyword.*;
 import static sqlartan.core.ast.Operator.SEMICOLON;
-import static sqlartan.util.Matching.match;
 
 /**
  * An SQLite database.
+ * <p>
+ * By default, a database is not thread-safe: its connection is used by
+ * the calling thread. Once concurrent access is enabled, a database can be
+ * shared by any number of threads. Writes are then executed one at a time
+ * by a writer thread, while reads are executed in parallel on a pool of
+ * read-only connections. Transactions must be run by transaction(), which
+ * executes them entirely on the writer thread; a transaction started with
+ * a BEGIN statement would include the writes of other threads.
+ * <p>
+ * Listeners, statistics, metrics and the caches shared between databases
+ * are always safe for concurrent use.
  */
 public class Database implements AutoCloseable {
+	/**
+	 * The result code of SQLite when the database is locked by another
+	 * connection
+	 */
+	private static final int SQLITE_BUSY = 5;
+
+	/**
+	 * The maximum number of times a busy transaction is retried
+	 */
+	private static final int BUSY_RETRIES = 8;
+
+	/**
+	 * The initial delay before retrying a busy transaction, in milliseconds
+	 */
+	private static final long BUSY_BACKOFF = 2;
+
 	/**
 	 * Creates a new ephemeral database.
 	 * <p>
@@ -87,7 +132,7 @@ public class Database implements AutoCloseable {
 	/**
 	 * The Set of attached database
 	 */
-	private HashMap<String, AttachedDatabase> attached = new HashMap<>();
+	final Map<String, AttachedDatabase> attached = new ConcurrentHashMap<>();
 
 	/**
 	 * The underlying JDBC connection
@@ -95,9 +140,56 @@ public class Database implements AutoCloseable {
 	protected Connection connection;
 
 	/**
-	 * The set of registered execute listeners
+	 * The bus delivering results to execute listeners
+	 */
+	private final EventBus<ReadOnlyResult> executeListeners = new EventBus<>();
+
+	/**
+	 * The execution statistics collector, null if disabled
+	 */
+	private volatile QueryStatistics statistics;
+
+	/**
+	 * The slow-query log, null if disabled
+	 */
+	private volatile SlowQueryLog slowQueryLog;
+
+	/**
+	 * The concurrent access to this database, null if disabled
+	 */
+	private volatile ConcurrentAccess concurrentAccess;
+
+	/**
+	 * The metrics of this database
+	 */
+	final DatabaseMetrics metrics = new DatabaseMetrics(this);
+
+	/**
+	 * The tracker of table changes, null until a listener is registered
+	 */
+	private volatile ChangeTracker changeTracker;
+
+	/**
+	 * The result cache, null if disabled
+	 */
+	private volatile ResultCache resultCache;
+
+	/**
+	 * The observer invalidating the result cache, null if disabled
+	 */
+	private Consumer<Collection<ChangeSet>> resultCacheObserver;
+
+	/**
+	 * The number of scopes opened by transaction() and not yet closed, only
+	 * accessed by the thread owning the connection
 	 */
-	private Set<Consumer<ReadOnlyResult>> executeListeners = new HashSet<>();
+	private int transactionDepth = 0;
+
+	/**
+	 * The transaction state of the connection, only accessed by the thread
+	 * executing statements on it
+	 */
+	private final TransactionState transactionState = new TransactionState();
 
 	/**
 	 * @param path       the path to the database file
@@ -120,6 +212,7 @@ public class Database implements AutoCloseable {
 			// a database triggers an exception if the file is not a database.
 			try {
 				execute("SELECT * FROM sqlite_master LIMIT 1").close();
+				enableCountTriggers();
 			} catch (SQLException e) {
 				close();
 				throw e;
@@ -127,6 +220,8 @@ public class Database implements AutoCloseable {
 		} else {
 			this.connection = connection;
 		}
+
+		metrics.register();
 	}
 
 	/**
@@ -166,7 +261,7 @@ public class Database implements AutoCloseable {
 	 *                 database
 	 */
 	public void registerListener(Consumer<ReadOnlyResult> listener) {
-		executeListeners.add(listener);
+		executeListeners.register(listener);
 	}
 
 	/**
@@ -179,6 +274,340 @@ public class Database implements AutoCloseable {
 		executeListeners.remove(listener);
 	}
 
+	/**
+	 * Registers a listener of the changes made to a table.
+	 * <p>
+	 * Once a transaction changing the table is committed, the listener
+	 * receives the set of rows it inserted, updated and deleted. It is
+	 * called on the thread that executed the committing statement, once
+	 * that statement returns.
+	 *
+	 * @param table    the name of the table
+	 * @param listener the listener
+	 */
+	public void onTableChange(String table, Consumer<ChangeSet> listener) {
+		changes(true).register(name(), table, listener);
+	}
+
+	/**
+	 * Removes a registered table change listener.
+	 *
+	 * @param table    the name of the table
+	 * @param listener the listener to remove
+	 */
+	public void removeTableChangeListener(String table, Consumer<ChangeSet> listener) {
+		ChangeTracker tracker = changes(false);
+		if (tracker != null) tracker.remove(name(), table, listener);
+	}
+
+	/**
+	 * Returns the tracker of table changes on the connection.
+	 *
+	 * @param create whether to create the tracker if none exists yet
+	 * @return the tracker, null if none exists and create is false
+	 */
+	ChangeTracker changes(boolean create) {
+		ChangeTracker tracker = changeTracker;
+		if (tracker == null && create) {
+			synchronized (this) {
+				if (changeTracker == null) changeTracker = new ChangeTracker(this);
+				tracker = changeTracker;
+			}
+		}
+		return tracker;
+	}
+
+	/**
+	 * Records the changes of an executed statement and delivers committed
+	 * changes to table change listeners.
+	 *
+	 * @param query the executed statement, null if it did not write
+	 */
+	void trackChanges(String query) {
+		ChangeTracker tracker = changes(false);
+		if (tracker == null) return;
+		if (query != null) tracker.executed(query);
+		tracker.deliver();
+	}
+
+	/**
+	 * Enables concurrent access to this database from many threads.
+	 * <p>
+	 * File databases are switched to WAL mode, so that readers do not block
+	 * the writer. This setting is persistent.
+	 *
+	 * @param readers the maximum number of read-only connections
+	 * @throws SQLException
+	 */
+	public synchronized void enableConcurrentAccess(int readers) throws SQLException {
+		if (concurrentAccess != null) return;
+		if (!isEphemeral() && readers > 0) {
+			execute("PRAGMA journal_mode = WAL").close();
+		}
+		concurrentAccess = new ConcurrentAccess(this, readers);
+	}
+
+	/**
+	 * Enables group commit of the data modification statements executed
+	 * from many threads. Statements submitted to the writer within the
+	 * window are executed in a single transaction, each caller waits until
+	 * that transaction is committed. A failing statement is rolled back on
+	 * its own and only fails its caller.
+	 * <p>
+	 * Concurrent access must be enabled.
+	 *
+	 * @param window        the time during which statements are gathered
+	 * @param unit          the unit of the window
+	 * @param maxStatements the maximum number of statements in a transaction
+	 */
+	public void enableGroupCommit(long window, TimeUnit unit, int maxStatements) {
+		ConcurrentAccess concurrent = access();
+		if (concurrent == null) throw new IllegalStateException("Concurrent access is not enabled");
+		if (maxStatements < 1) throw new IllegalArgumentException("Max statements must be at least 1");
+		concurrent.groupCommit(unit.toNanos(window), maxStatements);
+	}
+
+	/**
+	 * Disables group commit, each statement is committed on its own.
+	 */
+	public void disableGroupCommit() {
+		ConcurrentAccess concurrent = access();
+		if (concurrent != null) concurrent.groupCommit(0, 1);
+	}
+
+	/**
+	 * Checks if concurrent access to this database is enabled.
+	 */
+	public boolean isConcurrent() {
+		return access() != null;
+	}
+
+	/**
+	 * Returns the concurrent access to this database, null if disabled.
+	 */
+	ConcurrentAccess access() {
+		return concurrentAccess;
+	}
+
+	/**
+	 * Executes a task on the writer thread if concurrent access is enabled,
+	 * or directly otherwise.
+	 *
+	 * @param task the task
+	 * @param <T>  the type of result
+	 * @return the result of the task
+	 *
+	 * @throws SQLException
+	 */
+	<T> T onWriter(ConcurrentAccess.Task<T> task) throws SQLException {
+		ConcurrentAccess concurrent = access();
+		return concurrent == null ? task.run() : concurrent.write(task);
+	}
+
+	/**
+	 * Executes a statement on the writer thread if concurrent access is
+	 * enabled, or directly otherwise. The statement may be grouped with
+	 * others in a single transaction.
+	 *
+	 * @param sql  the SQL statement
+	 * @param task the task executing the statement
+	 * @param <T>  the type of result
+	 * @return the result of the task
+	 *
+	 * @throws SQLException
+	 */
+	<T> T onWriter(String sql, ConcurrentAccess.Task<T> task) throws SQLException {
+		ConcurrentAccess concurrent = access();
+		ConcurrentAccess.Task<T> tracked = () -> {
+			T result = task.run();
+			executed(sql, 1);
+			return result;
+		};
+		return concurrent == null ? tracked.run() : concurrent.write(tracked, sql);
+	}
+
+	/**
+	 * Returns the transaction state of the connection.
+	 */
+	TransactionState transactionState() {
+		return transactionState;
+	}
+
+	/**
+	 * Follows the transaction state of the connection once a statement was
+	 * executed, and counts the transactions it committed. Concurrent access
+	 * is told about the temporary objects it created. Statements grouped
+	 * in a single transaction by group commit are counted with it instead.
+	 *
+	 * @param sql   the executed statement
+	 * @param count the number of times the statement was executed
+	 * @throws SQLException
+	 */
+	void executed(String sql, int count) throws SQLException {
+		if (transactionState().executed(sql) && connection.getAutoCommit()) {
+			metrics.transactions.add(count);
+		}
+		ConcurrentAccess concurrent = access();
+		if (concurrent != null) concurrent.executed(sql);
+	}
+
+	/**
+	 * Returns the bus delivering results to execute listeners.
+	 * <p>
+	 * Listeners are called synchronously by default. The bus can be
+	 * switched to asynchronous delivery so that listeners do not delay
+	 * queries, listeners must then be thread-safe.
+	 */
+	public EventBus<ReadOnlyResult> executeListeners() {
+		return executeListeners;
+	}
+
+	/**
+	 * Returns the metrics of this database, also registered as a MBean.
+	 */
+	public DatabaseMXBean metrics() {
+		return metrics;
+	}
+
+	/**
+	 * Enables the collection of execution statistics of queries executed on
+	 * this database.
+	 * <p>
+	 * A query is recorded once its result is closed. Results of queries
+	 * that are never closed nor fully consumed are not recorded.
+	 *
+	 * @param maxQueries the maximum number of distinct queries to track
+	 * @return the statistics collector
+	 */
+	public QueryStatistics enableStatistics(int maxQueries) {
+		QueryStatistics collector = new QueryStatistics(maxQueries);
+		statistics = collector;
+		return collector;
+	}
+
+	/**
+	 * Disables the collection of execution statistics.
+	 */
+	public void disableStatistics() {
+		statistics = null;
+	}
+
+	/**
+	 * Returns the execution statistics collector, if enabled.
+	 */
+	public Optional<QueryStatistics> statistics() {
+		return Optional.ofNullable(statistics);
+	}
+
+	/**
+	 * Enables the caching of the results of read-only queries.
+	 * <p>
+	 * Cached results are invalidated when a table they read is changed on
+	 * this connection. Changes made by other connections are not seen,
+	 * cached results are kept at most for the given maximum age.
+	 *
+	 * @param capacity the maximum size of the cached values, in bytes
+	 * @param maxAge   the maximum age of cached results, 0 for no limit
+	 * @param unit     the unit of the maximum age
+	 * @return the result cache
+	 */
+	public synchronized ResultCache enableResultCache(long capacity, long maxAge, TimeUnit unit) {
+		disableResultCache();
+		ResultCache cache = new ResultCache(this, capacity, unit.toNanos(maxAge));
+		resultCacheObserver = cache::invalidate;
+		changes(true).observe(resultCacheObserver);
+		resultCache = cache;
+		return cache;
+	}
+
+	/**
+	 * Disables the result cache and drops its content.
+	 */
+	public synchronized void disableResultCache() {
+		ResultCache cache = resultCache;
+		if (cache == null) return;
+		resultCache = null;
+		changes(true).removeObserver(resultCacheObserver);
+		resultCacheObserver = null;
+		cache.clear();
+	}
+
+	/**
+	 * Returns the result cache, if enabled.
+	 */
+	public Optional<ResultCache> resultCache() {
+		return Optional.ofNullable(resultCache);
+	}
+
+	/**
+	 * Looks a query up in the result cache.
+	 *
+	 * @param query      the SQL query
+	 * @param parameters the values bound to the placeholders, null if none
+	 * @return the lookup, null if the cache is disabled or the query cannot
+	 * be cached
+	 */
+	private ResultCache.Lookup lookup(String query, Object[] parameters) {
+		ResultCache cache = resultCache;
+		return cache == null ? null : cache.lookup(query, parameters);
+	}
+
+	/**
+	 * Enables the logging of queries whose execution, including the fetching
+	 * of rows, exceeds the given threshold. A previously enabled log is
+	 * closed and replaced.
+	 *
+	 * @param threshold the threshold above which a query is slow, in
+	 *                  milliseconds
+	 * @param capacity  the maximum number of entries kept in memory
+	 * @return the slow-query log
+	 */
+	public SlowQueryLog enableSlowQueryLog(long threshold, int capacity) {
+		SlowQueryLog log = new SlowQueryLog(this, threshold, capacity);
+		disableSlowQueryLog();
+		slowQueryLog = log;
+		return log;
+	}
+
+	/**
+	 * Disables the slow-query log.
+	 */
+	public void disableSlowQueryLog() {
+		SlowQueryLog log = slowQueryLog;
+		slowQueryLog = null;
+		if (log != null) log.close();
+	}
+
+	/**
+	 * Returns the slow-query log, if enabled.
+	 */
+	public Optional<SlowQueryLog> slowQueryLog() {
+		return Optional.ofNullable(slowQueryLog);
+	}
+
+	/**
+	 * Called when a result of a query executed on this database is closed.
+	 *
+	 * @param result the closed result
+	 */
+	void resultClosed(Result result) {
+		metrics.openResults.decrement();
+		if (result.isUpdateResult()) {
+			metrics.rowsWritten.add(result.updateCount());
+		} else {
+			metrics.rowsRead.add(result.rowsFetched());
+		}
+
+		QueryStatistics collector = statistics;
+		if (collector != null) {
+			collector.record(result.query(), result.totalTime(), result.rowCount());
+		}
+		SlowQueryLog log = slowQueryLog;
+		if (log != null) {
+			log.record(result);
+		}
+	}
+
 	/**
 	 * Returns a list of structures of the given type from this database.
 	 * <p>
@@ -273,6 +702,49 @@ public class Database implements AutoCloseable {
 		return findStructure("view", name, n -> new View(this, n));
 	}
 
+	/**
+	 * Creates a materialized view, storing the results of a query in a
+	 * backing table of the same name.
+	 * <p>
+	 * The view is maintained incrementally if the query is a simple filter
+	 * or aggregate of a single table, and must be refreshed otherwise.
+	 *
+	 * @param name   the name of the view
+	 * @param select the query of the view
+	 * @return the created view
+	 * @throws SQLException
+	 */
+	public MaterializedView createMaterializedView(String name, SelectStatement select) throws SQLException {
+		return MaterializedView.create(this, name, select);
+	}
+
+	/**
+	 * Returns a stream of every materialized views in the database.
+	 *
+	 * @return a stream of materialized views
+	 */
+	public IterableStream<MaterializedView> materializedViews() {
+		if (!table(MaterializedView.metadataTable).isPresent()) return IterableStream.from(Collections.emptyList());
+		try {
+			return assemble("SELECT name FROM ", name(), "." + MaterializedView.metadataTable + " ORDER BY name")
+				.execute()
+				.map(Row::getString)
+				.map(n -> new MaterializedView(this, n));
+		} catch (SQLException e) {
+			throw new UncheckedSQLException(e);
+		}
+	}
+
+	/**
+	 * Returns the materialized view with the given name, if it exists.
+	 *
+	 * @param name the name of the materialized view
+	 * @return the materialized view with the given name, if it exists
+	 */
+	public Optional<MaterializedView> materializedView(String name) {
+		return materializedViews().find(view -> view.name().equals(name));
+	}
+
 	/**
 	 * Returns a list of every persistent structures of the database.
 	 * <p>
@@ -307,6 +779,40 @@ public class Database implements AutoCloseable {
 		}
 	}
 
+	/**
+	 * Backs up the database to a file while it remains usable.
+	 * <p>
+	 * By default, the database is copied page by page with the SQLite
+	 * backup API, which lets other connections keep writing to it between
+	 * two steps. A compacted copy can be requested instead.
+	 *
+	 * @param target  the backup file, overwritten if it exists
+	 * @param options the backup options
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public void backupTo(Path target, BackupOptions options) throws SQLException, IOException {
+		new Backup(this, options).backupTo(target);
+	}
+
+	/**
+	 * Replaces the content of the database by the content of a backup file.
+	 * <p>
+	 * The result cache, if enabled, is cleared.
+	 *
+	 * @param source the backup file
+	 * @throws SQLException
+	 */
+	public void restoreFrom(Path source) throws SQLException {
+		try {
+			new Backup(this, new BackupOptions()).restoreFrom(source);
+			enableCountTriggers();
+		} finally {
+			ResultCache cache = resultCache;
+			if (cache != null) cache.clear();
+		}
+	}
+
 	/**
 	 * Closes the underlying JDBC Connection object.
 	 * Once this method is called, this object must no longer be used.
@@ -315,7 +821,16 @@ public class Database implements AutoCloseable {
 	 */
 	public void close() {
 		if (this.connection != null) {
+			if (concurrentAccess != null) {
+				concurrentAccess.close();
+				concurrentAccess = null;
+			}
+			disableSlowQueryLog();
+			disableResultCache();
+			executeListeners.close();
+			metrics.unregister();
 			try {
+				attached.values().forEach(database -> database.metrics.unregister());
 				attached.clear();
 				this.connection.close();
 			} catch (SQLException ignored) {}
@@ -365,22 +880,75 @@ public class Database implements AutoCloseable {
 		return new AssembledQuery(this, query.toString());
 	}
 
+	/**
+	 * Enables recursive triggers on the connection if the database caches
+	 * row counts, so that rows deleted by the REPLACE conflict resolution
+	 * fire the counting triggers.
+	 *
+	 * @throws SQLException
+	 */
+	void enableCountTriggers() throws SQLException {
+		if (table(Table.rowCountsTable).isPresent()) {
+			execute("PRAGMA recursive_triggers = ON").close();
+		}
+	}
+
+	/**
+	 * Checks if a query modifies the schema of a database.
+	 * <p>
+	 * The "restore from" command of the driver replaces the whole database,
+	 * and is handled as a schema change.
+	 *
+	 * @param query the SQL query
+	 */
+	private static boolean changesSchema(String query) {
+		return startsWith(query, "CREATE") || startsWith(query, "DROP") || startsWith(query, "ALTER")
+			|| startsWith(query, "RESTORE");
+	}
+
+	/**
+	 * Checks if a query starts with a keyword, ignoring case and leading
+	 * whitespaces.
+	 *
+	 * @param query   the SQL query
+	 * @param keyword the keyword, in upper case
+	 */
+	static boolean startsWith(String query, String keyword) {
+		int i = 0;
+		while (i < query.length() && Character.isWhitespace(query.charAt(i))) i++;
+		return query.regionMatches(true, i, keyword, 0, keyword.length());
+	}
+
 	/**
 	 * Notifies registered execute listeners.
 	 * <p>
 	 * This method returns the given result set allowing it to be used in a
 	 * return statement without requiring an additional variable to hold the
-	 * result set.
+	 * result set. Queries modifying the schema invalidate the parse cache.
 	 *
 	 * @param res the result set generated by the executed query.
 	 * @return the given result set
 	 */
 	Result notifyListeners(Result res) {
-		for (Consumer<ReadOnlyResult> listener : executeListeners) {
-			try {
-				listener.accept(res);
-			} catch (Throwable ignored) {}
+		metrics.queries.increment();
+		if (res.isUpdateResult()) {
+			String query = res.query();
+			ResultCache cache = resultCache;
+			if (changesSchema(query)) {
+				ParseCache.shared.invalidate();
+				if (cache != null) cache.clear();
+			} else if (cache != null && (startsWith(query, "INSERT") || startsWith(query, "UPDATE")
+				|| startsWith(query, "DELETE") || startsWith(query, "REPLACE"))) {
+				// The update hook misses rows removed by the truncate
+				// optimization and rows of WITHOUT ROWID tables
+				ChangeSet target = ChangeTracker.target(query);
+				if (target != null) cache.written(target.table());
+			}
+		} else if (startsWith(res.query(), "PRAGMA") && res.query().toLowerCase().contains("wal_checkpoint")) {
+			metrics.lastCheckpoint = System.currentTimeMillis();
 		}
+		trackChanges(res.isUpdateResult() ? res.query() : null);
+		executeListeners.publish(res);
 		return res;
 	}
 
@@ -393,7 +961,15 @@ public class Database implements AutoCloseable {
 	 * @throws SQLException if the query is invalid
 	 */
 	public Result execute(String query) throws SQLException {
-		return notifyListeners(Result.fromQuery(this, connection, query));
+		ResultCache.Lookup lookup = lookup(query, null);
+		Result result = lookup == null ? null : lookup.result(query, null);
+		if (result != null) return notifyListeners(result);
+
+		ConcurrentAccess concurrent = access();
+		if (concurrent != null) result = concurrent.read(this, query, null);
+		if (result == null) result = onWriter(query, () -> Result.fromQuery(this, connection, query));
+		if (lookup != null) lookup.record(result);
+		return notifyListeners(result);
 	}
 
 	/**
@@ -416,7 +992,7 @@ public class Database implements AutoCloseable {
 	 *
 	 * @throws SQLException if the query is invalid
 	 */
-	public IterableStream<Result> executeMulti(String query) throws SQLException, TokenizeException {
+	public IterableStream<Result> executeMulti(CharSequence query) throws SQLException, TokenizeException {
 		TokenSource tokens = TokenSource.from(query);
 		return IterableStream.from(() -> {
 			return new Iterator<Result>() {
@@ -441,12 +1017,12 @@ public class Database implements AutoCloseable {
 						} else if (current.equals(END)) {
 							block_level--;
 						} else if (current instanceof Token.EndOfStream) {
-							statement = query.substring(begin).trim();
+							statement = query.subSequence(begin, len).toString().trim();
 							begin = len;
 							break;
 						} else if (block_level == 0 && current.equals(SEMICOLON)) {
 							int offset = current.offset + 1;
-							statement = query.substring(begin, offset).trim();
+							statement = query.subSequence(begin, offset).toString().trim();
 							begin = offset;
 							tokens.consume();
 							break;
@@ -487,31 +1063,179 @@ public class Database implements AutoCloseable {
 	 * @throws SQLException if the query is invalid
 	 */
 	public Result execute(String query, Object... parameters) throws SQLException {
+		ResultCache.Lookup lookup = lookup(query, parameters);
+		Result result = lookup == null ? null : lookup.result(query, parameters);
+		if (result != null) return notifyListeners(result);
+
+		ConcurrentAccess concurrent = access();
+		if (concurrent != null) {
+			result = concurrent.read(this, query, parameters);
+			if (result != null) {
+				if (lookup != null) lookup.record(result);
+				return notifyListeners(result);
+			}
+		}
+
 		PreparedQuery pq = prepare(query);
 		for (int i = 0; i < parameters.length; i++) {
 			pq.set(i + 1, parameters[i]);
 		}
-		return pq.execute();
+		result = pq.execute();
+		if (lookup != null) lookup.record(result);
+		return result;
 	}
 
 	/**
 	 * Executes a transaction on the database.
+	 * <p>
+	 * If a transaction is already open, the queries are executed in a nested
+	 * scope instead.
 	 *
 	 * @param queries
 	 * @throws SQLException
 	 */
 	public void executeTransaction(String[] queries) throws SQLException {
-		try {
-			connection.setAutoCommit(false);
+		transaction(() -> {
 			for (String query : queries) {
 				execute(query).close();
 			}
-			connection.commit();
-		} catch (SQLException e) {
-			connection.rollback();
+		});
+	}
+
+	/**
+	 * Runs a deferred transaction on the database.
+	 *
+	 * @param body the body of the transaction
+	 * @throws SQLException
+	 * @see #transaction(BeginStatement.Mode, TransactionBody)
+	 */
+	public void transaction(TransactionBody body) throws SQLException {
+		transaction(BeginStatement.Mode.Deferred, body);
+	}
+
+	/**
+	 * Runs a transaction on the database.
+	 * <p>
+	 * The transaction is committed once the body returns, or rolled back if
+	 * it throws. Transactions run by the body are nested scopes mapped to
+	 * savepoints: rolling a nested scope back does not roll back the
+	 * enclosing transaction, whose mode is used.
+	 * <p>
+	 * If the database is locked by another connection, the outermost
+	 * transaction is rolled back and its body run again after a growing
+	 * delay, a few times before the error is thrown.
+	 * <p>
+	 * A transaction cannot be run inside a transaction started with a
+	 * BEGIN statement.
+	 *
+	 * @param mode the mode of the transaction
+	 * @param body the body of the transaction
+	 * @throws SQLException
+	 */
+	public void transaction(BeginStatement.Mode mode, TransactionBody body) throws SQLException {
+		onWriter(() -> {
+			if (transactionDepth > 0) {
+				savepoint(body);
+				return null;
+			}
+			for (int attempt = 0; ; attempt++) {
+				try {
+					begin(mode, body);
+					return null;
+				} catch (SQLException e) {
+					if (!isBusy(e) || attempt >= BUSY_RETRIES) throw e;
+					backoff(attempt, e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Runs the body of an outermost transaction.
+	 *
+	 * @param mode the mode of the transaction
+	 * @param body the body of the transaction
+	 * @throws SQLException
+	 */
+	private void begin(BeginStatement.Mode mode, TransactionBody body) throws SQLException {
+		BeginStatement begin = new BeginStatement();
+		begin.mode = mode;
+		execute(begin.toSQL()).close();
+
+		transactionDepth++;
+		try {
+			body.run();
+			execute(CommitStatement.instance.toSQL()).close();
+		} catch (Throwable e) {
+			try {
+				execute(new RollbackStatement().toSQL()).close();
+			} catch (SQLException rollback) {
+				e.addSuppressed(rollback);
+			}
+			throw e;
+		} finally {
+			transactionDepth--;
+		}
+	}
+
+	/**
+	 * Runs the body of a nested transaction in a savepoint.
+	 *
+	 * @param body the body of the transaction
+	 * @throws SQLException
+	 */
+	private void savepoint(TransactionBody body) throws SQLException {
+		String name = "sqlartan_" + transactionDepth;
+		ReleaseStatement release = new ReleaseStatement();
+		release.savepoint = name;
+		execute(new SavepointStatement(name).toSQL()).close();
+
+		transactionDepth++;
+		try {
+			body.run();
+			execute(release.toSQL()).close();
+		} catch (Throwable e) {
+			try {
+				RollbackStatement rollback = new RollbackStatement();
+				rollback.savepoint = Optional.of(name);
+				execute(rollback.toSQL()).close();
+				execute(release.toSQL()).close();
+			} catch (SQLException rollback) {
+				e.addSuppressed(rollback);
+			}
 			throw e;
 		} finally {
-			connection.setAutoCommit(true);
+			transactionDepth--;
+		}
+	}
+
+	/**
+	 * Checks if an exception was caused by the database being locked by
+	 * another connection.
+	 *
+	 * @param e the exception
+	 */
+	private static boolean isBusy(SQLException e) {
+		return (e.getErrorCode() & 0xff) == SQLITE_BUSY
+			|| (e.getMessage() != null && e.getMessage().contains("SQLITE_BUSY"));
+	}
+
+	/**
+	 * Waits before retrying a busy transaction. The delay doubles with
+	 * each attempt, with some jitter so that competing connections do not
+	 * retry in lockstep.
+	 *
+	 * @param attempt the number of the failed attempt
+	 * @param cause   the busy exception, thrown if interrupted
+	 * @throws SQLException
+	 */
+	private static void backoff(int attempt, SQLException cause) throws SQLException {
+		long delay = BUSY_BACKOFF << attempt;
+		try {
+			Thread.sleep(delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw cause;
 		}
 	}
 
@@ -536,6 +1260,7 @@ public class Database implements AutoCloseable {
 		assemble("ATTACH DATABASE ", file.getPath(), " AS ", name).execute();
 		AttachedDatabase database = new AttachedDatabase(this, file, name);
 		attached.put(name, database);
+		database.enableCountTriggers();
 		return database;
 	}
 
@@ -594,140 +1319,119 @@ public class Database implements AutoCloseable {
 
 	/**
 	 * Import SQL from a file.
+	 * <p>
+	 * The file can be compressed with gzip or deflate, the compression
+	 * format is detected from the content of the file. Binary dumps are
+	 * also detected and loaded without parsing the SQL. Uncompressed SQL
+	 * files are memory-mapped and decoded outside of the heap.
 	 *
 	 * @param file the file containing the SQL
 	 * @throws SQLException
 	 * @throws IOException
 	 */
-
 	public void importFromFile(File file) throws SQLException, IOException, TokenizeException {
-		executeMulti(new String(Files.readAllBytes(file.toPath()))).forEach(Result::close);
-	}
+		CharSequence sql;
+		try (InputStream in = new BufferedInputStream(Compression.newInputStream(file))) {
+			if (BinaryDumpReader.isDump(in)) {
+				new BinaryDumpReader(this).read(in);
+				return;
+			}
 
-	/**
-	 * Export the database to SQL.
-	 *
-	 * @return the SQL
-	 *
-	 * @throws SQLException
-	 */
-	public String export() throws SQLException {
-		return createSQLTransaction(getTablesSQL() + getTablesDataSQL() + getViewsSQL() + getTriggersSQL());
+			if (Compression.detect(file) == Compression.None) {
+				try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+					sql = Tokenizer.decode(channel);
+				}
+			} else {
+				StringBuilder builder = new StringBuilder();
+				Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+				char[] buffer = new char[8192];
+				for (int count; (count = reader.read(buffer)) >= 0; ) {
+					builder.append(buffer, 0, count);
+				}
+				sql = builder;
+			}
+		}
+		executeMulti(sql).forEach(Result::close);
 	}
 
 	/**
-	 * Export tables data to SQL.
+	 * Import a CSV file in a table.
+	 * <p>
+	 * If the table does not exist, it is created from the header of the
+	 * file with affinities inferred from its first records. Otherwise,
+	 * rows are appended to the existing table.
 	 *
-	 * @return the SQL
+	 * @param file    the CSV file, optionally compressed
+	 * @param table   the name of the table
+	 * @param options the import options
+	 * @return the number of imported rows
 	 *
 	 * @throws SQLException
+	 * @throws IOException
 	 */
-	public String exportTablesData() throws SQLException {
-		return createSQLTransaction(getTablesDataSQL());
+	public long importCsv(Path file, String table, CsvOptions options) throws SQLException, IOException {
+		return new CsvImporter(this, options).load(file, table);
 	}
 
 	/**
-	 * Export the structure of the database to SQL
-	 *
-	 * @return the SQL
+	 * Export the database to a binary dump file.
+	 * <p>
+	 * The dump can be loaded back with importFromFile(). It is compressed
+	 * if the file name ends with a compression extension.
 	 *
+	 * @param file the target file
 	 * @throws SQLException
+	 * @throws IOException
 	 */
-	public String exportStructure() throws SQLException {
-		return createSQLTransaction(getTablesSQL() + getViewsSQL() + getTriggersSQL());
-	}
-
-	/**
-	 * Put SQL inside a transaction.
-	 *
-	 * @param sql
-	 * @return the transaction
-	 */
-	private String createSQLTransaction(String sql) {
-		return "PRAGMA foreign_keys=OFF;\n" +
-			"BEGIN TRANSACTION;\n" +
-			sql +
-			"COMMIT;";
+	public void exportBinary(File file) throws SQLException, IOException {
+		try (OutputStream out = Compression.newOutputStream(file, Runtime.getRuntime().availableProcessors())) {
+			new BinaryDumpWriter(this).write(out);
+		}
 	}
 
 	/**
-	 * Export tables to SQL.
+	 * Export the database to SQL.
 	 *
 	 * @return the SQL
 	 *
 	 * @throws SQLException
 	 */
-	private String getTablesSQL() throws SQLException {
-		return assemble("SELECT sql FROM ", name, ".sqlite_master WHERE type = 'table'")
-			.execute()
-			.map(Row::getString)
-			.collect(Collectors.joining(";\n")) + ";\n";
+	public String export() throws SQLException {
+		return exporter().export();
 	}
 
 	/**
-	 * Export views to SQL.
+	 * Export tables data to SQL.
 	 *
 	 * @return the SQL
 	 *
 	 * @throws SQLException
 	 */
-	private String getViewsSQL() throws SQLException {
-		return assemble("SELECT sql FROM ", name, ".sqlite_master WHERE type = 'view'")
-			.execute()
-			.map(Row::getString)
-			.collect(Collectors.joining(";\n")) + ";\n";
+	public String exportTablesData() throws SQLException {
+		return exporter().structure(false).export();
 	}
 
 	/**
-	 * Export triggers to SQL.
+	 * Export the structure of the database to SQL
 	 *
 	 * @return the SQL
 	 *
 	 * @throws SQLException
 	 */
-	private String getTriggersSQL() throws SQLException {
-		return assemble("SELECT sql FROM ", name, ".sqlite_master WHERE type = 'trigger'")
-			.execute()
-			.map(Row::getString)
-			.collect(Collectors.joining(";\n")) + ";\n";
+	public String exportStructure() throws SQLException {
+		return exporter().data(false).export();
 	}
 
 	/**
-	 * Export tables data to SQL.
-	 *
-	 * @return the SQL
+	 * Returns a new SQL exporter for this database.
+	 * <p>
+	 * The exporter can be configured before writing the SQL to a String or
+	 * directly to a Writer. By default, both the structure and the data are
+	 * exported and tables are exported in parallel if possible.
 	 *
-	 * @throws SQLException
+	 * @return a new SQL exporter bound to this database
 	 */
-	private String getTablesDataSQL() throws SQLException {
-		String sql = "";
-
-		// Get every values from tables
-		for (Table table : tables()) {
-			if (assemble("SELECT COUNT(*) FROM ", table.fullName()).execute().mapFirst(Row::getInt) > 0) {
-				String insertSQL = "INSERT INTO " + table.fullName() + " VALUES ";
-				insertSQL += assemble("SELECT * FROM ", table.fullName())
-					.execute()
-					.map(row -> {
-						String s = "(";
-						for (int i = 1; i <= row.size(); i++) {
-							if (i != 1) s += ", ";
-							s += match(row.getObject(i))
-								.when(String.class, str -> "'" + str.replace("'", "''") + "'")
-								.when(Number.class, n -> n.toString())
-								.orElse(() -> {
-									return "NULL";
-								});
-							// TODO Manage byte array
-						}
-						return s + ")";
-					})
-					.collect(Collectors.joining(", "));
-
-				sql += insertSQL + ";\n";
-			}
-		}
-
-		return sql;
+	public SqlExporter exporter() {
+		return new SqlExporter(this);
 	}
 }
@@ -0,0 +1,90 @@
+package sqlartan.core;
+
+import java.util.Date;
+
+/**
+ * Management interface of an open database.
+ * <p>
+ * An instance is registered in the platform MBean server for each open
+ * database and each attached database, under the "sqlartan" domain, and
+ * is unregistered once the database is closed or detached.
+ */
+public interface DatabaseMXBean {
+	/**
+	 * Returns the logical name of the database.
+	 */
+	String getName();
+
+	/**
+	 * Returns the path of the database file.
+	 */
+	String getPath();
+
+	/**
+	 * Returns the number of results not yet closed.
+	 */
+	long getOpenResults();
+
+	/**
+	 * Returns the number of prepared queries not yet closed.
+	 */
+	long getOpenStatements();
+
+	/**
+	 * Returns the number of entries in the shared parse cache.
+	 */
+	int getParseCacheSize();
+
+	/**
+	 * Returns the ratio of lookups in the shared parse cache that were hits.
+	 */
+	double getParseCacheHitRate();
+
+	/**
+	 * Returns the total number of queries executed.
+	 */
+	long getQueries();
+
+	/**
+	 * Returns the number of queries executed per second since the previous
+	 * call, or over the last second if called more often.
+	 */
+	double getQueriesPerSecond();
+
+	/**
+	 * Returns the total number of rows fetched from query results.
+	 */
+	long getRowsRead();
+
+	/**
+	 * Returns the total number of rows updated.
+	 */
+	long getRowsWritten();
+
+	/**
+	 * Returns the number of committed transactions.
+	 */
+	long getTransactions();
+
+	/**
+	 * Returns the time of the last WAL checkpoint requested on the
+	 * database, null if none.
+	 */
+	Date getLastCheckpoint();
+
+	/**
+	 * Returns the number of pages of the database.
+	 */
+	long getPageCount();
+
+	/**
+	 * Returns the number of unused pages of the database.
+	 */
+	long getFreelistCount();
+
+	/**
+	 * Returns the suggested maximum number of pages held in memory, or
+	 * the negated size of the cache in KiB.
+	 */
+	long getCacheSize();
+}
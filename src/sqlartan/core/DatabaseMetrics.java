@@ -0,0 +1,304 @@
+package sqlartan.core;
+
+import sqlartan.core.ast.parser.ParseCache;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The metrics of a database, exposed through JMX.
+ * <p>
+ * Counters updated on the execute path are striped adders, so that
+ * concurrent executions do not contend on them. Values read from pragmas
+ * are refreshed lazily, at most once every few seconds, on the connection
+ * of the database without notifying its listeners. They are read by the
+ * writer thread if concurrent access is enabled.
+ * <p>
+ * Committed transactions include the statements executed outside of a
+ * transaction, each committed on its own.
+ */
+class DatabaseMetrics implements DatabaseMXBean {
+	/**
+	 * The delay after which pragma values are read again, in milliseconds
+	 */
+	private static final long PRAGMA_TTL = 5000;
+
+	/**
+	 * The sequence number of registered databases
+	 */
+	private static final AtomicLong sequence = new AtomicLong();
+
+	/**
+	 * The measured database
+	 */
+	private final Database database;
+
+	/**
+	 * The number of results not yet closed
+	 */
+	final LongAdder openResults = new LongAdder();
+
+	/**
+	 * The number of prepared queries not yet closed
+	 */
+	final LongAdder openStatements = new LongAdder();
+
+	/**
+	 * The number of executed queries
+	 */
+	final LongAdder queries = new LongAdder();
+
+	/**
+	 * The number of rows fetched
+	 */
+	final LongAdder rowsRead = new LongAdder();
+
+	/**
+	 * The number of rows updated
+	 */
+	final LongAdder rowsWritten = new LongAdder();
+
+	/**
+	 * The number of committed transactions
+	 */
+	final LongAdder transactions = new LongAdder();
+
+	/**
+	 * The time of the last checkpoint, 0 if none
+	 */
+	volatile long lastCheckpoint = 0;
+
+	/**
+	 * The time and query count of the last rate sample
+	 */
+	private long sampleTime = System.nanoTime(), sampleCount = 0;
+
+	/**
+	 * The last computed query rate
+	 */
+	private double rate = 0;
+
+	/**
+	 * The time pragmas were last read, in milliseconds
+	 */
+	private long pragmasTime = 0;
+
+	/**
+	 * The last read pragma values
+	 */
+	private long pageCount, freelistCount, cacheSize;
+
+	/**
+	 * The registered name of this bean, null if not registered
+	 */
+	private ObjectName objectName;
+
+	/**
+	 * @param database the measured database
+	 */
+	DatabaseMetrics(Database database) {
+		this.database = database;
+	}
+
+	/**
+	 * Registers this bean in the platform MBean server. Failures are
+	 * ignored, the database remains usable without its bean.
+	 */
+	void register() {
+		try {
+			ObjectName name = new ObjectName("sqlartan:type=Database,name=" + ObjectName.quote(database.name())
+				+ ",id=" + sequence.incrementAndGet());
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+			objectName = name;
+		} catch (JMException | SecurityException ignored) {}
+	}
+
+	/**
+	 * Unregisters this bean from the platform MBean server.
+	 */
+	void unregister() {
+		if (objectName == null) return;
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.unregisterMBean(objectName);
+		} catch (JMException | SecurityException ignored) {}
+		objectName = null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getName() {
+		return database.name();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getPath() {
+		return database.path().getPath();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getOpenResults() {
+		return openResults.sum();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getOpenStatements() {
+		return openStatements.sum();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getParseCacheSize() {
+		return ParseCache.shared.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public double getParseCacheHitRate() {
+		long hits = ParseCache.shared.hits();
+		long lookups = hits + ParseCache.shared.misses();
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getQueries() {
+		return queries.sum();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized double getQueriesPerSecond() {
+		long now = System.nanoTime();
+		if (now - sampleTime >= 1_000_000_000L) {
+			long count = queries.sum();
+			rate = (count - sampleCount) * 1e9 / (now - sampleTime);
+			sampleTime = now;
+			sampleCount = count;
+		}
+		return rate;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getRowsRead() {
+		return rowsRead.sum();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getRowsWritten() {
+		return rowsWritten.sum();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getTransactions() {
+		return transactions.sum();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Date getLastCheckpoint() {
+		long time = lastCheckpoint;
+		return time == 0 ? null : new Date(time);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized long getPageCount() {
+		refreshPragmas();
+		return pageCount;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized long getFreelistCount() {
+		refreshPragmas();
+		return freelistCount;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized long getCacheSize() {
+		refreshPragmas();
+		return cacheSize;
+	}
+
+	/**
+	 * Reads the pragma values again if they are outdated.
+	 */
+	private void refreshPragmas() {
+		long now = System.currentTimeMillis();
+		if (now - pragmasTime < PRAGMA_TTL) return;
+		pragmasTime = now;
+
+		Connection connection = database.connection;
+		if (connection == null) return;
+		try {
+			database.onWriter(() -> {
+				try (Statement statement = connection.createStatement()) {
+					pageCount = pragma(statement, "page_count");
+					freelistCount = pragma(statement, "freelist_count");
+					cacheSize = pragma(statement, "cache_size");
+				}
+				return null;
+			});
+		} catch (SQLException | RuntimeException ignored) {}
+	}
+
+	/**
+	 * Reads an integer pragma of the database.
+	 *
+	 * @param statement the statement to use
+	 * @param pragma    the name of the pragma
+	 * @throws SQLException
+	 */
+	private long pragma(Statement statement, String pragma) throws SQLException {
+		String schema = "[" + database.name().replace("]", "]]") + "]";
+		try (ResultSet rs = statement.executeQuery("PRAGMA " + schema + "." + pragma)) {
+			return rs.next() ? rs.getLong(1) : 0;
+		}
+	}
+}
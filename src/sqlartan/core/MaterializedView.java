@@ -0,0 +1,536 @@
+package sqlartan.core;
+
+import sqlartan.core.ast.*;
+import sqlartan.core.ast.ResultColumn;
+import sqlartan.core.ast.parser.ParseCache;
+import sqlartan.core.ast.parser.ParseException;
+import sqlartan.core.ast.parser.Parser;
+import sqlartan.core.ast.token.Token;
+import sqlartan.core.ast.token.TokenizeException;
+import sqlartan.core.ast.token.Tokenizer;
+import sqlartan.core.util.UncheckedSQLException;
+import sqlartan.util.UncheckedException;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * A materialized view, whose results are stored in a backing table.
+ * <p>
+ * Materialized views are described by a metadata table of the database,
+ * along with the time of their last refresh and their staleness. Two
+ * strategies are supported:
+ * <ul>
+ * <li>Full: the backing table is rebuilt by refresh(), by swapping it with
+ * a new table. Triggers on the source tables mark the view as stale when
+ * they are modified.</li>
+ * <li>Incremental: triggers on the source table keep the backing table up to
+ * date. It is only used for filters of a single table, and aggregates of a
+ * single table grouped by some of its columns. Aggregates are maintained by
+ * recomputing the groups of modified rows.</li>
+ * </ul>
+ * The incremental strategy is used when the query allows it.
+ */
+public class MaterializedView {
+	/**
+	 * The strategies maintaining the backing table
+	 */
+	public enum Strategy {
+		Full,
+		Incremental
+	}
+
+	/**
+	 * The name of the metadata table
+	 */
+	static final String metadataTable = "sqlartan_materialized_views";
+
+	/**
+	 * The column of filter views storing the row id of source rows
+	 */
+	private static final String rowIdColumn = "sqlartan_rowid";
+
+	/**
+	 * The parser of view queries, shared so that parses are cached
+	 */
+	private static final Parser<SelectStatement> selectParser = SelectStatement::parse;
+
+	/**
+	 * The parser of table definitions, shared so that parses are cached
+	 */
+	private static final Parser<CreateTableStatement> createParser = CreateTableStatement::parse;
+
+	/**
+	 * The aggregate functions of SQLite
+	 */
+	private static final Set<String> aggregateFunctions = new HashSet<>(Arrays.asList(
+		"avg", "count", "group_concat", "max", "min", "sum", "total"
+	));
+
+	/**
+	 * The parent database
+	 */
+	private final Database database;
+
+	/**
+	 * The name of the view
+	 */
+	private final String name;
+
+	/**
+	 * @param database the parent database
+	 * @param name     the name of the view
+	 */
+	MaterializedView(Database database, String name) {
+		this.database = database;
+		this.name = name;
+	}
+
+	/**
+	 * The statements maintaining a view
+	 */
+	private static class Plan {
+		/**
+		 * The strategy of the view
+		 */
+		private Strategy strategy = Strategy.Full;
+
+		/**
+		 * The query selecting the content of the backing table
+		 */
+		private String select;
+
+		/**
+		 * The statements indexing the backing table
+		 */
+		private final List<String> indexes = new ArrayList<>();
+
+		/**
+		 * The triggers on source tables, without name
+		 */
+		private final List<CreateTriggerStatement> triggers = new ArrayList<>();
+	}
+
+	/**
+	 * Creates a materialized view.
+	 *
+	 * @param database the database
+	 * @param name     the name of the view
+	 * @param select   the query of the view
+	 * @throws SQLException
+	 */
+	static MaterializedView create(Database database, String name, SelectStatement select) throws SQLException {
+		String query = select.toSQL();
+		Plan plan = plan(database, name, query);
+		database.transaction(() -> {
+			database.assemble("CREATE TABLE IF NOT EXISTS ", database.name(), "." + metadataTable + " ("
+				+ "id INTEGER PRIMARY KEY, name TEXT NOT NULL UNIQUE, query TEXT NOT NULL, "
+				+ "strategy TEXT NOT NULL, refreshed INTEGER, stale INTEGER NOT NULL DEFAULT 0)").execute();
+			database.assemble("INSERT INTO ", database.name(), "." + metadataTable + " (name, query, strategy, refreshed) VALUES (?, ?, ?, ?)")
+			        .execute(name, query, plan.strategy.name(), System.currentTimeMillis());
+			long id = database.assemble("SELECT id FROM ", database.name(), "." + metadataTable + " WHERE name = ?")
+			                  .execute(name)
+			                  .mapFirst(Row::getLong);
+
+			database.assemble("CREATE TABLE ", database.name(), ".", name, " AS " + plan.select).execute();
+			for (String index : plan.indexes) {
+				database.execute(index);
+			}
+			for (CreateTriggerStatement trigger : plan.triggers) {
+				trigger.schema = Optional.of(database.name());
+				trigger.name = "sqlartan_mv_" + id + "_" + trigger.table + "_" + trigger.trigger.name().toLowerCase();
+				database.execute(trigger.toSQL());
+			}
+		});
+		return new MaterializedView(database, name);
+	}
+
+	/**
+	 * Plans the statements maintaining a view.
+	 *
+	 * @param database the database
+	 * @param name     the name of the view
+	 * @param query    the query of the view
+	 * @throws SQLException
+	 */
+	private static Plan plan(Database database, String name, String query) throws SQLException {
+		SelectStatement select;
+		try {
+			select = ParseCache.shared.parse(query, selectParser);
+		} catch (ParseException e) {
+			throw new UncheckedException(e);
+		}
+
+		Plan plan = incremental(database, name, select);
+		if (plan != null) return plan;
+
+		plan = new Plan();
+		plan.select = query;
+		Set<String> names = identifiers(query);
+		for (Table table : database.tables()) {
+			if (!names.contains(table.name().toLowerCase()) || table.name().equalsIgnoreCase(name) || table.name().equals(metadataTable)) continue;
+			String stale = "UPDATE " + metadataTable + " SET stale = 1 WHERE name = " + literal(name) + " AND stale = 0";
+			for (CreateTriggerStatement.Trigger event : CreateTriggerStatement.Trigger.values()) {
+				plan.triggers.add(trigger(event, table.name(), stale));
+			}
+		}
+		return plan;
+	}
+
+	/**
+	 * Plans the incremental maintenance of a view.
+	 *
+	 * @param database the database
+	 * @param name     the name of the view
+	 * @param select   the query of the view
+	 * @return the plan, null if the view cannot be maintained incrementally
+	 */
+	private static Plan incremental(Database database, String name, SelectStatement select) {
+		if (!(select instanceof SelectStatement.Simple)) return null;
+		SelectStatement.Simple simple = (SelectStatement.Simple) select;
+		if (simple.distinct || simple.limit.isPresent() || !(simple.from.orElse(null) instanceof QualifiedTableName)) return null;
+
+		QualifiedTableName from = (QualifiedTableName) simple.from.get();
+		if (from.schema.isPresent() && !from.schema.get().equalsIgnoreCase(database.name())) return null;
+		if (!hasRowId(database, from.name)) return null;
+
+		String columns = simple.columns.stream().map(MaterializedView::projection).collect(Collectors.joining(", "));
+		String where = simple.where.map(w -> "(" + w.expression.toSQL() + ")").orElse("1");
+		String having = simple.having.map(h -> " HAVING " + h.toSQL()).orElse("");
+		if (containsSelect(columns) || containsSelect(where) || containsSelect(having)) return null;
+
+		// Table names must not be qualified in triggers
+		String source = "[" + from.name + "]" + from.alias.map(a -> " AS [" + a + "]").orElse("");
+		String ref = "[" + from.alias.orElse(from.name) + "]";
+		String target = "[" + name + "]";
+
+		Plan plan = new Plan();
+		plan.strategy = Strategy.Incremental;
+		if (simple.groupBy.isEmpty()) {
+			if (simple.having.isPresent() || usesAggregate(columns)) return null;
+			plan.select = "SELECT " + ref + ".[rowid] AS " + rowIdColumn + ", " + columns + " FROM " + source + " WHERE " + where;
+			plan.indexes.add(database.assemble("CREATE UNIQUE INDEX ", database.name(), ".", name + "_" + rowIdColumn, " ON ", name, " (" + rowIdColumn + ")").query());
+
+			String insert = "INSERT OR REPLACE INTO " + target + " SELECT " + ref + ".[rowid], " + columns + " FROM " + source
+				+ " WHERE " + ref + ".[rowid] = NEW.[rowid] AND " + where;
+			String delete = "DELETE FROM " + target + " WHERE " + rowIdColumn + " = OLD.[rowid]";
+			plan.triggers.add(trigger(CreateTriggerStatement.Trigger.Insert, from.name, insert));
+			plan.triggers.add(trigger(CreateTriggerStatement.Trigger.Update, from.name, delete, insert));
+			plan.triggers.add(trigger(CreateTriggerStatement.Trigger.Delete, from.name, delete));
+		} else {
+			// Every group must be a column of the source, stored in the backing table
+			List<String> keys = new ArrayList<>();
+			List<String> groups = new ArrayList<>();
+			for (Expression group : simple.groupBy) {
+				if (!(group instanceof Expression.ColumnReference)) return null;
+				String column = ((Expression.ColumnReference) group).column;
+				Optional<String> key = simple.columns.stream()
+				                                     .filter(c -> c instanceof ResultColumn.Expr)
+				                                     .map(c -> (ResultColumn.Expr) c)
+				                                     .filter(c -> c.expression instanceof Expression.ColumnReference
+				                                         && ((Expression.ColumnReference) c.expression).column.equalsIgnoreCase(column))
+				                                     .map(c -> c.alias.orElse(column))
+				                                     .findFirst();
+				if (!key.isPresent()) return null;
+				keys.add(key.get());
+				groups.add(column);
+			}
+			String groupBy = simple.groupBy.stream().map(Node::toSQL).collect(Collectors.joining(", "));
+			plan.select = "SELECT " + columns + " FROM " + source + " WHERE " + where + " GROUP BY " + groupBy + having;
+			plan.indexes.add(database.assemble("CREATE INDEX ", database.name(), ".", name + "_groups", " ON ", name, " ("
+				+ keys.stream().map(k -> "[" + k + "]").collect(Collectors.joining(", ")) + ")").query());
+
+			String[] recomputeOld = recompute(target, keys, groups, columns, source, ref, where, groupBy, having, "OLD");
+			String[] recomputeNew = recompute(target, keys, groups, columns, source, ref, where, groupBy, having, "NEW");
+			plan.triggers.add(trigger(CreateTriggerStatement.Trigger.Insert, from.name, recomputeNew));
+			// The new group is recomputed last, in case it is also the old one
+			plan.triggers.add(trigger(CreateTriggerStatement.Trigger.Update, from.name,
+				recomputeOld[0], recomputeOld[1], recomputeNew[0], recomputeNew[1]));
+			plan.triggers.add(trigger(CreateTriggerStatement.Trigger.Delete, from.name, recomputeOld));
+		}
+		return plan;
+	}
+
+	/**
+	 * Returns the SQL of a result column of a view. Column references are
+	 * aliased to their name, as SQLite would otherwise keep the brackets
+	 * added by the serialization in the name of the backing column.
+	 *
+	 * @param column the result column
+	 */
+	private static String projection(ResultColumn column) {
+		if (column instanceof ResultColumn.Expr) {
+			ResultColumn.Expr expr = (ResultColumn.Expr) column;
+			if (!expr.alias.isPresent() && expr.expression instanceof Expression.ColumnReference) {
+				return expr.toSQL() + " AS [" + ((Expression.ColumnReference) expr.expression).column + "]";
+			}
+		}
+		return column.toSQL();
+	}
+
+	/**
+	 * Builds the statements recomputing the group of a modified row.
+	 *
+	 * @param target  the backing table
+	 * @param keys    the columns of the backing table storing groups
+	 * @param groups  the columns of the source table defining groups
+	 * @param columns the result columns of the view
+	 * @param source  the source table
+	 * @param ref     the name referencing the source table
+	 * @param where   the condition of the view
+	 * @param groupBy the group by clause of the view
+	 * @param having  the having clause of the view
+	 * @param row     the modified row, NEW or OLD
+	 * @return the delete then insert statements
+	 */
+	private static String[] recompute(String target, List<String> keys, List<String> groups, String columns, String source,
+	                                  String ref, String where, String groupBy, String having, String row) {
+		StringBuilder match = new StringBuilder();
+		StringBuilder filter = new StringBuilder();
+		for (int i = 0; i < keys.size(); i++) {
+			if (i > 0) match.append(" AND ");
+			match.append("[").append(keys.get(i)).append("] IS ").append(row).append(".[").append(groups.get(i)).append("]");
+			filter.append(" AND ").append(ref).append(".[").append(groups.get(i)).append("] IS ").append(row).append(".[").append(groups.get(i)).append("]");
+		}
+		return new String[] {
+			"DELETE FROM " + target + " WHERE " + match,
+			"INSERT INTO " + target + " SELECT " + columns + " FROM " + source + " WHERE " + where + filter + " GROUP BY " + groupBy + having
+		};
+	}
+
+	/**
+	 * Builds a trigger executed after each row modified by an event.
+	 *
+	 * @param event the event
+	 * @param table the table
+	 * @param body  the statements of the trigger
+	 */
+	private static CreateTriggerStatement trigger(CreateTriggerStatement.Trigger event, String table, String... body) {
+		CreateTriggerStatement trigger = new CreateTriggerStatement();
+		trigger.timing = CreateTriggerStatement.Timing.After;
+		trigger.trigger = event;
+		trigger.table = table;
+		trigger.forEachRow = true;
+		trigger.body = new ArrayList<>();
+		try {
+			for (String statement : body) {
+				trigger.body.add(Parser.parse(statement, Statement::parse));
+			}
+		} catch (ParseException e) {
+			throw new UncheckedException(e);
+		}
+		return trigger;
+	}
+
+	/**
+	 * Checks if a table has row ids.
+	 *
+	 * @param database the database
+	 * @param table    the name of the table
+	 */
+	private static boolean hasRowId(Database database, String table) {
+		try {
+			Optional<String> sql = database.assemble("SELECT sql FROM ", database.name(), ".sqlite_master WHERE type = 'table' AND name = ?")
+			                               .execute(table)
+			                               .mapFirstOptional(Row::getString);
+			if (!sql.isPresent()) return false;
+			CreateTableStatement create = ParseCache.shared.tryParse(sql.get(), createParser).orElse(null);
+			return create instanceof CreateTableStatement.Def && !((CreateTableStatement.Def) create).withoutRowid;
+		} catch (SQLException e) {
+			throw new UncheckedSQLException(e);
+		}
+	}
+
+	/**
+	 * Returns the tokens of a fragment of SQL, an empty list if it is invalid.
+	 *
+	 * @param sql the fragment
+	 */
+	private static List<Token> tokens(String sql) {
+		try {
+			return Tokenizer.tokenize(sql).tokens();
+		} catch (TokenizeException e) {
+			return Collections.emptyList();
+		}
+	}
+
+	/**
+	 * Returns the lowercase identifiers of a fragment of SQL.
+	 *
+	 * @param sql the fragment
+	 */
+	private static Set<String> identifiers(String sql) {
+		return tokens(sql).stream()
+		                  .filter(t -> t instanceof Token.Identifier)
+		                  .map(t -> t.stringValue().toLowerCase())
+		                  .collect(Collectors.toSet());
+	}
+
+	/**
+	 * Checks if a fragment of SQL contains a sub-query.
+	 *
+	 * @param sql the fragment
+	 */
+	private static boolean containsSelect(String sql) {
+		return tokens(sql).stream().anyMatch(t -> t instanceof Token.Keyword && t.stringValue().equals("SELECT"));
+	}
+
+	/**
+	 * Checks if a fragment of SQL calls an aggregate function.
+	 *
+	 * @param sql the fragment
+	 */
+	private static boolean usesAggregate(String sql) {
+		return identifiers(sql).stream().anyMatch(aggregateFunctions::contains);
+	}
+
+	/**
+	 * Quotes a string literal.
+	 *
+	 * @param value the value
+	 */
+	private static String literal(String value) {
+		return "'" + value.replace("'", "''") + "'";
+	}
+
+	/**
+	 * Returns the parent database.
+	 */
+	public Database database() {
+		return database;
+	}
+
+	/**
+	 * Returns the name of the view.
+	 */
+	public String name() {
+		return name;
+	}
+
+	/**
+	 * Reads a column of the metadata of the view.
+	 *
+	 * @param column the column
+	 */
+	private Optional<Object> metadata(String column) {
+		try {
+			return database.assemble("SELECT " + column + " FROM ", database.name(), "." + metadataTable + " WHERE name = ?")
+			               .execute(name)
+			               .mapFirstOptional(row -> Optional.ofNullable(row.getObject()))
+			               .orElseThrow(() -> new IllegalStateException("Materialized view " + name + " does not exist"));
+		} catch (SQLException e) {
+			throw new UncheckedSQLException(e);
+		}
+	}
+
+	/**
+	 * Returns the query of the view.
+	 */
+	public String query() {
+		return (String) metadata("query").orElse(null);
+	}
+
+	/**
+	 * Returns the strategy maintaining the backing table.
+	 */
+	public Strategy strategy() {
+		return Strategy.valueOf((String) metadata("strategy").orElse(Strategy.Full.name()));
+	}
+
+	/**
+	 * Returns the time of the last refresh, or of the creation of the view.
+	 */
+	public Optional<Instant> lastRefresh() {
+		return metadata("refreshed").map(n -> Instant.ofEpochMilli(((Number) n).longValue()));
+	}
+
+	/**
+	 * Checks if a source table was modified since the last refresh.
+	 * Views maintained incrementally are never stale.
+	 */
+	public boolean isStale() {
+		return metadata("stale").map(n -> ((Number) n).intValue() != 0).orElse(false);
+	}
+
+	/**
+	 * Returns the backing table.
+	 */
+	public Table table() {
+		return database.table(name).orElseThrow(IllegalStateException::new);
+	}
+
+	/**
+	 * Returns a result set over the rows of the view.
+	 */
+	public Result selectAll() {
+		String columns = table().columns()
+		                        .map(Column::name)
+		                        .filter(c -> !c.equals(rowIdColumn))
+		                        .map(c -> "[" + c + "]")
+		                        .collect(Collectors.joining(", "));
+		try {
+			return database.assemble("SELECT " + columns + " FROM ", database.name(), ".", name).execute();
+		} catch (SQLException e) {
+			throw new UncheckedSQLException(e);
+		}
+	}
+
+	/**
+	 * Refreshes the backing table and clears the stale flag.
+	 * <p>
+	 * Views maintained incrementally are rebuilt in place, others are
+	 * rebuilt in a new table swapped with the backing table.
+	 *
+	 * @throws SQLException
+	 */
+	public void refresh() throws SQLException {
+		Plan plan = plan(database, name, query());
+		String swap = name + "_sqlartan_swap";
+		database.transaction(() -> {
+			if (plan.strategy == Strategy.Incremental) {
+				database.assemble("DELETE FROM ", database.name(), ".", name).execute();
+				database.assemble("INSERT INTO ", database.name(), ".", name, " " + plan.select).execute();
+			} else {
+				database.assemble("CREATE TABLE ", database.name(), ".", swap, " AS " + plan.select).execute();
+				database.assemble("DROP TABLE ", database.name(), ".", name).execute();
+				database.assemble("ALTER TABLE ", database.name(), ".", swap, " RENAME TO ", name).execute();
+				for (String index : plan.indexes) {
+					database.execute(index);
+				}
+			}
+			database.assemble("UPDATE ", database.name(), "." + metadataTable + " SET refreshed = ?, stale = 0 WHERE name = ?")
+			        .execute(System.currentTimeMillis(), name);
+		});
+	}
+
+	/**
+	 * Drops the view, its backing table and its triggers.
+	 */
+	public void drop() {
+		try {
+			database.transaction(() -> {
+				long id = ((Number) metadata("id").orElseThrow(IllegalStateException::new)).longValue();
+				List<String> triggers = database.assemble("SELECT name FROM ", database.name(), ".sqlite_master WHERE type = 'trigger' AND name LIKE ? ESCAPE '\\'")
+				                                .execute("sqlartan\\_mv\\_" + id + "\\_%")
+				                                .map(Row::getString)
+				                                .toList();
+				for (String trigger : triggers) {
+					database.assemble("DROP TRIGGER ", database.name(), ".", trigger).execute();
+				}
+				database.assemble("DROP TABLE ", database.name(), ".", name).execute();
+				database.assemble("DELETE FROM ", database.name(), "." + metadataTable + " WHERE id = ?").execute(id);
+			});
+		} catch (SQLException e) {
+			throw new UncheckedSQLException(e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -1,14 +1,17 @@
 package sqlartan.core;
 
+import sqlartan.core.jfr.Flight;
 import sqlartan.core.util.UncheckedSQLException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A prepared query with data placeholder.
  */
-public class PreparedQuery {
+public class PreparedQuery implements AutoCloseable {
 	/**
 	 * The database on which the query will be executed
 	 */
@@ -24,6 +27,16 @@ public class PreparedQuery {
 	 */
 	private PreparedStatement stmt;
 
+	/**
+	 * The current placeholder values, by index
+	 */
+	private List<Object> parameters = new ArrayList<>();
+
+	/**
+	 * The time spent preparing the statement, until its first execution
+	 */
+	private long prepareTime;
+
 	/**
 	 * @param database   the database on which the query will be executed
 	 * @param connection the JDBC connection to use
@@ -33,7 +46,12 @@ public class PreparedQuery {
 	PreparedQuery(Database database, Connection connection, String sql) throws SQLException {
 		this.database = database;
 		this.sql = sql;
+		Flight.Prepare event = Flight.prepare();
+		long start = System.nanoTime();
 		stmt = connection.prepareStatement(sql);
+		prepareTime = System.nanoTime() - start;
+		event.record(database.name(), sql);
+		database.metrics.openStatements.increment();
 	}
 
 	/**
@@ -46,6 +64,7 @@ public class PreparedQuery {
 	public PreparedQuery set(int idx, int value) {
 		try {
 			stmt.setInt(idx, value);
+			bind(idx, value);
 			return this;
 		} catch (SQLException e) {
 			throw new UncheckedSQLException(e);
@@ -62,6 +81,7 @@ public class PreparedQuery {
 	public PreparedQuery set(int idx, long value) {
 		try {
 			stmt.setLong(idx, value);
+			bind(idx, value);
 			return this;
 		} catch (SQLException e) {
 			throw new UncheckedSQLException(e);
@@ -78,6 +98,7 @@ public class PreparedQuery {
 	public PreparedQuery set(int idx, double value) {
 		try {
 			stmt.setDouble(idx, value);
+			bind(idx, value);
 			return this;
 		} catch (SQLException e) {
 			throw new UncheckedSQLException(e);
@@ -94,6 +115,24 @@ public class PreparedQuery {
 	public PreparedQuery set(int idx, String value) {
 		try {
 			stmt.setString(idx, value);
+			bind(idx, value);
+			return this;
+		} catch (SQLException e) {
+			throw new UncheckedSQLException(e);
+		}
+	}
+
+	/**
+	 * Defines the binary value of a placeholder.
+	 *
+	 * @param idx   the placeholder index, 1-based
+	 * @param value the value to use for the placeholder
+	 * @return this object
+	 */
+	public PreparedQuery set(int idx, byte[] value) {
+		try {
+			stmt.setBytes(idx, value);
+			bind(idx, value);
 			return this;
 		} catch (SQLException e) {
 			throw new UncheckedSQLException(e);
@@ -110,12 +149,24 @@ public class PreparedQuery {
 	public PreparedQuery set(int idx, Object value) {
 		try {
 			stmt.setObject(idx, value);
+			bind(idx, value);
 			return this;
 		} catch (SQLException e) {
 			throw new UncheckedSQLException(e);
 		}
 	}
 
+	/**
+	 * Records the value of a placeholder.
+	 *
+	 * @param idx   the placeholder index, 1-based
+	 * @param value the value of the placeholder
+	 */
+	private void bind(int idx, Object value) {
+		while (parameters.size() < idx) parameters.add(null);
+		parameters.set(idx - 1, value);
+	}
+
 	/**
 	 * Executes the prepared query.
 	 *
@@ -124,6 +175,61 @@ public class PreparedQuery {
 	 * @throws SQLException if the query is invalid
 	 */
 	public Result execute() throws SQLException {
-		return database.notifyListeners(Result.fromPreparedStatement(database, stmt, sql));
+		long prepare_time = prepareTime;
+		prepareTime = 0;
+		Object[] values = parameters.toArray();
+		return database.notifyListeners(database.onWriter(sql, () -> Result.fromPreparedStatement(database, stmt, sql, values, prepare_time)));
+	}
+
+	/**
+	 * Adds the current placeholder values to the batch of this query.
+	 *
+	 * @return this object
+	 */
+	public PreparedQuery addBatch() {
+		try {
+			stmt.addBatch();
+			return this;
+		} catch (SQLException e) {
+			throw new UncheckedSQLException(e);
+		}
+	}
+
+	/**
+	 * Executes every sets of placeholder values added to the batch.
+	 * <p>
+	 * Unlike execute(), this method does not produce a Result and execute
+	 * listeners are not notified. The query can be reused for another batch
+	 * once this method returns.
+	 *
+	 * @return the number of rows updated by each entry of the batch
+	 *
+	 * @throws SQLException if one of the entries cannot be executed
+	 */
+	public int[] executeBatch() throws SQLException {
+		int[] counts = database.onWriter(() -> {
+			int[] batch = stmt.executeBatch();
+			database.executed(sql, batch.length);
+			return batch;
+		});
+		database.metrics.queries.add(counts.length);
+		for (int count : counts) {
+			if (count > 0) database.metrics.rowsWritten.add(count);
+		}
+		database.trackChanges(sql);
+		return counts;
+	}
+
+	/**
+	 * Closes the underlying JDBC statement.
+	 * <p>
+	 * Closing a Result produced by this query also closes the statement.
+	 */
+	@Override
+	public void close() {
+		try {
+			if (!stmt.isClosed()) database.metrics.openStatements.decrement();
+			stmt.close();
+		} catch (SQLException ignored) {}
 	}
 }
@@ -0,0 +1,386 @@
+package sqlartan.core;
+
+import sqlartan.core.ast.token.Token;
+import sqlartan.core.ast.token.TokenizeException;
+import sqlartan.core.ast.token.Tokenizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Execution statistics of the queries executed on a database.
+ * <p>
+ * Queries are normalized by replacing literals and placeholders with a
+ * question mark, queries only differing by their literal values share the
+ * same statistics. The normalized query is hashed to a 64-bit fingerprint.
+ * <p>
+ * A query is recorded once its result is closed. The recorded time covers
+ * the execution of the statement and the fetching of rows, but not the
+ * time spent by the caller between rows.
+ * <p>
+ * Statistics are split in stripes, each protected by its own lock. The
+ * number of distinct queries is bounded, once a stripe is full the least
+ * called query is evicted from it.
+ */
+public class QueryStatistics {
+	/**
+	 * The number of stripes
+	 */
+	private static final int STRIPES = 16;
+
+	/**
+	 * The number of sub-buckets per power of two in latency histograms
+	 */
+	private static final int SUB_BUCKETS = 4;
+
+	/**
+	 * The number of buckets in latency histograms
+	 */
+	private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+	/**
+	 * A snapshot of the statistics of a query.
+	 */
+	public static class Entry {
+		/**
+		 * The fingerprint of the query
+		 */
+		private final long fingerprint;
+
+		/**
+		 * The normalized query
+		 */
+		private final String query;
+
+		/**
+		 * The number of executions
+		 */
+		private final long calls;
+
+		/**
+		 * The total execution time, in nanoseconds
+		 */
+		private final long totalTime;
+
+		/**
+		 * The longest execution time, in nanoseconds
+		 */
+		private final long maxTime;
+
+		/**
+		 * The 99th percentile of execution times, in nanoseconds
+		 */
+		private final long p99Time;
+
+		/**
+		 * The total number of rows returned or updated
+		 */
+		private final long rows;
+
+		/**
+		 * @param fingerprint the fingerprint of the query
+		 * @param query       the normalized query
+		 * @param calls       the number of executions
+		 * @param totalTime   the total execution time
+		 * @param maxTime     the longest execution time
+		 * @param p99Time     the 99th percentile of execution times
+		 * @param rows        the total number of rows
+		 */
+		private Entry(long fingerprint, String query, long calls, long totalTime, long maxTime, long p99Time, long rows) {
+			this.fingerprint = fingerprint;
+			this.query = query;
+			this.calls = calls;
+			this.totalTime = totalTime;
+			this.maxTime = maxTime;
+			this.p99Time = p99Time;
+			this.rows = rows;
+		}
+
+		/**
+		 * Returns the fingerprint of the query.
+		 */
+		public long fingerprint() {
+			return fingerprint;
+		}
+
+		/**
+		 * Returns the normalized query.
+		 */
+		public String query() {
+			return query;
+		}
+
+		/**
+		 * Returns the number of executions of the query.
+		 */
+		public long calls() {
+			return calls;
+		}
+
+		/**
+		 * Returns the total execution time of the query, in nanoseconds.
+		 */
+		public long totalTime() {
+			return totalTime;
+		}
+
+		/**
+		 * Returns the mean execution time of the query, in nanoseconds.
+		 */
+		public long meanTime() {
+			return calls == 0 ? 0 : totalTime / calls;
+		}
+
+		/**
+		 * Returns the longest execution time of the query, in nanoseconds.
+		 */
+		public long maxTime() {
+			return maxTime;
+		}
+
+		/**
+		 * Returns the 99th percentile of the execution times of the query, in
+		 * nanoseconds. The value is the upper bound of a histogram bucket and
+		 * is accurate to 25%.
+		 */
+		public long p99Time() {
+			return p99Time;
+		}
+
+		/**
+		 * Returns the total number of rows returned or updated by the query.
+		 */
+		public long rows() {
+			return rows;
+		}
+
+		/**
+		 * Returns the mean number of rows returned or updated by the query.
+		 */
+		public double meanRows() {
+			return calls == 0 ? 0 : (double) rows / calls;
+		}
+	}
+
+	/**
+	 * The mutable statistics of a query, guarded by the lock of its stripe.
+	 */
+	private static class Counters {
+		/**
+		 * The normalized query
+		 */
+		private final String query;
+
+		/**
+		 * The number of executions
+		 */
+		private long calls;
+
+		/**
+		 * The total execution time
+		 */
+		private long totalTime;
+
+		/**
+		 * The longest execution time
+		 */
+		private long maxTime;
+
+		/**
+		 * The total number of rows
+		 */
+		private long rows;
+
+		/**
+		 * The histogram of execution times, in microseconds
+		 */
+		private final int[] histogram = new int[BUCKETS];
+
+		/**
+		 * @param query the normalized query
+		 */
+		private Counters(String query) {
+			this.query = query;
+		}
+
+		/**
+		 * Returns the execution time under which 99% of the executions
+		 * completed.
+		 */
+		private long p99() {
+			long threshold = calls - calls / 100;
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += histogram[i];
+				if (seen >= threshold && seen > 0) return upperBound(i) * 1000;
+			}
+			return maxTime;
+		}
+	}
+
+	/**
+	 * The maximum number of queries per stripe
+	 */
+	private final int stripeCapacity;
+
+	/**
+	 * The statistics of queries, by stripe and by fingerprint
+	 */
+	private final List<Map<Long, Counters>> stripes = new ArrayList<>(STRIPES);
+
+	/**
+	 * @param maxQueries the maximum number of distinct queries to track
+	 */
+	public QueryStatistics(int maxQueries) {
+		if (maxQueries < 1) throw new IllegalArgumentException("Max queries must be at least 1");
+		this.stripeCapacity = (maxQueries + STRIPES - 1) / STRIPES;
+		for (int i = 0; i < STRIPES; i++) {
+			stripes.add(new HashMap<>());
+		}
+	}
+
+	/**
+	 * Normalizes a query by replacing literals and placeholders with a
+	 * question mark and separating tokens with a single space. Comments
+	 * are removed. Queries that cannot be tokenized are only trimmed.
+	 *
+	 * @param sql the SQL query
+	 * @return the normalized query
+	 */
+	public static String normalize(String sql) {
+		try {
+			StringBuilder normalized = new StringBuilder(sql.length());
+			for (Token token : Tokenizer.tokenize(sql).tokens()) {
+				if (token instanceof Token.EndOfStream) break;
+				if (normalized.length() > 0) normalized.append(' ');
+				if (token instanceof Token.Literal || token instanceof Token.Placeholder) {
+					normalized.append('?');
+				} else if (token instanceof Token.Identifier) {
+					normalized.append(token.source, token.offset, token.end());
+				} else {
+					normalized.append(token.stringValue());
+				}
+			}
+			return normalized.toString();
+		} catch (TokenizeException e) {
+			return sql.trim();
+		}
+	}
+
+	/**
+	 * Computes the fingerprint of a normalized query, as a 64-bit FNV-1a
+	 * hash of its chars.
+	 *
+	 * @param normalized the normalized query
+	 * @return the fingerprint of the query
+	 */
+	public static long fingerprint(String normalized) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < normalized.length(); i++) {
+			hash ^= normalized.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Returns the histogram bucket of a duration.
+	 *
+	 * @param micros the duration in microseconds
+	 */
+	private static int bucket(long micros) {
+		if (micros < SUB_BUCKETS) return (int) Math.max(micros, 0);
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		int sub = (int) (micros >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+		return (exponent - 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Returns the highest duration of a histogram bucket.
+	 *
+	 * @param bucket the bucket
+	 * @return a duration in microseconds
+	 */
+	private static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) return bucket;
+		int exponent = bucket / SUB_BUCKETS + 1;
+		long sub = bucket % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << (exponent - 2)) - 1;
+	}
+
+	/**
+	 * Records an execution of a query.
+	 *
+	 * @param sql     the SQL query
+	 * @param elapsed the execution time, in nanoseconds
+	 * @param rows    the number of rows returned or updated
+	 */
+	public void record(String sql, long elapsed, long rows) {
+		String normalized = normalize(sql);
+		long fingerprint = fingerprint(normalized);
+		Map<Long, Counters> stripe = stripes.get((int) (fingerprint ^ (fingerprint >>> 32)) & (STRIPES - 1));
+
+		synchronized (stripe) {
+			Counters counters = stripe.get(fingerprint);
+			if (counters == null) {
+				if (stripe.size() >= stripeCapacity) evict(stripe);
+				counters = new Counters(normalized);
+				stripe.put(fingerprint, counters);
+			}
+
+			counters.calls++;
+			counters.totalTime += elapsed;
+			counters.maxTime = Math.max(counters.maxTime, elapsed);
+			counters.rows += rows;
+			counters.histogram[bucket(elapsed / 1000)]++;
+		}
+	}
+
+	/**
+	 * Removes the least called query of a stripe.
+	 *
+	 * @param stripe the stripe, locked by the caller
+	 */
+	private static void evict(Map<Long, Counters> stripe) {
+		Long victim = null;
+		long calls = Long.MAX_VALUE;
+		for (Map.Entry<Long, Counters> entry : stripe.entrySet()) {
+			if (entry.getValue().calls < calls) {
+				calls = entry.getValue().calls;
+				victim = entry.getKey();
+			}
+		}
+		stripe.remove(victim);
+	}
+
+	/**
+	 * Returns a snapshot of the statistics of every tracked query, ordered
+	 * by decreasing total execution time.
+	 */
+	public List<Entry> entries() {
+		List<Entry> entries = new ArrayList<>();
+		for (Map<Long, Counters> stripe : stripes) {
+			synchronized (stripe) {
+				for (Map.Entry<Long, Counters> entry : stripe.entrySet()) {
+					Counters c = entry.getValue();
+					entries.add(new Entry(entry.getKey(), c.query, c.calls, c.totalTime, c.maxTime, c.p99(), c.rows));
+				}
+			}
+		}
+		entries.sort(Comparator.comparingLong(Entry::totalTime).reversed());
+		return entries;
+	}
+
+	/**
+	 * Removes the statistics of every query.
+	 */
+	public void reset() {
+		for (Map<Long, Counters> stripe : stripes) {
+			synchronized (stripe) {
+				stripe.clear();
+			}
+		}
+	}
+}
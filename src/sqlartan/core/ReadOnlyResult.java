@@ -2,6 +2,8 @@ package sqlartan.core;
 
 import sqlartan.core.stream.ImmutableList;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.function.Consumer;
 
 /**
  * The readonly interface of a Result object.
@@ -45,6 +47,64 @@ public interface ReadOnlyResult extends Structure<ResultColumn> {
 	 */
 	int updateCount();
 
+	/**
+	 * Returns the time spent preparing the statement, in nanoseconds.
+	 * <p>
+	 * Only the first execution of a prepared query reports its preparation.
+	 * For other queries, the preparation is part of the execution time.
+	 */
+	long prepareTime();
+
+	/**
+	 * Returns the time spent executing the statement, in nanoseconds.
+	 */
+	long executeTime();
+
+	/**
+	 * Returns the time elapsed until the first row was available, in
+	 * nanoseconds. For update results, or before the first row was fetched,
+	 * this is the preparation and execution time.
+	 */
+	long firstRowTime();
+
+	/**
+	 * Returns the total time spent fetching rows so far, in nanoseconds.
+	 * The time spent by the caller between rows is not included.
+	 */
+	long fetchTime();
+
+	/**
+	 * Returns the total time spent preparing, executing and fetching rows,
+	 * in nanoseconds.
+	 */
+	default long totalTime() {
+		return prepareTime() + executeTime() + fetchTime();
+	}
+
+	/**
+	 * Returns the number of rows fetched so far from a query result.
+	 * <p>
+	 * The value is final once the result is closed, either explicitly or
+	 * by exhausting its iterator.
+	 */
+	long rowsFetched();
+
+	/**
+	 * Returns the approximate number of bytes read from the database so
+	 * far, measured as the size of the fetched values. Empty for update
+	 * results.
+	 */
+	OptionalLong bytesRead();
+
+	/**
+	 * Registers a callback called once the result is closed, with final
+	 * measurements. If the result is already closed, the callback is
+	 * called immediately.
+	 *
+	 * @param callback the callback
+	 */
+	void onComplete(Consumer<ReadOnlyResult> callback);
+
 	/**
 	 * {@inheritDoc}
 	 *
@@ -1,5 +1,6 @@
 package sqlartan.core;
 
+import sqlartan.core.jfr.Flight;
 import sqlartan.core.stream.ImmutableList;
 import sqlartan.core.stream.IterableAdapter;
 import sqlartan.core.stream.IterableStream;
@@ -8,6 +9,7 @@ import sqlartan.core.util.UncheckedSQLException;
 import sqlartan.util.Lazy;
 import java.sql.*;
 import java.util.*;
+import java.util.function.Consumer;
 import static sqlartan.util.Lazy.lazy;
 
 /**
@@ -29,60 +31,138 @@ public abstract class Result implements ReadOnlyResult, AutoCloseable, IterableS
 	 */
 	static Result fromQuery(Database database, Connection connection, String query) throws SQLException {
 		Statement statement = connection.createStatement();
-		return from(database, statement, statement.execute(query), query);
+		Flight.Execute event = Flight.execute();
+		long start = System.nanoTime();
+		boolean is_query = statement.execute(query);
+		Result result = from(database, statement, is_query, query, noParameters, 0, System.nanoTime() - start);
+		event.record(database.name(), query, result.isUpdateResult() ? result.updateCount() : 0);
+		return result;
 	}
 
 	/**
 	 * Constructs a Result by executing the given prepared statement.
 	 *
-	 * @param statement the prepared statement to execute
+	 * @param statement   the prepared statement to execute
+	 * @param parameters  the values bound to the placeholders of the statement
+	 * @param prepareTime the time spent preparing the statement, in
+	 *                    nanoseconds
 	 * @return the result set returned by the database
 	 *
 	 * @throws SQLException if the SQL query is invalid
 	 */
-	static Result fromPreparedStatement(Database database, PreparedStatement statement, String sql) throws SQLException {
-		return from(database, statement, statement.execute(), sql);
+	static Result fromPreparedStatement(Database database, PreparedStatement statement, String sql, Object[] parameters, long prepareTime) throws SQLException {
+		Flight.Execute event = Flight.execute();
+		long start = System.nanoTime();
+		boolean is_query = statement.execute();
+		Result result = from(database, statement, is_query, sql, parameters, prepareTime, System.nanoTime() - start);
+		event.record(database.name(), sql, result.isUpdateResult() ? result.updateCount() : 0);
+		return result;
+	}
+
+	/**
+	 * Constructs a Result from a cached result.
+	 *
+	 * @param sql        the SQL query
+	 * @param parameters the values bound to the placeholders
+	 * @param entry      the cached result
+	 * @return the result set, read from the cache
+	 */
+	static Result fromCache(Database database, String sql, Object[] parameters, ResultCache.Entry entry) {
+		return new QueryResult(database, sql, parameters == null ? noParameters : parameters, entry);
 	}
 
 	/**
 	 * Constructs a Result by reading the result of the given statement.
 	 *
-	 * @param statement the statement instance on which the request
-	 *                  was executed
-	 * @param query     a flag indicating if the request is a SELECT
-	 *                  or an UPDATE statement
+	 * @param statement   the statement instance on which the request
+	 *                    was executed
+	 * @param query       a flag indicating if the request is a SELECT
+	 *                    or an UPDATE statement
+	 * @param parameters  the values bound to the placeholders
+	 * @param prepareTime the time spent preparing the statement
+	 * @param executeTime the time spent executing the statement
 	 * @return the result set returned by the database
 	 *
 	 * @throws SQLException if the SQL query is invalid
 	 */
-	private static Result from(Database database, Statement statement, boolean query, String sql) throws SQLException {
-		return query ? new QueryResult(database, statement, sql) : new UpdateResult(database, statement, sql);
+	private static Result from(Database database, Statement statement, boolean query, String sql, Object[] parameters, long prepareTime, long executeTime) throws SQLException {
+		return query ? new QueryResult(database, statement, sql, parameters, prepareTime, executeTime)
+		             : new UpdateResult(database, statement, sql, parameters, prepareTime, executeTime);
 	}
 
+	/**
+	 * The parameters of a statement without placeholders
+	 */
+	private static final Object[] noParameters = new Object[0];
+
 	/**
 	 * The source database
 	 */
 	private Database database;
 
 	/**
-	 * The underlying statement object
+	 * The underlying statement object, null for cached results
 	 */
 	private Statement statement;
 
+	/**
+	 * Whether this result was closed
+	 */
+	private boolean closed = false;
+
 	/**
 	 * The source SQL query
 	 */
 	private String sql;
 
+	/**
+	 * The time spent preparing the statement, in nanoseconds
+	 */
+	private final long prepareTime;
+
+	/**
+	 * The time spent executing the statement, in nanoseconds
+	 */
+	private final long executeTime;
+
+	/**
+	 * The time spent fetching rows, in nanoseconds
+	 */
+	long fetchTime = 0;
+
+	/**
+	 * The time spent fetching the first row, in nanoseconds
+	 */
+	long firstFetchTime = 0;
+
+	/**
+	 * The callbacks to call once this result is closed, null if none
+	 */
+	private List<Consumer<ReadOnlyResult>> completionCallbacks;
+
+	/**
+	 * The values bound to the placeholders of the query
+	 */
+	final Object[] parameters;
+
 	/**
 	 * @param database  the parent database
 	 * @param statement the statement on which the query was executed
 	 * @param sql       the source SQL query
+	 * @param parameters  the values bound to the placeholders
+	 * @param prepareTime the time spent preparing the statement, in
+	 *                    nanoseconds
+	 * @param executeTime the time spent executing the statement, in
+	 *                    nanoseconds
 	 */
-	private Result(Database database, Statement statement, String sql) {
+	private Result(Database database, Statement statement, String sql, Object[] parameters, long prepareTime, long executeTime) {
 		this.database = database;
 		this.statement = statement;
 		this.sql = sql;
+		this.parameters = parameters;
+		this.prepareTime = prepareTime;
+		this.executeTime = executeTime;
+		database.metrics.openResults.increment();
 	}
 
 	/**
@@ -114,6 +194,67 @@ public abstract class Result implements ReadOnlyResult, AutoCloseable, IterableS
 	@Override
 	public boolean isUpdateResult() { return false; }
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long prepareTime() {
+		return prepareTime;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long executeTime() {
+		return executeTime;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long firstRowTime() {
+		return prepareTime + executeTime + firstFetchTime;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long fetchTime() {
+		return fetchTime;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long rowsFetched() {
+		return 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public OptionalLong bytesRead() {
+		return OptionalLong.empty();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized void onComplete(Consumer<ReadOnlyResult> callback) {
+		if (isClosed()) {
+			callback.accept(this);
+		} else {
+			if (completionCallbacks == null) completionCallbacks = new ArrayList<>();
+			completionCallbacks.add(callback);
+		}
+	}
+
 	/**
 	 * Closes the Results, freeing the underlying ResultSet if applicable.
 	 * <p>
@@ -124,20 +265,53 @@ public abstract class Result implements ReadOnlyResult, AutoCloseable, IterableS
 	 */
 	@Override
 	public void close() {
+		if (!closed) {
+			closed = true;
+			releaseStatement();
+			database.resultClosed(this);
+
+			List<Consumer<ReadOnlyResult>> callbacks;
+			synchronized (this) {
+				callbacks = completionCallbacks;
+				completionCallbacks = null;
+			}
+			if (callbacks != null) {
+				for (Consumer<ReadOnlyResult> callback : callbacks) {
+					try {
+						callback.accept(this);
+					} catch (Throwable ignored) {}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Closes the underlying statement, once its rows are no longer needed.
+	 */
+	void releaseStatement() {
 		if (statement != null) {
 			try {
+				if (statement instanceof PreparedStatement && !statement.isClosed()) {
+					database.metrics.openStatements.decrement();
+				}
 				statement.close();
 			} catch (SQLException ignored) {}
 			statement = null;
 		}
 	}
 
+	/**
+	 * Returns the number of rows fetched from a query result or updated by
+	 * an update result.
+	 */
+	abstract long rowCount();
+
 	/**
 	 * Checks if this Results object has been properly closed and does no longer hold
 	 * any internal Closable objects.
 	 */
 	public boolean isClosed() {
-		return statement == null;
+		return closed;
 	}
 
 	/**
@@ -186,50 +360,138 @@ public abstract class Result implements ReadOnlyResult, AutoCloseable, IterableS
 		 */
 		private Map<String, ResultColumn> columnsIndex;
 
+		/**
+		 * The metadata of the columns, as stored in the result cache
+		 */
+		private final List<ResultCache.Column> metadata;
+
 		/**
 		 * The underlying JDBC result set
 		 */
 		private ResultSet resultSet;
 
+		/**
+		 * The rows of a cached result, null if read from the result set
+		 */
+		private Object[][] cachedRows;
+
+		/**
+		 * The recorder materializing this result for the cache, null if not
+		 * cached
+		 */
+		ResultCache.Recorder recorder;
+
 		/**
 		 * Whether this result set was already consumed once
 		 */
 		private boolean consumed = false;
 
+		/**
+		 * The number of rows fetched from the result set
+		 */
+		private long fetched = 0;
+
+		/**
+		 * The approximate size of the values read from the result set
+		 */
+		long bytesRead = 0;
+
+		/**
+		 * The flight recorder event of the iteration, once started
+		 */
+		private Flight.Fetch fetchEvent;
+
 		/**
 		 * Constructs a QueryResult by reading the given Statement object.
 		 *
-		 * @param statement the source statement object
+		 * @param statement   the source statement object
+		 * @param sql         the source SQL query
+		 * @param parameters  the values bound to the placeholders
+		 * @param prepareTime the time spent preparing the statement
+		 * @param executeTime the time spent executing the statement
 		 * @throws SQLException if an error occurs while reading the results.
 		 */
-		private QueryResult(Database database, Statement statement, String sql) throws SQLException {
-			super(database, statement, sql);
+		private QueryResult(Database database, Statement statement, String sql, Object[] parameters, long prepareTime, long executeTime) throws SQLException {
+			super(database, statement, sql, parameters, prepareTime, executeTime);
 			resultSet = statement.getResultSet();
 
 			// Read metadata
 			ResultSetMetaData meta = resultSet.getMetaData();
 			int count = meta.getColumnCount();
 
-			columns = new ArrayList<>(count);
+			metadata = new ArrayList<>(count);
+			for (int i = 1; i <= count; i++) {
+				metadata.add(new ResultCache.Column(meta.getColumnName(i), meta.getColumnTypeName(i),
+					meta.getTableName(i), meta.isNullable(i) == 1));
+			}
+			buildColumns();
+		}
+
+		/**
+		 * Constructs a QueryResult from a cached result.
+		 *
+		 * @param sql        the source SQL query
+		 * @param parameters the values bound to the placeholders
+		 * @param entry      the cached result
+		 */
+		private QueryResult(Database database, String sql, Object[] parameters, ResultCache.Entry entry) {
+			super(database, null, sql, parameters, 0, 0);
+			metadata = entry.columns;
+			cachedRows = entry.rows;
+			buildColumns();
+		}
+
+		/**
+		 * Reads every row of the result set and closes the statement, so
+		 * that this result can be iterated while the connection executes
+		 * other statements.
+		 *
+		 * @throws SQLException
+		 */
+		void materialize() throws SQLException {
+			if (resultSet == null || consumed) return;
+			int count = metadata.size();
+			List<Object[]> rows = new ArrayList<>();
+			long start = System.nanoTime();
+			boolean next = resultSet.next();
+			firstFetchTime = System.nanoTime() - start;
+			while (next) {
+				Object[] values = new Object[count];
+				for (int i = 0; i < count; i++) {
+					values[i] = resultSet.getObject(i + 1);
+				}
+				rows.add(values);
+				next = resultSet.next();
+			}
+			fetchTime = System.nanoTime() - start;
+
+			cachedRows = rows.toArray(new Object[rows.size()][]);
+			resultSet.close();
+			resultSet = null;
+			releaseStatement();
+		}
+
+		/**
+		 * Builds the columns of this result set from their metadata.
+		 */
+		private void buildColumns() {
+			columns = new ArrayList<>(metadata.size());
 			columnsIndex = new HashMap<>();
 
-			for (int i = 1; i <= count; i++) {
+			for (int i = 1; i <= metadata.size(); i++) {
 				int index = i;
-				String name = meta.getColumnName(i);
-				String table = meta.getTableName(i);
-				String type = meta.getColumnTypeName(i);
-				boolean nullable = meta.isNullable(i) == 1;
+				ResultCache.Column meta = metadata.get(i - 1);
 
 				ResultColumn col = new ResultColumn(this, index, new ResultColumn.Properties() {
-					public String name() { return name; }
-					public String type() { return type; }
-					public Optional<Table> sourceTable() { return database.table(table); }
+					public String name() { return meta.name; }
+					public String type() { return meta.type; }
+					public Optional<Table> sourceTable() { return database().table(meta.table); }
 					public Optional<TableColumn> sourceColumn() { return columnRef(index); }
-					public boolean nullable() { return nullable; }
+					public boolean nullable() { return meta.nullable; }
 				});
 
 				columns.add(col);
-				columnsIndex.put(name, col);
+				columnsIndex.put(meta.name, col);
 			}
 		}
 
@@ -300,6 +562,7 @@ public abstract class Result implements ReadOnlyResult, AutoCloseable, IterableS
 			if (isClosed()) throw new IllegalStateException("Result object is closed");
 			if (consumed) throw new IllegalStateException("Stream has already been consumed");
 			consumed = true;
+			fetchEvent = Flight.fetch();
 			return new ResultIterator();
 		}
 
@@ -324,9 +587,33 @@ public abstract class Result implements ReadOnlyResult, AutoCloseable, IterableS
 			 * Fetches the next row form the result set.
 			 */
 			private void fetch() {
+				if (cachedRows != null) {
+					if (fetched < cachedRows.length) {
+						current = new Row(QueryResult.this, cachedRows[(int) fetched]);
+						fetched++;
+						if (recorder != null) recorder.add(current.values());
+					} else {
+						current = null;
+						if (recorder != null) recorder.finish(metadata);
+						close();
+					}
+					return;
+				}
 				try {
-					current = resultSet.next() ? new Row(QueryResult.this, resultSet) : null;
-					if (current == null) close();
+					long start = System.nanoTime();
+					boolean next = resultSet.next();
+					long time = System.nanoTime() - start;
+					if (fetched == 0) firstFetchTime = time;
+					fetchTime += time;
+					if (next) {
+						current = new Row(QueryResult.this, resultSet);
+						fetched++;
+						if (recorder != null) recorder.add(current.values());
+					} else {
+						current = null;
+						if (recorder != null) recorder.finish(metadata);
+						close();
+					}
 				} catch (SQLException e) {
 					throw new UncheckedSQLException(e);
 				}
@@ -370,6 +657,30 @@ public abstract class Result implements ReadOnlyResult, AutoCloseable, IterableS
 			return false;
 		}
 
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		long rowCount() {
+			return fetched;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public long rowsFetched() {
+			return fetched;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public OptionalLong bytesRead() {
+			return OptionalLong.of(bytesRead);
+		}
+
 		/**
 		 * {@inheritDoc}
 		 */
@@ -381,6 +692,11 @@ public abstract class Result implements ReadOnlyResult, AutoCloseable, IterableS
 				} catch (SQLException ignored) {}
 				resultSet = null;
 			}
+			if (fetchEvent != null) {
+				fetchEvent.record(query(), fetched, bytesRead);
+				fetchEvent = null;
+			}
+			recorder = null;
 
 			super.close();
 		}
@@ -430,13 +746,16 @@ public abstract class Result implements ReadOnlyResult, AutoCloseable, IterableS
 		/**
 		 * Constructs an UpdateResult object.
 		 *
-		 * @param database  the parent database
-		 * @param statement the JDBC statement of the query
-		 * @param sql       the source SQL query
+		 * @param database    the parent database
+		 * @param statement   the JDBC statement of the query
+		 * @param sql         the source SQL query
+		 * @param parameters  the values bound to the placeholders
+		 * @param prepareTime the time spent preparing the statement
+		 * @param executeTime the time spent executing the statement
 		 * @throws SQLException if JDBC is broken
 		 */
-		private UpdateResult(Database database, Statement statement, String sql) throws SQLException {
-			super(database, statement, sql);
+		private UpdateResult(Database database, Statement statement, String sql, Object[] parameters, long prepareTime, long executeTime) throws SQLException {
+			super(database, statement, sql, parameters, prepareTime, executeTime);
 			updateCount = statement.getUpdateCount();
 			close();
 		}
@@ -455,6 +774,14 @@ public abstract class Result implements ReadOnlyResult, AutoCloseable, IterableS
 			return updateCount;
 		}
 
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		long rowCount() {
+			return updateCount;
+		}
+
 		/**
 		 * An UpdateResult cannot be iterated.
 		 *
@@ -0,0 +1,659 @@
+package sqlartan.core;
+
+import sqlartan.core.ast.token.Token;
+import sqlartan.core.ast.token.TokenizeException;
+import sqlartan.core.ast.token.Tokenizer;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * A cache of the results of read-only queries.
+ * <p>
+ * Results are keyed by the query, with whitespace and comments removed,
+ * and the values bound to its placeholders. A result is materialized while
+ * it is iterated, and stored once it has been fully consumed. Results of
+ * queries calling non-deterministic functions, such as random() or the
+ * current date, are never cached.
+ * <p>
+ * Each entry records the tables it may have read: every name referenced
+ * by the query, expanded through the views it uses. Entries are dropped as
+ * soon as a transaction changing one of those tables is committed or
+ * rolled back, and the whole cache is cleared when the schema changes.
+ * When changes are found by parsing statements rather than reported by
+ * the driver, the tables written by the triggers and foreign key actions
+ * of a changed table are considered changed as well.
+ * Changes made by other connections to the database file are not seen,
+ * the maximum age of entries bounds how stale a result can be.
+ * <p>
+ * Entries are evicted in least recently used order once the approximate
+ * size of the cached values exceeds the capacity of the cache.
+ */
+public class ResultCache {
+	/**
+	 * The approximate memory overhead of a row
+	 */
+	private static final int ROW_OVERHEAD = 16;
+
+	/**
+	 * The approximate memory overhead of a value
+	 */
+	private static final int VALUE_OVERHEAD = 16;
+
+	/**
+	 * The functions whose result is not deterministic
+	 */
+	private static final Set<String> volatileFunctions = new HashSet<>(Arrays.asList(
+		"random", "randomblob", "changes", "total_changes", "last_insert_rowid",
+		"date", "time", "datetime", "julianday", "strftime", "unixepoch"
+	));
+
+	/**
+	 * The metadata of a cached column.
+	 */
+	static class Column {
+		/**
+		 * The name of the column
+		 */
+		final String name;
+
+		/**
+		 * The declared type of the column
+		 */
+		final String type;
+
+		/**
+		 * The name of the source table of the column
+		 */
+		final String table;
+
+		/**
+		 * Whether the column is nullable
+		 */
+		final boolean nullable;
+
+		/**
+		 * @param name     the name of the column
+		 * @param type     the declared type of the column
+		 * @param table    the name of the source table
+		 * @param nullable whether the column is nullable
+		 */
+		Column(String name, String type, String table, boolean nullable) {
+			this.name = name;
+			this.type = type;
+			this.table = table;
+			this.nullable = nullable;
+		}
+	}
+
+	/**
+	 * A materialized result.
+	 */
+	static class Entry {
+		/**
+		 * The columns of the result
+		 */
+		final List<Column> columns;
+
+		/**
+		 * The values of each row
+		 */
+		final Object[][] rows;
+
+		/**
+		 * The lowercase names of the tables the query may have read
+		 */
+		private final Set<String> tables;
+
+		/**
+		 * The approximate size of the entry, in bytes
+		 */
+		private final long size;
+
+		/**
+		 * The time the entry was stored, in nanoseconds
+		 */
+		private final long time = System.nanoTime();
+
+		/**
+		 * @param columns the columns of the result
+		 * @param rows    the values of each row
+		 * @param tables  the tables the query may have read
+		 * @param size    the approximate size of the entry
+		 */
+		private Entry(List<Column> columns, Object[][] rows, Set<String> tables, long size) {
+			this.columns = columns;
+			this.rows = rows;
+			this.tables = tables;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * The key of a cached result.
+	 */
+	private static class Key {
+		/**
+		 * The normalized query
+		 */
+		private final String sql;
+
+		/**
+		 * The values bound to the placeholders
+		 */
+		private final Object[] parameters;
+
+		/**
+		 * @param sql        the normalized query
+		 * @param parameters the values bound to the placeholders
+		 */
+		private Key(String sql, Object[] parameters) {
+			this.sql = sql;
+			this.parameters = parameters;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof Key)) return false;
+			Key key = (Key) o;
+			return sql.equals(key.sql) && Arrays.deepEquals(parameters, key.parameters);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * sql.hashCode() + Arrays.deepHashCode(parameters);
+		}
+	}
+
+	/**
+	 * A lookup of a query in the cache.
+	 */
+	class Lookup {
+		/**
+		 * The key of the query
+		 */
+		private final Key key;
+
+		/**
+		 * The lowercase names referenced by the query
+		 */
+		private final Set<String> names;
+
+		/**
+		 * The generation of the cache at the time of the lookup
+		 */
+		private final long generation;
+
+		/**
+		 * The cached result, null on a miss
+		 */
+		private final Entry entry;
+
+		/**
+		 * @param key        the key of the query
+		 * @param names      the names referenced by the query
+		 * @param generation the generation of the cache
+		 * @param entry      the cached result
+		 */
+		private Lookup(Key key, Set<String> names, long generation, Entry entry) {
+			this.key = key;
+			this.names = names;
+			this.generation = generation;
+			this.entry = entry;
+		}
+
+		/**
+		 * Returns the cached result, null on a miss.
+		 *
+		 * @param sql        the SQL query
+		 * @param parameters the values bound to the placeholders
+		 */
+		Result result(String sql, Object[] parameters) {
+			return entry == null ? null : Result.fromCache(database, sql, parameters, entry);
+		}
+
+		/**
+		 * Starts recording a result executed after a miss.
+		 *
+		 * @param result the result of the query
+		 */
+		void record(Result result) {
+			if (result instanceof Result.QueryResult) {
+				((Result.QueryResult) result).recorder = new Recorder(this);
+			}
+		}
+	}
+
+	/**
+	 * Materializes the rows of a result while it is iterated.
+	 */
+	class Recorder {
+		/**
+		 * The lookup that missed
+		 */
+		private final Lookup lookup;
+
+		/**
+		 * The recorded rows, null once abandoned
+		 */
+		private List<Object[]> rows = new ArrayList<>();
+
+		/**
+		 * The approximate size of the recorded rows
+		 */
+		private long size = 0;
+
+		/**
+		 * @param lookup the lookup that missed
+		 */
+		private Recorder(Lookup lookup) {
+			this.lookup = lookup;
+		}
+
+		/**
+		 * Records a row. The result is abandoned if it grows too large to
+		 * be cached.
+		 *
+		 * @param values the values of the row
+		 */
+		void add(Object[] values) {
+			if (rows == null) return;
+			size += ROW_OVERHEAD;
+			for (Object value : values) {
+				size += VALUE_OVERHEAD + Row.sizeOf(value);
+			}
+			if (size > capacity / 4) {
+				rows = null;
+			} else {
+				rows.add(values);
+			}
+		}
+
+		/**
+		 * Stores the recorded result once every row has been fetched.
+		 *
+		 * @param columns the columns of the result
+		 */
+		void finish(List<Column> columns) {
+			if (rows == null) return;
+			Set<String> tables = expand(lookup.names);
+			if (tables == null) return;
+			store(lookup, new Entry(columns, rows.toArray(new Object[rows.size()][]), tables, size));
+			rows = null;
+		}
+	}
+
+	/**
+	 * The database whose results are cached
+	 */
+	private final Database database;
+
+	/**
+	 * The maximum size of the cache, in bytes
+	 */
+	private final long capacity;
+
+	/**
+	 * The maximum age of entries, in nanoseconds
+	 */
+	private final long maxAge;
+
+	/**
+	 * The cached results, in access order
+	 */
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * The approximate size of the cached results
+	 */
+	private long bytes = 0;
+
+	/**
+	 * The number of invalidations, results recorded across an
+	 * invalidation are not stored
+	 */
+	private long generation = 0;
+
+	/**
+	 * The number of lookups that found a result
+	 */
+	private long hits = 0;
+
+	/**
+	 * The number of lookups that missed
+	 */
+	private long misses = 0;
+
+	/**
+	 * The names referenced by each view, by lowercase view name, null
+	 * until loaded
+	 */
+	private Map<String, Set<String>> views;
+
+	/**
+	 * The tables that may be written by the triggers and foreign key
+	 * actions of each table, by lowercase table name, loaded with views
+	 */
+	private Map<String, Set<String>> writes;
+
+	/**
+	 * @param database the database whose results are cached
+	 * @param capacity the maximum size of the cache, in bytes
+	 * @param maxAge   the maximum age of entries, in nanoseconds
+	 */
+	ResultCache(Database database, long capacity, long maxAge) {
+		if (capacity < 1) throw new IllegalArgumentException("Capacity must be at least 1");
+		this.database = database;
+		this.capacity = capacity;
+		this.maxAge = maxAge;
+	}
+
+	/**
+	 * Returns the maximum size of the cache, in bytes.
+	 */
+	public long capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the approximate size of the cached results, in bytes.
+	 */
+	public synchronized long bytes() {
+		return bytes;
+	}
+
+	/**
+	 * Returns the number of cached results.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of lookups that found a cached result.
+	 */
+	public synchronized long hits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups of cacheable queries that missed.
+	 */
+	public synchronized long misses() {
+		return misses;
+	}
+
+	/**
+	 * Removes every cached result.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+		views = null;
+		writes = null;
+		generation++;
+	}
+
+	/**
+	 * Removes the cached results that may have read a table.
+	 *
+	 * @param table the name of the table
+	 */
+	public synchronized void invalidate(String table) {
+		String name = table.toLowerCase();
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			Entry entry = iterator.next();
+			if (entry.tables.contains(name)) {
+				bytes -= entry.size;
+				iterator.remove();
+			}
+		}
+		generation++;
+	}
+
+	/**
+	 * Removes the cached results that may have read a table written by a
+	 * statement, or the tables written in turn by its triggers and foreign
+	 * key actions.
+	 *
+	 * @param table the name of the table
+	 */
+	synchronized void written(String table) {
+		Set<String> tables = new HashSet<>();
+		Deque<String> pending = new ArrayDeque<>();
+		pending.push(table.toLowerCase());
+		while (!pending.isEmpty()) {
+			String name = pending.pop();
+			if (!tables.add(name)) continue;
+			invalidate(name);
+			Set<String> targets = writes == null ? null : writes.get(name);
+			if (targets != null) pending.addAll(targets);
+		}
+	}
+
+	/**
+	 * Removes the cached results that may have read the tables of change
+	 * sets. Change sets found by parsing statements miss the changes made
+	 * by triggers and foreign key actions, which are added.
+	 *
+	 * @param changes the change sets
+	 */
+	void invalidate(Collection<ChangeSet> changes) {
+		for (ChangeSet change : changes) {
+			if (change.isPrecise()) {
+				invalidate(change.table());
+			} else {
+				written(change.table());
+			}
+		}
+	}
+
+	/**
+	 * Looks a query up in the cache.
+	 *
+	 * @param sql        the SQL query
+	 * @param parameters the values bound to the placeholders, null if none
+	 * @return the lookup, null if the query cannot be cached
+	 */
+	Lookup lookup(String sql, Object[] parameters) {
+		StringBuilder normalized = new StringBuilder(sql.length());
+		Set<String> names = new HashSet<>();
+		if (!analyze(sql, normalized, names)) return null;
+
+		Key key = new Key(normalized.toString(), parameters == null ? new Object[0] : parameters.clone());
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null && maxAge > 0 && System.nanoTime() - entry.time > maxAge) {
+				entries.remove(key);
+				bytes -= entry.size;
+				entry = null;
+			}
+			if (entry == null) {
+				misses++;
+			} else {
+				hits++;
+			}
+			return new Lookup(key, names, generation, entry);
+		}
+	}
+
+	/**
+	 * Normalizes a query and collects the names it references.
+	 * <p>
+	 * Queries reading internal tables, whose content is maintained by
+	 * triggers, are not cached.
+	 *
+	 * @param sql        the SQL query
+	 * @param normalized the builder receiving the normalized query
+	 * @param names      the set receiving the lowercase names
+	 * @return false if the query cannot be cached
+	 */
+	private static boolean analyze(String sql, StringBuilder normalized, Set<String> names) {
+		List<Token> tokens;
+		try {
+			tokens = Tokenizer.tokenize(sql).tokens();
+		} catch (TokenizeException e) {
+			return false;
+		}
+		if (tokens.isEmpty() || !(tokens.get(0) instanceof Token.Keyword)) return false;
+
+		String first = tokens.get(0).stringValue();
+		if (!first.equals("SELECT") && !first.equals("VALUES") && !first.equals("WITH")) return false;
+
+		for (Token token : tokens) {
+			if (token instanceof Token.EndOfStream) break;
+			if (normalized.length() > 0) normalized.append(' ');
+			if (token instanceof Token.Identifier) {
+				String name = token.stringValue().toLowerCase();
+				if (volatileFunctions.contains(name) || name.startsWith("sqlite_") || name.startsWith("pragma_") || name.startsWith("sqlartan_")) return false;
+				names.add(name);
+				normalized.append(token.source, token.offset, token.end());
+			} else if (token instanceof Token.Keyword) {
+				switch (token.stringValue()) {
+					case "CURRENT_DATE":
+					case "CURRENT_TIME":
+					case "CURRENT_TIMESTAMP":
+					case "INSERT":
+					case "UPDATE":
+					case "DELETE":
+					case "REPLACE":
+						return false;
+				}
+				normalized.append(token.stringValue());
+			} else if (token instanceof Token.Literal) {
+				if (token.stringValue().equalsIgnoreCase("now")) return false;
+				normalized.append(token.source, token.offset, token.end());
+			} else {
+				normalized.append(token.stringValue());
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Expands referenced names through the views using them.
+	 *
+	 * @param names the names referenced by a query
+	 * @return the names of every table that may be read, null if views
+	 * could not be loaded
+	 */
+	private Set<String> expand(Set<String> names) {
+		Map<String, Set<String>> known;
+		synchronized (this) {
+			known = views;
+		}
+		if (known == null) {
+			try {
+				known = loadSchema();
+			} catch (SQLException e) {
+				return null;
+			}
+		}
+
+		Set<String> tables = new HashSet<>(names);
+		Deque<String> pending = new ArrayDeque<>(names);
+		while (!pending.isEmpty()) {
+			Set<String> used = known.get(pending.pop());
+			if (used == null) continue;
+			for (String name : used) {
+				if (tables.add(name)) pending.push(name);
+			}
+		}
+		return tables;
+	}
+
+	/**
+	 * Reads the names referenced by each view of the database and its
+	 * attached databases, and the tables written by the triggers and
+	 * foreign key actions of each table.
+	 *
+	 * @return the names referenced by each view
+	 * @throws SQLException
+	 */
+	private Map<String, Set<String>> loadSchema() throws SQLException {
+		List<String> masters = new ArrayList<>();
+		masters.add("[" + database.name() + "].sqlite_master");
+		masters.add("sqlite_temp_master");
+		for (String name : database.attached.keySet()) {
+			masters.add("[" + name + "].sqlite_master");
+		}
+
+		Map<String, Set<String>> views = new HashMap<>();
+		Map<String, Set<String>> writes = new HashMap<>();
+		for (String master : masters) {
+			try (Result result = database.execute("SELECT type, name, tbl_name, sql FROM " + master + " WHERE type IN ('view', 'trigger', 'table')")) {
+				for (Row row : result) {
+					String type = row.getString();
+					String name = row.getString().toLowerCase();
+					String table = row.getString().toLowerCase();
+					String sql = row.getString();
+					if (sql == null) continue;
+
+					List<Token> tokens;
+					try {
+						tokens = Tokenizer.tokenize(sql).tokens();
+					} catch (TokenizeException e) {
+						continue;
+					}
+					switch (type) {
+						case "view":
+							views.computeIfAbsent(name, k -> new HashSet<>()).addAll(identifiers(tokens));
+							break;
+						case "trigger":
+							writes.computeIfAbsent(table, k -> new HashSet<>()).addAll(identifiers(tokens));
+							break;
+						default:
+							// Foreign key actions of the table write it when its parent is written
+							for (int i = 0; i + 1 < tokens.size(); i++) {
+								Token token = tokens.get(i);
+								Token next = tokens.get(i + 1);
+								if (token instanceof Token.Keyword && token.stringValue().equals("REFERENCES") && next instanceof Token.Identifier) {
+									writes.computeIfAbsent(next.stringValue().toLowerCase(), k -> new HashSet<>()).add(name);
+								}
+							}
+					}
+				}
+			}
+		}
+
+		synchronized (this) {
+			this.views = views;
+			this.writes = writes;
+		}
+		return views;
+	}
+
+	/**
+	 * Returns the lowercase identifiers of a list of tokens.
+	 *
+	 * @param tokens the tokens
+	 */
+	private static Set<String> identifiers(List<Token> tokens) {
+		Set<String> names = new HashSet<>();
+		for (Token token : tokens) {
+			if (token instanceof Token.Identifier) names.add(token.stringValue().toLowerCase());
+		}
+		return names;
+	}
+
+	/**
+	 * Stores an entry, unless the cache was invalidated since its lookup,
+	 * and evicts the least recently used entries exceeding the capacity.
+	 *
+	 * @param lookup the lookup that missed
+	 * @param entry  the entry to store
+	 */
+	private synchronized void store(Lookup lookup, Entry entry) {
+		if (lookup.generation != generation) return;
+		Entry previous = entries.put(lookup.key, entry);
+		if (previous != null) bytes -= previous.size;
+		bytes += entry.size;
+
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (bytes > capacity && iterator.hasNext()) {
+			bytes -= iterator.next().size;
+			iterator.remove();
+		}
+	}
+}
@@ -53,6 +53,15 @@ public class Row implements Structure<ResultColumn> {
 		this.data = new RowData(res, rs);
 	}
 
+	/**
+	 * @param res    the parent result set
+	 * @param values the values of the row, read from a cached result
+	 */
+	Row(Result.QueryResult res, Object[] values) {
+		this.res = res;
+		this.data = new RowData(res, values);
+	}
+
 	/**
 	 * View constructor.
 	 *
@@ -64,6 +73,25 @@ public class Row implements Structure<ResultColumn> {
 		this.data = rd;
 	}
 
+	/**
+	 * Returns the values of this row, shared with its views.
+	 */
+	Object[] values() {
+		return data.values;
+	}
+
+	/**
+	 * Returns the approximate storage size of a value.
+	 *
+	 * @param value the value
+	 */
+	static long sizeOf(Object value) {
+		if (value == null) return 0;
+		if (value instanceof byte[]) return ((byte[]) value).length;
+		if (value instanceof String) return ((String) value).length();
+		return 8;
+	}
+
 	/**
 	 * Resets the internal column cursor.
 	 */
@@ -257,7 +285,7 @@ public class Row implements Structure<ResultColumn> {
 	 * @return the value of the column
 	 */
 	public Object getObject(String label) {
-		return data.valuesIndex.get(label);
+		return data.valuesIndex().get(label);
 	}
 
 	/**
@@ -519,29 +547,59 @@ public class Row implements Structure<ResultColumn> {
 		private Object[] values;
 
 		/**
-		 * Index of values by column name
+		 * Index of values by column name, built on first label access
 		 */
-		private TreeMap<String, Object> valuesIndex = new TreeMap<>();
+		private TreeMap<String, Object> valuesIndex;
 
 		/**
 		 * @param res the result set
 		 * @param rs  the JDBC result set to read
 		 */
 		private RowData(Result.QueryResult res, ResultSet rs) {
-			List<ResultColumn> columns = res.columns();
-			values = new Object[columns.size()];
+			values = new Object[res.columns().size()];
 
-			int currentColumn = 1;
-			for (GeneratedColumn col : columns) {
+			long size = 0;
+			for (int i = 0; i < values.length; i++) {
 				try {
-					Object value = rs.getObject(currentColumn);
-					values[currentColumn - 1] = value;
-					valuesIndex.put(col.name(), value);
-					currentColumn++;
+					values[i] = rs.getObject(i + 1);
 				} catch (SQLException e) {
 					throw new UncheckedSQLException(e);
 				}
+				size += sizeOf(values[i]);
+			}
+			res.bytesRead += size;
+		}
+
+		/**
+		 * @param res    the result set
+		 * @param values the values of the row
+		 */
+		private RowData(Result.QueryResult res, Object[] values) {
+			this.values = values.clone();
+
+			long size = 0;
+			for (Object value : values) {
+				size += sizeOf(value);
+			}
+			res.bytesRead += size;
+		}
+
+		/**
+		 * Returns the index of values by column name.
+		 * <p>
+		 * Most rows are only accessed by index, the index is therefore only
+		 * built when a value is first accessed by label.
+		 */
+		private synchronized TreeMap<String, Object> valuesIndex() {
+			if (valuesIndex == null) {
+				TreeMap<String, Object> index = new TreeMap<>();
+				List<ResultColumn> columns = res.columns();
+				for (int i = 0; i < values.length; i++) {
+					index.put(columns.get(i).name(), values[i]);
+				}
+				valuesIndex = index;
 			}
+			return valuesIndex;
 		}
 	}
 }
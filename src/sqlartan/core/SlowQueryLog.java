@@ -0,0 +1,428 @@
+package sqlartan.core;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * A log of the queries whose execution exceeded a time threshold.
+ * <p>
+ * Slow queries are recorded once their result is closed, the logged time
+ * includes the fetching of rows. The query plan of each slow query is
+ * captured with EXPLAIN QUERY PLAN on a separate connection to the database
+ * file, on a background thread, so that neither the connection of the
+ * database nor the caller are delayed. No plan is captured for in-memory
+ * databases.
+ * <p>
+ * The most recent entries are kept in a bounded ring buffer. Entries can
+ * also be appended to a log file, which is rolled over to a ".1" file once
+ * it exceeds its maximum size.
+ */
+public class SlowQueryLog implements AutoCloseable {
+	/**
+	 * SQLITE_OPEN_READONLY open flag
+	 */
+	private static final int SQLITE_OPEN_READONLY = 1;
+
+	/**
+	 * A slow query.
+	 */
+	public static class Entry {
+		/**
+		 * The time at which the query completed
+		 */
+		private final Instant time;
+
+		/**
+		 * The SQL query
+		 */
+		private final String query;
+
+		/**
+		 * The values bound to the placeholders of the query
+		 */
+		private final List<Object> parameters;
+
+		/**
+		 * The execution time, in nanoseconds
+		 */
+		private final long elapsed;
+
+		/**
+		 * The number of rows returned or updated
+		 */
+		private final long rows;
+
+		/**
+		 * The lines of the query plan
+		 */
+		private volatile List<String> plan = Collections.emptyList();
+
+		/**
+		 * @param time       the time at which the query completed
+		 * @param query      the SQL query
+		 * @param parameters the values bound to the placeholders
+		 * @param elapsed    the execution time
+		 * @param rows       the number of rows returned or updated
+		 */
+		private Entry(Instant time, String query, List<Object> parameters, long elapsed, long rows) {
+			this.time = time;
+			this.query = query;
+			this.parameters = parameters;
+			this.elapsed = elapsed;
+			this.rows = rows;
+		}
+
+		/**
+		 * Returns the time at which the query completed.
+		 */
+		public Instant time() {
+			return time;
+		}
+
+		/**
+		 * Returns the SQL query.
+		 */
+		public String query() {
+			return query;
+		}
+
+		/**
+		 * Returns the values bound to the placeholders of the query.
+		 */
+		public List<Object> parameters() {
+			return parameters;
+		}
+
+		/**
+		 * Returns the execution time of the query, in nanoseconds.
+		 */
+		public long elapsed() {
+			return elapsed;
+		}
+
+		/**
+		 * Returns the number of rows returned or updated by the query.
+		 */
+		public long rows() {
+			return rows;
+		}
+
+		/**
+		 * Returns the lines of the query plan, empty if it could not be
+		 * captured.
+		 */
+		public List<String> plan() {
+			return plan;
+		}
+
+		/**
+		 * Formats a parameter value.
+		 *
+		 * @param value the parameter value
+		 */
+		private static String format(Object value) {
+			if (value instanceof String) return "'" + ((String) value).replace("'", "''") + "'";
+			if (value instanceof byte[]) return "<" + ((byte[]) value).length + " bytes>";
+			return String.valueOf(value);
+		}
+
+		/**
+		 * Returns a multi-line description of this entry.
+		 */
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder();
+			builder.append(time).append(' ').append(elapsed / 1_000_000).append(" ms, ").append(rows).append(" rows\n");
+			builder.append("  ").append(query.trim()).append('\n');
+			if (!parameters.isEmpty()) {
+				builder.append("  parameters: ")
+				       .append(parameters.stream().map(Entry::format).collect(Collectors.joining(", ")))
+				       .append('\n');
+			}
+			for (String line : plan) {
+				builder.append("  plan: ").append(line).append('\n');
+			}
+			return builder.toString();
+		}
+	}
+
+	/**
+	 * The database whose queries are logged
+	 */
+	private final Database database;
+
+	/**
+	 * The ring buffer of the most recent entries
+	 */
+	private final Entry[] entries;
+
+	/**
+	 * The total number of entries recorded since the last clear
+	 */
+	private long count = 0;
+
+	/**
+	 * The threshold above which a query is slow, in nanoseconds
+	 */
+	private volatile long threshold;
+
+	/**
+	 * The log file, null if disabled
+	 */
+	private Path file;
+
+	/**
+	 * The maximum size of the log file before roll-over, in bytes
+	 */
+	private long maxFileSize;
+
+	/**
+	 * The connection on which query plans are captured
+	 */
+	private Connection planConnection;
+
+	/**
+	 * The listeners of new entries
+	 */
+	private final Set<Consumer<Entry>> listeners = new LinkedHashSet<>();
+
+	/**
+	 * The background thread capturing query plans and writing the log file
+	 */
+	private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "sqlartan-slow-query-log");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * @param database  the database whose queries are logged
+	 * @param threshold the threshold above which a query is slow, in
+	 *                  milliseconds
+	 * @param capacity  the maximum number of entries kept in memory
+	 */
+	SlowQueryLog(Database database, long threshold, int capacity) {
+		if (capacity < 1) throw new IllegalArgumentException("Capacity must be at least 1");
+		this.database = database;
+		this.entries = new Entry[capacity];
+		threshold(threshold);
+	}
+
+	/**
+	 * Returns the threshold above which a query is slow, in milliseconds.
+	 */
+	public long threshold() {
+		return threshold / 1_000_000;
+	}
+
+	/**
+	 * Sets the threshold above which a query is slow.
+	 *
+	 * @param threshold the threshold, in milliseconds
+	 * @return this object
+	 */
+	public SlowQueryLog threshold(long threshold) {
+		if (threshold < 0) throw new IllegalArgumentException("Threshold must not be negative");
+		this.threshold = threshold * 1_000_000;
+		return this;
+	}
+
+	/**
+	 * Returns the maximum number of entries kept in memory.
+	 */
+	public int capacity() {
+		return entries.length;
+	}
+
+	/**
+	 * Appends entries to a log file. Once the file grows over the given
+	 * size, it is renamed with a ".1" suffix and a new file is started.
+	 *
+	 * @param file        the log file, null to disable file logging
+	 * @param maxFileSize the maximum size of the file, in bytes
+	 * @return this object
+	 */
+	public synchronized SlowQueryLog logTo(Path file, long maxFileSize) {
+		this.file = file;
+		this.maxFileSize = maxFileSize;
+		return this;
+	}
+
+	/**
+	 * Registers a listener called, on a background thread, each time a new
+	 * entry is logged. The query plan of the entry is already captured.
+	 *
+	 * @param listener the listener
+	 */
+	public synchronized void registerListener(Consumer<Entry> listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes a registered listener.
+	 *
+	 * @param listener the listener to remove
+	 */
+	public synchronized void removeListener(Consumer<Entry> listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Returns the logged entries still in memory, from the most recent to
+	 * the oldest.
+	 */
+	public synchronized List<Entry> entries() {
+		int size = (int) Math.min(count, entries.length);
+		List<Entry> list = new ArrayList<>(size);
+		for (long i = count - 1; i >= count - size; i--) {
+			list.add(entries[(int) (i % entries.length)]);
+		}
+		return list;
+	}
+
+	/**
+	 * Removes every entry from memory. The log file is not modified.
+	 */
+	public synchronized void clear() {
+		Arrays.fill(entries, null);
+		count = 0;
+	}
+
+	/**
+	 * Records a closed result if its execution exceeded the threshold.
+	 *
+	 * @param result the closed result
+	 */
+	void record(Result result) {
+		long elapsed = result.totalTime();
+		if (elapsed < threshold) return;
+
+		Entry entry = new Entry(Instant.now(), result.query(), Collections.unmodifiableList(Arrays.asList(result.parameters)),
+			elapsed, result.rowCount());
+
+		synchronized (this) {
+			entries[(int) (count++ % entries.length)] = entry;
+		}
+
+		try {
+			worker.execute(() -> complete(entry));
+		} catch (RejectedExecutionException ignored) {
+			// The log was closed
+		}
+	}
+
+	/**
+	 * Captures the query plan of an entry, writes it to the log file and
+	 * notifies listeners. Called on the background thread.
+	 *
+	 * @param entry the new entry
+	 */
+	private void complete(Entry entry) {
+		entry.plan = explain(entry);
+
+		Path target;
+		long max_size;
+		List<Consumer<Entry>> targets;
+		synchronized (this) {
+			target = file;
+			max_size = maxFileSize;
+			targets = new ArrayList<>(listeners);
+		}
+
+		if (target != null) {
+			try {
+				write(target, max_size, entry);
+			} catch (IOException ignored) {}
+		}
+
+		for (Consumer<Entry> listener : targets) {
+			try {
+				listener.accept(entry);
+			} catch (Throwable ignored) {}
+		}
+	}
+
+	/**
+	 * Captures the query plan of an entry on the plan connection.
+	 *
+	 * @param entry the entry
+	 * @return the lines of the query plan
+	 */
+	private List<String> explain(Entry entry) {
+		if (database.isEphemeral()) return Collections.emptyList();
+		try {
+			if (planConnection == null) {
+				// The read-only flag cannot be changed once the connection is open
+				Properties properties = new Properties();
+				properties.setProperty("open_mode", String.valueOf(SQLITE_OPEN_READONLY));
+				planConnection = DriverManager.getConnection("jdbc:sqlite:" + database.path().getPath(), properties);
+			}
+			try (PreparedStatement statement = planConnection.prepareStatement("EXPLAIN QUERY PLAN " + entry.query)) {
+				for (int i = 0; i < entry.parameters.size(); i++) {
+					statement.setObject(i + 1, entry.parameters.get(i));
+				}
+				List<String> plan = new ArrayList<>();
+				if (statement.execute()) {
+					try (ResultSet rows = statement.getResultSet()) {
+						int detail = rows.findColumn("detail");
+						while (rows.next()) plan.add(rows.getString(detail));
+					}
+				}
+				return plan;
+			}
+		} catch (SQLException e) {
+			return Collections.emptyList();
+		}
+	}
+
+	/**
+	 * Appends an entry to the log file, rolling the file over if needed.
+	 *
+	 * @param target   the log file
+	 * @param max_size the maximum size of the file
+	 * @param entry    the entry to write
+	 * @throws IOException
+	 */
+	private static void write(Path target, long max_size, Entry entry) throws IOException {
+		if (Files.exists(target) && Files.size(target) >= max_size) {
+			Files.move(target, Paths.get(target + ".1"), StandardCopyOption.REPLACE_EXISTING);
+		}
+		try (Writer writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8,
+			StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+			writer.write(entry.toString());
+		}
+	}
+
+	/**
+	 * Stops the background thread once pending entries are completed, and
+	 * closes the plan connection. Queries are no longer logged afterward.
+	 */
+	@Override
+	public void close() {
+		try {
+			worker.execute(() -> {
+				if (planConnection != null) {
+					try {
+						planConnection.close();
+					} catch (SQLException ignored) {}
+					planConnection = null;
+				}
+			});
+		} catch (RejectedExecutionException ignored) {}
+		worker.shutdown();
+	}
+}
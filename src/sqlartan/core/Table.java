@@ -3,6 +3,10 @@ package sqlartan.core;
 import sqlartan.core.alter.AlterTable;
 import sqlartan.core.ast.ColumnConstraint;
 import sqlartan.core.ast.CreateTableStatement;
+import sqlartan.core.ast.CreateTriggerStatement;
+import sqlartan.core.ast.Statement;
+import sqlartan.core.ast.gen.Builder;
+import sqlartan.core.ast.parser.ParseCache;
 import sqlartan.core.ast.parser.ParseException;
 import sqlartan.core.ast.parser.Parser;
 import sqlartan.core.stream.ImmutableList;
@@ -11,6 +15,7 @@ import sqlartan.core.util.UncheckedSQLException;
 import sqlartan.util.Lazy;
 import sqlartan.util.UncheckedException;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.Optional;
 import static sqlartan.util.Lazy.lazy;
 import static sqlartan.util.Matching.match;
@@ -19,6 +24,17 @@ import static sqlartan.util.Matching.match;
  * A table in a database
  */
 public class Table extends PersistentStructure<TableColumn> {
+	/**
+	 * The name of the table storing the row counts of tables whose count
+	 * is cached
+	 */
+	static final String rowCountsTable = "sqlartan_row_counts";
+
+	/**
+	 * The parser of table definitions, shared so that parses are cached
+	 */
+	private static final Parser<CreateTableStatement> createParser = CreateTableStatement::parse;
+
 	/**
 	 * Constructs a new table linked to the specified database and with
 	 * the specified name.
@@ -45,10 +61,13 @@ public class Table extends PersistentStructure<TableColumn> {
 
 	/**
 	 * The parsed CREATE TABLE statement corresponding to this table
+	 * <p>
+	 * The statement is shared through the parse cache and must not be
+	 * modified.
 	 */
 	private Lazy<CreateTableStatement> createStatementParsed = lazy(() -> {
 		try {
-			return Parser.parse(createStatement.get(), CreateTableStatement::parse);
+			return ParseCache.shared.parse(createStatement.get(), createParser);
 		} catch (ParseException e) {
 			throw new UncheckedException(e);
 		}
@@ -62,8 +81,19 @@ public class Table extends PersistentStructure<TableColumn> {
 	@Override
 	public void rename(String target) {
 		try {
-			database.assemble("ALTER TABLE ", fullName(), " RENAME TO ", target).execute();
-			name = target;
+			if (isCountCached()) {
+				// The counting triggers refer to the table by name
+				database.transaction(() -> {
+					dropCountTriggers(name);
+					database.assemble("ALTER TABLE ", fullName(), " RENAME TO ", target).execute();
+					database.assemble("UPDATE ", database.name(), "." + rowCountsTable + " SET name = ? WHERE name = ?").execute(target, name);
+					createCountTriggers(target);
+				});
+				name = target;
+			} else {
+				database.assemble("ALTER TABLE ", fullName(), " RENAME TO ", target).execute();
+				name = target;
+			}
 		} catch (SQLException e) {
 			throw new UncheckedSQLException(e);
 		}
@@ -71,7 +101,8 @@ public class Table extends PersistentStructure<TableColumn> {
 
 	/**
 	 * Duplicates the table to a new table with the specified name.
-	 * Does not duplicate associated triggers.
+	 * Does not duplicate associated triggers, but caches the row count of the
+	 * new table if the count of this table is cached.
 	 *
 	 * @param target the name
 	 * @return the new table
@@ -79,8 +110,8 @@ public class Table extends PersistentStructure<TableColumn> {
 	@Override
 	public Table duplicate(String target) {
 		try {
-			// Update the create statement of the original table
-			CreateTableStatement create = createStatementParsed.gen();
+			// Update a copy of the create statement of the original table
+			CreateTableStatement create = Parser.parse(createStatement.get(), CreateTableStatement::parse);
 			create.name = target;
 			create.schema = Optional.of(database.name());
 
@@ -91,10 +122,14 @@ public class Table extends PersistentStructure<TableColumn> {
 			database.assemble("INSERT INTO ", database.name(), ".", target, " SELECT * FROM ", fullName()).execute();
 		} catch (SQLException e) {
 			throw new UncheckedSQLException(e);
+		} catch (ParseException e) {
+			throw new UncheckedException(e);
 		}
 
 		// noinspection OptionalGetWithoutIsPresent
-		return database.table(target).get();
+		Table duplicate = database.table(target).get();
+		if (isCountCached()) duplicate.enableCountCache();
+		return duplicate;
 	}
 
 	/**
@@ -103,7 +138,14 @@ public class Table extends PersistentStructure<TableColumn> {
 	@Override
 	public void drop() {
 		try {
-			database.assemble("DROP TABLE ", fullName()).execute();
+			if (isCountCached()) {
+				database.transaction(() -> {
+					database.assemble("DROP TABLE ", fullName()).execute();
+					database.assemble("DELETE FROM ", database.name(), "." + rowCountsTable + " WHERE name = ?").execute(name);
+				});
+			} else {
+				database.assemble("DROP TABLE ", fullName()).execute();
+			}
 		} catch (SQLException e) {
 			throw new UncheckedSQLException(e);
 		}
@@ -262,16 +304,173 @@ public class Table extends PersistentStructure<TableColumn> {
 
 	/**
 	 * Truncate the table.
+	 * <p>
+	 * If the row count is cached, the counting trigger is dropped during the
+	 * deletion, which would otherwise be executed for each row.
 	 */
 	public void truncate() {
 		try {
 			String query = "DELETE FROM " + fullName();
-			database.execute(query);
+			if (isCountCached()) {
+				database.transaction(() -> {
+					database.assemble("DROP TRIGGER IF EXISTS ", database.name(), ".", countTrigger(name, CreateTriggerStatement.Trigger.Delete)).execute();
+					database.execute(query);
+					database.assemble("UPDATE ", database.name(), "." + rowCountsTable + " SET count = 0 WHERE name = ?").execute(name);
+					createCountTriggers(name);
+				});
+			} else {
+				database.execute(query);
+			}
+		} catch (SQLException e) {
+			throw new UncheckedSQLException(e);
+		}
+	}
+
+	/**
+	 * Returns the number of rows in the table.
+	 * <p>
+	 * If the row count is cached, it is read from the counter of the table
+	 * instead of counting rows.
+	 */
+	public long rowCount() {
+		try {
+			if (database.table(rowCountsTable).isPresent()) {
+				Optional<Long> count = database.assemble("SELECT count FROM ", database.name(), "." + rowCountsTable + " WHERE name = ?")
+				                               .execute(name)
+				                               .mapFirstOptional(Row::getLong);
+				if (count.isPresent()) return count.get();
+			}
+			return database.assemble("SELECT COUNT(*) FROM ", fullName()).execute().mapFirst(Row::getLong);
+		} catch (SQLException e) {
+			throw new UncheckedSQLException(e);
+		}
+	}
+
+	/**
+	 * Caches the row count of the table, in a counter maintained by triggers.
+	 * <p>
+	 * The counter is initialized by counting the rows of the table. Calling
+	 * this method again counts the rows and restores missing triggers.
+	 * <p>
+	 * Recursive triggers are enabled on the connection, so that rows deleted
+	 * by the REPLACE conflict resolution are counted as deleted. They are
+	 * also enabled when a database with cached row counts is opened.
+	 */
+	public void enableCountCache() {
+		try {
+			database.execute("PRAGMA recursive_triggers = ON").close();
+			database.transaction(() -> {
+				database.assemble("CREATE TABLE IF NOT EXISTS ", database.name(), "." + rowCountsTable + " (name TEXT PRIMARY KEY, count INTEGER NOT NULL)").execute();
+				database.assemble("INSERT OR REPLACE INTO ", database.name(), "." + rowCountsTable + " (name, count) SELECT ?, COUNT(*) FROM ", fullName()).execute(name);
+				createCountTriggers(name);
+			});
+		} catch (SQLException e) {
+			throw new UncheckedSQLException(e);
+		}
+	}
+
+	/**
+	 * Removes the counter of the table and its triggers.
+	 */
+	public void disableCountCache() {
+		if (!isCountCached()) return;
+		try {
+			database.transaction(() -> {
+				dropCountTriggers(name);
+				database.assemble("DELETE FROM ", database.name(), "." + rowCountsTable + " WHERE name = ?").execute(name);
+			});
 		} catch (SQLException e) {
 			throw new UncheckedSQLException(e);
 		}
 	}
 
+	/**
+	 * Checks if the row count of the table is cached.
+	 */
+	public boolean isCountCached() {
+		try {
+			return database.table(rowCountsTable).isPresent()
+				&& database.assemble("SELECT 1 FROM ", database.name(), "." + rowCountsTable + " WHERE name = ?")
+				           .execute(name)
+				           .mapFirstOptional(Row::getInt)
+				           .isPresent();
+		} catch (SQLException e) {
+			throw new UncheckedSQLException(e);
+		}
+	}
+
+	/**
+	 * Checks if a trigger maintains the row counter of this table.
+	 *
+	 * @param trigger the trigger
+	 */
+	public boolean isCountTrigger(Trigger trigger) {
+		return trigger.getName().equals(countTrigger(name, CreateTriggerStatement.Trigger.Insert))
+			|| trigger.getName().equals(countTrigger(name, CreateTriggerStatement.Trigger.Delete));
+	}
+
+	/**
+	 * Returns the name of a trigger maintaining the row counter.
+	 *
+	 * @param table the name of the table
+	 * @param event the event handled by the trigger
+	 */
+	private static String countTrigger(String table, CreateTriggerStatement.Trigger event) {
+		return "sqlartan_count_" + table + "_" + event.name().toLowerCase();
+	}
+
+	/**
+	 * Creates the triggers maintaining the row counter, if they do not exist.
+	 *
+	 * @param table the name of the table
+	 * @throws SQLException
+	 */
+	private void createCountTriggers(String table) throws SQLException {
+		createCountTrigger(table, CreateTriggerStatement.Trigger.Insert, "+ 1");
+		createCountTrigger(table, CreateTriggerStatement.Trigger.Delete, "- 1");
+	}
+
+	/**
+	 * Creates a trigger updating the row counter.
+	 *
+	 * @param table the name of the table
+	 * @param event the event handled by the trigger
+	 * @param delta the change of the count
+	 * @throws SQLException
+	 */
+	private void createCountTrigger(String table, CreateTriggerStatement.Trigger event, String delta) throws SQLException {
+		String update = new Builder().appendRaw("UPDATE").appendIdentifier(rowCountsTable)
+		                             .appendRaw("SET count = count " + delta + " WHERE name =").appendTextLiteral(table)
+		                             .toString();
+
+		CreateTriggerStatement trigger = new CreateTriggerStatement();
+		trigger.ifNotExists = true;
+		trigger.schema = Optional.of(database.name());
+		trigger.name = countTrigger(table, event);
+		trigger.timing = CreateTriggerStatement.Timing.After;
+		trigger.trigger = event;
+		trigger.table = table;
+		trigger.forEachRow = true;
+		try {
+			trigger.body = Collections.singletonList(Parser.parse(update, Statement::parse));
+		} catch (ParseException e) {
+			throw new UncheckedException(e);
+		}
+		database.execute(trigger.toSQL());
+	}
+
+	/**
+	 * Drops the triggers maintaining the row counter.
+	 *
+	 * @param table the name of the table
+	 * @throws SQLException
+	 */
+	private void dropCountTriggers(String table) throws SQLException {
+		for (CreateTriggerStatement.Trigger event : new CreateTriggerStatement.Trigger[] { CreateTriggerStatement.Trigger.Insert, CreateTriggerStatement.Trigger.Delete }) {
+			database.assemble("DROP TRIGGER IF EXISTS ", database.name(), ".", countTrigger(table, event)).execute();
+		}
+	}
+
 	/**
 	 * Inserts new data in this table.
 	 *
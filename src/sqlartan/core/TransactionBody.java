@@ -0,0 +1,20 @@
+package sqlartan.core;
+
+import java.sql.SQLException;
+
+/**
+ * The body of a transaction run by Database.transaction().
+ * <p>
+ * A body may be run more than once if the database was busy, it must not
+ * have side effects outside of the database.
+ */
+@FunctionalInterface
+public interface TransactionBody {
+	/**
+	 * Executes the statements of the transaction. Throwing an exception
+	 * rolls the transaction back.
+	 *
+	 * @throws SQLException
+	 */
+	void run() throws SQLException;
+}
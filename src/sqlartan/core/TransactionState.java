@@ -0,0 +1,147 @@
+package sqlartan.core;
+
+import sqlartan.core.ast.ReleaseStatement;
+import sqlartan.core.ast.RollbackStatement;
+import sqlartan.core.ast.SavepointStatement;
+import sqlartan.core.ast.Statement;
+import sqlartan.core.ast.parser.ParseCache;
+import sqlartan.core.ast.parser.Parser;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Follows the transaction state of a connection from the statements
+ * successfully executed on it.
+ * <p>
+ * A transaction is opened by a BEGIN statement, or by a SAVEPOINT statement
+ * outside of a transaction, which is then committed once that savepoint is
+ * released. Outside of a transaction, every statement writing to the
+ * database is committed on its own.
+ * <p>
+ * This class is not thread-safe, it is updated by the thread executing
+ * statements on the connection. Whether a transaction is open can be read
+ * from any thread.
+ */
+class TransactionState {
+	/**
+	 * The parser of savepoint statements, shared so that parses are cached
+	 */
+	private static final Parser<Statement> statementParser = Statement::parse;
+
+	/**
+	 * Whether a transaction is open
+	 */
+	private volatile boolean open = false;
+
+	/**
+	 * Whether the open transaction was started by a SAVEPOINT statement
+	 */
+	private boolean fromSavepoint = false;
+
+	/**
+	 * The lowercase names of the open savepoints, the innermost last
+	 */
+	private final List<String> savepoints = new ArrayList<>();
+
+	/**
+	 * Returns whether a transaction is open on the connection.
+	 */
+	boolean isOpen() {
+		return open;
+	}
+
+	/**
+	 * Updates the state once a statement was executed.
+	 *
+	 * @param sql the executed statement
+	 * @return true if the statement committed a transaction
+	 */
+	boolean executed(String sql) {
+		if (Database.startsWith(sql, "BEGIN")) {
+			open = true;
+			fromSavepoint = false;
+			savepoints.clear();
+		} else if (Database.startsWith(sql, "COMMIT") || Database.startsWith(sql, "END")) {
+			boolean committed = open;
+			close();
+			return committed;
+		} else if (Database.startsWith(sql, "ROLLBACK")) {
+			Statement statement = parse(sql);
+			if (statement instanceof RollbackStatement) {
+				Optional<String> savepoint = ((RollbackStatement) statement).savepoint;
+				if (savepoint.isPresent()) {
+					unwind(savepoint.get(), false);
+				} else {
+					close();
+				}
+			} else if (!sql.toUpperCase().contains(" TO ")) {
+				close();
+			}
+		} else if (Database.startsWith(sql, "SAVEPOINT")) {
+			Statement statement = parse(sql);
+			if (!open) {
+				open = true;
+				fromSavepoint = true;
+			}
+			savepoints.add(statement instanceof SavepointStatement ? ((SavepointStatement) statement).savepoint.toLowerCase() : "");
+		} else if (Database.startsWith(sql, "RELEASE")) {
+			Statement statement = parse(sql);
+			unwind(statement instanceof ReleaseStatement ? ((ReleaseStatement) statement).savepoint : null, true);
+			if (fromSavepoint && savepoints.isEmpty()) {
+				close();
+				return true;
+			}
+		} else {
+			return !open && writes(sql);
+		}
+		return false;
+	}
+
+	/**
+	 * Closes the transaction.
+	 */
+	private void close() {
+		open = false;
+		fromSavepoint = false;
+		savepoints.clear();
+	}
+
+	/**
+	 * Removes the savepoints nested in a savepoint.
+	 *
+	 * @param savepoint the name of the savepoint, null to only remove the
+	 *                  innermost one
+	 * @param release   whether the savepoint itself is removed
+	 */
+	private void unwind(String savepoint, boolean release) {
+		int index = savepoint == null ? savepoints.size() - 1 : savepoints.lastIndexOf(savepoint.toLowerCase());
+		if (index < 0) return;
+		savepoints.subList(release ? index : index + 1, savepoints.size()).clear();
+	}
+
+	/**
+	 * Parses a transaction control statement.
+	 *
+	 * @param sql the statement
+	 * @return the parsed statement, null if it cannot be parsed
+	 */
+	private static Statement parse(String sql) {
+		return ParseCache.shared.tryParse(sql, statementParser).orElse(null);
+	}
+
+	/**
+	 * Checks if a statement writes to the database.
+	 *
+	 * @param sql the statement
+	 */
+	private static boolean writes(String sql) {
+		return Database.startsWith(sql, "INSERT")
+			|| Database.startsWith(sql, "UPDATE")
+			|| Database.startsWith(sql, "DELETE")
+			|| Database.startsWith(sql, "REPLACE")
+			|| Database.startsWith(sql, "CREATE")
+			|| Database.startsWith(sql, "DROP")
+			|| Database.startsWith(sql, "ALTER");
+	}
+}
@@ -6,6 +6,7 @@ import sqlartan.core.Trigger;
 import sqlartan.core.ast.*;
 import sqlartan.core.ast.parser.ParseException;
 import sqlartan.core.ast.parser.Parser;
+import sqlartan.core.jfr.Flight;
 import sqlartan.core.util.UncheckedSQLException;
 import java.sql.SQLException;
 import java.util.Iterator;
@@ -89,13 +90,22 @@ public abstract class AlterAction {
 
 		oldTableDefinition = getTableDefinition();
 
-		List<Trigger> triggers = table.triggers().toList();
+		// Counting triggers are recreated by enableCountCache(), which also
+		// recounts the rows
+		boolean countCached = table.isCountCached();
+		List<Trigger> triggers = table.triggers().filter(trigger -> !table.isCountTrigger(trigger)).toList();
 
+		Flight.Alter rebuild = Flight.alter();
 		table.database().executeTransaction(new String[] { createTemporary, populateTemporary, dropTable, createTable, populateTable, dropTemporary });
+		rebuild.record(table.name(), "rebuild", 1);
 
+		Flight.Alter update_triggers = Flight.alter();
 		for (Trigger trigger : triggers) {
 			updateTrigger(trigger);
 		}
+		update_triggers.record(table.name(), "triggers", triggers.size());
+
+		if (countCached) table.enableCountCache();
 	}
 
 	/**
@@ -111,7 +121,6 @@ public abstract class AlterAction {
 		                              .execute(table.name())
 		                              .mapFirst(Row::getString);
 
-		Parser.parse(createStatement, CreateTableStatement::parse);
 		return (CreateTableStatement.Def) Parser.parse(createStatement, CreateTableStatement::parse);
 	}
 
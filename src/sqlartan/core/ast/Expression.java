@@ -21,7 +21,7 @@ public abstract class Expression implements Node {
 	 * @see sqlartan.core.ast.parser.Parser
 	 */
 	public static Expression parse(ParserContext context) {
-		Expression expr = parseOrStep.parse(context);
+		Expression expr = context.memoize(parseOrStep);
 		return expr;
 	}
 
@@ -65,7 +65,7 @@ public abstract class Expression implements Node {
 		};
 	}
 
-	private static Parser<Expression> parseConcatStep = parseStep(Expression::parseFinal, CONCAT);
+	private static Parser<Expression> parseConcatStep = parseStep(Parser.memoized(Expression::parseFinal), CONCAT);
 	private static Parser<Expression> parseMulStep = parseStep(parseConcatStep, MUL, DIV, MOD);
 	private static Parser<Expression> parseAddStep = parseStep(parseMulStep, PLUS, MINUS);
 	private static Parser<Expression> parseBitsStep = parseStep(parseAddStep, SHIFT_LEFT, SHIFT_RIGHT, BIT_AND, BIT_OR);
@@ -67,11 +67,33 @@ public enum Keyword implements Node.KeywordOrOperator {
 	 */
 	public static final Map<String, Keyword> keywords;
 
+	/**
+	 * The perfect hash table of keywords, indexed by the hash of their name
+	 */
+	private static final Keyword[] table;
+
+	/**
+	 * The multiplier of the perfect hash function
+	 */
+	private static final int seed;
+
+	/**
+	 * The length of the shortest keyword
+	 */
+	private static final int shortest;
+
+	/**
+	 * The length of the longest keyword
+	 */
+	private static final int longest;
+
 	/**
 	 * Initialize static structure
 	 */
 	static {
 		Map<String, Keyword> kws = new HashMap<>();
+		int min_length = Integer.MAX_VALUE;
+		int max_length = 0;
 
 		for (Keyword keyword : values()) {
 			if (keyword == VOID) continue;
@@ -82,9 +104,61 @@ public enum Keyword implements Node.KeywordOrOperator {
 			} else {
 				kws.put(name, keyword);
 			}
+
+			min_length = Math.min(min_length, name.length());
+			max_length = Math.max(max_length, name.length());
 		}
 
 		keywords = Collections.unmodifiableMap(kws);
+		shortest = min_length;
+		longest = max_length;
+
+		// Search for a multiplier without collisions, growing the table
+		// if none is found
+		Keyword[] slots = null;
+		int multiplier = 0;
+		search:
+		for (int size = Integer.highestOneBit(kws.size()) * 4; ; size *= 2) {
+			candidates:
+			for (multiplier = 31; multiplier < 1 << 16; multiplier += 2) {
+				slots = new Keyword[size];
+				for (Keyword keyword : kws.values()) {
+					int slot = hash(keyword.name, 0, keyword.name.length(), multiplier) & (size - 1);
+					if (slots[slot] != null) continue candidates;
+					slots[slot] = keyword;
+				}
+				break search;
+			}
+		}
+
+		table = slots;
+		seed = multiplier;
+	}
+
+	/**
+	 * Converts ASCII lower case letters to upper case, as SQLite does when
+	 * comparing keywords.
+	 *
+	 * @param c the char to convert
+	 */
+	private static char fold(char c) {
+		return c >= 'a' && c <= 'z' ? (char) (c - ('a' - 'A')) : c;
+	}
+
+	/**
+	 * Computes the case-insensitive hash of a range of chars.
+	 *
+	 * @param input      the chars to hash
+	 * @param start      the index of the first char
+	 * @param end        the index after the last char
+	 * @param multiplier the multiplier of the hash function
+	 */
+	private static int hash(CharSequence input, int start, int end, int multiplier) {
+		int h = end - start;
+		for (int i = start; i < end; i++) {
+			h = h * multiplier + fold(input.charAt(i));
+		}
+		return h ^ (h >>> 15);
 	}
 
 	/**
@@ -93,4 +167,28 @@ public enum Keyword implements Node.KeywordOrOperator {
 	public static Optional<Keyword> from(String symbol) {
 		return Optional.ofNullable(keywords.get(symbol.toUpperCase()));
 	}
+
+	/**
+	 * Returns the Keyword matching a range of chars, ignoring ASCII case,
+	 * or null if the range is not a keyword.
+	 * <p>
+	 * The keyword is found with a perfect hash of the chars, without
+	 * allocating.
+	 *
+	 * @param input the chars to match
+	 * @param start the index of the first char
+	 * @param end   the index after the last char
+	 */
+	public static Keyword lookup(CharSequence input, int start, int end) {
+		int length = end - start;
+		if (length < shortest || length > longest) return null;
+
+		Keyword keyword = table[hash(input, start, end, seed) & (table.length - 1)];
+		if (keyword == null || keyword.name.length() != length) return null;
+
+		for (int i = 0; i < length; i++) {
+			if (fold(input.charAt(start + i)) != keyword.name.charAt(i)) return null;
+		}
+		return keyword;
+	}
 }
@@ -58,7 +58,7 @@ public abstract class LiteralValue extends Expression {
 			} else if (context.tryConsume(MINUS)) {
 				num.sign = Sign.Minus;
 			}
-			num.value = context.consume(Token.Literal.Numeric.class).value;
+			num.value = context.consume(Token.Literal.Numeric.class).value();
 			return num;
 		}
 
@@ -80,7 +80,7 @@ public abstract class LiteralValue extends Expression {
 		 */
 		public static Text parse(ParserContext context) {
 			Text text = new Text();
-			text.value = context.consume(Token.Literal.Text.class).value;
+			text.value = context.consume(Token.Literal.Text.class).value();
 			return text;
 		}
 
@@ -2,8 +2,10 @@ package sqlartan.core.ast;
 
 import sqlartan.core.ast.gen.Builder;
 import sqlartan.core.ast.token.Token;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -59,12 +61,30 @@ public enum Operator implements Node.KeywordOrOperator {
 	 */
 	public static final Map<String, Operator> operators;
 
+	/**
+	 * Single char operators, indexed by their symbol
+	 */
+	private static final Operator[] singles = new Operator[128];
+
+	/**
+	 * Symbols of the operators of two chars, including the "==" and "!="
+	 * aliases of EQ and NOT_EQ
+	 */
+	private static final String[] pairs;
+
+	/**
+	 * Operators matching the symbols in pairs
+	 */
+	private static final Operator[] pairOperators;
+
 	/**
 	 * Initialize static structures
 	 */
 	static {
 		int max_length = 0;
 		Map<String, Operator> ops = new HashMap<>();
+		List<String> pair_symbols = new ArrayList<>();
+		List<Operator> pair_operators = new ArrayList<>();
 
 		for (Operator op : values()) {
 			String symbol = op.symbol;
@@ -78,8 +98,22 @@ public enum Operator implements Node.KeywordOrOperator {
 			if (symbol.length() > max_length) {
 				max_length = symbol.length();
 			}
+
+			if (symbol.length() == 1) {
+				singles[symbol.charAt(0)] = op;
+			} else if (symbol.length() == 2) {
+				pair_symbols.add(symbol);
+				pair_operators.add(op);
+			}
 		}
 
+		pair_symbols.add("==");
+		pair_operators.add(EQ);
+		pair_symbols.add("!=");
+		pair_operators.add(NOT_EQ);
+		pairs = pair_symbols.toArray(new String[0]);
+		pairOperators = pair_operators.toArray(new Operator[0]);
+
 		maxLength = max_length;
 		operators = Collections.unmodifiableMap(ops);
 	}
@@ -90,4 +124,32 @@ public enum Operator implements Node.KeywordOrOperator {
 	public static Optional<Operator> from(String symbol) {
 		return Optional.ofNullable(operators.get(symbol));
 	}
+
+	/**
+	 * Returns the Operator matching a range of chars, or null if the range
+	 * is not an operator, without allocating.
+	 * <p>
+	 * The "==" and "!=" symbols are recognized as EQ and NOT_EQ.
+	 *
+	 * @param input the chars to match
+	 * @param start the index of the first char
+	 * @param end   the index after the last char
+	 */
+	public static Operator lookup(CharSequence input, int start, int end) {
+		char first = input.charAt(start);
+		switch (end - start) {
+			case 1:
+				return first < singles.length ? singles[first] : null;
+
+			case 2:
+				char second = input.charAt(start + 1);
+				for (int i = 0; i < pairs.length; i++) {
+					if (pairs[i].charAt(0) == first && pairs[i].charAt(1) == second) return pairOperators[i];
+				}
+				return null;
+
+			default:
+				return null;
+		}
+	}
 }
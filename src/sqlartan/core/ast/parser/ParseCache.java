@@ -0,0 +1,240 @@
+package sqlartan.core.ast.parser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A bounded cache of parsed SQL queries.
+ * <p>
+ * Results are keyed by the SQL text and the identity of the parser used,
+ * the least recently used ones are evicted once the capacity is reached.
+ * A method reference creates a new parser each time it is evaluated,
+ * callers must keep their parser in a constant for lookups to hit.
+ * Failures are cached as well, parsing an invalid query again throws the
+ * same exception.
+ * <p>
+ * Cached nodes are shared between every caller parsing the same query and
+ * must not be modified. Callers that modify the parsed tree must use
+ * Parser.parse() directly to obtain their own copy.
+ * <p>
+ * This class is thread-safe. Parsing is done outside of the lock, the same
+ * query parsed concurrently by multiple threads may be parsed more than
+ * once.
+ */
+public class ParseCache {
+	/**
+	 * The cache shared by the whole application
+	 */
+	public static final ParseCache shared = new ParseCache(1024);
+
+	/**
+	 * The key of a cache entry
+	 */
+	private static class Key {
+		/**
+		 * The parser used, compared by identity
+		 */
+		private final Parser<?> parser;
+
+		/**
+		 * The SQL text
+		 */
+		private final String sql;
+
+		/**
+		 * @param parser the parser used
+		 * @param sql    the SQL text
+		 */
+		private Key(Parser<?> parser, String sql) {
+			this.parser = parser;
+			this.sql = sql;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof Key)) return false;
+			Key key = (Key) o;
+			return parser == key.parser && sql.equals(key.sql);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(parser) + sql.hashCode();
+		}
+	}
+
+	/**
+	 * The result of a parser, either a node or a failure
+	 */
+	private static class Entry {
+		/**
+		 * The parsed node, null if the parser failed
+		 */
+		private final Object node;
+
+		/**
+		 * The parse failure, null if the parser succeeded
+		 */
+		private final ParseException failure;
+
+		/**
+		 * @param node    the parsed node
+		 * @param failure the parse failure
+		 */
+		private Entry(Object node, ParseException failure) {
+			this.node = node;
+			this.failure = failure;
+		}
+	}
+
+	/**
+	 * The cached entries, in access order, bounded by a capacity
+	 */
+	private static class EntryMap extends LinkedHashMap<Key, ParseCache.Entry> {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The maximum number of entries
+		 */
+		private final int capacity;
+
+		/**
+		 * @param capacity the maximum number of entries
+		 */
+		private EntryMap(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, ParseCache.Entry> eldest) {
+			return size() > capacity;
+		}
+	}
+
+	/**
+	 * The maximum number of entries
+	 */
+	private final int capacity;
+
+	/**
+	 * The cached entries
+	 */
+	private final EntryMap entries;
+
+	/**
+	 * The number of lookups served from the cache
+	 */
+	private long hits;
+
+	/**
+	 * The number of lookups that required parsing
+	 */
+	private long misses;
+
+	/**
+	 * @param capacity the maximum number of cached queries
+	 */
+	public ParseCache(int capacity) {
+		if (capacity < 1) throw new IllegalArgumentException("Capacity must be at least 1");
+		this.capacity = capacity;
+		this.entries = new EntryMap(capacity);
+	}
+
+	/**
+	 * Parses a SQL query, reusing the result of a previous parse of the same
+	 * query with the same parser.
+	 *
+	 * @param sql    the SQL query to parse
+	 * @param parser the parser to use for this query
+	 * @param <T>    the type of result of the parser function
+	 * @return the shared result of the parser, which must not be modified
+	 *
+	 * @throws ParseException if the source is invalid for the given parser
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T parse(String sql, Parser<T> parser) throws ParseException {
+		Key key = new Key(parser, sql);
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(key);
+			if (entry != null) {
+				hits++;
+			} else {
+				misses++;
+			}
+		}
+
+		if (entry == null) {
+			try {
+				entry = new Entry(Parser.parse(sql, parser), null);
+			} catch (ParseException e) {
+				entry = new Entry(null, e);
+			}
+			synchronized (this) {
+				entries.put(key, entry);
+			}
+		}
+
+		if (entry.failure != null) throw entry.failure;
+		return (T) entry.node;
+	}
+
+	/**
+	 * Attempts to parse a SQL query, reusing the result of a previous parse
+	 * of the same query with the same parser.
+	 * Similar to parse() but returns Optional.empty() is the source is invalid.
+	 *
+	 * @param sql    the SQL query to parse
+	 * @param parser the parser to use for this query
+	 * @param <T>    the type of result of the parser function
+	 */
+	public <T> Optional<T> tryParse(String sql, Parser<T> parser) {
+		try {
+			return Optional.of(parse(sql, parser));
+		} catch (ParseException e) {
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Removes every entry from the cache.
+	 * <p>
+	 * Entries are keyed by the SQL text and never become invalid, but the
+	 * definitions of dropped or altered structures are not used anymore
+	 * once the schema changes.
+	 */
+	public synchronized void invalidate() {
+		entries.clear();
+	}
+
+	/**
+	 * Returns the number of lookups served from the cache.
+	 */
+	public synchronized long hits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that required parsing.
+	 */
+	public synchronized long misses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of cached queries.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the maximum number of cached queries.
+	 */
+	public int capacity() {
+		return capacity;
+	}
+}
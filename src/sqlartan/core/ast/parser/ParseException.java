@@ -10,14 +10,14 @@ public class ParseException extends Exception {
 	/**
 	 * The SQL source being parsed
 	 */
-	public final String source;
+	public final CharSequence source;
 
 	/**
 	 * The offset of the parser when the error occurred
 	 */
 	public final int offset;
 
-	public ParseException(String message, String source, int offset) {
+	public ParseException(String message, CharSequence source, int offset) {
 		super(message);
 		this.source = source;
 		this.offset = offset;
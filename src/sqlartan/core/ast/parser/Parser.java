@@ -2,6 +2,7 @@ package sqlartan.core.ast.parser;
 
 import sqlartan.core.ast.token.Token;
 import sqlartan.core.ast.token.TokenSource;
+import sqlartan.core.jfr.Flight;
 import java.util.Optional;
 
 /**
@@ -27,6 +28,18 @@ public interface Parser<T> {
 	 */
 	T parse(ParserContext context) throws FastParseException;
 
+	/**
+	 * Wraps a parser so that its results are memoized by the context, if
+	 * memoization is enabled.
+	 *
+	 * @param parser the parser to wrap
+	 * @param <T>    the type of result of the parser function
+	 * @see ParserContext#memoize(Parser)
+	 */
+	static <T> Parser<T> memoized(Parser<T> parser) {
+		return context -> context.memoize(parser);
+	}
+
 	/**
 	 * Helper method for parsing SQL.
 	 * <p>
@@ -45,19 +58,26 @@ public interface Parser<T> {
 	 * @throws ParseException if the source is invalid for the given parser
 	 */
 	static <T> T parse(String sql, Parser<T> parser, boolean partial) throws ParseException {
-		TokenSource source = TokenSource.from(sql);
-		ParserContext context = new ParserContext(source);
+		Flight.Parse event = Flight.parse();
+		boolean success = false;
 		try {
-			T res = parser.parse(context);
-			if (source.inTransaction()) {
-				throw new ParseException("Unterminated transactional consumption of the token source",
-					source.current().source, source.current().offset);
-			} else if (partial || !(context.current() instanceof Token.EndOfStream)) {
-				throw ParseException.UnexpectedCurrentToken;
+			TokenSource source = TokenSource.from(sql);
+			ParserContext context = new ParserContext(source);
+			try {
+				T res = parser.parse(context);
+				if (source.inTransaction()) {
+					throw new ParseException("Unterminated transactional consumption of the token source",
+						source.current().source, source.current().offset);
+				} else if (partial || !(context.current() instanceof Token.EndOfStream)) {
+					throw ParseException.UnexpectedCurrentToken;
+				}
+				success = true;
+				return res;
+			} catch (FastParseException e) {
+				throw e.materialize(context);
 			}
-			return res;
-		} catch (FastParseException e) {
-			throw e.materialize(context);
+		} finally {
+			event.record(sql, success);
 		}
 	}
 
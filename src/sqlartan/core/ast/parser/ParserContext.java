@@ -6,7 +6,9 @@ import sqlartan.core.ast.token.TokenSource;
 import sqlartan.core.ast.token.Tokenizable;
 import sqlartan.util.Matching;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Supplier;
 import static sqlartan.core.ast.Operator.COMMA;
@@ -25,13 +27,73 @@ public class ParserContext {
 	 */
 	private final TokenSource source;
 
+	/**
+	 * The maximum number of memoized results, 0 if memoization is disabled
+	 */
+	private final int memoCapacity;
+
+	/**
+	 * Memoized results, by parser and by location in the token source
+	 */
+	private Map<Parser<?>, Memo[]> memos;
+
+	/**
+	 * The number of memoized results
+	 */
+	private int memoSize;
+
+	/**
+	 * The result of a parser at a given location in the token source.
+	 */
+	private static class Memo {
+		/**
+		 * The produced node, null if the parser failed
+		 */
+		private final Object node;
+
+		/**
+		 * The exception thrown by the parser, null if it succeeded
+		 */
+		private final FastParseException failure;
+
+		/**
+		 * The location of the current token after the parser returned
+		 */
+		private final int end;
+
+		/**
+		 * @param node    the produced node
+		 * @param failure the exception thrown by the parser
+		 * @param end     the location of the current token after the parser
+		 */
+		private Memo(Object node, FastParseException failure, int end) {
+			this.node = node;
+			this.failure = failure;
+			this.end = end;
+		}
+	}
+
 	/**
 	 * Constructs a new parsing context using the given token source.
 	 *
 	 * @param source the token source to use
 	 */
 	public ParserContext(TokenSource source) {
+		this(source, 0);
+	}
+
+	/**
+	 * Constructs a new parsing context using the given token source, with
+	 * memoization of parsers results.
+	 *
+	 * @param source       the token source to use
+	 * @param memoCapacity the maximum number of memoized results, 0 to
+	 *                     disable memoization
+	 */
+	public ParserContext(TokenSource source, int memoCapacity) {
+		if (memoCapacity < 0) throw new IllegalArgumentException("Memo capacity cannot be negative");
 		this.source = source;
+		this.memoCapacity = memoCapacity;
 	}
 
 	/**
@@ -498,6 +560,54 @@ public class ParserContext {
 		}
 	}
 
+	/**
+	 * Executes a parser, reusing its result if it was already executed at
+	 * the current location.
+	 * <p>
+	 * Results are keyed by the identity of the parser and the location in
+	 * the token source. A parser executed again after backtracking returns
+	 * the same node, or throws the same exception, and moves the source to
+	 * the same location without parsing again. Parsers must only depend on
+	 * the token source for this to be correct.
+	 * <p>
+	 * Once the capacity of the context is reached, new results are not
+	 * memoized anymore. If memoization is disabled, the parser is simply
+	 * executed.
+	 *
+	 * @param parser the parser to execute
+	 * @param <N>    the type of node produced by the parser
+	 * @return the node produced by the parser
+	 */
+	@SuppressWarnings("unchecked")
+	public <N> N memoize(Parser<N> parser) {
+		if (memoCapacity == 0) return parser.parse(this);
+		if (memos == null) memos = new IdentityHashMap<>();
+
+		int start = source.cursor();
+		Memo[] results = memos.computeIfAbsent(parser, p -> new Memo[source.size()]);
+		Memo memo = results[start];
+		if (memo != null) {
+			source.seek(memo.end);
+			if (memo.failure != null) throw memo.failure;
+			return (N) memo.node;
+		}
+
+		try {
+			N node = parser.parse(this);
+			if (memoSize < memoCapacity) {
+				results[start] = new Memo(node, null, source.cursor());
+				memoSize++;
+			}
+			return node;
+		} catch (FastParseException e) {
+			if (memoSize < memoCapacity) {
+				results[start] = new Memo(null, e, source.cursor());
+				memoSize++;
+			}
+			throw e;
+		}
+	}
+
 	/**
 	 * Binds a Parser to this ParserContext.
 	 * <p>
@@ -4,29 +4,57 @@ import sqlartan.core.ast.Node;
 
 /**
  * Input source token
+ * <p>
+ * Tokens only record their location in the source. The text of a token is
+ * read from the source when its value is first requested.
  */
 public abstract class Token implements Tokenizable<Token> {
 	/**
 	 * The SQL source from which this token is extracted
 	 */
-	public final String source;
+	public final CharSequence source;
 
 	/**
 	 * The offset of this token in the source SQL query
 	 */
 	public final int offset;
 
+	/**
+	 * The length of this token in the source SQL query
+	 */
+	public final int length;
+
 	/**
 	 * Constructs a token from a given source and at a given offset.
 	 *
 	 * @param source the SQL source from which this token is read
 	 * @param offset the offset of the token in the source
+	 * @param length the length of the token in the source
 	 */
-	protected Token(String source, int offset) {
+	protected Token(CharSequence source, int offset, int length) {
 		this.source = source;
 		this.offset = offset;
+		this.length = length;
 	}
 
+	/**
+	 * Returns the offset of the char following this token in the source.
+	 */
+	public int end() {
+		return offset + length;
+	}
+
+	/**
+	 * Returns a copy of this token at another location.
+	 * <p>
+	 * Used by the incremental tokenizer to reuse tokens that were moved by
+	 * an edit of the source without reading them again.
+	 *
+	 * @param source the source SQL from which the token is read
+	 * @param offset the offset of the token in the source query
+	 */
+	public abstract Token relocate(CharSequence source, int offset);
+
 	/**
 	 * Returns the prefix to use when serializing this token to String.
 	 */
@@ -58,9 +86,14 @@ public abstract class Token implements Tokenizable<Token> {
 	 */
 	public static abstract class StringValued extends Token {
 		/**
-		 * The String value of this token
+		 * The String value of this token, null until first requested
+		 */
+		private String value;
+
+		/**
+		 * Whether the token is enclosed in quotes in the source
 		 */
-		public final String value;
+		protected final boolean quoted;
 
 		/**
 		 * Constructs a new StringValued token with the given value.
@@ -68,17 +101,62 @@ public abstract class Token implements Tokenizable<Token> {
 		 * @param value  the value of this token
 		 * @param source the source SQl from which this token is read
 		 * @param offset the offset of the token in the source query
+		 * @param length the length of the token in the source query
 		 */
-		protected StringValued(String value, String source, int offset) {
-			super(source, offset);
+		protected StringValued(String value, CharSequence source, int offset, int length) {
+			super(source, offset, length);
 			this.value = value;
+			this.quoted = false;
+		}
+
+		/**
+		 * Constructs a new StringValued token whose value is read from the
+		 * source when first requested.
+		 *
+		 * @param source the source SQl from which this token is read
+		 * @param offset the offset of the token in the source query
+		 * @param length the length of the token in the source query
+		 * @param quoted whether the token is enclosed in quotes
+		 */
+		protected StringValued(CharSequence source, int offset, int length, boolean quoted) {
+			super(source, offset, length);
+			this.quoted = quoted;
+		}
+
+		/**
+		 * Constructs a copy of a StringValued token at another location.
+		 * The value of the token is kept if it was already read.
+		 *
+		 * @param token  the token to copy
+		 * @param source the source SQl from which this token is read
+		 * @param offset the offset of the token in the source query
+		 */
+		protected StringValued(StringValued token, CharSequence source, int offset) {
+			super(source, offset, token.length);
+			this.value = token.value;
+			this.quoted = token.quoted;
 		}
 
 		/**
 		 * Returns the value of this token.
 		 */
 		public String value() {
-			return value;
+			String v = value;
+			if (v == null) {
+				int trim = quoted ? 1 : 0;
+				v = unescape(source.subSequence(offset + trim, offset + length - trim).toString());
+				value = v;
+			}
+			return v;
+		}
+
+		/**
+		 * Decodes the raw text of this token read from the source.
+		 *
+		 * @param raw the text of the token, without enclosing quotes
+		 */
+		protected String unescape(String raw) {
+			return raw;
 		}
 
 		/**
@@ -86,7 +164,7 @@ public abstract class Token implements Tokenizable<Token> {
 		 * Since the value is a String, the value itself is returned.
 		 */
 		@Override
-		public String stringValue() { return value; }
+		public String stringValue() { return value(); }
 	}
 
 	/**
@@ -108,18 +186,48 @@ public abstract class Token implements Tokenizable<Token> {
 		 *               to text literals.
 		 * @param source the source SQL from which this token is read
 		 * @param offset the offset of the token in the source query
+		 * @param length the length of the token in the source query
 		 */
-		private Identifier(String value, boolean strict, String source, int offset) {
-			super(value, source, offset);
+		private Identifier(String value, boolean strict, CharSequence source, int offset, int length) {
+			super(value, source, offset, length);
 			this.strict = strict;
 		}
 
+		/**
+		 * Constructs a new identifier token read from the source.
+		 *
+		 * @param source the source SQL from which this token is read
+		 * @param offset the offset of the token in the source query
+		 * @param length the length of the token in the source query
+		 * @param quoted whether the identifier is enclosed in quotes
+		 * @param strict whether the identifier was strictly defined or not
+		 */
+		private Identifier(CharSequence source, int offset, int length, boolean quoted, boolean strict) {
+			super(source, offset, length, quoted);
+			this.strict = strict;
+		}
+
+		/**
+		 * @param token  the identifier to copy
+		 * @param source the source SQL from which this token is read
+		 * @param offset the offset of the token in the source query
+		 */
+		private Identifier(Identifier token, CharSequence source, int offset) {
+			super(token, source, offset);
+			this.strict = token.strict;
+		}
+
 		/**
 		 * Implicitly casts this identifier to a text literal.
 		 * This function always succeeds, even if the identifier was strict.
 		 */
 		public Literal.Text toLiteral() {
-			return Literal.fromText(value, source, offset);
+			return Literal.fromText(value(), source, offset, length);
+		}
+
+		@Override
+		public Identifier relocate(CharSequence source, int offset) {
+			return new Identifier(this, source, offset);
 		}
 
 		@Override
@@ -134,9 +242,24 @@ public abstract class Token implements Tokenizable<Token> {
 		 *                   converted to text literals.
 		 * @param source     the source SQL from which this token is read
 		 * @param offset     the offset of the token in the source query
+		 * @param length     the length of the token in the source query
 		 */
-		public static Identifier from(String identifier, boolean strict, String source, int offset) {
-			return new Identifier(identifier, strict, source, offset);
+		public static Identifier from(String identifier, boolean strict, CharSequence source, int offset, int length) {
+			return new Identifier(identifier, strict, source, offset, length);
+		}
+
+		/**
+		 * Builds a new identifier token whose name is read from the source
+		 * when first requested.
+		 *
+		 * @param source the source SQL from which this token is read
+		 * @param offset the offset of the token in the source query
+		 * @param length the length of the token in the source query
+		 * @param quoted whether the identifier is enclosed in quotes
+		 * @param strict whether the identifier was strictly defined or not
+		 */
+		public static Identifier at(CharSequence source, int offset, int length, boolean quoted, boolean strict) {
+			return new Identifier(source, offset, length, quoted, strict);
 		}
 	}
 
@@ -148,9 +271,29 @@ public abstract class Token implements Tokenizable<Token> {
 		 * @param value  the literal value of this token as String
 		 * @param source the source SQL from which this token is read
 		 * @param offset the offset of the token in the source query
+		 * @param length the length of the token in the source query
+		 */
+		private Literal(String value, CharSequence source, int offset, int length) {
+			super(value, source, offset, length);
+		}
+
+		/**
+		 * @param source the source SQL from which this token is read
+		 * @param offset the offset of the token in the source query
+		 * @param length the length of the token in the source query
+		 * @param quoted whether the literal is enclosed in quotes
 		 */
-		private Literal(String value, String source, int offset) {
-			super(value, source, offset);
+		private Literal(CharSequence source, int offset, int length, boolean quoted) {
+			super(source, offset, length, quoted);
+		}
+
+		/**
+		 * @param token  the literal to copy
+		 * @param source the source SQL from which this token is read
+		 * @param offset the offset of the token in the source query
+		 */
+		private Literal(Literal token, CharSequence source, int offset) {
+			super(token, source, offset);
 		}
 
 		@Override
@@ -164,16 +307,50 @@ public abstract class Token implements Tokenizable<Token> {
 			 * @param value  the literal value of this token as String
 			 * @param source the source SQL from which this token is read
 			 * @param offset the offset of the token in the source query
+			 * @param length the length of the token in the source query
+			 */
+			private Text(String value, CharSequence source, int offset, int length) {
+				super(value, source, offset, length);
+			}
+
+			/**
+			 * @param source the source SQL from which this token is read
+			 * @param offset the offset of the token in the source query
+			 * @param length the length of the token in the source query
+			 */
+			private Text(CharSequence source, int offset, int length) {
+				super(source, offset, length, true);
+			}
+
+			/**
+			 * @param token  the literal to copy
+			 * @param source the source SQL from which this token is read
+			 * @param offset the offset of the token in the source query
 			 */
-			private Text(String value, String source, int offset) {
-				super(value, source, offset);
+			private Text(Text token, CharSequence source, int offset) {
+				super(token, source, offset);
+			}
+
+			@Override
+			public Text relocate(CharSequence source, int offset) {
+				return new Text(this, source, offset);
+			}
+
+			/**
+			 * Replaces escaped single quotes in quoted literals.
+			 *
+			 * @param raw the text of the literal, without enclosing quotes
+			 */
+			@Override
+			protected String unescape(String raw) {
+				return quoted && raw.indexOf('\'') >= 0 ? raw.replace("''", "'") : raw;
 			}
 
 			/**
 			 * Implicitly converts this text literal to an identifier.
 			 */
 			public Identifier toIdentifier() {
-				return Identifier.from(value, false, source, offset);
+				return Identifier.from(value(), false, source, offset, length);
 			}
 		}
 
@@ -183,9 +360,22 @@ public abstract class Token implements Tokenizable<Token> {
 		 * @param text   the literal value of this token
 		 * @param source the source SQL from which this token is read
 		 * @param offset the offset of the token in the source query
+		 * @param length the length of the token in the source query
 		 */
-		public static Text fromText(String text, String source, int offset) {
-			return new Text(text, source, offset);
+		public static Text fromText(String text, CharSequence source, int offset, int length) {
+			return new Text(text, source, offset, length);
+		}
+
+		/**
+		 * Builds a new quoted Text literal token whose value is read from
+		 * the source when first requested.
+		 *
+		 * @param source the source SQL from which this token is read
+		 * @param offset the offset of the token in the source query
+		 * @param length the length of the token in the source query
+		 */
+		public static Text textAt(CharSequence source, int offset, int length) {
+			return new Text(source, offset, length);
 		}
 
 		/**
@@ -196,9 +386,33 @@ public abstract class Token implements Tokenizable<Token> {
 			 * @param value  the literal value of this token as String
 			 * @param source the source SQL from which this token is read
 			 * @param offset the offset of the token in the source query
+			 * @param length the length of the token in the source query
 			 */
-			private Numeric(String value, String source, int offset) {
-				super(value, source, offset);
+			private Numeric(String value, CharSequence source, int offset, int length) {
+				super(value, source, offset, length);
+			}
+
+			/**
+			 * @param source the source SQL from which this token is read
+			 * @param offset the offset of the token in the source query
+			 * @param length the length of the token in the source query
+			 */
+			private Numeric(CharSequence source, int offset, int length) {
+				super(source, offset, length, false);
+			}
+
+			/**
+			 * @param token  the literal to copy
+			 * @param source the source SQL from which this token is read
+			 * @param offset the offset of the token in the source query
+			 */
+			private Numeric(Numeric token, CharSequence source, int offset) {
+				super(token, source, offset);
+			}
+
+			@Override
+			public Numeric relocate(CharSequence source, int offset) {
+				return new Numeric(this, source, offset);
 			}
 		}
 
@@ -208,9 +422,22 @@ public abstract class Token implements Tokenizable<Token> {
 		 * @param number the literal value of this token
 		 * @param source the source SQL from which this token is read
 		 * @param offset the offset of the token in the source query
+		 * @param length the length of the token in the source query
 		 */
-		public static Numeric fromNumeric(String number, String source, int offset) {
-			return new Numeric(number, source, offset);
+		public static Numeric fromNumeric(String number, CharSequence source, int offset, int length) {
+			return new Numeric(number, source, offset, length);
+		}
+
+		/**
+		 * Builds a new Numeric literal token whose value is read from the
+		 * source when first requested.
+		 *
+		 * @param source the source SQL from which this token is read
+		 * @param offset the offset of the token in the source query
+		 * @param length the length of the token in the source query
+		 */
+		public static Numeric numericAt(CharSequence source, int offset, int length) {
+			return new Numeric(source, offset, length);
 		}
 	}
 
@@ -221,9 +448,10 @@ public abstract class Token implements Tokenizable<Token> {
 		/**
 		 * @param source the source SQL from which this token is read
 		 * @param offset the offset of the token in the source query
+		 * @param length the length of the token in the source query
 		 */
-		private Placeholder(String source, int offset) {
-			super(source, offset);
+		private Placeholder(CharSequence source, int offset, int length) {
+			super(source, offset, length);
 		}
 
 		@Override
@@ -242,12 +470,18 @@ public abstract class Token implements Tokenizable<Token> {
 			 * @param index  the placeholder index
 			 * @param source the source SQL from which this token is read
 			 * @param offset the offset of the token in the source query
+			 * @param length the length of the token in the source query
 			 */
-			private Indexed(int index, String source, int offset) {
-				super(source, offset);
+			private Indexed(int index, CharSequence source, int offset, int length) {
+				super(source, offset, length);
 				this.index = index;
 			}
 
+			@Override
+			public Indexed relocate(CharSequence source, int offset) {
+				return new Indexed(index, source, offset, length);
+			}
+
 			@Override
 			public String stringValue() { return "?" + index; }
 		}
@@ -258,9 +492,10 @@ public abstract class Token implements Tokenizable<Token> {
 		 * @param index  the placeholder index
 		 * @param source the source SQL from which this token is read
 		 * @param offset the offset of the token in the source query
+		 * @param length the length of the token in the source query
 		 */
-		public static Indexed fromIndex(int index, String source, int offset) {
-			return new Indexed(index, source, offset);
+		public static Indexed fromIndex(int index, CharSequence source, int offset, int length) {
+			return new Indexed(index, source, offset, length);
 		}
 
 		/**
@@ -276,12 +511,18 @@ public abstract class Token implements Tokenizable<Token> {
 			 * @param name   the placeholder name
 			 * @param source the source SQL from which this token is read
 			 * @param offset the offset of the token in the source query
+			 * @param length the length of the token in the source query
 			 */
-			private Named(String name, String source, int offset) {
-				super(source, offset);
+			private Named(String name, CharSequence source, int offset, int length) {
+				super(source, offset, length);
 				this.name = name;
 			}
 
+			@Override
+			public Named relocate(CharSequence source, int offset) {
+				return new Named(name, source, offset, length);
+			}
+
 			@Override
 			public String stringValue() { return ":" + name; }
 		}
@@ -292,9 +533,10 @@ public abstract class Token implements Tokenizable<Token> {
 		 * @param name   the placeholder name
 		 * @param source the source SQL from which this token is read
 		 * @param offset the offset of the token in the source query
+		 * @param length the length of the token in the source query
 		 */
-		public static Named fromName(String name, String source, int offset) {
-			return new Named(name, source, offset);
+		public static Named fromName(String name, CharSequence source, int offset, int length) {
+			return new Named(name, source, offset, length);
 		}
 	}
 
@@ -316,9 +558,10 @@ public abstract class Token implements Tokenizable<Token> {
 		 * @param ref    wrapped value of this token
 		 * @param source the source SQL from which this token is read
 		 * @param offset the offset of the token in the source query
+		 * @param length the length of the token in the source query
 		 */
-		protected Wrapper(T ref, String source, int offset) {
-			super(source, offset);
+		protected Wrapper(T ref, CharSequence source, int offset, int length) {
+			super(source, offset, length);
 			this.ref = ref;
 		}
 
@@ -333,8 +576,14 @@ public abstract class Token implements Tokenizable<Token> {
 		 *
 		 * @param source the source SQL from which this token is read
 		 * @param offset the offset of the token in the source query
+		 * @param length the length of the token in the source query
 		 */
-		public abstract Wrapper<T> at(String source, int offset);
+		public abstract Wrapper<T> at(CharSequence source, int offset, int length);
+
+		@Override
+		public Wrapper<T> relocate(CharSequence source, int offset) {
+			return at(source, offset, length);
+		}
 
 		/**
 		 * Two Wrapper token are equals iff their wrapped value are equals.
@@ -361,9 +610,10 @@ public abstract class Token implements Tokenizable<Token> {
 		 * @param ref    the SQL keyword to wrap
 		 * @param source the source SQL from which this token is read
 		 * @param offset the offset of the token in the source query
+		 * @param length the length of the token in the source query
 		 */
-		private Keyword(sqlartan.core.ast.Keyword ref, String source, int offset) {
-			super(ref, source, offset);
+		private Keyword(sqlartan.core.ast.Keyword ref, CharSequence source, int offset, int length) {
+			super(ref, source, offset, length);
 		}
 
 		/**
@@ -371,10 +621,11 @@ public abstract class Token implements Tokenizable<Token> {
 		 *
 		 * @param source the source SQL from which this token is read
 		 * @param offset the offset of the token in the source query
+		 * @param length the length of the token in the source query
 		 */
 		@Override
-		public Keyword at(String source, int offset) {
-			return new Keyword(ref, source, offset);
+		public Keyword at(CharSequence source, int offset, int length) {
+			return new Keyword(ref, source, offset, length);
 		}
 
 		@Override
@@ -390,7 +641,7 @@ public abstract class Token implements Tokenizable<Token> {
 		 * @param keyword the SQL keyword to wrap
 		 */
 		public static Keyword dummyFor(sqlartan.core.ast.Keyword keyword) {
-			return new Keyword(keyword, null, -1);
+			return new Keyword(keyword, null, -1, 0);
 		}
 	}
 
@@ -402,9 +653,10 @@ public abstract class Token implements Tokenizable<Token> {
 		 * @param ref    the SQL operator to wrap
 		 * @param source the source SQL from which this token is read
 		 * @param offset the offset of the token in the source query
+		 * @param length the length of the token in the source query
 		 */
-		private Operator(sqlartan.core.ast.Operator ref, String source, int offset) {
-			super(ref, source, offset);
+		private Operator(sqlartan.core.ast.Operator ref, CharSequence source, int offset, int length) {
+			super(ref, source, offset, length);
 		}
 
 		/**
@@ -412,10 +664,11 @@ public abstract class Token implements Tokenizable<Token> {
 		 *
 		 * @param source the source SQL from which this token is read
 		 * @param offset the offset of the token in the source query
+		 * @param length the length of the token in the source query
 		 */
 		@Override
-		public Operator at(String source, int offset) {
-			return new Operator(ref, source, offset);
+		public Operator at(CharSequence source, int offset, int length) {
+			return new Operator(ref, source, offset, length);
 		}
 
 		@Override
@@ -431,7 +684,7 @@ public abstract class Token implements Tokenizable<Token> {
 		 * @param operator the SQL operator to wrap
 		 */
 		public static Operator dummyFor(sqlartan.core.ast.Operator operator) {
-			return new Operator(operator, null, -1);
+			return new Operator(operator, null, -1, 0);
 		}
 	}
 
@@ -443,8 +696,13 @@ public abstract class Token implements Tokenizable<Token> {
 		 * @param source the source SQL from which this token is read
 		 * @param offset the offset of the token in the source query
 		 */
-		private EndOfStream(String source, int offset) {
-			super(source, offset);
+		private EndOfStream(CharSequence source, int offset) {
+			super(source, offset, 0);
+		}
+
+		@Override
+		public EndOfStream relocate(CharSequence source, int offset) {
+			return new EndOfStream(source, offset);
 		}
 
 		@Override
@@ -474,7 +732,7 @@ public abstract class Token implements Tokenizable<Token> {
 		 * @param source the source SQL from which this token is read
 		 * @param offset the offset of the token in the source query
 		 */
-		public static EndOfStream at(String source, int offset) {
+		public static EndOfStream at(CharSequence source, int offset) {
 			return new EndOfStream(source, offset);
 		}
 	}
@@ -72,7 +72,7 @@ public class TokenSource {
 	 * @param sql the SQL query to use
 	 * @throws TokenizeException if the sql query is invalid
 	 */
-	public static TokenSource from(String sql) throws TokenizeException {
+	public static TokenSource from(CharSequence sql) throws TokenizeException {
 		return Tokenizer.tokenize(sql);
 	}
 
@@ -206,6 +206,32 @@ public class TokenSource {
 		return next;
 	}
 
+	/**
+	 * Returns the location of the current token in the token list.
+	 */
+	public int cursor() {
+		return cursor;
+	}
+
+	/**
+	 * Moves the current token to the given location in the token list.
+	 * <p>
+	 * Markers of transactional consumptions are not modified.
+	 *
+	 * @param pos the location of the new current token
+	 */
+	public void seek(int pos) {
+		if (pos < 0 || pos >= length) throw new IndexOutOfBoundsException();
+		setCursor(pos);
+	}
+
+	/**
+	 * Returns the number of tokens in this source.
+	 */
+	public int size() {
+		return length;
+	}
+
 	/**
 	 * Returns a list of the tokens in this source.
 	 */
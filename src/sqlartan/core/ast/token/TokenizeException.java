@@ -11,7 +11,7 @@ public class TokenizeException extends ParseException {
 	 * @param source  the SQL source being tokenized
 	 * @param offset  the offset in the SQL source where the error occurred
 	 */
-	public TokenizeException(String message, String source, int offset) {
+	public TokenizeException(String message, CharSequence source, int offset) {
 		super(message, source, offset);
 	}
 }
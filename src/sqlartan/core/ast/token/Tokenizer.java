@@ -2,6 +2,17 @@ package sqlartan.core.ast.token;
 
 import sqlartan.core.ast.Keyword;
 import sqlartan.core.ast.Operator;
+import sqlartan.core.jfr.Flight;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import static sqlartan.core.ast.token.Tokenizer.NumericState.*;
 import static sqlartan.core.ast.token.Tokenizer.State.*;
 
@@ -10,6 +21,11 @@ import static sqlartan.core.ast.token.Tokenizer.State.*;
  * <p>
  * This class is responsible for turning an SQL query String to a TokenSource
  * consumable by the parser function to parse the SQL language.
+ * <p>
+ * The input is read in place, tokens only record their location in it.
+ * Keywords and operators are recognized without allocating.
+ * Large scripts can be read from a memory-mapped file decoded outside of
+ * the heap.
  */
 public class Tokenizer {
 	/**
@@ -39,55 +55,291 @@ public class Tokenizer {
 	}
 
 	/**
-	 * Returns a slice of the input char array as a String.
+	 * Returns the char at the given index of the input, or a space if the
+	 * index is past the end of the input.
+	 * <p>
+	 * The virtual space at the end of the input ensures that the last token
+	 * is always terminated without copying the input.
+	 *
+	 * @param input  the input of the tokenizer
+	 * @param i      the index of the char
+	 * @param length the length of the input
+	 */
+	private static char at(CharSequence input, int i, int length) {
+		return i < length ? input.charAt(i) : ' ';
+	}
+
+	/**
+	 * Parses a placeholder index without allocating.
 	 *
-	 * @param input the char array to use as a source for the String content
-	 * @param start the index of the first char to include in the result
-	 * @param end   the index of the char after the last one to include in
-	 *              the result.
+	 * @param input the input of the tokenizer
+	 * @param start the index of the first digit
+	 * @param end   the index after the last digit
 	 */
-	private static String slice(char[] input, int start, int end) {
-		return String.valueOf(input, start, end - start);
+	private static int parseIndex(CharSequence input, int start, int end) {
+		int index = 0;
+		for (int i = start; i < end; i++) {
+			index = index * 10 + Character.digit(input.charAt(i), 10);
+		}
+		return index;
+	}
+
+	/**
+	 * Maps a file in memory and decodes its UTF-8 content.
+	 * <p>
+	 * The file is decoded to a direct buffer, outside of the heap. Tokens
+	 * read from the resulting buffer only reference their location in it.
+	 *
+	 * @param channel the file to decode
+	 * @return a buffer containing the decoded content of the file
+	 *
+	 * @throws IOException if the file cannot be read or is too large
+	 */
+	public static CharBuffer decode(FileChannel channel) throws IOException {
+		long size = channel.size();
+		if (size > Integer.MAX_VALUE / 2) throw new IOException("File is too large to be tokenized");
+
+		MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+		                                               .onMalformedInput(CodingErrorAction.REPLACE)
+		                                               .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		// UTF-8 never decodes to more chars than bytes
+		CharBuffer chars = ByteBuffer.allocateDirect((int) size * 2).asCharBuffer();
+		if (size >= 3 && (bytes.get(0) & 0xFF) == 0xEF && (bytes.get(1) & 0xFF) == 0xBB && (bytes.get(2) & 0xFF) == 0xBF) {
+			bytes.position(3);
+		}
+		CoderResult result = decoder.decode(bytes, chars, true);
+		if (result.isError()) result.throwException();
+		decoder.flush(chars);
+		chars.flip();
+		return chars;
+	}
+
+	/**
+	 * Tokenizes the content of a file.
+	 *
+	 * @param channel the file to tokenize
+	 * @throws IOException       if the file cannot be read
+	 * @throws TokenizeException if the source is invalid
+	 */
+	public static TokenSource tokenize(FileChannel channel) throws IOException, TokenizeException {
+		return tokenize(decode(channel));
 	}
 
 	/**
 	 * Transforms the given SQL query to a TokenSource.
+	 * <p>
+	 * The query must not be modified as long as tokens are in use.
 	 *
 	 * @param sql the SQL query to tokenize
 	 * @throws TokenizeException if the source is invalid
 	 */
-	@SuppressWarnings({ "StatementWithEmptyBody", "ConstantConditions" })
-	public static TokenSource tokenize(String sql) throws TokenizeException {
-		// The TokenSource builder to use
+	public static TokenSource tokenize(CharSequence sql) throws TokenizeException {
+		Flight.Tokenize event = Flight.tokenize();
 		TokenSource.Builder builder = TokenSource.builder();
+		TokenSource source = null;
+		try {
+			lex(sql, 0, 0, builder, null);
+			source = builder.build();
+			return source;
+		} finally {
+			event.record(sql.length(), source == null ? 0 : source.size());
+		}
+	}
 
-		// Convert input stream to a char array
-		char[] input = (sql + " ").toCharArray();
-		int length = input.length;
+	/**
+	 * Tokenizes an edited SQL query, reusing the tokens of its previous
+	 * version.
+	 * <p>
+	 * Tokens ending before the edit are kept. The query is lexed again from
+	 * the end of the last of them that cannot be affected by the edit, a
+	 * point where the lexer is known to be between tokens, until the lexer
+	 * reaches the start of a token of the previous version after the edit
+	 * in the same state. The remaining tokens are then moved by the length
+	 * difference of the edit instead of being lexed again.
+	 * <p>
+	 * Tokens of the previous version still reference the previous query,
+	 * they are copied to reference the new one.
+	 *
+	 * @param previous the tokens of the previous version of the query
+	 * @param sql      the edited SQL query
+	 * @param offset   the offset of the edit
+	 * @param removed  the number of chars removed by the edit
+	 * @param inserted the number of chars inserted by the edit
+	 * @throws TokenizeException if the source is invalid
+	 */
+	public static TokenSource retokenize(TokenSource previous, CharSequence sql, int offset, int removed, int inserted) throws TokenizeException {
+		List<Token> tokens = previous.tokens();
+		int delta = inserted - removed;
+		if (offset < 0 || removed < 0 || inserted < 0 || offset + inserted > sql.length()
+			|| tokens.get(tokens.size() - 1).offset != sql.length() - delta) {
+			throw new IllegalArgumentException("Edit does not match the previous tokens");
+		}
 
-		// Current lexer state
-		State state = WHITESPACE;
+		// Find the first token whose lexing could read the edited range
+		int lo = 0;
+		int hi = tokens.size() - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (tokens.get(mid).end() + Operator.maxLength <= offset) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
 
-		// The highest placeholder index encountered
+		TokenSource.Builder builder = TokenSource.builder();
 		int highest_placeholder = 0;
+		for (int k = 0; k < lo; k++) {
+			Token token = tokens.get(k);
+			highest_placeholder = highestPlaceholder(token, highest_placeholder);
+			builder.push(token.source == sql ? token : token.relocate(sql, token.offset));
+		}
+
+		Resync resync = new Resync(tokens, lo, highest_placeholder, offset + removed, delta);
+		int from = lo > 0 ? tokens.get(lo - 1).end() : 0;
+		if (lex(sql, from, highest_placeholder, builder, resync)) {
+			for (int k = resync.index; k < tokens.size(); k++) {
+				Token token = tokens.get(k);
+				builder.push(token.source == sql && delta == 0 ? token : token.relocate(sql, token.offset + delta));
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Returns the highest placeholder index after the given token.
+	 *
+	 * @param token   the token
+	 * @param highest the highest placeholder index before the token
+	 */
+	private static int highestPlaceholder(Token token, int highest) {
+		if (token instanceof Token.Placeholder.Indexed) {
+			return Math.max(highest, ((Token.Placeholder.Indexed) token).index);
+		}
+		return highest;
+	}
+
+	/**
+	 * Detects the point where the tokens of an edited query are the same
+	 * as the ones of its previous version.
+	 */
+	private static class Resync {
+		/**
+		 * The tokens of the previous version
+		 */
+		private final List<Token> tokens;
+
+		/**
+		 * The end of the edit in the previous version
+		 */
+		private final int edit_end;
+
+		/**
+		 * The length difference between the two versions
+		 */
+		private final int delta;
+
+		/**
+		 * The index of the next previous token to compare
+		 */
+		private int index;
+
+		/**
+		 * The highest placeholder index before the next previous token
+		 */
+		private int highest_placeholder;
+
+		/**
+		 * @param tokens              the tokens of the previous version
+		 * @param index               the index of the first token lexed again
+		 * @param highest_placeholder the highest placeholder index before it
+		 * @param edit_end            the end of the edit in the previous version
+		 * @param delta               the length difference of the edit
+		 */
+		private Resync(List<Token> tokens, int index, int highest_placeholder, int edit_end, int delta) {
+			this.tokens = tokens;
+			this.index = index;
+			this.highest_placeholder = highest_placeholder;
+			this.edit_end = edit_end;
+			this.delta = delta;
+		}
+
+		/**
+		 * Checks if the lexer, between two tokens at the given offset, is in
+		 * the same state as the lexer of the previous version was.
+		 * <p>
+		 * The states match if a previous token starts at the same place,
+		 * after the edit, with the same placeholder numbering, and if the
+		 * last token does not change the meaning of the following one.
+		 *
+		 * @param i                   the offset of the lexer in the new version
+		 * @param highest_placeholder the highest placeholder index of the lexer
+		 * @param last                the last token pushed by the lexer
+		 */
+		private boolean matches(int i, int highest_placeholder, Token last) {
+			int previous = i - delta;
+			if (previous < edit_end) return false;
+
+			Token token;
+			while ((token = tokens.get(index)).offset < previous && !(token instanceof Token.EndOfStream)) {
+				this.highest_placeholder = highestPlaceholder(token, this.highest_placeholder);
+				index++;
+			}
+
+			return token.offset == previous
+				&& !(token instanceof Token.EndOfStream)
+				&& this.highest_placeholder == highest_placeholder
+				&& !Keyword.IS.token.equals(last);
+		}
+	}
+
+	/**
+	 * Lexes the given SQL query from the given offset.
+	 * <p>
+	 * The lexer must be between two tokens at the given offset. If a resync
+	 * detector is given, the lexer stops as soon as it matches.
+	 *
+	 * @param sql                 the SQL query to tokenize
+	 * @param from                the offset to start from
+	 * @param highest_placeholder the highest placeholder index before the offset
+	 * @param builder             the builder receiving the tokens
+	 * @param resync              the resync detector, or null
+	 * @return true if the lexer stopped on a resync point, false if the
+	 * end of the query was reached
+	 *
+	 * @throws TokenizeException if the source is invalid
+	 */
+	@SuppressWarnings({ "StatementWithEmptyBody", "ConstantConditions" })
+	private static boolean lex(CharSequence sql, int from, int highest_placeholder, TokenSource.Builder builder, Resync resync) throws TokenizeException {
+		// The input is read in place, index length is a virtual space
+		CharSequence input = sql;
+		int length = input.length();
+
+		// Current lexer state
+		State state = WHITESPACE;
 
 		// The currently active quote char
 		char quote_char = '\0';
 
 		// The start index of the current token
-		int token_start = 0;
+		int token_start = from;
 
 		outer:
-		for (int i = 0; i < length; ++i) {
-			char c = input[i];
+		for (int i = from; i <= length; ++i) {
+			char c = at(input, i, length);
 			switch (state) {
 				case WHITESPACE:
 					if (!Character.isWhitespace(c)) {
+						if (resync != null && resync.matches(i, highest_placeholder, builder.last())) {
+							return true;
+						}
 						token_start = i;
-						if (c == '-' && input[i + 1] == '-') {
+						if (c == '-' && at(input, i + 1, length) == '-') {
 							state = SQL_COMMENT;
 							++i;
-						} else if (c == '/' && input[i + 1] == '*') {
+						} else if (c == '/' && at(input, i + 1, length) == '*') {
 							state = C_COMMENT;
 							i += 2;
 						} else if (c == '?') {
@@ -101,7 +353,7 @@ public class Tokenizer {
 							throw new TokenizeException("Tcl-style placeholders are not supported", sql, token_start);
 						} else if (c == '\'') {
 							state = STRING;
-						} else if ((c == 'x' || c == 'X') && input[i + 1] == '\'') {
+						} else if ((c == 'x' || c == 'X') && at(input, i + 1, length) == '\'') {
 							throw new TokenizeException("BLOB literals are not supported", sql, token_start);
 						} else if (c == '[') {
 							state = IDENTIFIER;
@@ -109,7 +361,7 @@ public class Tokenizer {
 						} else if (c == '"' || c == '`') {
 							state = IDENTIFIER;
 							quote_char = c;
-						} else if (Character.isDigit(c) || (c == '.' && Character.isDigit(input[i + 1]))) {
+						} else if (Character.isDigit(c) || (c == '.' && Character.isDigit(at(input, i + 1, length)))) {
 							state = NUMERIC;
 							--i;
 						} else if (c == '_' || Character.isLetter(c)) {
@@ -124,11 +376,11 @@ public class Tokenizer {
 					if (!Character.isDigit(c)) {
 						if (i - token_start == 1) {
 							++highest_placeholder;
-							builder.push(Token.Placeholder.fromIndex(highest_placeholder, sql, token_start));
+							builder.push(Token.Placeholder.fromIndex(highest_placeholder, sql, token_start, 1));
 						} else {
-							int index = Integer.valueOf(slice(input, token_start + 1, i));
+							int index = parseIndex(input, token_start + 1, i);
 							if (index > highest_placeholder) highest_placeholder = index;
-							builder.push(Token.Placeholder.fromIndex(index, sql, token_start));
+							builder.push(Token.Placeholder.fromIndex(index, sql, token_start, i - token_start));
 						}
 						state = WHITESPACE;
 						--i;
@@ -141,8 +393,8 @@ public class Tokenizer {
 							// Empty named placeholder
 							throw new TokenizeException("Empty named placeholder", sql, token_start);
 						} else {
-							String name = slice(input, token_start + 1, i);
-							builder.push(Token.Placeholder.fromName(name, sql, token_start));
+							String name = input.subSequence(token_start + 1, i).toString();
+							builder.push(Token.Placeholder.fromName(name, sql, token_start, i - token_start));
 						}
 						state = WHITESPACE;
 						--i;
@@ -150,28 +402,26 @@ public class Tokenizer {
 					break;
 
 				case STRING:
-					if (c == '\'') {
-						if (input[i + 1] == '\'') {
+					if (c == '\'' && i < length) {
+						if (at(input, i + 1, length) == '\'') {
 							// Single quote escape
 							++i;
 						} else {
-							String value = slice(input, token_start + 1, i).replace("''", "'");
-							builder.push(Token.Literal.fromText(value, sql, token_start));
+							builder.push(Token.Literal.textAt(sql, token_start, i + 1 - token_start));
 							state = WHITESPACE;
 						}
 					}
 					break;
 
 				case IDENTIFIER:
-					if (c == quote_char) {
-						String fragment = slice(input, token_start + 1, i);
-						builder.push(Token.Identifier.from(fragment, quote_char != '"', sql, token_start));
+					if (c == quote_char && i < length) {
+						builder.push(Token.Identifier.at(sql, token_start, i + 1 - token_start, true, quote_char != '"'));
 						state = WHITESPACE;
 					}
 					break;
 
 				case NUMERIC:
-					if (c == '0' && (input[i + 1] == 'x' || input[i + 1] == 'X')) {
+					if (c == '0' && (at(input, i + 1, length) == 'x' || at(input, i + 1, length) == 'X')) {
 						throw new TokenizeException("Hexadecimal integer literals are not supported", sql, token_start);
 					}
 
@@ -182,8 +432,8 @@ public class Tokenizer {
 
 					int num_begin = i;
 					scan:
-					for (; i < length; ++i) {
-						c = input[i];
+					for (; i <= length; ++i) {
+						c = at(input, i, length);
 						switch (ns) {
 							case INTEGER:
 								if (!Character.isDigit(c)) {
@@ -229,13 +479,11 @@ public class Tokenizer {
 						}
 					}
 
-					String number = String.valueOf(input, token_start, i - token_start);
-
 					if (num_begin == i || (!has_decimal_part && !has_integer_part) || !valid_exponent) {
 						throw new TokenizeException("Malformed number", sql, token_start);
 					}
 
-					builder.push(Token.Literal.fromNumeric(number, sql, token_start));
+					builder.push(Token.Literal.numericAt(sql, token_start, i - token_start));
 
 					state = WHITESPACE;
 					--i;
@@ -243,33 +491,20 @@ public class Tokenizer {
 
 				case ALPHA_FRAGMENT:
 					if (c != '_' && !Character.isLetter(c) && !Character.isDigit(c)) {
-						String fragment = String.valueOf(input, token_start, i - token_start);
-
-						Operator operator;
-						Keyword keyword;
+						int fragment_length = i - token_start;
+						Keyword keyword = Keyword.lookup(input, token_start, i);
 
-						switch (fragment) {
-							case "==":
-								operator = Operator.EQ;
-								break;
-							case "!=":
-								operator = Operator.NOT_EQ;
-								break;
-							default:
-								operator = Operator.from(fragment).orElse(null);
-								break;
-						}
-
-						if (operator != null) {
-							builder.push(operator.token.at(sql, token_start));
-						} else if ((keyword = Keyword.from(fragment).orElse(null)) != null) {
-							if (keyword == Keyword.NOT && builder.last().equals(Keyword.IS.token)) {
+						if (keyword != null) {
+							if (keyword == Keyword.NOT && Keyword.IS.token.equals(builder.last())) {
+								Token is = builder.last();
 								builder.pop();
 								keyword = Keyword.IS_NOT;
+								builder.push(keyword.token.at(sql, is.offset, i - is.offset));
+							} else {
+								builder.push(keyword.token.at(sql, token_start, fragment_length));
 							}
-							builder.push(keyword.token.at(sql, token_start));
 						} else {
-							builder.push(Token.Identifier.from(fragment, false, sql, token_start));
+							builder.push(Token.Identifier.at(sql, token_start, fragment_length, false, false));
 						}
 						state = WHITESPACE;
 						--i;
@@ -278,12 +513,10 @@ public class Tokenizer {
 
 				case SYM_FRAGMENT:
 					if (Character.isLetter(c) || Character.isDigit(c) || Character.isWhitespace(c) || i - token_start >= Operator.maxLength) {
-						String fragment;
 						do {
-							fragment = String.valueOf(input, token_start, i - token_start);
-							Operator operator = Operator.from(fragment).orElse(null);
+							Operator operator = Operator.lookup(input, token_start, i);
 							if (operator != null) {
-								builder.push(operator.token.at(sql, token_start));
+								builder.push(operator.token.at(sql, token_start, i - token_start));
 								state = WHITESPACE;
 								--i;
 								continue outer;
@@ -300,7 +533,7 @@ public class Tokenizer {
 					break;
 
 				case C_COMMENT:
-					if (c == '/' && input[i - 1] == '*') {
+					if (c == '/' && at(input, i - 1, length) == '*') {
 						state = WHITESPACE;
 					}
 					break;
@@ -312,6 +545,6 @@ public class Tokenizer {
 		}
 
 		builder.push(Token.EndOfStream.at(sql, length));
-		return builder.build();
+		return false;
 	}
 }
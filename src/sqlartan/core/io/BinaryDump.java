@@ -0,0 +1,70 @@
+package sqlartan.core.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Constants of the binary dump format.
+ * <p>
+ * A binary dump starts with the 8 bytes magic "SQLADUMP" followed by a
+ * version byte, then a sequence of records, each one introduced by a tag
+ * byte:
+ * <ul>
+ * <li>SCHEMA: an entry of sqlite_master, as four strings: type, name,
+ * table name and SQL (an empty SQL for internal indices).</li>
+ * <li>TABLE: the start of the data of a table, as the name of the table
+ * and the number of columns.</li>
+ * <li>BLOCK: a block of rows of the current table, as the number of rows,
+ * the length of the payload, the payload and the CRC32 of the payload as
+ * a 4 bytes big-endian integer.</li>
+ * <li>TABLE_END: the end of the data of the current table.</li>
+ * <li>END: the end of the dump.</li>
+ * </ul>
+ * Counts and lengths are unsigned varints, strings are a varint length
+ * followed by UTF-8 bytes. In a block payload, each value is a type byte
+ * followed by the value: nothing for NULL, a zig-zag varint for INTEGER,
+ * 8 big-endian bytes for REAL, a string for TEXT and a varint length
+ * followed by the bytes for BLOB.
+ */
+abstract class BinaryDump {
+	static final byte[] MAGIC = "SQLADUMP".getBytes(StandardCharsets.US_ASCII);
+	static final int VERSION = 1;
+
+	static final int SCHEMA = 'S';
+	static final int TABLE = 'T';
+	static final int BLOCK = 'B';
+	static final int TABLE_END = 'E';
+	static final int END = 'Z';
+
+	static final int NULL = 0;
+	static final int INTEGER = 1;
+	static final int REAL = 2;
+	static final int TEXT = 3;
+	static final int BLOB = 4;
+
+	/**
+	 * Checks if a stream contains a binary dump.
+	 * <p>
+	 * The stream must support mark(), it is reset to its initial position
+	 * before returning.
+	 *
+	 * @param in the stream to inspect
+	 * @return true if the stream starts with the binary dump magic
+	 *
+	 * @throws IOException
+	 */
+	static boolean detect(InputStream in) throws IOException {
+		if (!in.markSupported()) throw new IllegalArgumentException("Stream must support mark()");
+
+		in.mark(MAGIC.length);
+		try {
+			for (byte b : MAGIC) {
+				if (in.read() != b) return false;
+			}
+			return true;
+		} finally {
+			in.reset();
+		}
+	}
+}
@@ -0,0 +1,346 @@
+package sqlartan.core.io;
+
+import sqlartan.core.Database;
+import sqlartan.core.PreparedQuery;
+import sqlartan.core.Row;
+import sqlartan.core.ast.BeginStatement;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import static sqlartan.core.io.BinaryDump.*;
+
+/**
+ * Loads a binary dump in a database.
+ * <p>
+ * The schema entries are executed as they are read. Rows are bound to a
+ * prepared INSERT statement and executed in batches of one block, without
+ * parsing any SQL. The whole dump is loaded in a single transaction.
+ */
+public class BinaryDumpReader {
+	/**
+	 * Checks if a stream contains a binary dump.
+	 * <p>
+	 * The stream must support mark(), it is reset to its initial position
+	 * before returning.
+	 *
+	 * @param in the stream to inspect
+	 * @return true if the stream starts with the binary dump magic
+	 *
+	 * @throws IOException
+	 */
+	public static boolean isDump(InputStream in) throws IOException {
+		return BinaryDump.detect(in);
+	}
+
+	/**
+	 * The database in which the dump is loaded
+	 */
+	private final Database database;
+
+	/**
+	 * The source stream
+	 */
+	private InputStream in;
+
+	/**
+	 * The current block payload
+	 */
+	private byte[] block = new byte[64 * 1024];
+
+	/**
+	 * The read position in the current block
+	 */
+	private int pos;
+
+	/**
+	 * The length of the current block
+	 */
+	private int length;
+
+	/**
+	 * @param database the database in which the dump is loaded
+	 */
+	public BinaryDumpReader(Database database) {
+		this.database = database;
+	}
+
+	/**
+	 * Loads a dump from a stream.
+	 * <p>
+	 * Foreign keys are not enforced while loading. If an error occurs, the
+	 * transaction is rolled back and the database is left unchanged. The
+	 * stream is not closed by this method.
+	 *
+	 * @param in the source stream
+	 * @throws SQLException
+	 * @throws IOException  if the stream is not a valid dump
+	 */
+	public void read(InputStream in) throws SQLException, IOException {
+		this.in = in;
+
+		for (byte b : MAGIC) {
+			if (in.read() != b) throw new IOException("Not a binary dump");
+		}
+		int version = in.read();
+		if (version != VERSION) throw new IOException("Unsupported binary dump version: " + version);
+
+		int foreignKeys = database.execute("PRAGMA foreign_keys").mapFirst(Row::getInt);
+		database.execute("PRAGMA foreign_keys=OFF");
+		try {
+			// The transaction runs on the writer, its body cannot be run again
+			// once the stream is consumed
+			boolean[] started = { false };
+			try {
+				database.transaction(BeginStatement.Mode.Immediate, () -> {
+					if (started[0]) throw new SQLException("The database was locked during the load, which cannot be retried");
+					started[0] = true;
+					try {
+						readRecords();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		} finally {
+			database.execute("PRAGMA foreign_keys=" + foreignKeys);
+		}
+	}
+
+	/**
+	 * Reads every records until the end of the dump.
+	 *
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	private void readRecords() throws SQLException, IOException {
+		PreparedQuery insert = null;
+		int columns = 0;
+		boolean skip = false;
+
+		try {
+			for (int tag; (tag = in.read()) != END; ) {
+				switch (tag) {
+					case SCHEMA:
+						readSchema();
+						break;
+
+					case TABLE:
+						String table = readString();
+						columns = (int) readVarint();
+						skip = isInternal(table);
+						if (!skip) insert = prepareInsert(table, columns);
+						break;
+
+					case BLOCK:
+						if (insert == null && !skip) throw new IOException("Rows block outside of a table");
+						readBlock(insert, columns);
+						break;
+
+					case TABLE_END:
+						if (insert != null) insert.close();
+						insert = null;
+						skip = false;
+						break;
+
+					case -1:
+						throw new EOFException("Unexpected end of binary dump");
+
+					default:
+						throw new IOException("Unknown binary dump record: " + tag);
+				}
+			}
+		} finally {
+			if (insert != null) insert.close();
+		}
+	}
+
+	/**
+	 * Reads a schema entry and creates the corresponding structure.
+	 * <p>
+	 * Internal SQLite structures, such as the sqlite_sequence table or
+	 * automatic indices, are created by SQLite itself and are skipped.
+	 *
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	private void readSchema() throws SQLException, IOException {
+		readString(); // type
+		String name = readString();
+		readString(); // table name
+		String sql = readString();
+
+		if (!sql.isEmpty() && !isInternal(name)) {
+			database.execute(sql);
+		}
+	}
+
+	/**
+	 * Checks if a structure is maintained by SQLite itself. The data of
+	 * internal tables is skipped along with their schema.
+	 *
+	 * @param name the name of the structure
+	 */
+	private static boolean isInternal(String name) {
+		return name.toLowerCase().startsWith("sqlite_");
+	}
+
+	/**
+	 * Prepares the INSERT statement used to load the rows of a table.
+	 *
+	 * @param table   the name of the table
+	 * @param columns the number of columns of the table
+	 * @return the prepared statement
+	 *
+	 * @throws SQLException
+	 */
+	private PreparedQuery prepareInsert(String table, int columns) throws SQLException {
+		StringBuilder values = new StringBuilder(" VALUES (");
+		for (int i = 0; i < columns; i++) {
+			values.append(i == 0 ? "?" : ", ?");
+		}
+		values.append(")");
+		return database.assemble("INSERT INTO ", database.name(), ".", table, values.toString()).prepare();
+	}
+
+	/**
+	 * Reads a block of rows and inserts them in the current table.
+	 *
+	 * @param insert  the prepared INSERT statement, null to skip the rows
+	 * @param columns the number of columns of the table
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	private void readBlock(PreparedQuery insert, int columns) throws SQLException, IOException {
+		long rows = readVarint();
+		int size = (int) readVarint();
+
+		if (size > block.length) block = new byte[Math.max(size, block.length * 2)];
+		readFully(block, size);
+		int checksum = (in.read() << 24) | (in.read() << 16) | (in.read() << 8) | in.read();
+
+		CRC32 crc = new CRC32();
+		crc.update(block, 0, size);
+		if ((int) crc.getValue() != checksum) throw new IOException("Corrupted binary dump block");
+		if (insert == null) return;
+
+		pos = 0;
+		length = size;
+		for (long r = 0; r < rows; r++) {
+			for (int i = 1; i <= columns; i++) {
+				bindValue(insert, i);
+			}
+			insert.addBatch();
+		}
+		if (pos != length) throw new IOException("Corrupted binary dump block");
+
+		insert.executeBatch();
+	}
+
+	/**
+	 * Reads a typed value from the current block and binds it to the
+	 * given placeholder.
+	 *
+	 * @param insert the prepared INSERT statement
+	 * @param idx    the placeholder index
+	 * @throws IOException
+	 */
+	private void bindValue(PreparedQuery insert, int idx) throws IOException {
+		switch (blockByte()) {
+			case NULL:
+				insert.set(idx, (Object) null);
+				break;
+			case INTEGER:
+				long zigzag = blockVarint();
+				insert.set(idx, (zigzag >>> 1) ^ -(zigzag & 1));
+				break;
+			case REAL:
+				long bits = 0;
+				for (int i = 0; i < 8; i++) bits = (bits << 8) | blockByte();
+				insert.set(idx, Double.longBitsToDouble(bits));
+				break;
+			case TEXT:
+				int len = blockLength();
+				insert.set(idx, new String(block, pos, len, StandardCharsets.UTF_8));
+				pos += len;
+				break;
+			case BLOB:
+				int size = blockLength();
+				insert.set(idx, Arrays.copyOfRange(block, pos, pos + size));
+				pos += size;
+				break;
+			default:
+				throw new IOException("Unknown value type in binary dump");
+		}
+	}
+
+	/**
+	 * Reads a byte from the current block.
+	 */
+	private int blockByte() throws IOException {
+		if (pos >= length) throw new IOException("Corrupted binary dump block");
+		return block[pos++] & 0xFF;
+	}
+
+	/**
+	 * Reads an unsigned varint from the current block.
+	 */
+	private long blockVarint() throws IOException {
+		long value = 0;
+		for (int shift = 0; ; shift += 7) {
+			int b = blockByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+	}
+
+	/**
+	 * Reads a length from the current block, and checks that the block
+	 * contains enough bytes.
+	 */
+	private int blockLength() throws IOException {
+		long len = blockVarint();
+		if (len > length - pos) throw new IOException("Corrupted binary dump block");
+		return (int) len;
+	}
+
+	/**
+	 * Reads an unsigned varint from the stream.
+	 */
+	private long readVarint() throws IOException {
+		long value = 0;
+		for (int shift = 0; ; shift += 7) {
+			int b = in.read();
+			if (b < 0) throw new EOFException("Unexpected end of binary dump");
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+	}
+
+	/**
+	 * Reads a string from the stream.
+	 */
+	private String readString() throws IOException {
+		int len = (int) readVarint();
+		byte[] bytes = new byte[len];
+		readFully(bytes, len);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Fills the given buffer from the stream.
+	 */
+	private void readFully(byte[] buffer, int len) throws IOException {
+		for (int off = 0; off < len; ) {
+			int count = in.read(buffer, off, len - off);
+			if (count < 0) throw new EOFException("Unexpected end of binary dump");
+			off += count;
+		}
+	}
+}
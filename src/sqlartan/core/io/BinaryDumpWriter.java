@@ -0,0 +1,295 @@
+package sqlartan.core.io;
+
+import sqlartan.core.Column;
+import sqlartan.core.Database;
+import sqlartan.core.Result;
+import sqlartan.core.Row;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import static sqlartan.core.io.BinaryDump.*;
+
+/**
+ * Writes a database as a binary dump.
+ * <p>
+ * The dump contains the schema of the database as SQL text and the data of
+ * every tables as typed values, see BinaryDump for the format. Tables are
+ * written first, followed by their data and then by indices, views and
+ * triggers so that they are created after the data when the dump is
+ * loaded.
+ * <p>
+ * Internal SQLite tables, such as sqlite_sequence or sqlite_stat1, are
+ * maintained by SQLite itself and are not dumped.
+ */
+public class BinaryDumpWriter {
+	/**
+	 * The size over which a block of rows is written
+	 */
+	private static final int BLOCK_SIZE = 64 * 1024;
+
+	/**
+	 * The condition excluding internal SQLite structures
+	 */
+	private static final String notInternal = "name NOT LIKE 'sqlite\\_%' ESCAPE '\\'";
+
+	/**
+	 * The database to dump
+	 */
+	private final Database database;
+
+	/**
+	 * The current block payload
+	 */
+	private byte[] block = new byte[BLOCK_SIZE + 1024];
+
+	/**
+	 * The length of the current block payload
+	 */
+	private int length;
+
+	/**
+	 * The number of rows in the current block
+	 */
+	private int rows;
+
+	/**
+	 * Buffer for record headers
+	 */
+	private final byte[] header = new byte[32];
+
+	/**
+	 * @param database the database to dump
+	 */
+	public BinaryDumpWriter(Database database) {
+		this.database = database;
+	}
+
+	/**
+	 * Writes the dump of the database to a stream.
+	 * <p>
+	 * The stream is not closed by this method.
+	 *
+	 * @param out the target stream
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public void write(OutputStream out) throws SQLException, IOException {
+		out.write(MAGIC);
+		out.write(VERSION);
+
+		writeSchema(out, "type = 'table' AND " + notInternal);
+
+		List<String> tables = database.assemble("SELECT name FROM ", database.name(), ".sqlite_master WHERE type = 'table' AND " + notInternal + " ORDER BY name ASC")
+		                              .execute()
+		                              .map(Row::getString)
+		                              .toList();
+		for (String table : tables) {
+			writeTable(out, table);
+		}
+
+		writeSchema(out, "type <> 'table' AND " + notInternal);
+
+		out.write(END);
+		out.flush();
+	}
+
+	/**
+	 * Writes the entries of sqlite_master matching the given condition.
+	 *
+	 * @param out       the target stream
+	 * @param condition the SQL condition on sqlite_master entries
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	private void writeSchema(OutputStream out, String condition) throws SQLException, IOException {
+		try (Result res = database.assemble("SELECT type, name, tbl_name, sql FROM ", database.name(), ".sqlite_master WHERE " + condition).execute()) {
+			for (Row row : res) {
+				length = 0;
+				putString(row.getString());
+				putString(row.getString());
+				putString(row.getString());
+				putString(row.getString());
+				out.write(SCHEMA);
+				out.write(block, 0, length);
+			}
+		}
+	}
+
+	/**
+	 * Writes the data of a table.
+	 * <p>
+	 * The storage class of each value is read with typeof(), since the
+	 * driver cannot tell an empty blob from NULL.
+	 *
+	 * @param out   the target stream
+	 * @param table the name of the table
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	private void writeTable(OutputStream out, String table) throws SQLException, IOException {
+		String types = database.table(table)
+		                       .orElseThrow(IllegalStateException::new)
+		                       .columns()
+		                       .map(Column::name)
+		                       .map(name -> "typeof([" + name + "])")
+		                       .collect(Collectors.joining(", "));
+		try (Result res = database.assemble("SELECT *, " + types + " FROM ", database.name(), ".", table).execute()) {
+			int columns = res.columns().size() / 2;
+
+			length = 0;
+			putString(table);
+			putVarint(columns);
+			out.write(TABLE);
+			out.write(block, 0, length);
+
+			length = 0;
+			rows = 0;
+			for (Row row : res) {
+				for (int i = 1; i <= columns; i++) {
+					putValue(row.getString(columns + i), row.getObject(i));
+				}
+				rows++;
+				if (length >= BLOCK_SIZE) writeBlock(out);
+			}
+			if (rows > 0) writeBlock(out);
+
+			out.write(TABLE_END);
+		}
+	}
+
+	/**
+	 * Writes the current block of rows and starts a new one.
+	 *
+	 * @param out the target stream
+	 * @throws IOException
+	 */
+	private void writeBlock(OutputStream out) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(block, 0, length);
+		int checksum = (int) crc.getValue();
+
+		int pos = 0;
+		header[pos++] = BLOCK;
+		pos = varint(header, pos, rows);
+		pos = varint(header, pos, length);
+		out.write(header, 0, pos);
+		out.write(block, 0, length);
+		out.write(checksum >>> 24);
+		out.write(checksum >>> 16);
+		out.write(checksum >>> 8);
+		out.write(checksum);
+
+		length = 0;
+		rows = 0;
+	}
+
+	/**
+	 * Appends a typed value to the current block.
+	 *
+	 * @param type  the storage class of the value, as returned by typeof()
+	 * @param value the value, as returned by the driver
+	 */
+	private void putValue(String type, Object value) {
+		switch (type) {
+			case "null":
+				putByte(NULL);
+				break;
+			case "integer":
+				long i = ((Number) value).longValue();
+				putByte(INTEGER);
+				putVarint((i << 1) ^ (i >> 63));
+				break;
+			case "real":
+				long r = Double.doubleToRawLongBits(((Number) value).doubleValue());
+				ensure(9);
+				block[length++] = REAL;
+				for (int shift = 56; shift >= 0; shift -= 8) {
+					block[length++] = (byte) (r >>> shift);
+				}
+				break;
+			case "blob":
+				putByte(BLOB);
+				putBytes(value == null ? new byte[0] : (byte[]) value);
+				break;
+			default:
+				putByte(TEXT);
+				putString(value == null ? "" : value.toString());
+				break;
+		}
+	}
+
+	/**
+	 * Appends a string to the current block.
+	 *
+	 * @param value the string, null is written as an empty string
+	 */
+	private void putString(String value) {
+		putBytes(value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Appends length-prefixed bytes to the current block.
+	 *
+	 * @param bytes the bytes to append
+	 */
+	private void putBytes(byte[] bytes) {
+		putVarint(bytes.length);
+		ensure(bytes.length);
+		System.arraycopy(bytes, 0, block, length, bytes.length);
+		length += bytes.length;
+	}
+
+	/**
+	 * Appends a byte to the current block.
+	 *
+	 * @param b the byte
+	 */
+	private void putByte(int b) {
+		ensure(1);
+		block[length++] = (byte) b;
+	}
+
+	/**
+	 * Appends an unsigned varint to the current block.
+	 *
+	 * @param value the value
+	 */
+	private void putVarint(long value) {
+		ensure(10);
+		length = varint(block, length, value);
+	}
+
+	/**
+	 * Ensures that the current block can receive the given number of bytes.
+	 *
+	 * @param count the number of bytes to append
+	 */
+	private void ensure(int count) {
+		if (length + count > block.length) {
+			byte[] grown = new byte[Math.max(block.length * 2, length + count)];
+			System.arraycopy(block, 0, grown, 0, length);
+			block = grown;
+		}
+	}
+
+	/**
+	 * Encodes an unsigned varint.
+	 *
+	 * @param buffer the target buffer
+	 * @param pos    the position in the buffer
+	 * @param value  the value to encode
+	 * @return the position after the encoded value
+	 */
+	private static int varint(byte[] buffer, int pos, long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[pos++] = (byte) value;
+		return pos;
+	}
+}
@@ -0,0 +1,178 @@
+package sqlartan.core.io;
+
+import java.io.*;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compression formats of export and import streams.
+ * <p>
+ * The format of a file being written is selected from its extension, the
+ * format of a file being read is detected from its first bytes.
+ */
+public enum Compression {
+	None, Gzip, Deflate;
+
+	/**
+	 * Size of the buffers used around files streams
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Returns the compression format matching the extension of a file.
+	 * <p>
+	 * Files ending with .gz or .gzip are gzip compressed, files ending with
+	 * .zz or .deflate are zlib compressed. Every other files are not
+	 * compressed.
+	 *
+	 * @param file the file
+	 * @return the compression format of the file
+	 */
+	public static Compression forFile(File file) {
+		String name = file.getName().toLowerCase();
+		if (name.endsWith(".gz") || name.endsWith(".gzip")) {
+			return Gzip;
+		} else if (name.endsWith(".zz") || name.endsWith(".deflate")) {
+			return Deflate;
+		} else {
+			return None;
+		}
+	}
+
+	/**
+	 * Detects the compression format of a stream from its magic bytes.
+	 * <p>
+	 * The stream must support mark(), it is reset to its initial position
+	 * before returning.
+	 *
+	 * @param in the stream to inspect
+	 * @return the compression format of the stream
+	 *
+	 * @throws IOException
+	 */
+	public static Compression detect(InputStream in) throws IOException {
+		if (!in.markSupported()) throw new IllegalArgumentException("Stream must support mark()");
+
+		in.mark(2);
+		int b0 = in.read();
+		int b1 = in.read();
+		in.reset();
+
+		if (b0 == 0x1f && b1 == 0x8b) {
+			return Gzip;
+		} else if (b0 >= 0 && b1 >= 0 && (b0 & 0x0f) == 8 && (b0 >> 4) <= 7 && (b1 & 0x20) == 0 && ((b0 << 8) | b1) % 31 == 0) {
+			return Deflate;
+		} else {
+			return None;
+		}
+	}
+
+	/**
+	 * Detects the compression format of a file from its content.
+	 *
+	 * @param file the file to inspect
+	 * @return the compression format of the file
+	 *
+	 * @throws IOException
+	 */
+	public static Compression detect(File file) throws IOException {
+		try (InputStream in = new BufferedInputStream(new FileInputStream(file), 16)) {
+			return detect(in);
+		}
+	}
+
+	/**
+	 * Opens a file for reading, decompressing its content if required.
+	 * The compression format is detected from the content of the file.
+	 *
+	 * @param file the file to read
+	 * @return a buffered stream of the uncompressed content
+	 *
+	 * @throws IOException
+	 */
+	public static InputStream newInputStream(File file) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+		try {
+			return detect(in).decompress(in);
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens a file for writing, compressing its content according to the
+	 * extension of the file.
+	 * <p>
+	 * Gzip files are compressed by blocks on up to the given number of
+	 * threads.
+	 *
+	 * @param file        the file to write
+	 * @param parallelism the maximum number of threads compressing data
+	 * @return a stream writing to the file
+	 *
+	 * @throws IOException
+	 */
+	public static OutputStream newOutputStream(File file, int parallelism) throws IOException {
+		return forFile(file).compress(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE), parallelism);
+	}
+
+	/**
+	 * Wraps a stream to decompress its content.
+	 *
+	 * @param in the compressed stream
+	 * @return the decompressed stream
+	 *
+	 * @throws IOException
+	 */
+	public InputStream decompress(InputStream in) throws IOException {
+		switch (this) {
+			case Gzip:
+				return new GZIPInputStream(in, BUFFER_SIZE);
+			case Deflate:
+				return new InflaterInputStream(in);
+			default:
+				return in;
+		}
+	}
+
+	/**
+	 * Wraps a stream to compress data written to it.
+	 *
+	 * @param out the target stream
+	 * @return the compressing stream
+	 *
+	 * @throws IOException
+	 */
+	public OutputStream compress(OutputStream out) throws IOException {
+		return compress(out, 1);
+	}
+
+	/**
+	 * Wraps a stream to compress data written to it.
+	 * <p>
+	 * If the parallelism is greater than 1 and the format is gzip, data is
+	 * split in blocks compressed independently on multiple threads. The
+	 * result is a multi-member gzip stream, readable by any gzip decoder.
+	 * A deflate stream cannot be split and is always compressed on the
+	 * calling thread.
+	 *
+	 * @param out         the target stream
+	 * @param parallelism the maximum number of threads compressing data
+	 * @return the compressing stream
+	 *
+	 * @throws IOException
+	 */
+	public OutputStream compress(OutputStream out, int parallelism) throws IOException {
+		switch (this) {
+			case Gzip:
+				return parallelism > 1 ? new ParallelGzipOutputStream(out, parallelism) : new GZIPOutputStream(out, BUFFER_SIZE);
+			case Deflate:
+				return new DeflaterOutputStream(out);
+			default:
+				return out;
+		}
+	}
+}
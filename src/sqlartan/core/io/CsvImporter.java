@@ -0,0 +1,939 @@
+package sqlartan.core.io;
+
+import sqlartan.core.*;
+import sqlartan.core.ast.BeginStatement;
+import sqlartan.core.jfr.Flight;
+import sqlartan.core.util.UncheckedSQLException;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Imports a CSV file in a table.
+ * <p>
+ * When the table does not exist, it is created with the column names found
+ * in the header of the file and with affinities inferred from a sample of
+ * the first records. Each column is given the INTEGER affinity if every
+ * sampled value is an integer, the REAL affinity if every sampled value is
+ * a number, and the TEXT affinity otherwise.
+ * <p>
+ * Uncompressed files are split in chunks aligned on record boundaries. A
+ * first pass counts the quotes of each chunk in parallel so that line
+ * breaks inside quoted fields are never taken for a record boundary. The
+ * chunks are then parsed in parallel into batches of typed rows, which are
+ * inserted in file order by the calling thread through a single prepared
+ * statement. Compressed files are parsed by a single worker.
+ * <p>
+ * The whole import is done in a single transaction, the database is left
+ * unchanged if the import fails.
+ */
+public class CsvImporter {
+	/**
+	 * The minimum size of a chunk
+	 */
+	private static final long MIN_CHUNK_SIZE = 4 << 20;
+
+	/**
+	 * The size of read buffers
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The number of parsed batches that can be queued for each chunk
+	 */
+	private static final int QUEUE_CAPACITY = 4;
+
+	/**
+	 * Counter used to name worker threads
+	 */
+	private static final AtomicInteger threadCount = new AtomicInteger();
+
+	/**
+	 * The database to import into
+	 */
+	private final Database database;
+
+	/**
+	 * The import options
+	 */
+	private final CsvOptions options;
+
+	/**
+	 * @param database the database to import into
+	 * @param options  the import options
+	 */
+	public CsvImporter(Database database, CsvOptions options) {
+		this.database = database;
+		this.options = options;
+	}
+
+	/**
+	 * Imports a CSV file in a table, creating the table if it does not
+	 * exist.
+	 *
+	 * @param file  the CSV file
+	 * @param table the name of the table
+	 * @return the number of imported rows
+	 *
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public long load(Path file, String table) throws SQLException, IOException {
+		Compression compression;
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+			compression = Compression.detect(in);
+		}
+
+		// Read the header and infer the columns affinities
+		String[] names;
+		Affinity[] inferred;
+		long dataStart;
+		try (InputStream in = Compression.newInputStream(file.toFile())) {
+			Parser parser = new Parser(in, true);
+			dataStart = parser.consumed();
+			int count = parser.next();
+			if (count < 0) return 0;
+
+			names = new String[count];
+			for (int i = 0; i < count; i++) {
+				names[i] = options.header() ? parser.text(i) : "column" + (i + 1);
+			}
+
+			if (options.header()) {
+				dataStart = parser.consumed();
+				count = parser.next();
+			}
+			inferred = infer(parser, count, names.length);
+		}
+
+		Optional<Table> existing = database.table(table);
+		Affinity[] affinities = existing.map(t -> tableAffinities(t, names)).orElse(inferred);
+
+		ExecutorService workers = Executors.newFixedThreadPool(options.parallelism(), r -> {
+			Thread thread = new Thread(r, "sqlartan-csv-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			List<Chunk> chunks;
+			if (compression == Compression.None) {
+				chunks = split(channel, dataStart, workers);
+			} else {
+				chunks = new ArrayList<>();
+				chunks.add(new Chunk(() -> Compression.newInputStream(file.toFile()), 0, true));
+			}
+
+			for (Chunk chunk : chunks) {
+				workers.submit(() -> parse(chunk, affinities));
+			}
+
+			// The transaction runs on the writer, its body cannot be run again
+			// once the chunks are consumed
+			boolean[] started = { false };
+			long[] rows = { 0 };
+			try {
+				database.transaction(BeginStatement.Mode.Immediate, () -> {
+					if (started[0]) throw new SQLException("The database was locked during the import, which cannot be retried");
+					started[0] = true;
+					if (!existing.isPresent()) {
+						database.execute(createSQL(table, names, affinities));
+					}
+					try {
+						rows[0] = insert(table, names, chunks);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			return rows[0];
+		} finally {
+			workers.shutdownNow();
+		}
+	}
+
+	/**
+	 * Infers the affinity of each column from a sample of records.
+	 *
+	 * @param parser  the parser, positioned on the first sampled record
+	 * @param count   the number of fields of the current record, -1 if the
+	 *                file contains no records
+	 * @param columns the number of columns
+	 * @return the affinity of each column
+	 *
+	 * @throws IOException
+	 */
+	private Affinity[] infer(Parser parser, int count, int columns) throws IOException {
+		Affinity[] affinities = new Affinity[columns];
+		boolean[] seen = new boolean[columns];
+		Arrays.fill(affinities, Affinity.Integer);
+
+		for (int sampled = 0; count >= 0 && sampled < options.sampleSize(); sampled++, count = parser.next()) {
+			for (int i = 0; i < Math.min(count, columns); i++) {
+				if (parser.isEmpty(i)) continue;
+				seen[i] = true;
+				if (affinities[i] == Affinity.Integer && !parser.isInteger(i)) {
+					affinities[i] = Affinity.Real;
+				}
+				if (affinities[i] == Affinity.Real && !parser.isReal(i)) {
+					affinities[i] = Affinity.Text;
+				}
+			}
+		}
+
+		for (int i = 0; i < columns; i++) {
+			if (!seen[i]) affinities[i] = Affinity.Text;
+		}
+		return affinities;
+	}
+
+	/**
+	 * Returns the affinities of the columns of an existing table.
+	 * <p>
+	 * If the file has a header, columns are matched by name, otherwise
+	 * values are inserted in the columns of the table in order.
+	 *
+	 * @param table the target table
+	 * @param names the names of the imported columns
+	 * @return the affinity of each imported column
+	 */
+	private Affinity[] tableAffinities(Table table, String[] names) {
+		Affinity[] affinities = new Affinity[names.length];
+		for (int i = 0; i < names.length; i++) {
+			Optional<TableColumn> column = options.header() ? table.column(names[i]) : table.column(i);
+			affinities[i] = column.map(Column::affinity).orElse(Affinity.Text);
+		}
+		return affinities;
+	}
+
+	/**
+	 * Builds the statement creating the target table.
+	 *
+	 * @param table      the name of the table
+	 * @param names      the names of the columns
+	 * @param affinities the affinities of the columns
+	 * @return the CREATE TABLE statement
+	 */
+	private String createSQL(String table, String[] names, Affinity[] affinities) {
+		StringBuilder sql = new StringBuilder();
+		sql.append("CREATE TABLE [").append(database.name()).append("].[").append(table).append("] (");
+		for (int i = 0; i < names.length; i++) {
+			if (i > 0) sql.append(", ");
+			sql.append("[").append(names[i]).append("] ").append(affinities[i].name().toUpperCase());
+		}
+		return sql.append(")").toString();
+	}
+
+	/**
+	 * Inserts the rows parsed by workers, in file order.
+	 *
+	 * @param table  the name of the table
+	 * @param names  the names of the columns
+	 * @param chunks the chunks of the file
+	 * @return the number of inserted rows
+	 *
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	private long insert(String table, String[] names, List<Chunk> chunks) throws SQLException, IOException {
+		StringBuilder sql = new StringBuilder();
+		sql.append("INSERT INTO [").append(database.name()).append("].[").append(table).append("] ");
+		if (options.header()) {
+			sql.append("(");
+			for (int i = 0; i < names.length; i++) {
+				if (i > 0) sql.append(", ");
+				sql.append("[").append(names[i]).append("]");
+			}
+			sql.append(") ");
+		}
+		sql.append("VALUES (");
+		for (int i = 0; i < names.length; i++) {
+			sql.append(i == 0 ? "?" : ", ?");
+		}
+		sql.append(")");
+
+		long rows = 0;
+		try (PreparedQuery insert = database.prepare(sql.toString())) {
+			for (Chunk chunk : chunks) {
+				Flight.Chunk event = Flight.chunk();
+				long chunk_rows = 0;
+				for (Batch batch; (batch = chunk.take()) != Batch.END; ) {
+					for (int r = 0; r < batch.count; r++) {
+						Object[] row = batch.rows[r];
+						for (int i = 0; i < row.length; i++) {
+							insert.set(i + 1, row[i]);
+						}
+						insert.addBatch();
+					}
+					insert.executeBatch();
+					chunk_rows += batch.count;
+				}
+				event.record("import", table, chunk_rows, 0);
+				rows += chunk_rows;
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * Splits the data of an uncompressed file in chunks aligned on record
+	 * boundaries.
+	 *
+	 * @param channel   the file channel
+	 * @param dataStart the offset of the first record
+	 * @param workers   the workers counting quotes
+	 * @return the chunks of the file
+	 *
+	 * @throws IOException
+	 */
+	private List<Chunk> split(FileChannel channel, long dataStart, ExecutorService workers) throws IOException {
+		long size = channel.size();
+		int count = (int) Math.max(1, Math.min(options.parallelism() * 4, (size - dataStart) / MIN_CHUNK_SIZE));
+
+		long[] bounds = new long[count + 1];
+		for (int i = 0; i <= count; i++) {
+			bounds[i] = dataStart + (size - dataStart) * i / count;
+		}
+
+		// Count quotes in each raw chunk to know whether its start is inside a quoted field
+		List<Future<Boolean>> parities = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			long start = bounds[i];
+			long end = bounds[i + 1];
+			parities.add(workers.submit(() -> oddQuotes(channel, start, end)));
+		}
+
+		List<Chunk> chunks = new ArrayList<>(count);
+		boolean quoted = false;
+		long start = dataStart;
+		for (int i = 1; i <= count; i++) {
+			quoted ^= get(parities.get(i - 1));
+			long end = i == count ? size : align(channel, bounds[i], quoted);
+			if (end > start) {
+				long from = start;
+				chunks.add(new Chunk(() -> new ChunkInputStream(channel, from, end), from, false));
+				start = end;
+			}
+		}
+		if (chunks.isEmpty()) {
+			chunks.add(new Chunk(() -> new ChunkInputStream(channel, dataStart, size), dataStart, false));
+		}
+		return chunks;
+	}
+
+	/**
+	 * Checks if a range of the file contains an odd number of quotes.
+	 *
+	 * @param channel the file channel
+	 * @param start   the start of the range
+	 * @param end     the end of the range
+	 * @return true if the number of quotes is odd
+	 *
+	 * @throws IOException
+	 */
+	private static boolean oddQuotes(FileChannel channel, long start, long end) throws IOException {
+		boolean odd = false;
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try (InputStream in = new ChunkInputStream(channel, start, end)) {
+			for (int count; (count = in.read(buffer)) >= 0; ) {
+				for (int i = 0; i < count; i++) {
+					if (buffer[i] == '"') odd = !odd;
+				}
+			}
+		}
+		return odd;
+	}
+
+	/**
+	 * Returns the offset of the first record starting after the given
+	 * offset.
+	 *
+	 * @param channel the file channel
+	 * @param offset  the offset from which to look for a record boundary
+	 * @param quoted  whether the offset is inside a quoted field
+	 * @return the offset of the next record, the size of the file if none
+	 *
+	 * @throws IOException
+	 */
+	private static long align(FileChannel channel, long offset, boolean quoted) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try (InputStream in = new ChunkInputStream(channel, offset, channel.size())) {
+			for (int count; (count = in.read(buffer)) >= 0; ) {
+				for (int i = 0; i < count; i++) {
+					if (buffer[i] == '"') {
+						quoted = !quoted;
+					} else if (buffer[i] == '\n' && !quoted) {
+						return offset + i + 1;
+					}
+				}
+				offset += count;
+			}
+		}
+		return channel.size();
+	}
+
+	/**
+	 * Parses a chunk of the file in batches of rows.
+	 * <p>
+	 * Executed by workers. Errors are given to the inserting thread through
+	 * the batch queue of the chunk.
+	 *
+	 * @param chunk      the chunk to parse
+	 * @param affinities the affinities of the columns
+	 */
+	private void parse(Chunk chunk, Affinity[] affinities) {
+		try (InputStream in = chunk.source.open()) {
+			Parser parser = new Parser(in, chunk.header);
+			if (chunk.header && options.header()) parser.next();
+
+			int batch_size = options.batchSize();
+			Object[][] rows = new Object[batch_size][];
+			int count = 0;
+			for (long offset = chunk.start + parser.consumed(); ; offset = chunk.start + parser.consumed()) {
+				int fields = parser.next();
+				if (fields < 0) break;
+				if (fields != affinities.length) {
+					throw new IOException("Invalid record at byte " + offset + ": " + fields + " fields, " + affinities.length + " expected");
+				}
+				rows[count++] = parser.row(affinities);
+				if (count == batch_size) {
+					chunk.put(new Batch(rows, count, null));
+					rows = new Object[batch_size][];
+					count = 0;
+				}
+			}
+			if (count > 0) chunk.put(new Batch(rows, count, null));
+			chunk.put(Batch.END);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Throwable e) {
+			try {
+				chunk.put(new Batch(null, 0, e));
+			} catch (InterruptedException ignored) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Waits for the result of a task.
+	 *
+	 * @param future the task
+	 * @param <T>    the type of the result
+	 * @return the result of the task
+	 *
+	 * @throws IOException
+	 */
+	private static <T> T get(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Opens the stream of a chunk.
+	 */
+	@FunctionalInterface
+	private interface Source {
+		InputStream open() throws IOException;
+	}
+
+	/**
+	 * A part of the file parsed by a single worker.
+	 */
+	private static class Chunk {
+		/**
+		 * The source of the chunk content
+		 */
+		private final Source source;
+
+		/**
+		 * The offset of the chunk in the file
+		 */
+		private final long start;
+
+		/**
+		 * Whether the chunk starts at the beginning of the file, including
+		 * the byte order mark and the header
+		 */
+		private final boolean header;
+
+		/**
+		 * The batches parsed from this chunk
+		 */
+		private final BlockingQueue<Batch> batches = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+		/**
+		 * @param source the source of the chunk content
+		 * @param start  the offset of the chunk in the file
+		 * @param header whether the chunk starts at the beginning of the file
+		 */
+		private Chunk(Source source, long start, boolean header) {
+			this.source = source;
+			this.start = start;
+			this.header = header;
+		}
+
+		/**
+		 * Queues a parsed batch, waiting if the queue is full.
+		 *
+		 * @param batch the batch
+		 * @throws InterruptedException
+		 */
+		private void put(Batch batch) throws InterruptedException {
+			batches.put(batch);
+		}
+
+		/**
+		 * Takes the next parsed batch, waiting if necessary, and rethrows
+		 * parsing errors.
+		 *
+		 * @return the next batch, END once the chunk is fully parsed
+		 *
+		 * @throws SQLException
+		 * @throws IOException
+		 */
+		private Batch take() throws SQLException, IOException {
+			Batch batch;
+			try {
+				batch = batches.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			}
+
+			Throwable failure = batch.failure;
+			if (failure == null) return batch;
+			if (failure instanceof IOException) throw (IOException) failure;
+			if (failure instanceof SQLException) throw (SQLException) failure;
+			if (failure instanceof UncheckedSQLException) throw (UncheckedSQLException) failure;
+			throw new IllegalStateException(failure);
+		}
+	}
+
+	/**
+	 * A batch of parsed rows.
+	 */
+	private static class Batch {
+		/**
+		 * Marks the end of a chunk
+		 */
+		private static final Batch END = new Batch(null, 0, null);
+
+		/**
+		 * The rows of the batch
+		 */
+		private final Object[][] rows;
+
+		/**
+		 * The number of rows in the batch
+		 */
+		private final int count;
+
+		/**
+		 * The parsing error, if any
+		 */
+		private final Throwable failure;
+
+		/**
+		 * @param rows    the rows of the batch
+		 * @param count   the number of rows in the batch
+		 * @param failure the parsing error
+		 */
+		private Batch(Object[][] rows, int count, Throwable failure) {
+			this.rows = rows;
+			this.count = count;
+			this.failure = failure;
+		}
+	}
+
+	/**
+	 * Reads a range of a file channel with positional reads.
+	 * <p>
+	 * Closing the stream does not close the channel.
+	 */
+	private static class ChunkInputStream extends InputStream {
+		/**
+		 * The file channel
+		 */
+		private final FileChannel channel;
+
+		/**
+		 * The current position in the file
+		 */
+		private long position;
+
+		/**
+		 * The end of the range
+		 */
+		private final long end;
+
+		/**
+		 * @param channel the file channel
+		 * @param start   the start of the range
+		 * @param end     the end of the range
+		 */
+		private ChunkInputStream(FileChannel channel, long start, long end) {
+			this.channel = channel;
+			this.position = start;
+			this.end = end;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (position >= end) return -1;
+			int count = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+			if (count < 0) return -1;
+			position += count;
+			return count;
+		}
+	}
+
+	/**
+	 * A CSV record parser.
+	 * <p>
+	 * The fields of the current record are kept as raw UTF-8 bytes in a
+	 * reusable buffer, and are only decoded when converted to values.
+	 */
+	private class Parser {
+		/**
+		 * The source stream
+		 */
+		private final InputStream in;
+
+		/**
+		 * The read buffer
+		 */
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+
+		/**
+		 * The read position in the buffer
+		 */
+		private int pos;
+
+		/**
+		 * The number of bytes in the buffer
+		 */
+		private int limit;
+
+		/**
+		 * The number of bytes read from the stream before the buffer
+		 */
+		private long base;
+
+		/**
+		 * The content of the fields of the current record
+		 */
+		private byte[] data = new byte[1024];
+
+		/**
+		 * The number of bytes of the current record
+		 */
+		private int length;
+
+		/**
+		 * The offset of each field in data, followed by the end offset of
+		 * the last field
+		 */
+		private int[] offsets = new int[17];
+
+		/**
+		 * Whether each field was quoted
+		 */
+		private boolean[] quoted = new boolean[16];
+
+		/**
+		 * The number of fields of the current record
+		 */
+		private int count;
+
+		/**
+		 * @param in    the source stream
+		 * @param start whether the stream starts at the beginning of the
+		 *              file and may contain a byte order mark
+		 * @throws IOException
+		 */
+		private Parser(InputStream in, boolean start) throws IOException {
+			this.in = in;
+			if (start && fill() && limit >= 3 && (buffer[0] & 0xFF) == 0xEF && (buffer[1] & 0xFF) == 0xBB && (buffer[2] & 0xFF) == 0xBF) {
+				pos = 3;
+			}
+		}
+
+		/**
+		 * Returns the number of bytes consumed from the stream.
+		 */
+		private long consumed() {
+			return base + pos;
+		}
+
+		/**
+		 * Reads the next record, skipping blank lines.
+		 *
+		 * @return the number of fields of the record, -1 at the end of the
+		 * stream
+		 *
+		 * @throws IOException
+		 */
+		private int next() throws IOException {
+			do {
+				if (!readRecord()) return -1;
+			} while (count == 1 && length == 0 && !quoted[0]);
+			return count;
+		}
+
+		/**
+		 * Reads a single record.
+		 *
+		 * @return false at the end of the stream
+		 *
+		 * @throws IOException
+		 */
+		private boolean readRecord() throws IOException {
+			int b = read();
+			if (b < 0) return false;
+
+			char separator = options.separator();
+			count = 0;
+			length = 0;
+			startField();
+
+			while (true) {
+				if (b == '"' && length == offsets[count - 1]) {
+					quoted[count - 1] = true;
+					while (true) {
+						b = read();
+						if (b < 0) throw new IOException("Unterminated quoted field");
+						if (b == '"') {
+							b = read();
+							if (b != '"') break;
+						}
+						append(b);
+					}
+					continue;
+				}
+
+				if (b == separator) {
+					startField();
+				} else if (b == '\n' || b < 0) {
+					break;
+				} else if (b == '\r') {
+					if (peek() == '\n') read();
+					break;
+				} else {
+					append(b);
+				}
+				b = read();
+			}
+
+			offsets[count] = length;
+			return true;
+		}
+
+		/**
+		 * Starts a new field in the current record.
+		 */
+		private void startField() {
+			if (count + 1 >= offsets.length) {
+				offsets = Arrays.copyOf(offsets, offsets.length * 2);
+				quoted = Arrays.copyOf(quoted, quoted.length * 2);
+			}
+			offsets[count] = length;
+			quoted[count] = false;
+			count++;
+		}
+
+		/**
+		 * Appends a byte to the current field.
+		 *
+		 * @param b the byte to append
+		 */
+		private void append(int b) {
+			if (length == data.length) data = Arrays.copyOf(data, data.length * 2);
+			data[length++] = (byte) b;
+		}
+
+		/**
+		 * Reads a byte from the stream.
+		 *
+		 * @return the byte, -1 at the end of the stream
+		 *
+		 * @throws IOException
+		 */
+		private int read() throws IOException {
+			if (pos == limit && !fill()) return -1;
+			return buffer[pos++] & 0xFF;
+		}
+
+		/**
+		 * Returns the next byte of the stream without consuming it.
+		 *
+		 * @return the byte, -1 at the end of the stream
+		 *
+		 * @throws IOException
+		 */
+		private int peek() throws IOException {
+			if (pos == limit && !fill()) return -1;
+			return buffer[pos] & 0xFF;
+		}
+
+		/**
+		 * Refills the buffer.
+		 *
+		 * @return false at the end of the stream
+		 *
+		 * @throws IOException
+		 */
+		private boolean fill() throws IOException {
+			base += limit;
+			pos = 0;
+			limit = 0;
+			int read = in.read(buffer);
+			if (read <= 0) return false;
+			limit = read;
+			return true;
+		}
+
+		/**
+		 * Checks if a field is empty and unquoted.
+		 *
+		 * @param i the field index
+		 */
+		private boolean isEmpty(int i) {
+			return offsets[i] == offsets[i + 1] && !quoted[i];
+		}
+
+		/**
+		 * Returns the content of a field as text.
+		 *
+		 * @param i the field index
+		 */
+		private String text(int i) {
+			return new String(data, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Checks if a field contains an integer fitting in 64 bits.
+		 *
+		 * @param i the field index
+		 */
+		private boolean isInteger(int i) {
+			return parseLong(offsets[i], offsets[i + 1]) != null;
+		}
+
+		/**
+		 * Checks if a field contains a decimal number.
+		 *
+		 * @param i the field index
+		 */
+		private boolean isReal(int i) {
+			int p = offsets[i];
+			int end = offsets[i + 1];
+			if (p < end && (data[p] == '-' || data[p] == '+')) p++;
+
+			int digits = 0;
+			for (; p < end && data[p] >= '0' && data[p] <= '9'; p++) digits++;
+			if (p < end && data[p] == '.') {
+				for (p++; p < end && data[p] >= '0' && data[p] <= '9'; p++) digits++;
+			}
+			if (digits == 0) return false;
+
+			if (p < end && (data[p] == 'e' || data[p] == 'E')) {
+				p++;
+				if (p < end && (data[p] == '-' || data[p] == '+')) p++;
+				int exponent = 0;
+				for (; p < end && data[p] >= '0' && data[p] <= '9'; p++) exponent++;
+				if (exponent == 0) return false;
+			}
+			return p == end;
+		}
+
+		/**
+		 * Parses an integer from a range of the record data.
+		 *
+		 * @param from the start of the range
+		 * @param to   the end of the range
+		 * @return the integer, null if the range is not a valid integer
+		 */
+		private Long parseLong(int from, int to) {
+			if (from == to) return null;
+			boolean negative = data[from] == '-';
+			if (negative || data[from] == '+') from++;
+			if (from == to || to - from > 19) return null;
+
+			long value = 0;
+			for (int p = from; p < to; p++) {
+				int digit = data[p] - '0';
+				if (digit < 0 || digit > 9) return null;
+				value = value * 10 - digit;
+				if (value > 0) return null;
+			}
+			if (!negative) {
+				if (value == Long.MIN_VALUE) return null;
+				value = -value;
+			}
+			return value;
+		}
+
+		/**
+		 * Converts the current record to a row of typed values.
+		 * <p>
+		 * Empty unquoted fields are NULL in numeric columns. Values that
+		 * cannot be converted to the affinity of their column are kept as
+		 * text.
+		 *
+		 * @param affinities the affinity of each column
+		 * @return the values of the row
+		 */
+		private Object[] row(Affinity[] affinities) {
+			Object[] row = new Object[count];
+			for (int i = 0; i < count; i++) {
+				Affinity affinity = affinities[i];
+				if (affinity == Affinity.Text || affinity == Affinity.Blob) {
+					row[i] = text(i);
+				} else if (isEmpty(i)) {
+					row[i] = null;
+				} else {
+					Long integer = affinity == Affinity.Real ? null : parseLong(offsets[i], offsets[i + 1]);
+					if (integer != null) {
+						row[i] = integer;
+					} else if (isReal(i)) {
+						row[i] = Double.parseDouble(text(i));
+					} else {
+						row[i] = text(i);
+					}
+				}
+			}
+			return row;
+		}
+	}
+}
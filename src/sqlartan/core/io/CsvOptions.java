@@ -0,0 +1,135 @@
+package sqlartan.core.io;
+
+/**
+ * Options of a CSV import.
+ * <p>
+ * Files must be encoded in UTF-8. Fields may be enclosed in quotes, in
+ * which case they may contain separators, line breaks and doubled quotes.
+ */
+public class CsvOptions {
+	/**
+	 * The field separator
+	 */
+	private char separator = ',';
+
+	/**
+	 * Whether the first record contains the column names
+	 */
+	private boolean header = true;
+
+	/**
+	 * The number of records sampled to infer column affinities
+	 */
+	private int sampleSize = 1000;
+
+	/**
+	 * The number of threads parsing the file
+	 */
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The number of rows inserted in a single batch
+	 */
+	private int batchSize = 4096;
+
+	/**
+	 * Returns the field separator.
+	 */
+	public char separator() {
+		return separator;
+	}
+
+	/**
+	 * Sets the field separator, a comma by default.
+	 *
+	 * @param separator the field separator
+	 * @return this object
+	 */
+	public CsvOptions separator(char separator) {
+		if (separator == '"' || separator == '\n' || separator == '\r') {
+			throw new IllegalArgumentException("Invalid separator");
+		}
+		this.separator = separator;
+		return this;
+	}
+
+	/**
+	 * Returns whether the first record contains the column names.
+	 */
+	public boolean header() {
+		return header;
+	}
+
+	/**
+	 * Sets whether the first record contains the column names, true by
+	 * default. Without header, columns of a new table are named column1,
+	 * column2, etc.
+	 *
+	 * @param header true if the first record is a header
+	 * @return this object
+	 */
+	public CsvOptions header(boolean header) {
+		this.header = header;
+		return this;
+	}
+
+	/**
+	 * Returns the number of records sampled to infer column affinities.
+	 */
+	public int sampleSize() {
+		return sampleSize;
+	}
+
+	/**
+	 * Sets the number of records sampled to infer column affinities of a
+	 * new table, 1000 by default.
+	 *
+	 * @param sampleSize the number of sampled records
+	 * @return this object
+	 */
+	public CsvOptions sampleSize(int sampleSize) {
+		if (sampleSize < 1) throw new IllegalArgumentException("Sample size must be at least 1");
+		this.sampleSize = sampleSize;
+		return this;
+	}
+
+	/**
+	 * Returns the number of threads parsing the file.
+	 */
+	public int parallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the number of threads parsing the file, the number of available
+	 * processors by default.
+	 *
+	 * @param parallelism the number of parsing threads
+	 * @return this object
+	 */
+	public CsvOptions parallelism(int parallelism) {
+		if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be at least 1");
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * Returns the number of rows inserted in a single batch.
+	 */
+	public int batchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets the number of rows parsed and inserted in a single batch, 4096
+	 * by default.
+	 *
+	 * @param batchSize the number of rows in a batch
+	 * @return this object
+	 */
+	public CsvOptions batchSize(int batchSize) {
+		if (batchSize < 1) throw new IllegalArgumentException("Batch size must be at least 1");
+		this.batchSize = batchSize;
+		return this;
+	}
+}
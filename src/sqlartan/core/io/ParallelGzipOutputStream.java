@@ -0,0 +1,213 @@
+package sqlartan.core.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A gzip output stream compressing data on multiple threads.
+ * <p>
+ * Written data is split in fixed-size blocks. Each block is compressed as an
+ * independent gzip member on a worker thread, and the members are written
+ * to the target stream in order. A sequence of gzip members is a valid gzip
+ * stream that decompresses to the concatenation of the blocks.
+ * <p>
+ * The number of blocks being compressed at the same time is bounded, the
+ * writing thread waits for the oldest block when the limit is reached.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+	/**
+	 * Default size of the compressed blocks
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+	/**
+	 * Counter used to name worker threads
+	 */
+	private static final AtomicInteger threadCount = new AtomicInteger();
+
+	/**
+	 * The target stream
+	 */
+	private final OutputStream out;
+
+	/**
+	 * The workers compressing blocks
+	 */
+	private final ExecutorService workers;
+
+	/**
+	 * The maximum number of blocks in flight
+	 */
+	private final int maxPending;
+
+	/**
+	 * The blocks being compressed, in output order
+	 */
+	private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+	/**
+	 * The size of blocks
+	 */
+	private final int blockSize;
+
+	/**
+	 * The current block
+	 */
+	private byte[] block;
+
+	/**
+	 * The number of bytes in the current block
+	 */
+	private int length = 0;
+
+	/**
+	 * Whether this stream was closed
+	 */
+	private boolean closed = false;
+
+	/**
+	 * @param out         the target stream
+	 * @param parallelism the number of threads compressing data
+	 */
+	public ParallelGzipOutputStream(OutputStream out, int parallelism) {
+		this(out, parallelism, DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * @param out         the target stream
+	 * @param parallelism the number of threads compressing data
+	 * @param blockSize   the size of blocks compressed independently
+	 */
+	public ParallelGzipOutputStream(OutputStream out, int parallelism, int blockSize) {
+		if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be at least 1");
+		if (blockSize < 1) throw new IllegalArgumentException("Block size must be at least 1");
+
+		this.out = out;
+		this.blockSize = blockSize;
+		this.block = new byte[blockSize];
+		this.maxPending = parallelism * 2;
+		this.workers = Executors.newFixedThreadPool(parallelism, r -> {
+			Thread thread = new Thread(r, "sqlartan-gzip-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		block[length++] = (byte) b;
+		if (length == blockSize) submit();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		while (len > 0) {
+			int count = Math.min(len, blockSize - length);
+			System.arraycopy(b, off, block, length, count);
+			length += count;
+			off += count;
+			len -= count;
+			if (length == blockSize) submit();
+		}
+	}
+
+	/**
+	 * Writes every completed blocks to the target stream.
+	 * <p>
+	 * The current partial block is not compressed, flushing does not
+	 * create small gzip members.
+	 */
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		while (!pending.isEmpty() && pending.peekFirst().isDone()) {
+			writeOldest();
+		}
+		out.flush();
+	}
+
+	/**
+	 * Compresses the remaining data, writes every blocks and closes the
+	 * target stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		try {
+			if (length > 0) submit();
+			while (!pending.isEmpty()) writeOldest();
+			out.flush();
+		} finally {
+			closed = true;
+			workers.shutdownNow();
+			out.close();
+		}
+	}
+
+	/**
+	 * Throws if this stream is closed.
+	 */
+	private void ensureOpen() throws IOException {
+		if (closed) throw new IOException("Stream closed");
+	}
+
+	/**
+	 * Submits the current block for compression and starts a new one.
+	 */
+	private void submit() throws IOException {
+		byte[] data = length == blockSize ? block : Arrays.copyOf(block, length);
+		int size = length;
+		pending.addLast(workers.submit(() -> compress(data, size)));
+		block = new byte[blockSize];
+		length = 0;
+
+		while (pending.size() > maxPending) writeOldest();
+	}
+
+	/**
+	 * Waits for the oldest block and writes it to the target stream.
+	 */
+	private void writeOldest() throws IOException {
+		try {
+			out.write(pending.removeFirst().get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Compresses a block to a standalone gzip member.
+	 *
+	 * @param data the block data
+	 * @param size the number of bytes in the block
+	 * @return the gzip member
+	 *
+	 * @throws IOException
+	 */
+	private static byte[] compress(byte[] data, int size) throws IOException {
+		ByteArrayOutputStream member = new ByteArrayOutputStream(size / 4 + 64);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(member, 8192)) {
+			gzip.write(data, 0, size);
+		}
+		return member.toByteArray();
+	}
+}
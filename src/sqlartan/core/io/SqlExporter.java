@@ -0,0 +1,403 @@
+package sqlartan.core.io;
+
+import sqlartan.core.Database;
+import sqlartan.core.Result;
+import sqlartan.core.Row;
+import sqlartan.core.jfr.Flight;
+import sqlartan.core.util.UncheckedSQLException;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Exports a database to SQL.
+ * <p>
+ * The structure of the database is read from the sqlite_master table, the
+ * data of each table is serialized as INSERT statements. The whole output
+ * is wrapped in a transaction.
+ * <p>
+ * Tables are independent from each other, when the database is backed by
+ * a file, their data is serialized in parallel by a bounded pool of workers,
+ * each one using its own read connection. Every read connection is pinned
+ * to the same snapshot of the database before the export starts. Chunks
+ * produced by the workers are then written in the same order as a
+ * sequential export would, the output does not depend on the parallelism.
+ */
+public class SqlExporter {
+	/**
+	 * The database to export
+	 */
+	private final Database database;
+
+	/**
+	 * Whether to export the structure of the database
+	 */
+	private boolean structure = true;
+
+	/**
+	 * Whether to export the data of the database
+	 */
+	private boolean data = true;
+
+	/**
+	 * The maximum number of read connections used to export data
+	 */
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * @param database the database to export
+	 */
+	public SqlExporter(Database database) {
+		this.database = database;
+	}
+
+	/**
+	 * Defines whether the structure of the database must be exported.
+	 *
+	 * @param structure true to export tables, views and triggers
+	 * @return this object
+	 */
+	public SqlExporter structure(boolean structure) {
+		this.structure = structure;
+		return this;
+	}
+
+	/**
+	 * Defines whether the data of the database must be exported.
+	 *
+	 * @param data true to export the content of tables
+	 * @return this object
+	 */
+	public SqlExporter data(boolean data) {
+		this.data = data;
+		return this;
+	}
+
+	/**
+	 * Defines the maximum number of read connections used to export the
+	 * data of the database. A parallelism of 1 exports every tables on the
+	 * connection of the database itself.
+	 *
+	 * @param parallelism the maximum number of read connections
+	 * @return this object
+	 */
+	public SqlExporter parallelism(int parallelism) {
+		if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be at least 1");
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * Exports the database to a String.
+	 *
+	 * @return the SQL
+	 *
+	 * @throws SQLException
+	 */
+	public String export() throws SQLException {
+		StringWriter writer = new StringWriter();
+		try {
+			export(writer);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * Exports the database to a Writer.
+	 *
+	 * @param out the writer receiving the SQL
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public void export(Writer out) throws SQLException, IOException {
+		out.write("PRAGMA foreign_keys=OFF;\nBEGIN TRANSACTION;\n");
+
+		Snapshot snapshot = data && parallelism > 1 ? Snapshot.open(database, parallelism) : null;
+		if (snapshot == null) {
+			export(out, database, database.name(), null);
+		} else {
+			try {
+				export(out, snapshot.acquire(), "main", snapshot);
+			} finally {
+				snapshot.close();
+			}
+		}
+
+		out.write("COMMIT;");
+		out.flush();
+	}
+
+	/**
+	 * Exports the structure and data from the given source.
+	 *
+	 * @param out      the writer receiving the SQL
+	 * @param source   the database to read from
+	 * @param schema   the schema name of the exported database in source
+	 * @param snapshot the snapshot used to export data in parallel, null to
+	 *                 export data sequentially from source
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	private void export(Writer out, Database source, String schema, Snapshot snapshot) throws SQLException, IOException {
+		if (structure) out.write(structureSQL(source, schema, "table"));
+		if (data) {
+			List<String> tables = source.assemble("SELECT name FROM ", schema, ".sqlite_master WHERE type = 'table' ORDER BY name ASC")
+			                            .execute()
+			                            .map(Row::getString)
+			                            .toList();
+			if (snapshot == null) {
+				for (String table : tables) {
+					out.write(tableSQL(source, schema, table));
+				}
+			} else {
+				snapshot.release(source);
+				snapshot.export(out, tables, this::tableSQL);
+				source = snapshot.acquire();
+			}
+		}
+		if (structure) {
+			out.write(structureSQL(source, schema, "view"));
+			out.write(structureSQL(source, schema, "trigger"));
+		}
+		if (snapshot != null) snapshot.release(source);
+	}
+
+	/**
+	 * Exports structures of the given type to SQL.
+	 *
+	 * @param source the database to read from
+	 * @param schema the schema name of the exported database in source
+	 * @param type   the type of structure to export
+	 * @return the SQL, an empty string if there is no such structure
+	 *
+	 * @throws SQLException
+	 */
+	private String structureSQL(Database source, String schema, String type) throws SQLException {
+		String sql = source.assemble("SELECT sql FROM ", schema, ".sqlite_master WHERE type = ? AND sql IS NOT NULL")
+		                   .execute(type)
+		                   .map(Row::getString)
+		                   .collect(Collectors.joining(";\n"));
+		return sql.isEmpty() ? sql : sql + ";\n";
+	}
+
+	/**
+	 * Exports the data of a table to SQL.
+	 * <p>
+	 * The generated statement always targets the table in the exported
+	 * database, no matter from which connection it is read.
+	 *
+	 * @param source the database to read from
+	 * @param schema the schema name of the exported database in source
+	 * @param table  the name of the table
+	 * @return the SQL, an empty string if the table is empty
+	 *
+	 * @throws SQLException
+	 */
+	private String tableSQL(Database source, String schema, String table) throws SQLException {
+		Flight.Chunk event = Flight.chunk();
+		StringBuilder sql = new StringBuilder();
+		long rows = 0;
+		try (Result res = source.assemble("SELECT * FROM ", schema, ".", table).execute()) {
+			for (Row row : res) {
+				rows++;
+				if (sql.length() == 0) {
+					sql.append("INSERT INTO [").append(database.name()).append("].[").append(table).append("] VALUES ");
+				} else {
+					sql.append(", ");
+				}
+
+				sql.append("(");
+				for (int i = 1; i <= row.size(); i++) {
+					if (i != 1) sql.append(", ");
+					Object value = row.getObject(i);
+					if (value instanceof String) {
+						sql.append("'").append(((String) value).replace("'", "''")).append("'");
+					} else if (value instanceof Number) {
+						sql.append(value);
+					} else {
+						// TODO Manage byte array
+						sql.append("NULL");
+					}
+				}
+				sql.append(")");
+			}
+		}
+
+		if (sql.length() > 0) sql.append(";\n");
+		event.record("export", table, rows, sql.length());
+		return sql.toString();
+	}
+
+	/**
+	 * Serializes the data of a table.
+	 */
+	@FunctionalInterface
+	private interface TableSerializer {
+		String serialize(Database source, String schema, String table) throws SQLException;
+	}
+
+	/**
+	 * A set of read connections pinned to the same snapshot of a database.
+	 * <p>
+	 * While the connections are being opened, a guard connection holds the
+	 * write lock of the database, no other connection can commit. Each read
+	 * connection then starts a read transaction that is kept until the
+	 * snapshot is closed. In WAL mode, readers keep seeing the state of the
+	 * database at the time their transaction started. With a rollback
+	 * journal, the shared locks held by readers prevent any commit until the
+	 * export is done.
+	 */
+	private static class Snapshot implements AutoCloseable {
+		/**
+		 * Counter used to name worker threads
+		 */
+		private static final AtomicInteger threadCount = new AtomicInteger();
+
+		/**
+		 * Opens a snapshot of the given database.
+		 * <p>
+		 * Returns null if the database cannot be read from multiple
+		 * connections, because it is an in-memory database or because the
+		 * write lock cannot be acquired (the database connection itself is
+		 * in the middle of a write transaction for instance).
+		 *
+		 * @param database the database to read
+		 * @param count    the number of read connections to open
+		 * @return the snapshot, null if a snapshot cannot be opened
+		 */
+		private static Snapshot open(Database database, int count) {
+			File file = database.path();
+			if (database.isEphemeral() || !file.isFile()) return null;
+
+			Snapshot snapshot = new Snapshot(count);
+			try (Database guard = Database.open(file)) {
+				guard.execute("BEGIN IMMEDIATE");
+				try {
+					for (int i = 0; i < count; i++) {
+						Database reader = Database.open(file);
+						snapshot.readers.add(reader);
+						snapshot.all.add(reader);
+						reader.execute("BEGIN");
+						reader.execute("SELECT COUNT(*) FROM main.sqlite_master").close();
+					}
+				} finally {
+					guard.execute("ROLLBACK");
+				}
+				return snapshot;
+			} catch (SQLException e) {
+				snapshot.close();
+				return null;
+			}
+		}
+
+		/**
+		 * Every read connections of this snapshot
+		 */
+		private final List<Database> all;
+
+		/**
+		 * The read connections currently available
+		 */
+		private final BlockingQueue<Database> readers;
+
+		/**
+		 * @param count the number of read connections
+		 */
+		private Snapshot(int count) {
+			all = new ArrayList<>(count);
+			readers = new ArrayBlockingQueue<>(count);
+		}
+
+		/**
+		 * Takes an available read connection, waiting if necessary.
+		 *
+		 * @return a read connection
+		 */
+		private Database acquire() {
+			try {
+				return readers.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			}
+		}
+
+		/**
+		 * Gives a read connection back to the snapshot.
+		 *
+		 * @param reader the read connection
+		 */
+		private void release(Database reader) {
+			readers.add(reader);
+		}
+
+		/**
+		 * Serializes every tables using the read connections of this
+		 * snapshot, and writes the result in the order of the given list.
+		 *
+		 * @param out        the writer receiving the SQL
+		 * @param tables     the names of the tables to export
+		 * @param serializer the function serializing a table
+		 * @throws SQLException
+		 * @throws IOException
+		 */
+		private void export(Writer out, List<String> tables, TableSerializer serializer) throws SQLException, IOException {
+			ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, Math.min(all.size(), tables.size())), r -> {
+				Thread thread = new Thread(r, "sqlartan-export-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+
+			try {
+				List<Future<String>> chunks = new ArrayList<>(tables.size());
+				for (String table : tables) {
+					chunks.add(workers.submit(() -> {
+						Database reader = acquire();
+						try {
+							return serializer.serialize(reader, "main", table);
+						} finally {
+							release(reader);
+						}
+					}));
+				}
+
+				for (Future<String> chunk : chunks) {
+					out.write(chunk.get());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof SQLException) throw (SQLException) cause;
+				if (cause instanceof UncheckedSQLException) throw (UncheckedSQLException) cause;
+				throw new IllegalStateException(cause);
+			} finally {
+				workers.shutdownNow();
+			}
+		}
+
+		/**
+		 * Ends the read transactions and closes every read connections.
+		 */
+		@Override
+		public void close() {
+			for (Database reader : all) {
+				try {
+					reader.execute("ROLLBACK");
+				} catch (SQLException ignored) {}
+				reader.close();
+			}
+		}
+	}
+}
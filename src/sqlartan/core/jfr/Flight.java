@@ -0,0 +1,257 @@
+package sqlartan.core.jfr;
+
+/**
+ * Starts the flight recorder events of the core engine.
+ * <p>
+ * The events extend jdk.jfr.Event, which only exists on Java 8u262 and
+ * later. They are compiled from a separate source folder and only loaded
+ * once the runtime is known to provide jdk.jfr.Event. Otherwise, or if the
+ * events were not compiled, every event is ignored and the core never links
+ * the flight recorder.
+ */
+public abstract class Flight {
+	/**
+	 * The tokenization of a SQL query
+	 */
+	public interface Tokenize {
+		/**
+		 * Ends the event and commits it if enabled.
+		 *
+		 * @param length the length of the query
+		 * @param tokens the number of tokens produced
+		 */
+		void record(int length, int tokens);
+	}
+
+	/**
+	 * The parsing of a SQL query
+	 */
+	public interface Parse {
+		/**
+		 * Ends the event and commits it if enabled.
+		 *
+		 * @param sql     the SQL query
+		 * @param success whether the query was parsed successfully
+		 */
+		void record(String sql, boolean success);
+	}
+
+	/**
+	 * The preparation of a statement
+	 */
+	public interface Prepare {
+		/**
+		 * Ends the event and commits it if enabled.
+		 *
+		 * @param database the name of the database
+		 * @param sql      the SQL query
+		 */
+		void record(String database, String sql);
+	}
+
+	/**
+	 * The execution of a statement
+	 */
+	public interface Execute {
+		/**
+		 * Ends the event and commits it if enabled.
+		 *
+		 * @param database the name of the database
+		 * @param sql      the SQL query
+		 * @param rows     the number of updated rows, 0 for a query result
+		 */
+		void record(String database, String sql, long rows);
+	}
+
+	/**
+	 * The iteration over the rows of a query result
+	 */
+	public interface Fetch {
+		/**
+		 * Ends the event and commits it if enabled.
+		 *
+		 * @param sql   the SQL query
+		 * @param rows  the number of rows fetched
+		 * @param bytes the approximate number of bytes read
+		 */
+		void record(String sql, long rows, long bytes);
+	}
+
+	/**
+	 * A phase of the alteration of a table
+	 */
+	public interface Alter {
+		/**
+		 * Ends the event and commits it if enabled.
+		 *
+		 * @param table the name of the altered table
+		 * @param phase the phase of the alteration
+		 * @param count the number of structures processed by the phase
+		 */
+		void record(String table, String phase, int count);
+	}
+
+	/**
+	 * A chunk of an import or an export
+	 */
+	public interface Chunk {
+		/**
+		 * Ends the event and commits it if enabled.
+		 *
+		 * @param operation the kind of transfer
+		 * @param table     the name of the table
+		 * @param rows      the number of rows in the chunk
+		 * @param size      the size of the chunk, in bytes or chars
+		 */
+		void record(String operation, String table, long rows, long size);
+	}
+
+	/**
+	 * The events of the runtime, loaded once
+	 */
+	private static final Flight events = load();
+
+	/**
+	 * Loads the flight recorder events if the runtime supports them.
+	 */
+	private static Flight load() {
+		try {
+			Class.forName("jdk.jfr.Event");
+			return (Flight) Class.forName("sqlartan.core.jfr.Events").newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return new Disabled();
+		}
+	}
+
+	/**
+	 * Starts a tokenization event.
+	 */
+	public static Tokenize tokenize() {
+		return events.startTokenize();
+	}
+
+	/**
+	 * Starts a parse event.
+	 */
+	public static Parse parse() {
+		return events.startParse();
+	}
+
+	/**
+	 * Starts a prepare event.
+	 */
+	public static Prepare prepare() {
+		return events.startPrepare();
+	}
+
+	/**
+	 * Starts an execute event.
+	 */
+	public static Execute execute() {
+		return events.startExecute();
+	}
+
+	/**
+	 * Starts a fetch event.
+	 */
+	public static Fetch fetch() {
+		return events.startFetch();
+	}
+
+	/**
+	 * Starts an alter event.
+	 */
+	public static Alter alter() {
+		return events.startAlter();
+	}
+
+	/**
+	 * Starts a chunk event.
+	 */
+	public static Chunk chunk() {
+		return events.startChunk();
+	}
+
+	/**
+	 * Creates and begins a tokenization event.
+	 */
+	abstract Tokenize startTokenize();
+
+	/**
+	 * Creates and begins a parse event.
+	 */
+	abstract Parse startParse();
+
+	/**
+	 * Creates and begins a prepare event.
+	 */
+	abstract Prepare startPrepare();
+
+	/**
+	 * Creates and begins an execute event.
+	 */
+	abstract Execute startExecute();
+
+	/**
+	 * Creates and begins a fetch event.
+	 */
+	abstract Fetch startFetch();
+
+	/**
+	 * Creates and begins an alter event.
+	 */
+	abstract Alter startAlter();
+
+	/**
+	 * Creates and begins a chunk event.
+	 */
+	abstract Chunk startChunk();
+
+	/**
+	 * The events used when the flight recorder is not available, which
+	 * ignore everything.
+	 */
+	private static class Disabled extends Flight implements Tokenize, Parse, Prepare, Execute, Fetch, Alter, Chunk {
+		@Override
+		Tokenize startTokenize() { return this; }
+
+		@Override
+		Parse startParse() { return this; }
+
+		@Override
+		Prepare startPrepare() { return this; }
+
+		@Override
+		Execute startExecute() { return this; }
+
+		@Override
+		Fetch startFetch() { return this; }
+
+		@Override
+		Alter startAlter() { return this; }
+
+		@Override
+		Chunk startChunk() { return this; }
+
+		@Override
+		public void record(int length, int tokens) {}
+
+		@Override
+		public void record(String sql, boolean success) {}
+
+		@Override
+		public void record(String database, String sql) {}
+
+		@Override
+		public void record(String database, String sql, long rows) {}
+
+		@Override
+		public void record(String sql, long rows, long bytes) {}
+
+		@Override
+		public void record(String table, String phase, int count) {}
+
+		@Override
+		public void record(String operation, String table, long rows, long size) {}
+	}
+}
@@ -0,0 +1,173 @@
+package sqlartan.core.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A buffered writer shared by the result exporters.
+ * <p>
+ * Values are formatted directly in an internal character buffer, without
+ * intermediate strings. The buffer is reused from one export to the next,
+ * a writer is not thread-safe.
+ */
+class ExportWriter {
+	/**
+	 * The size of the internal character buffer
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Hexadecimal digits
+	 */
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/**
+	 * The output buffer
+	 */
+	private final char[] buffer = new char[BUFFER_SIZE];
+
+	/**
+	 * The number of chars in the output buffer
+	 */
+	private int position;
+
+	/**
+	 * Scratch space for integer formatting
+	 */
+	private final char[] digits = new char[20];
+
+	/**
+	 * The current output writer
+	 */
+	private Writer out;
+
+	/**
+	 * Starts writing to a writer.
+	 *
+	 * @param out the target writer
+	 */
+	void start(Writer out) {
+		this.out = out;
+		this.position = 0;
+	}
+
+	/**
+	 * Writes the buffered chars and flushes the target writer, which is not
+	 * closed.
+	 *
+	 * @throws IOException
+	 */
+	void finish() throws IOException {
+		flush();
+		out.flush();
+	}
+
+	/**
+	 * Releases the target writer, without writing the buffered chars.
+	 */
+	void release() {
+		out = null;
+	}
+
+	/**
+	 * Writes a single char.
+	 *
+	 * @param c the char to write
+	 * @throws IOException
+	 */
+	void write(char c) throws IOException {
+		if (position == buffer.length) flush();
+		buffer[position++] = c;
+	}
+
+	/**
+	 * Writes a string as is.
+	 *
+	 * @param str the string to write
+	 * @throws IOException
+	 */
+	void write(String str) throws IOException {
+		write(str, 0, str.length());
+	}
+
+	/**
+	 * Writes a range of a string as is.
+	 *
+	 * @param str  the string to write
+	 * @param from the index of the first char to write
+	 * @param to   the index after the last char to write
+	 * @throws IOException
+	 */
+	void write(String str, int from, int to) throws IOException {
+		while (from < to) {
+			if (position == buffer.length) flush();
+			int count = Math.min(to - from, buffer.length - position);
+			str.getChars(from, from + count, buffer, position);
+			position += count;
+			from += count;
+		}
+	}
+
+	/**
+	 * Writes an integer value without allocating.
+	 *
+	 * @param value the value to write
+	 * @throws IOException
+	 */
+	void writeLong(long value) throws IOException {
+		if (value == Long.MIN_VALUE) {
+			write("-9223372036854775808");
+			return;
+		}
+
+		boolean negative = value < 0;
+		if (negative) value = -value;
+
+		int pos = digits.length;
+		do {
+			digits[--pos] = (char) ('0' + (value % 10));
+			value /= 10;
+		} while (value != 0);
+		if (negative) digits[--pos] = '-';
+
+		if (buffer.length - position < digits.length) flush();
+		System.arraycopy(digits, pos, buffer, position, digits.length - pos);
+		position += digits.length - pos;
+	}
+
+	/**
+	 * Writes bytes as hexadecimal digits.
+	 *
+	 * @param bytes the bytes to write
+	 * @throws IOException
+	 */
+	void writeHex(byte[] bytes) throws IOException {
+		for (byte b : bytes) {
+			if (buffer.length - position < 2) flush();
+			buffer[position++] = HEX[(b >> 4) & 0x0F];
+			buffer[position++] = HEX[b & 0x0F];
+		}
+	}
+
+	/**
+	 * Writes the low byte of a char as two hexadecimal digits.
+	 *
+	 * @param c the char to write
+	 * @throws IOException
+	 */
+	void writeHex(char c) throws IOException {
+		if (buffer.length - position < 2) flush();
+		buffer[position++] = HEX[(c >> 4) & 0x0F];
+		buffer[position++] = HEX[c & 0x0F];
+	}
+
+	/**
+	 * Writes the content of the buffer to the output writer.
+	 *
+	 * @throws IOException
+	 */
+	private void flush() throws IOException {
+		out.write(buffer, 0, position);
+		position = 0;
+	}
+}
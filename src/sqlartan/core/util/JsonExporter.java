@@ -0,0 +1,301 @@
+package sqlartan.core.util;
+
+import sqlartan.core.*;
+import sqlartan.core.io.Compression;
+import sqlartan.core.stream.ImmutableList;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Utility object to export a Result object as JSON or NDJSON.
+ * <p>
+ * Each row is written as an object whose keys are the names of the result
+ * columns. JSON output wraps the objects in an array, NDJSON output writes
+ * one object per line.
+ * <p>
+ * Integers and reals are written as numbers. Text values are written as
+ * strings, except in columns with a numeric affinity where text holding a
+ * valid number is written unquoted. BLOBs are written as base64 strings.
+ * <p>
+ * Rows are written one at a time through an internal character buffer
+ * and encoded to UTF-8, the result is never fully loaded in memory. An
+ * exporter instance is not thread-safe, but can be reused for multiple
+ * exports.
+ */
+public class JsonExporter {
+	/**
+	 * Base64 alphabet used for BLOB values
+	 */
+	private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+	/**
+	 * Output formats
+	 */
+	public enum Format {
+		Json,
+		Ndjson
+	}
+
+	/**
+	 * The output format
+	 */
+	private final Format format;
+
+	/**
+	 * The buffered output
+	 */
+	private final ExportWriter output = new ExportWriter();
+
+	/**
+	 * @param format the output format
+	 */
+	public JsonExporter(Format format) {
+		this.format = format;
+	}
+
+	/**
+	 * Exports the rows of a result to a stream.
+	 * <p>
+	 * The result is consumed but not closed, the stream is flushed but not
+	 * closed.
+	 *
+	 * @param res the result to export
+	 * @param out the target stream
+	 * @return the number of exported rows
+	 *
+	 * @throws IOException
+	 */
+	public long export(Result res, OutputStream out) throws IOException {
+		ImmutableList<ResultColumn> columns = res.columns();
+		int column_count = columns.size();
+
+		// Encode the keys and look up the affinities once
+		String[] keys = new String[column_count];
+		boolean[] numeric = new boolean[column_count];
+		StringWriter key = new StringWriter();
+		for (int i = 0; i < column_count; i++) {
+			ResultColumn col = columns.get(i);
+			output.start(key);
+			try {
+				writeString(col.name());
+				output.write(':');
+				output.finish();
+			} finally {
+				output.release();
+			}
+			keys[i] = key.toString();
+			key.getBuffer().setLength(0);
+
+			Affinity affinity = col.type() == null ? Affinity.Blob : col.affinity();
+			numeric[i] = affinity == Affinity.Integer || affinity == Affinity.Real || affinity == Affinity.Numeric;
+		}
+
+		output.start(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		try {
+			if (format == Format.Json) output.write('[');
+
+			long rows = 0;
+			for (Row row : res) {
+				if (format == Format.Json) {
+					if (rows > 0) output.write(',');
+					output.write('\n');
+				}
+
+				output.write('{');
+				for (int i = 0; i < column_count; i++) {
+					if (i > 0) output.write(',');
+					output.write(keys[i]);
+					writeValue(row.getObject(i + 1), numeric[i]);
+				}
+				output.write('}');
+
+				if (format == Format.Ndjson) output.write('\n');
+				rows++;
+			}
+
+			if (format == Format.Json) {
+				if (rows > 0) output.write('\n');
+				output.write(']');
+				output.write('\n');
+			}
+
+			output.finish();
+			return rows;
+		} finally {
+			output.release();
+		}
+	}
+
+	/**
+	 * Exports every rows of a table or a view to a stream.
+	 *
+	 * @param structure the structure to export
+	 * @param out       the target stream
+	 * @return the number of exported rows
+	 *
+	 * @throws IOException
+	 */
+	public long export(PersistentStructure<?> structure, OutputStream out) throws IOException {
+		try (Result res = structure.selectAll()) {
+			return export(res, out);
+		}
+	}
+
+	/**
+	 * Exports the rows of a result to a file.
+	 * <p>
+	 * The file is compressed if its name ends with a compression extension.
+	 *
+	 * @param res  the result to export
+	 * @param file the target file
+	 * @return the number of exported rows
+	 *
+	 * @throws IOException
+	 */
+	public long export(Result res, File file) throws IOException {
+		try (OutputStream stream = Compression.newOutputStream(file, Runtime.getRuntime().availableProcessors())) {
+			return export(res, stream);
+		}
+	}
+
+	/**
+	 * Writes a value.
+	 *
+	 * @param value   the value to write
+	 * @param numeric whether the column has a numeric affinity
+	 * @throws IOException
+	 */
+	private void writeValue(Object value, boolean numeric) throws IOException {
+		if (value == null) {
+			output.write("null");
+		} else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			output.writeLong(((Number) value).longValue());
+		} else if (value instanceof Double || value instanceof Float) {
+			double d = ((Number) value).doubleValue();
+			if (Double.isNaN(d) || Double.isInfinite(d)) {
+				output.write("null");
+			} else if (d == Math.rint(d) && Math.abs(d) < 1e15) {
+				output.writeLong((long) d);
+				output.write(".0");
+			} else {
+				output.write(Double.toString(d));
+			}
+		} else if (value instanceof byte[]) {
+			writeBase64((byte[]) value);
+		} else if (value instanceof String) {
+			String text = (String) value;
+			if (numeric && isNumber(text)) {
+				output.write(text);
+			} else {
+				writeString(text);
+			}
+		} else {
+			writeString(value.toString());
+		}
+	}
+
+	/**
+	 * Checks if a text is a valid JSON number.
+	 *
+	 * @param text the text to check
+	 * @return true if the text can be written unquoted
+	 */
+	private static boolean isNumber(String text) {
+		int length = text.length();
+		int p = 0;
+		if (p < length && text.charAt(p) == '-') p++;
+
+		int start = p;
+		for (; p < length && text.charAt(p) >= '0' && text.charAt(p) <= '9'; p++) ;
+		if (p == start || (text.charAt(start) == '0' && p - start > 1)) return false;
+
+		if (p < length && text.charAt(p) == '.') {
+			int fraction = ++p;
+			for (; p < length && text.charAt(p) >= '0' && text.charAt(p) <= '9'; p++) ;
+			if (p == fraction) return false;
+		}
+
+		if (p < length && (text.charAt(p) == 'e' || text.charAt(p) == 'E')) {
+			p++;
+			if (p < length && (text.charAt(p) == '-' || text.charAt(p) == '+')) p++;
+			int exponent = p;
+			for (; p < length && text.charAt(p) >= '0' && text.charAt(p) <= '9'; p++) ;
+			if (p == exponent) return false;
+		}
+
+		return p == length;
+	}
+
+	/**
+	 * Writes a JSON string with the required escapes. Unpaired surrogates
+	 * are replaced by U+FFFD.
+	 *
+	 * @param text the text to write
+	 * @throws IOException
+	 */
+	private void writeString(String text) throws IOException {
+		output.write('"');
+		int start = 0;
+		for (int i = 0, length = text.length(); i < length; i++) {
+			char c = text.charAt(i);
+			if (c >= 0x20 && c != '"' && c != '\\' && !Character.isSurrogate(c)) continue;
+			if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+				i++;
+				continue;
+			}
+
+			output.write(text, start, i);
+			start = i + 1;
+			if (c == '"' || c == '\\') {
+				output.write('\\');
+				output.write(c);
+			} else if (Character.isSurrogate(c)) {
+				output.write('\uFFFD');
+			} else {
+				output.write('\\');
+				switch (c) {
+					case '\n':
+						output.write('n');
+						break;
+					case '\r':
+						output.write('r');
+						break;
+					case '\t':
+						output.write('t');
+						break;
+					default:
+						output.write("u00");
+						output.writeHex(c);
+				}
+			}
+		}
+		output.write(text, start, text.length());
+		output.write('"');
+	}
+
+	/**
+	 * Writes a BLOB value as a base64 string.
+	 *
+	 * @param bytes the value to write
+	 * @throws IOException
+	 */
+	private void writeBase64(byte[] bytes) throws IOException {
+		output.write('"');
+		int i = 0;
+		for (; i + 3 <= bytes.length; i += 3) {
+			int bits = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF);
+			output.write(BASE64[bits >> 18]);
+			output.write(BASE64[(bits >> 12) & 0x3F]);
+			output.write(BASE64[(bits >> 6) & 0x3F]);
+			output.write(BASE64[bits & 0x3F]);
+		}
+		if (i < bytes.length) {
+			int bits = (bytes[i] & 0xFF) << 16 | (i + 1 < bytes.length ? (bytes[i + 1] & 0xFF) << 8 : 0);
+			output.write(BASE64[bits >> 18]);
+			output.write(BASE64[(bits >> 12) & 0x3F]);
+			output.write(i + 1 < bytes.length ? BASE64[(bits >> 6) & 0x3F] : '=');
+			output.write('=');
+		}
+		output.write('"');
+	}
+}
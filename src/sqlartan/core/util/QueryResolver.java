@@ -7,6 +7,7 @@ import sqlartan.core.ast.Expression;
 import sqlartan.core.ast.QualifiedTableName;
 import sqlartan.core.ast.ResultColumn;
 import sqlartan.core.ast.SelectStatement;
+import sqlartan.core.ast.parser.ParseCache;
 import sqlartan.core.ast.parser.Parser;
 import sqlartan.core.stream.ImmutableList;
 import java.util.NoSuchElementException;
@@ -19,6 +20,11 @@ import static sqlartan.util.Matching.match;
  * Utility class for resolving query columns.
  */
 public abstract class QueryResolver {
+	/**
+	 * The parser of resolved queries, shared so that parses are cached
+	 */
+	private static final Parser<SelectStatement> selectParser = SelectStatement::parse;
+
 	/**
 	 * Checks that columns of a simple select statement are valid for
 	 * resolution. Columns are valid if they are all either wildcard (*)
@@ -110,7 +116,7 @@ public abstract class QueryResolver {
 	 * @return a list of table columns, if the operation is successful
 	 */
 	public static Optional<ImmutableList<TableColumn>> resolveColumns(Database database, String sql) {
-		return Parser.tryParse(sql, SelectStatement::parse)
+		return ParseCache.shared.tryParse(sql, selectParser)
 		             .filter(s -> s instanceof SelectStatement.Simple)
 		             .map(s -> (SelectStatement.Simple) s)
 		             .filter(s -> s.from.orElse(null) instanceof QualifiedTableName)
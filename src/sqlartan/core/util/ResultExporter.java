@@ -0,0 +1,248 @@
+package sqlartan.core.util;
+
+import sqlartan.core.PersistentStructure;
+import sqlartan.core.Result;
+import sqlartan.core.ResultColumn;
+import sqlartan.core.Row;
+import sqlartan.core.io.Compression;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Utility object to export a Result object as CSV or TSV.
+ * <p>
+ * Rows are written one at a time through an internal character buffer,
+ * the result is never fully loaded in memory. Values are formatted
+ * directly in the buffer without intermediate strings when possible.
+ * <p>
+ * CSV output follows RFC 4180: fields containing a separator, a quote or a
+ * line break are quoted and quotes are doubled. TSV output uses backslash
+ * escapes for tabs, line breaks and backslashes, and \N for NULL values.
+ * <p>
+ * An exporter instance is not thread-safe, but can be reused for multiple
+ * exports.
+ */
+public class ResultExporter {
+	/**
+	 * Output formats
+	 */
+	public enum Format {
+		Csv(',', "\r\n"),
+		Tsv('\t', "\n");
+
+		/**
+		 * The field separator
+		 */
+		public final char separator;
+
+		/**
+		 * The line separator
+		 */
+		public final String lineSeparator;
+
+		/**
+		 * @param separator     the field separator
+		 * @param lineSeparator the line separator
+		 */
+		Format(char separator, String lineSeparator) {
+			this.separator = separator;
+			this.lineSeparator = lineSeparator;
+		}
+	}
+
+	/**
+	 * The output format
+	 */
+	private final Format format;
+
+	/**
+	 * Whether a header line with the column names is written
+	 */
+	private boolean header = true;
+
+	/**
+	 * The buffered output
+	 */
+	private final ExportWriter output = new ExportWriter();
+
+	/**
+	 * @param format the output format
+	 */
+	public ResultExporter(Format format) {
+		this.format = format;
+	}
+
+	/**
+	 * Sets whether a header line with the column names is written.
+	 *
+	 * @param header true to write the header line
+	 * @return this exporter
+	 */
+	public ResultExporter header(boolean header) {
+		this.header = header;
+		return this;
+	}
+
+	/**
+	 * Exports the rows of a result to a writer.
+	 * <p>
+	 * The result is consumed but not closed, the writer is flushed but
+	 * not closed.
+	 *
+	 * @param res the result to export
+	 * @param out the target writer
+	 * @return the number of exported rows
+	 *
+	 * @throws IOException
+	 */
+	public long export(Result res, Writer out) throws IOException {
+		output.start(out);
+		try {
+			int column_count = res.columns().size();
+
+			if (header) {
+				boolean first = true;
+				for (ResultColumn col : res.columns()) {
+					if (!first) output.write(format.separator);
+					first = false;
+					writeText(col.name());
+				}
+				output.write(format.lineSeparator);
+			}
+
+			long rows = 0;
+			for (Row row : res) {
+				for (int i = 1; i <= column_count; i++) {
+					if (i > 1) output.write(format.separator);
+					writeValue(row.getObject(i));
+				}
+				output.write(format.lineSeparator);
+				rows++;
+			}
+
+			output.finish();
+			return rows;
+		} finally {
+			output.release();
+		}
+	}
+
+	/**
+	 * Exports every rows of a table or a view to a writer.
+	 *
+	 * @param structure the structure to export
+	 * @param out       the target writer
+	 * @return the number of exported rows
+	 *
+	 * @throws IOException
+	 */
+	public long export(PersistentStructure<?> structure, Writer out) throws IOException {
+		try (Result res = structure.selectAll()) {
+			return export(res, out);
+		}
+	}
+
+	/**
+	 * Exports the rows of a result to a file encoded in UTF-8.
+	 * <p>
+	 * The file is compressed if its name ends with a compression extension.
+	 *
+	 * @param res  the result to export
+	 * @param file the target file
+	 * @return the number of exported rows
+	 *
+	 * @throws IOException
+	 */
+	public long export(Result res, File file) throws IOException {
+		try (Writer writer = new OutputStreamWriter(Compression.newOutputStream(file, Runtime.getRuntime().availableProcessors()), StandardCharsets.UTF_8)) {
+			return export(res, writer);
+		}
+	}
+
+	/**
+	 * Writes a value in the current field.
+	 *
+	 * @param value the value to write
+	 * @throws IOException
+	 */
+	private void writeValue(Object value) throws IOException {
+		if (value == null) {
+			if (format == Format.Tsv) output.write("\\N");
+		} else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			output.writeLong(((Number) value).longValue());
+		} else if (value instanceof byte[]) {
+			output.writeHex((byte[]) value);
+		} else if (value instanceof String) {
+			writeText((String) value);
+		} else {
+			writeText(value.toString());
+		}
+	}
+
+	/**
+	 * Writes a text value, quoting or escaping it if required.
+	 *
+	 * @param text the text to write
+	 * @throws IOException
+	 */
+	private void writeText(String text) throws IOException {
+		int length = text.length();
+		if (format == Format.Csv) {
+			if (!requiresQuotes(text)) {
+				output.write(text, 0, length);
+				return;
+			}
+			output.write('"');
+			int start = 0;
+			for (int i = 0; i < length; i++) {
+				if (text.charAt(i) == '"') {
+					output.write(text, start, i + 1);
+					start = i;
+				}
+			}
+			output.write(text, start, length);
+			output.write('"');
+		} else {
+			int start = 0;
+			for (int i = 0; i < length; i++) {
+				char c = text.charAt(i);
+				char escape;
+				switch (c) {
+					case '\t':
+						escape = 't';
+						break;
+					case '\n':
+						escape = 'n';
+						break;
+					case '\r':
+						escape = 'r';
+						break;
+					case '\\':
+						escape = '\\';
+						break;
+					default:
+						continue;
+				}
+				output.write(text, start, i);
+				output.write('\\');
+				output.write(escape);
+				start = i + 1;
+			}
+			output.write(text, start, length);
+		}
+	}
+
+	/**
+	 * Checks if a CSV field must be quoted.
+	 *
+	 * @param text the field content
+	 * @return true if the field contains a separator, a quote or a line break
+	 */
+	private boolean requiresQuotes(String text) {
+		for (int i = 0, length = text.length(); i < length; i++) {
+			char c = text.charAt(i);
+			if (c == format.separator || c == '"' || c == '\n' || c == '\r') return true;
+		}
+		return false;
+	}
+}
@@ -23,15 +23,19 @@ import sqlartan.core.*;
 import sqlartan.core.TableColumn;
 import sqlartan.core.alter.AlterTable;
 import sqlartan.core.ast.token.TokenizeException;
+import sqlartan.core.io.Compression;
 import sqlartan.gui.controller.tabs.DatabaseTabsController;
 import sqlartan.gui.controller.tabs.TableTabsController;
 import sqlartan.gui.controller.tabs.ViewTabsController;
 import sqlartan.gui.controller.treeitem.*;
 import sqlartan.gui.util.Popup;
+import sqlartan.util.EventBus;
 import sqlartan.util.UncheckedException;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.util.stream.Collectors;
 import static sqlartan.util.Matching.match;
@@ -63,10 +67,12 @@ public class SqlartanController {
 	@FXML
 	private ListView<String> request;
 	private ObservableList<String> requests = FXCollections.observableArrayList();
+	private ObservableList<String> slowRequests = FXCollections.observableArrayList();
 
 	@FXML
 	private TitledPane historyPane;
 	private CheckBox displayPragma = new CheckBox("PRAGMA");
+	private CheckBox displaySlow = new CheckBox("Slow");
 
 	// TablePanes
 	private TabPane databaseTabPane;
@@ -141,18 +147,24 @@ public class SqlartanController {
 		// Pane for request history
 		BorderPane borderPane = new BorderPane();
 		Button clearHistory = new Button("Clear");
-		clearHistory.setOnMouseClicked(event -> requests.clear());
+		clearHistory.setOnMouseClicked(event -> {
+			requests.clear();
+			slowRequests.clear();
+			if (database != null) database.slowQueryLog().ifPresent(SlowQueryLog::clear);
+		});
 
 		displayPragma.setSelected(true);
 
 		displayPragma.setNodeOrientation(NodeOrientation.RIGHT_TO_LEFT);
+		displaySlow.setNodeOrientation(NodeOrientation.RIGHT_TO_LEFT);
+		displaySlow.selectedProperty().addListener((obs, old, slow) -> request.setItems(slow ? slowRequests : requests));
 		clearHistory.setFocusTraversable(false);
 		HBox leftPane = new HBox();
 		HBox rightPane = new HBox();
 		rightPane.setAlignment(Pos.CENTER);
 		leftPane.setAlignment(Pos.CENTER);
 		leftPane.setSpacing(15);
-		leftPane.getChildren().addAll(displayPragma, clearHistory);
+		leftPane.getChildren().addAll(displaySlow, displayPragma, clearHistory);
 		rightPane.getChildren().add(new Label("History"));
 		borderPane.setLeft(rightPane);
 		borderPane.setRight(leftPane);
@@ -347,14 +359,22 @@ public class SqlartanController {
 				database = Database.open(file);
 
 				request.setCellFactory(e -> setCellFactoryHistory());
+				request.setItems(displaySlow.isSelected() ? slowRequests : requests);
+				slowRequests.clear();
 
-				database.registerListener(readOnlyResult -> {
-					request.setItems(requests);
+				database.enableSlowQueryLog(100, 200).registerListener(entry -> {
+					Platform.runLater(() -> slowRequests.add(0, entry.query()));
+				});
 
+				// Queries must not wait for the history to be updated
+				database.executeListeners().async(1024, EventBus.Overflow.Block);
+				database.registerListener(readOnlyResult -> {
 					String result = readOnlyResult.query();
 
-					if (!result.startsWith("PRAGMA") || displayPragma.isSelected())
-						requests.add(0, readOnlyResult.query());
+					Platform.runLater(() -> {
+						if (!result.startsWith("PRAGMA") || displayPragma.isSelected())
+							requests.add(0, result);
+					});
 				});
 
 				databaseMenu.setDisable(false);
@@ -401,6 +421,17 @@ public class SqlartanController {
 
 		cells.textProperty().bind(cells.itemProperty());
 
+		// Details of slow queries
+		cells.itemProperty().addListener((obs, old, item) -> {
+			SlowQueryLog.Entry entry = null;
+			if (item != null && displaySlow.isSelected() && database != null) {
+				entry = database.slowQueryLog()
+				                .flatMap(log -> log.entries().stream().filter(e -> e.query().equals(item)).findFirst())
+				                .orElse(null);
+			}
+			cells.setTooltip(entry == null ? null : new Tooltip(entry.toString()));
+		});
+
 		cells.emptyProperty().addListener((obs, wasEmpty, isNotEmpty) -> {
 			cells.setContextMenu(isNotEmpty ? null : menu);
 		});
@@ -746,18 +777,14 @@ public class SqlartanController {
 
 		dialog.showAndWait().ifPresent(result -> {
 			//Show save file dialog
-			Popup.save("Export", sqlartan.getPrimaryStage(), new FileChooser.ExtensionFilter("SQL files (*.sql)", "*.sql"))
+			Popup.save("Export", sqlartan.getPrimaryStage(), new FileChooser.ExtensionFilter("SQL files (*.sql, *.sql.gz, *.sql.zz)", "*.sql", "*.sql.gz", "*.sql.zz"))
 			     .ifPresent(file -> {
-				     try {
-					     FileWriter fileWriter = new FileWriter(file);
-					     if (result.structure) {
-						     fileWriter.write(database.exportStructure());
-					     } else if (result.data) {
-						     fileWriter.write(database.exportTablesData());
-					     } else if (result.structureAndData) {
-						     fileWriter.write(database.export());
-					     }
-					     fileWriter.close();
+				     int parallelism = Runtime.getRuntime().availableProcessors();
+				     try (Writer writer = new OutputStreamWriter(Compression.newOutputStream(file, parallelism), StandardCharsets.UTF_8)) {
+					     database.exporter()
+					             .structure(result.structure || result.structureAndData)
+					             .data(result.data || result.structureAndData)
+					             .export(writer);
 				     } catch (IOException | SQLException e) {
 					     throw new UncheckedException(e);
 				     }
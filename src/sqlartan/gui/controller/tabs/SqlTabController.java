@@ -7,40 +7,125 @@ import javafx.scene.control.TableView;
 import javafx.scene.control.TextArea;
 import javafx.scene.layout.StackPane;
 import javafx.scene.text.Text;
+import javafx.stage.FileChooser;
 import sqlartan.Sqlartan;
 import sqlartan.core.Database;
 import sqlartan.core.Result;
+import sqlartan.core.ast.Operator;
+import sqlartan.core.ast.SelectStatement;
+import sqlartan.core.ast.parser.ParseCache;
+import sqlartan.core.ast.parser.Parser;
+import sqlartan.core.ast.token.Token;
+import sqlartan.core.ast.token.TokenSource;
+import sqlartan.core.ast.token.TokenizeException;
+import sqlartan.core.ast.token.Tokenizer;
+import sqlartan.core.util.JsonExporter;
+import sqlartan.core.util.ResultExporter;
+import sqlartan.core.util.ResultExporter.Format;
 import sqlartan.gui.util.DataTableView;
+import sqlartan.gui.util.Popup;
+import java.io.IOException;
 import java.sql.SQLException;
 
 /**
  * Controller of sqlTab.fxml. Represent the SQL tab.
  */
 public class SqlTabController extends Tab {
+	/**
+	 * The parser of exported queries, shared so that parses are cached
+	 */
+	private static final Parser<SelectStatement> selectParser = SelectStatement::parse;
 
 	@FXML
 	Button execute;
 	@FXML
+	Button export;
+	@FXML
 	TextArea SQLTextQuery;
 	@FXML
 	StackPane userQueryView;
 
 	/**
-	 * Adds a table view.
+	 * The tokens of the query, null if the query is not valid
+	 */
+	private TokenSource tokens;
+
+	/**
+	 * Adds a table view and tokenizes the query as it is edited.
 	 */
 	@FXML
 	private void initialize() {
 		userQueryView.getChildren().add(new TableView<>());
+		SQLTextQuery.textProperty().addListener((observable, previous, text) -> tokenize(previous, text));
+	}
+
+	/**
+	 * Updates the tokens of the query after an edit.
+	 * <p>
+	 * The edited range is found by comparing the previous and new text, only
+	 * this range is tokenized again.
+	 *
+	 * @param previous the previous text of the query
+	 * @param text     the new text of the query
+	 */
+	private void tokenize(String previous, String text) {
+		try {
+			if (tokens == null || previous == null) {
+				tokens = Tokenizer.tokenize(text);
+				return;
+			}
+
+			int max = Math.min(previous.length(), text.length());
+			int prefix = 0;
+			while (prefix < max && previous.charAt(prefix) == text.charAt(prefix)) {
+				++prefix;
+			}
+			int suffix = 0;
+			while (suffix < max - prefix && previous.charAt(previous.length() - 1 - suffix) == text.charAt(text.length() - 1 - suffix)) {
+				++suffix;
+			}
+
+			int removed = previous.length() - prefix - suffix;
+			int inserted = text.length() - prefix - suffix;
+			tokens = Tokenizer.retokenize(tokens, text, prefix, removed, inserted);
+		} catch (TokenizeException e) {
+			tokens = null;
+		}
 	}
 
 	/**
-	 * Executes the query set in the SQLTextQuery.
+	 * Returns the statement under the caret, or the whole query if it cannot
+	 * be tokenized.
+	 */
+	private String currentStatement() {
+		String text = SQLTextQuery.getText();
+		if (tokens == null) return text;
+
+		int caret = SQLTextQuery.getCaretPosition();
+		int begin = 0;
+		int end = text.length();
+		for (Token token : tokens.tokens()) {
+			if (!Operator.SEMICOLON.token.equals(token)) continue;
+			if (token.end() <= caret) {
+				begin = token.end();
+			} else {
+				end = token.offset;
+				break;
+			}
+		}
+
+		String statement = text.substring(begin, end).trim();
+		return statement.isEmpty() ? text : statement;
+	}
+
+	/**
+	 * Executes the statement under the caret in the SQLTextQuery.
 	 */
 	public void executeQuery() {
 		Database db = Sqlartan.getInstance().getController().database();
 		userQueryView.getChildren().clear();
 		try {
-			Result result = db.execute(SQLTextQuery.getText());
+			Result result = db.execute(currentStatement());
 			if (result.isQueryResult()) {
 				userQueryView.getChildren().add(DataTableView.getTableView(result));
 			} else {
@@ -52,6 +137,45 @@ public class SqlTabController extends Tab {
 		}
 	}
 
+	/**
+	 * Exports the result of the statement under the caret to a CSV,
+	 * TSV, JSON or NDJSON file, depending on the extension of the file.
+	 * <p>
+	 * The query is executed again and its rows are streamed to the file,
+	 * the displayed result is not used. Only SELECT statements are exported,
+	 * so that a statement modifying the database is never executed twice.
+	 */
+	public void exportResult() {
+		Database db = Sqlartan.getInstance().getController().database();
+		String statement = currentStatement().replaceFirst(";\\s*$", "");
+		if (!ParseCache.shared.tryParse(statement, selectParser).isPresent()) {
+			Popup.error("Export error", "Only SELECT queries can be exported");
+			return;
+		}
+		FileChooser.ExtensionFilter filter = new FileChooser.ExtensionFilter(
+			"CSV, TSV, JSON or NDJSON files (*.csv, *.tsv, *.json, *.ndjson)",
+			"*.csv", "*.tsv", "*.json", "*.ndjson", "*.csv.gz", "*.tsv.gz", "*.json.gz", "*.ndjson.gz"
+		);
+		Popup.save("Export result", Sqlartan.getInstance().getPrimaryStage(), filter).ifPresent(file -> {
+			String name = file.getName();
+			try (Result result = db.execute(statement)) {
+				if (!result.isQueryResult()) {
+					Popup.error("Export error", "The query does not return any result");
+					return;
+				}
+				if (name.contains(".ndjson")) {
+					new JsonExporter(JsonExporter.Format.Ndjson).export(result, file);
+				} else if (name.contains(".json")) {
+					new JsonExporter(JsonExporter.Format.Json).export(result, file);
+				} else {
+					new ResultExporter(name.contains(".tsv") ? Format.Tsv : Format.Csv).export(result, file);
+				}
+			} catch (SQLException | IOException e) {
+				Popup.error("Export error", e.getMessage());
+			}
+		});
+	}
+
 	/**
 	 * Sets the specific request.
 	 *
@@ -18,6 +18,8 @@ public class DatabaseStructureModel extends StructureModel {
 			.when(Table.class, t -> "Table")
 			.when(View.class, v -> "View")
 			.orElse("Unknown"));
-		this.lines = new SimpleLongProperty(structure.selectAll().count());
+		this.lines = new SimpleLongProperty(match(structure)
+			.when(Table.class, Table::rowCount)
+			.orElse(() -> structure.selectAll().count()));
 	}
 }
@@ -0,0 +1,424 @@
+package sqlartan.util;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Delivers events to a set of listeners.
+ * <p>
+ * By default, events are delivered synchronously on the publishing thread.
+ * In asynchronous mode, published events are queued in a bounded lock-free
+ * ring buffer and delivered in order by a dedicated dispatcher thread, so
+ * that slow listeners do not delay publishers. What happens when the buffer
+ * is full is decided by the overflow policy.
+ * <p>
+ * Listeners are kept in a copy-on-write set, they can be registered and
+ * removed at any time without blocking deliveries. Exceptions thrown by
+ * listeners are ignored.
+ *
+ * @param <E> the type of events
+ */
+public class EventBus<E> implements AutoCloseable {
+	/**
+	 * Behaviors when the buffer of an asynchronous bus is full
+	 */
+	public enum Overflow {
+		/**
+		 * The new event is discarded
+		 */
+		Drop,
+
+		/**
+		 * The publisher waits until the buffer has room for the event
+		 */
+		Block,
+
+		/**
+		 * The new event replaces any other event that also overflowed, it is
+		 * delivered once the buffer is drained
+		 */
+		Coalesce
+	}
+
+	/**
+	 * The sequence number of dispatcher threads
+	 */
+	private static final AtomicLong threadCount = new AtomicLong();
+
+	/**
+	 * The registered listeners
+	 */
+	private final Set<Consumer<E>> listeners = new CopyOnWriteArraySet<>();
+
+	/**
+	 * The number of events discarded or replaced on overflow
+	 */
+	private final LongAdder dropped = new LongAdder();
+
+	/**
+	 * The dispatcher of asynchronous mode, null in synchronous mode
+	 */
+	private volatile Dispatcher dispatcher;
+
+	/**
+	 * Registers a listener.
+	 *
+	 * @param listener the listener to register
+	 */
+	public void register(Consumer<E> listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes a registered listener.
+	 *
+	 * @param listener the listener to remove
+	 */
+	public void remove(Consumer<E> listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Switches to asynchronous delivery. Events pending in a previous
+	 * dispatcher are still delivered.
+	 *
+	 * @param capacity the capacity of the buffer, rounded up to a power of
+	 *                 two
+	 * @param overflow the behavior when the buffer is full
+	 * @return this object
+	 */
+	public synchronized EventBus<E> async(int capacity, Overflow overflow) {
+		if (capacity < 1) throw new IllegalArgumentException("Capacity must be at least 1");
+		Dispatcher previous = dispatcher;
+		dispatcher = new Dispatcher(capacity, overflow);
+		if (previous != null) previous.shutdown();
+		return this;
+	}
+
+	/**
+	 * Switches to synchronous delivery. Events pending in the dispatcher
+	 * are still delivered, on its thread.
+	 *
+	 * @return this object
+	 */
+	public synchronized EventBus<E> sync() {
+		Dispatcher previous = dispatcher;
+		dispatcher = null;
+		if (previous != null) previous.shutdown();
+		return this;
+	}
+
+	/**
+	 * Checks if events are delivered asynchronously.
+	 */
+	public boolean isAsync() {
+		return dispatcher != null;
+	}
+
+	/**
+	 * Returns the number of events discarded or replaced because the buffer
+	 * was full.
+	 */
+	public long dropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Publishes an event to the registered listeners.
+	 *
+	 * @param event the event
+	 */
+	public void publish(E event) {
+		Dispatcher current = dispatcher;
+		if (current == null) {
+			deliver(event);
+		} else {
+			current.publish(event);
+		}
+	}
+
+	/**
+	 * Waits until every event published so far has been delivered.
+	 *
+	 * @param timeout the maximum time to wait
+	 * @param unit    the unit of the timeout
+	 * @return false if the timeout elapsed first
+	 */
+	public boolean awaitIdle(long timeout, TimeUnit unit) {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		Dispatcher current = dispatcher;
+		while (current != null && !current.idle()) {
+			if (System.nanoTime() - deadline >= 0) return false;
+			LockSupport.parkNanos(100_000);
+		}
+		return true;
+	}
+
+	/**
+	 * Stops the dispatcher once pending events are delivered. Later events
+	 * are delivered synchronously.
+	 */
+	@Override
+	public void close() {
+		sync();
+	}
+
+	/**
+	 * Delivers an event to every registered listener.
+	 *
+	 * @param event the event
+	 */
+	private void deliver(E event) {
+		for (Consumer<E> listener : listeners) {
+			try {
+				listener.accept(event);
+			} catch (Throwable ignored) {}
+		}
+	}
+
+	/**
+	 * A bounded ring buffer with many producers and a single consumer, the
+	 * dispatcher thread.
+	 * <p>
+	 * Each slot carries a sequence number telling whether it is free for
+	 * the producer of a given position or filled for the consumer. Producers
+	 * claim positions with a compare-and-set on the tail, the consumer is
+	 * the only one to advance the head.
+	 */
+	private class Dispatcher implements Runnable {
+		/**
+		 * The events of the buffer
+		 */
+		private final Object[] events;
+
+		/**
+		 * The sequence number of each slot
+		 */
+		private final AtomicLongArray sequences;
+
+		/**
+		 * The mask of slot indexes
+		 */
+		private final int mask;
+
+		/**
+		 * The overflow policy
+		 */
+		private final Overflow overflow;
+
+		/**
+		 * The next position to claim by producers
+		 */
+		private final AtomicLong tail = new AtomicLong();
+
+		/**
+		 * The next position to consume, only written by the consumer
+		 */
+		private long head = 0;
+
+		/**
+		 * The number of events delivered from the buffer
+		 */
+		private volatile long delivered = 0;
+
+		/**
+		 * The latest overflowed event, in coalesce mode
+		 */
+		private final AtomicReference<E> pending = new AtomicReference<>();
+
+		/**
+		 * Whether the overflowed event is being delivered
+		 */
+		private volatile boolean deliveringPending = false;
+
+		/**
+		 * Whether the consumer is about to park
+		 */
+		private volatile boolean sleeping = false;
+
+		/**
+		 * Whether the dispatcher must stop once the buffer is drained
+		 */
+		private volatile boolean stopped = false;
+
+		/**
+		 * The dispatcher thread
+		 */
+		private final Thread thread;
+
+		/**
+		 * @param capacity the minimum capacity of the buffer
+		 * @param overflow the overflow policy
+		 */
+		private Dispatcher(int capacity, Overflow overflow) {
+			int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+			this.events = new Object[size];
+			this.sequences = new AtomicLongArray(size);
+			this.mask = size - 1;
+			this.overflow = overflow;
+			for (int i = 0; i < size; i++) sequences.set(i, i);
+
+			thread = new Thread(this, "sqlartan-events-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		/**
+		 * Queues an event, applying the overflow policy if the buffer is
+		 * full.
+		 *
+		 * @param event the event
+		 */
+		private void publish(E event) {
+			while (!offer(event)) {
+				if (stopped) {
+					deliver(event);
+					return;
+				}
+				switch (overflow) {
+					case Drop:
+						dropped.increment();
+						return;
+					case Coalesce:
+						if (pending.getAndSet(event) != null) dropped.increment();
+						wake();
+						return;
+					case Block:
+						wake();
+						LockSupport.parkNanos(50_000);
+						break;
+				}
+			}
+			if (stopped) {
+				drainAfterStop();
+			} else {
+				wake();
+			}
+		}
+
+		/**
+		 * Delivers the events queued while the dispatcher was stopping,
+		 * once its thread has terminated.
+		 */
+		private void drainAfterStop() {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			synchronized (this) {
+				for (E event; (event = poll()) != null; ) {
+					deliver(event);
+					delivered++;
+				}
+			}
+		}
+
+		/**
+		 * Attempts to queue an event.
+		 *
+		 * @param event the event
+		 * @return false if the buffer is full
+		 */
+		private boolean offer(E event) {
+			long pos = tail.get();
+			for (;;) {
+				int index = (int) pos & mask;
+				long diff = sequences.get(index) - pos;
+				if (diff == 0) {
+					if (tail.compareAndSet(pos, pos + 1)) {
+						events[index] = event;
+						sequences.set(index, pos + 1);
+						return true;
+					}
+					pos = tail.get();
+				} else if (diff < 0) {
+					return false;
+				} else {
+					pos = tail.get();
+				}
+			}
+		}
+
+		/**
+		 * Takes the next event from the buffer.
+		 *
+		 * @return the event, null if the buffer is empty
+		 */
+		@SuppressWarnings("unchecked")
+		private E poll() {
+			int index = (int) head & mask;
+			if (sequences.get(index) != head + 1) return null;
+			E event = (E) events[index];
+			events[index] = null;
+			sequences.set(index, head + events.length);
+			head++;
+			return event;
+		}
+
+		/**
+		 * Wakes the dispatcher thread up if it is parked.
+		 */
+		private void wake() {
+			if (sleeping) LockSupport.unpark(thread);
+		}
+
+		/**
+		 * Checks if every queued event was delivered.
+		 */
+		private boolean idle() {
+			return delivered == tail.get() && pending.get() == null && !deliveringPending;
+		}
+
+		/**
+		 * Stops the dispatcher once the buffer is drained.
+		 */
+		private void shutdown() {
+			stopped = true;
+			LockSupport.unpark(thread);
+		}
+
+		/**
+		 * Delivers queued events until stopped.
+		 */
+		@Override
+		public void run() {
+			for (;;) {
+				E event = poll();
+				if (event != null) {
+					deliver(event);
+					delivered++;
+					continue;
+				}
+
+				if (pending.get() != null) {
+					deliveringPending = true;
+					E latest = pending.getAndSet(null);
+					if (latest != null) deliver(latest);
+					deliveringPending = false;
+					continue;
+				}
+
+				if (stopped) {
+					if (delivered == tail.get()) return;
+					Thread.yield();
+					continue;
+				}
+
+				sleeping = true;
+				if (sequences.get((int) head & mask) != head + 1 && pending.get() == null && !stopped) {
+					LockSupport.parkNanos(this, 10_000_000);
+				}
+				sleeping = false;
+			}
+		}
+	}
+}
@@ -26,7 +26,7 @@ public abstract class Lazy<T> {
 	/**
 	 * Whether this lazy value has already been generated
 	 */
-	private boolean generated = false;
+	private volatile boolean generated = false;
 
 	/**
 	 * The value of this lazy value
@@ -52,10 +52,14 @@ public abstract class Lazy<T> {
 	 *
 	 * @return the value of this lazy value
 	 */
-	public synchronized T get() {
+	public T get() {
 		if (!generated) {
-			value = gen();
-			generated = true;
+			synchronized (this) {
+				if (!generated) {
+					value = gen();
+					generated = true;
+				}
+			}
 		}
 		return value;
 	}
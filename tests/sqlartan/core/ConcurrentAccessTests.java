@@ -0,0 +1,162 @@
+package sqlartan.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import static org.junit.Assert.*;
+
+public class ConcurrentAccessTests {
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void temporaryTablesShouldBeReadOnWriter() throws Exception {
+		try (Database db = Database.open(folder.newFile())) {
+			db.execute("CREATE TABLE foo (x)");
+			db.enableConcurrentAccess(2);
+			db.execute("CREATE TEMP TABLE tt (x)");
+			db.execute("INSERT INTO tt VALUES (1)");
+			assertEquals(1, db.execute("SELECT count(*) FROM tt").mapFirst(Row::getInt).intValue());
+			assertEquals(0, db.execute("SELECT count(*) FROM foo").mapFirst(Row::getInt).intValue());
+		}
+
+		try (Database db = Database.open(folder.newFile())) {
+			db.execute("CREATE TABLE temp.tt (x)");
+			db.execute("INSERT INTO tt VALUES (1)");
+			db.enableConcurrentAccess(2);
+			assertEquals(1, db.execute("SELECT count(*) FROM tt").mapFirst(Row::getInt).intValue());
+		}
+	}
+
+	@Test
+	public void readsShouldSeeOpenTransaction() throws Exception {
+		try (Database db = Database.open(folder.newFile())) {
+			db.execute("CREATE TABLE foo (x)");
+			db.enableConcurrentAccess(2);
+
+			db.execute("BEGIN");
+			db.execute("INSERT INTO foo VALUES (1)");
+			assertEquals(1, db.execute("SELECT count(*) FROM foo").mapFirst(Row::getInt).intValue());
+			db.execute("ROLLBACK");
+			assertEquals(0, db.execute("SELECT count(*) FROM foo").mapFirst(Row::getInt).intValue());
+
+			db.execute("SAVEPOINT sp");
+			db.execute("INSERT INTO foo VALUES (2)");
+			assertEquals(1, db.execute("SELECT count(*) FROM foo WHERE x = ?", 2).mapFirst(Row::getInt).intValue());
+			db.execute("RELEASE sp");
+			assertEquals(1, db.execute("SELECT count(*) FROM foo").mapFirst(Row::getInt).intValue());
+		}
+	}
+
+	@Test
+	public void writerResultsShouldBeReadBeforeHandover() throws SQLException {
+		try (Database db = Database.createEphemeral()) {
+			db.execute("CREATE TABLE foo (id INTEGER PRIMARY KEY, label TEXT)");
+			db.execute("INSERT INTO foo (label) VALUES ('a'), ('b'), ('c')");
+			db.enableConcurrentAccess(2);
+
+			try (Result result = db.execute("SELECT label FROM foo ORDER BY id")) {
+				db.execute("INSERT INTO foo (label) VALUES ('d')");
+				db.execute("DELETE FROM foo WHERE label = 'a'");
+				List<String> labels = result.map(Row::getString).collect(Collectors.toList());
+				assertEquals(3, labels.size());
+				assertEquals("a", labels.get(0));
+				assertEquals(3, result.rowsFetched());
+				assertEquals(3, result.bytesRead().getAsLong());
+			}
+			assertEquals(3, db.execute("SELECT count(*) FROM foo").mapFirst(Row::getInt).intValue());
+		}
+	}
+
+	@Test
+	public void concurrentReadsAndWritesShouldSucceed() throws Exception {
+		try (Database db = Database.open(folder.newFile())) {
+			db.execute("CREATE TABLE foo (id INTEGER PRIMARY KEY, thread INTEGER)");
+			db.enableConcurrentAccess(2);
+
+			ExecutorService executor = Executors.newFixedThreadPool(4);
+			try {
+				List<Future<?>> futures = new ArrayList<>();
+				for (int t = 0; t < 4; t++) {
+					int thread = t;
+					futures.add(executor.submit(() -> {
+						for (int i = 0; i < 25; i++) {
+							db.execute("INSERT INTO foo (thread) VALUES (?)", thread);
+							int count = db.execute("SELECT count(*) FROM foo WHERE thread = ?", thread).mapFirst(Row::getInt);
+							assertEquals(i + 1, count);
+						}
+						return null;
+					}));
+				}
+				for (Future<?> future : futures) future.get();
+			} finally {
+				executor.shutdown();
+			}
+			assertEquals(100, db.execute("SELECT count(*) FROM foo").mapFirst(Row::getInt).intValue());
+		}
+	}
+
+	@Test
+	public void groupCommitShouldIsolateFailures() throws Exception {
+		try (Database db = Database.open(folder.newFile())) {
+			db.execute("CREATE TABLE foo (id INTEGER PRIMARY KEY, label TEXT UNIQUE)");
+			db.execute("INSERT INTO foo (label) VALUES ('dup')");
+			db.enableConcurrentAccess(2);
+			db.enableGroupCommit(200, TimeUnit.MILLISECONDS, 16);
+			long transactions = db.metrics.getTransactions();
+
+			ExecutorService executor = Executors.newFixedThreadPool(8);
+			try {
+				CountDownLatch start = new CountDownLatch(1);
+				List<Future<?>> futures = new ArrayList<>();
+				for (int t = 0; t < 8; t++) {
+					String label = t == 3 ? "dup" : "label" + t;
+					futures.add(executor.submit(() -> {
+						start.await();
+						db.execute("INSERT INTO foo (label) VALUES (?)", label);
+						return null;
+					}));
+				}
+				start.countDown();
+				for (int t = 0; t < 8; t++) {
+					try {
+						futures.get(t).get();
+						assertNotEquals(3, t);
+					} catch (ExecutionException e) {
+						assertEquals(3, t);
+						assertTrue(e.getCause() instanceof SQLException);
+					}
+				}
+			} finally {
+				executor.shutdown();
+			}
+
+			assertEquals(8, db.execute("SELECT count(*) FROM foo").mapFirst(Row::getInt).intValue());
+			assertTrue(db.metrics.getTransactions() - transactions < 7);
+		}
+	}
+
+	@Test
+	public void savepointShouldPreventGrouping() throws Exception {
+		try (Database db = Database.open(folder.newFile())) {
+			db.execute("CREATE TABLE foo (id INTEGER PRIMARY KEY, label TEXT)");
+			db.enableConcurrentAccess(2);
+			db.enableGroupCommit(10, TimeUnit.MILLISECONDS, 16);
+
+			db.execute("SAVEPOINT sp");
+			db.execute("INSERT INTO foo (label) VALUES ('a')");
+			db.execute("INSERT INTO foo (label) VALUES ('b')");
+			db.execute("ROLLBACK TO sp");
+			db.execute("RELEASE sp");
+			assertEquals(0, db.execute("SELECT count(*) FROM foo").mapFirst(Row::getInt).intValue());
+
+			db.execute("INSERT INTO foo (label) VALUES ('c')");
+			assertEquals(1, db.execute("SELECT count(*) FROM foo").mapFirst(Row::getInt).intValue());
+		}
+	}
+}
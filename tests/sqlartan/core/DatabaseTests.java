@@ -4,6 +4,9 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
+import sqlartan.core.ast.SelectStatement;
+import sqlartan.core.ast.parser.ParseException;
+import sqlartan.core.ast.parser.Parser;
 import sqlartan.core.ast.token.TokenizeException;
 import sqlartan.core.stream.ImmutableList;
 import sqlartan.core.util.UncheckedSQLException;
@@ -12,6 +15,9 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import static org.junit.Assert.*;
 
 public class DatabaseTests {
@@ -200,6 +206,85 @@ public class DatabaseTests {
 		}
 	}
 
+	@Test
+	public void parallelExportShouldMatchSequentialExport() throws IOException, SQLException, TokenizeException {
+		File file = folder.newFile();
+		try (Database db = Database.open(file)) {
+			for (int i = 0; i < 8; i++) {
+				db.execute("CREATE TABLE t" + i + " (id INTEGER PRIMARY KEY, label TEXT, value REAL)");
+				db.execute("INSERT INTO t" + i + " VALUES (1, 'a''b', 1.5), (2, NULL, " + i + "), (3, 'c', NULL)");
+			}
+			db.execute("CREATE TABLE empty (a INT)");
+
+			String sequential = db.exporter().parallelism(1).export();
+			String parallel = db.exporter().parallelism(4).export();
+			assertEquals(sequential, parallel);
+
+			try (Database copy = Database.createEphemeral()) {
+				copy.importFromString(parallel);
+				assertEquals(9, copy.tables().count());
+				assertEquals(3, copy.execute("SELECT COUNT(*) FROM t7").mapFirst(Row::getInt).intValue());
+			}
+		}
+	}
+
+	@Test
+	public void binaryDumpShouldRoundTrip() throws IOException, SQLException, TokenizeException {
+		File dump = folder.newFile("dump.bin.gz");
+		try (Database db = Database.createEphemeral()) {
+			db.execute("CREATE TABLE foo (id INTEGER PRIMARY KEY, label TEXT, value REAL, data BLOB)");
+			db.execute("INSERT INTO foo VALUES (1, 'héllo', 1.5, x'00ff'), (2, NULL, -3, NULL), (-9223372036854775808, '', NULL, x'')");
+			db.execute("CREATE INDEX foo_label ON foo (label)");
+			db.execute("CREATE VIEW bar AS SELECT id FROM foo");
+			db.execute("CREATE TABLE seq (id INTEGER PRIMARY KEY AUTOINCREMENT, label TEXT)");
+			db.execute("INSERT INTO seq (label) VALUES ('a'), ('b')");
+			db.execute("ANALYZE");
+			db.exportBinary(dump);
+		}
+
+		try (Database db = Database.createEphemeral()) {
+			db.importFromFile(dump);
+			assertEquals(3, db.execute("SELECT COUNT(*) FROM foo").mapFirst(Row::getInt).intValue());
+			assertEquals("héllo", db.execute("SELECT label FROM foo WHERE id = 1").mapFirst(Row::getString));
+			assertEquals(-3.0, db.execute("SELECT value FROM foo WHERE id = 2").mapFirst(Row::getDouble), 0.0);
+			assertEquals("real", db.execute("SELECT typeof(value) FROM foo WHERE id = 2").mapFirst(Row::getString));
+			assertEquals("blob", db.execute("SELECT typeof(data) FROM foo WHERE id = -9223372036854775808").mapFirst(Row::getString));
+			assertTrue(db.view("bar").isPresent());
+			assertEquals(2, db.execute("SELECT seq FROM sqlite_sequence WHERE name = 'seq'").mapFirst(Row::getInt).intValue());
+			assertEquals(1, db.execute("SELECT COUNT(*) FROM sqlite_sequence").mapFirst(Row::getInt).intValue());
+		}
+	}
+
+	@Test
+	public void backupShouldCopyAndRestoreDatabase() throws IOException, SQLException {
+		File file = folder.newFile();
+		File backup = new File(folder.getRoot(), "backup.db");
+		File compact = new File(folder.getRoot(), "compact.db");
+		try (Database db = Database.open(file)) {
+			db.execute("CREATE TABLE foo (id INTEGER PRIMARY KEY, label TEXT)");
+			db.execute("INSERT INTO foo VALUES (1, 'a'), (2, 'b')");
+
+			db.backupTo(backup.toPath(), new BackupOptions());
+			db.backupTo(compact.toPath(), new BackupOptions().method(BackupOptions.Method.Compact));
+
+			db.execute("DELETE FROM foo");
+			db.restoreFrom(backup.toPath());
+			assertEquals(2, db.execute("SELECT COUNT(*) FROM foo").mapFirst(Row::getInt).intValue());
+
+			ResultCache cache = db.enableResultCache(1 << 20, 0, TimeUnit.SECONDS);
+			assertEquals(Arrays.asList("2"), strings(db, "SELECT COUNT(*) FROM foo"));
+			db.execute("DELETE FROM foo");
+			assertEquals(Arrays.asList("0"), strings(db, "SELECT COUNT(*) FROM foo"));
+			db.restoreFrom(backup.toPath());
+			assertEquals(Arrays.asList("2"), strings(db, "SELECT COUNT(*) FROM foo"));
+			assertEquals(0, cache.hits());
+		}
+
+		try (Database db = Database.open(compact)) {
+			assertEquals("b", db.execute("SELECT label FROM foo WHERE id = 2").mapFirst(Row::getString));
+		}
+	}
+
 	@Test
 	public void importShouldExecuteSQLOnDatabase() throws SQLException, TokenizeException {
 		try (Database db = Database.createEphemeral()) {
@@ -259,4 +344,221 @@ public class DatabaseTests {
 			assertEquals(true, results.stream().map(Result::isClosed).allMatch(closed -> closed));
 		}
 	}
+
+	@Test
+	public void materializedViewsShouldFollowSourceTables() throws SQLException, ParseException {
+		try (Database db = Database.createEphemeral()) {
+			db.execute("CREATE TABLE foo (id INTEGER PRIMARY KEY, grp TEXT, val INTEGER)");
+			db.execute("INSERT INTO foo (grp, val) VALUES ('a', 1), ('a', 2), ('b', 3)");
+
+			MaterializedView sums = db.createMaterializedView("sums", Parser.parse("SELECT grp, SUM(val) AS total FROM foo GROUP BY grp", SelectStatement::parse));
+			MaterializedView union = db.createMaterializedView("vals", Parser.parse("SELECT val FROM foo UNION SELECT 0", SelectStatement::parse));
+			assertEquals(MaterializedView.Strategy.Incremental, sums.strategy());
+			assertEquals(MaterializedView.Strategy.Full, union.strategy());
+
+			db.execute("INSERT INTO foo (grp, val) VALUES ('a', 4)");
+			db.execute("UPDATE foo SET grp = 'c' WHERE val = 3");
+			assertEquals(7, db.execute("SELECT total FROM sums WHERE grp = 'a'").mapFirst(Row::getInt).intValue());
+			assertEquals(3, db.execute("SELECT total FROM sums WHERE grp = 'c'").mapFirst(Row::getInt).intValue());
+			assertEquals(0, db.execute("SELECT COUNT(*) FROM sums WHERE grp = 'b'").mapFirst(Row::getInt).intValue());
+
+			assertTrue(union.isStale());
+			union.refresh();
+			assertFalse(union.isStale());
+			assertEquals(5, db.execute("SELECT COUNT(*) FROM vals").mapFirst(Row::getInt).intValue());
+
+			union.drop();
+			assertEquals(1, db.materializedViews().count());
+		}
+	}
+
+	@Test
+	public void nestedTransactionsShouldRollBackOnTheirOwn() throws SQLException {
+		try (Database db = Database.createEphemeral()) {
+			db.execute("CREATE TABLE foo (id INTEGER PRIMARY KEY, label TEXT)");
+			db.transaction(() -> {
+				db.execute("INSERT INTO foo (label) VALUES ('a')");
+				try {
+					db.transaction(() -> {
+						db.execute("INSERT INTO foo (label) VALUES ('b')");
+						db.transaction(() -> db.execute("INSERT INTO foo (label) VALUES ('c')"));
+						throw new SQLException("inner");
+					});
+					fail();
+				} catch (SQLException e) {
+					assertEquals("inner", e.getMessage());
+				}
+				db.execute("INSERT INTO foo (label) VALUES ('d')");
+			});
+			assertEquals(Arrays.asList("a", "d"), db.execute("SELECT label FROM foo ORDER BY id").map(Row::getString).collect(Collectors.toList()));
+
+			try {
+				db.transaction(() -> {
+					db.transaction(() -> db.execute("INSERT INTO foo (label) VALUES ('e')"));
+					throw new SQLException("outer");
+				});
+				fail();
+			} catch (SQLException e) {
+				assertEquals("outer", e.getMessage());
+			}
+			assertEquals(2, db.execute("SELECT COUNT(*) FROM foo").mapFirst(Row::getInt).intValue());
+			assertFalse(db.transactionState().isOpen());
+		}
+	}
+
+	@Test
+	public void executeTransactionShouldNestInTransaction() throws SQLException {
+		try (Database db = Database.createEphemeral()) {
+			db.execute("CREATE TABLE foo (id INTEGER PRIMARY KEY, label TEXT UNIQUE)");
+			db.transaction(() -> {
+				db.execute("INSERT INTO foo (label) VALUES ('a')");
+				db.executeTransaction(new String[] { "INSERT INTO foo (label) VALUES ('b')", "INSERT INTO foo (label) VALUES ('c')" });
+				try {
+					db.executeTransaction(new String[] { "INSERT INTO foo (label) VALUES ('d')", "INSERT INTO foo (label) VALUES ('a')" });
+					fail();
+				} catch (SQLException expected) {}
+			});
+			assertEquals(Arrays.asList("a", "b", "c"), db.execute("SELECT label FROM foo ORDER BY id").map(Row::getString).collect(Collectors.toList()));
+		}
+	}
+
+	@Test
+	public void tableChangesShouldBeDeliveredOnCommit() throws SQLException {
+		try (Database db = Database.createEphemeral()) {
+			db.execute("CREATE TABLE foo (id INTEGER PRIMARY KEY, label TEXT)");
+			db.execute("CREATE TABLE bar (id INTEGER PRIMARY KEY)");
+			db.execute("INSERT INTO foo (label) VALUES ('a')");
+
+			List<ChangeSet> changes = new ArrayList<>();
+			Consumer<ChangeSet> listener = changes::add;
+			db.onTableChange("foo", listener);
+
+			db.execute("BEGIN");
+			db.execute("INSERT INTO foo (label) VALUES ('b')");
+			db.execute("UPDATE foo SET label = 'c' WHERE id = 1");
+			db.execute("INSERT INTO bar DEFAULT VALUES");
+			assertTrue(changes.isEmpty());
+			db.execute("COMMIT");
+			assertEquals(1, changes.size());
+			assertEquals("foo", changes.get(0).table());
+			assertEquals(EnumSet.of(ChangeSet.Operation.Insert, ChangeSet.Operation.Update), changes.get(0).operations());
+
+			db.execute("BEGIN");
+			db.execute("DELETE FROM foo");
+			db.execute("ROLLBACK");
+			assertEquals(1, changes.size());
+
+			db.execute("SAVEPOINT outer_scope");
+			db.execute("DELETE FROM foo");
+			assertEquals(1, changes.size());
+			db.execute("ROLLBACK");
+			assertEquals(1, changes.size());
+
+			db.execute("SAVEPOINT outer_scope");
+			db.execute("INSERT INTO foo (label) VALUES ('d')");
+			assertEquals(1, changes.size());
+			db.execute("RELEASE outer_scope");
+			assertEquals(2, changes.size());
+			assertEquals(EnumSet.of(ChangeSet.Operation.Insert), changes.get(1).operations());
+
+			db.execute("DELETE FROM foo WHERE id = 1");
+			assertEquals(3, changes.size());
+			assertEquals(EnumSet.of(ChangeSet.Operation.Delete), changes.get(2).operations());
+
+			db.removeTableChangeListener("foo", listener);
+			db.execute("DELETE FROM foo");
+			assertEquals(3, changes.size());
+		}
+	}
+
+	@Test
+	public void resultCacheShouldBeInvalidatedByWrites() throws SQLException {
+		try (Database db = Database.createEphemeral()) {
+			db.execute("PRAGMA foreign_keys = ON");
+			db.execute("CREATE TABLE foo (id INTEGER PRIMARY KEY, label TEXT)");
+			db.execute("CREATE TABLE log (label TEXT)");
+			db.execute("CREATE TABLE child (foo_id INTEGER REFERENCES foo (id) ON DELETE CASCADE)");
+			db.execute("CREATE TRIGGER foo_log AFTER INSERT ON foo BEGIN INSERT INTO log VALUES (new.label); END");
+			db.execute("CREATE TEMP VIEW labels AS SELECT label FROM foo");
+			db.execute("INSERT INTO foo (label) VALUES ('a')");
+			db.execute("INSERT INTO child VALUES (1)");
+			ResultCache cache = db.enableResultCache(1 << 20, 0, TimeUnit.SECONDS);
+
+			assertEquals(Arrays.asList("a"), strings(db, "SELECT label FROM labels"));
+			assertEquals(Arrays.asList("a"), strings(db, "SELECT label FROM labels"));
+			assertEquals(Arrays.asList("a"), strings(db, "SELECT label FROM log"));
+			assertEquals(Arrays.asList("1"), strings(db, "SELECT foo_id FROM child"));
+			assertEquals(3, cache.size());
+			assertEquals(1, cache.hits());
+
+			db.execute("INSERT INTO foo (label) VALUES ('b')");
+			assertEquals(Arrays.asList("a", "b"), strings(db, "SELECT label FROM labels"));
+			assertEquals(Arrays.asList("a", "b"), strings(db, "SELECT label FROM log"));
+			assertEquals(Arrays.asList("1"), strings(db, "SELECT foo_id FROM child"));
+			assertEquals(1, cache.hits());
+
+			db.execute("DELETE FROM foo WHERE id = 1");
+			assertEquals(Collections.emptyList(), strings(db, "SELECT foo_id FROM child"));
+			assertEquals(1, cache.hits());
+
+			db.execute("CREATE TABLE bar (x)");
+			db.execute("SAVEPOINT s");
+			db.execute("INSERT INTO bar VALUES (1)");
+			assertEquals(Arrays.asList("1"), strings(db, "SELECT COUNT(*) FROM bar"));
+			db.execute("ROLLBACK");
+			assertEquals(Arrays.asList("0"), strings(db, "SELECT COUNT(*) FROM bar"));
+			assertEquals(1, cache.hits());
+		}
+	}
+
+	private static List<String> strings(Database db, String query) throws SQLException {
+		return db.execute(query).map(Row::getString).collect(Collectors.toList());
+	}
+
+	@Test
+	public void metricsShouldCountCommittedTransactions() throws SQLException {
+		try (Database db = Database.createEphemeral()) {
+			db.execute("CREATE TABLE foo (id INTEGER PRIMARY KEY, label TEXT)");
+			db.execute("INSERT INTO foo (label) VALUES ('a')");
+			db.execute("SELECT * FROM foo").close();
+			assertEquals(2, db.metrics.getTransactions());
+
+			db.execute("BEGIN");
+			db.execute("INSERT INTO foo (label) VALUES ('b')");
+			db.execute("INSERT INTO foo (label) VALUES ('c')");
+			db.execute("COMMIT");
+			db.execute("BEGIN");
+			db.execute("DELETE FROM foo");
+			db.execute("ROLLBACK");
+			assertEquals(3, db.metrics.getTransactions());
+
+			db.execute("SAVEPOINT outer_scope");
+			db.execute("SAVEPOINT inner_scope");
+			db.execute("UPDATE foo SET label = 'd' WHERE id = 1");
+			db.execute("ROLLBACK TO inner_scope");
+			db.execute("RELEASE inner_scope");
+			assertEquals(3, db.metrics.getTransactions());
+			db.execute("RELEASE outer_scope");
+			assertEquals(4, db.metrics.getTransactions());
+
+			db.transaction(() -> db.executeTransaction(new String[] { "INSERT INTO foo (label) VALUES ('e')" }));
+			assertEquals(5, db.metrics.getTransactions());
+
+			try (PreparedQuery insert = db.prepare("INSERT INTO foo (label) VALUES (?)")) {
+				insert.set(1, "f").addBatch().set(1, "g").addBatch().executeBatch();
+			}
+			assertEquals(7, db.metrics.getTransactions());
+		}
+	}
+
+	@Test
+	public void metricsShouldReadPragmasOnWriter() throws IOException, SQLException {
+		try (Database db = Database.open(folder.newFile())) {
+			db.execute("CREATE TABLE foo (id INTEGER PRIMARY KEY)");
+			db.execute("PRAGMA cache_size = 1234");
+			db.enableConcurrentAccess(2);
+			assertTrue(db.metrics.getPageCount() > 0);
+			assertEquals(1234, db.metrics.getCacheSize());
+		}
+	}
 }
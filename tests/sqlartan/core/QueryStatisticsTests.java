@@ -0,0 +1,46 @@
+package sqlartan.core;
+
+import org.junit.Test;
+import java.util.List;
+import static org.junit.Assert.*;
+
+public class QueryStatisticsTests {
+	@Test
+	public void queriesShouldBeNormalized() {
+		assertEquals("SELECT * FROM t WHERE a = ? AND b IS NOT ?",
+			QueryStatistics.normalize("select *\n  from t -- comment\n where a = 'x' and b is not 12.5"));
+		assertEquals(QueryStatistics.fingerprint(QueryStatistics.normalize("SELECT 1")),
+			QueryStatistics.fingerprint(QueryStatistics.normalize("SELECT  ?")));
+	}
+
+	@Test
+	public void statisticsShouldAggregateByFingerprint() {
+		QueryStatistics statistics = new QueryStatistics(100);
+		for (int i = 0; i < 100; i++) {
+			statistics.record("SELECT * FROM t WHERE id = " + i, i < 99 ? 1_000_000 : 500_000_000, 1);
+		}
+		statistics.record("DELETE FROM t", 10_000, 100);
+
+		List<QueryStatistics.Entry> entries = statistics.entries();
+		assertEquals(2, entries.size());
+
+		QueryStatistics.Entry select = entries.get(0);
+		assertEquals("SELECT * FROM t WHERE id = ?", select.query());
+		assertEquals(100, select.calls());
+		assertEquals(100, select.rows());
+		assertEquals(500_000_000, select.maxTime());
+		assertTrue(select.p99Time() >= 1_000_000 && select.p99Time() < 1_300_000);
+
+		statistics.reset();
+		assertTrue(statistics.entries().isEmpty());
+	}
+
+	@Test
+	public void cardinalityShouldBeBounded() {
+		QueryStatistics statistics = new QueryStatistics(16);
+		for (int i = 0; i < 1000; i++) {
+			statistics.record("SELECT * FROM t" + i, 1000, 0);
+		}
+		assertTrue(statistics.entries().size() <= 16);
+	}
+}
@@ -171,4 +171,33 @@ public class ResultsTests {
 			}
 		}
 	}
+
+	@Test
+	@SuppressWarnings("StatementWithEmptyBody")
+	public void metricsShouldBeAvailableOnceConsumed() throws SQLException {
+		try (Database db = Database.createEphemeral()) {
+			db.execute("CREATE TABLE foo (bar INT, baz TEXT)");
+
+			int[] completions = { 0 };
+			Result insert = db.execute("INSERT INTO foo VALUES (?, 'abc'), (2, NULL)", 1);
+			insert.onComplete(r -> completions[0]++);
+			assertEquals(1, completions[0]);
+			assertEquals(2, insert.updateCount());
+			assertTrue(insert.prepareTime() > 0);
+			assertFalse(insert.bytesRead().isPresent());
+
+			Result select = db.execute("SELECT bar, baz FROM foo ORDER BY bar");
+			select.onComplete(r -> completions[0]++);
+			for (Row row : select) {}
+			assertEquals(2, completions[0]);
+			assertTrue(select.isClosed());
+			select.close();
+			assertEquals(2, completions[0]);
+
+			assertEquals(2, select.rowsFetched());
+			assertEquals(8 + 3 + 8, select.bytesRead().getAsLong());
+			assertTrue(select.firstRowTime() >= select.prepareTime() + select.executeTime());
+			assertTrue(select.totalTime() >= select.firstRowTime());
+		}
+	}
 }
@@ -0,0 +1,81 @@
+package sqlartan.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import static org.junit.Assert.*;
+
+public class SlowQueryLogTests {
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void queriesBelowThresholdShouldNotBeLogged() throws SQLException {
+		try (Database db = Database.createEphemeral()) {
+			SlowQueryLog log = db.enableSlowQueryLog(60_000, 10);
+			db.execute("SELECT 1").close();
+			assertTrue(log.entries().isEmpty());
+
+			log.threshold(0);
+			db.execute("SELECT 2").close();
+			assertEquals(1, log.entries().size());
+			assertEquals("SELECT 2", log.entries().get(0).query());
+		}
+	}
+
+	@Test
+	public void entriesShouldBeKeptInRingBuffer() throws SQLException {
+		try (Database db = Database.createEphemeral()) {
+			db.execute("CREATE TABLE foo (id INTEGER)");
+			SlowQueryLog log = db.enableSlowQueryLog(0, 3);
+			for (int i = 1; i <= 5; i++) {
+				db.execute("SELECT " + i).close();
+			}
+			db.execute("INSERT INTO foo VALUES (?)", 42);
+
+			List<SlowQueryLog.Entry> entries = log.entries();
+			assertEquals(Arrays.asList("INSERT INTO foo VALUES (?)", "SELECT 5", "SELECT 4"),
+				entries.stream().map(SlowQueryLog.Entry::query).collect(Collectors.toList()));
+			assertEquals(Arrays.<Object>asList(42), entries.get(0).parameters());
+			assertEquals(1, entries.get(0).rows());
+
+			log.clear();
+			assertTrue(log.entries().isEmpty());
+		}
+	}
+
+	@Test
+	public void logFileShouldRollOver() throws Exception {
+		File file = folder.newFile();
+		Path target = folder.getRoot().toPath().resolve("slow.log");
+		try (Database db = Database.open(file)) {
+			db.execute("CREATE TABLE foo (id INTEGER PRIMARY KEY, label TEXT)");
+
+			CountDownLatch latch = new CountDownLatch(2);
+			SlowQueryLog log = db.enableSlowQueryLog(0, 10).logTo(target, 1);
+			SlowQueryLog.Entry[] first = { null };
+			log.registerListener(entry -> {
+				if (first[0] == null) first[0] = entry;
+				latch.countDown();
+			});
+
+			db.execute("SELECT * FROM foo WHERE id = ?", 1).close();
+			db.execute("SELECT label FROM foo").close();
+			assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+			assertFalse(first[0].plan().isEmpty());
+			assertTrue(new String(Files.readAllBytes(Paths.get(target + ".1")), "UTF-8").contains("WHERE id = ?"));
+			assertTrue(new String(Files.readAllBytes(target), "UTF-8").contains("SELECT label FROM foo"));
+		}
+	}
+}
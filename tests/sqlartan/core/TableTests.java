@@ -397,4 +397,92 @@ public class TableTests {
 			assertEquals(Arrays.asList(3.14, 6.28), res);
 		}
 	}
+
+	@Test
+	public void countCacheShouldFollowRows() throws SQLException {
+		try (Database db = Database.createEphemeral()) {
+			db.execute("CREATE TABLE test (a INT PRIMARY KEY, b TEXT)");
+			db.execute("INSERT INTO test VALUES (1, 'a'), (2, 'b')");
+			Table test = db.table("test").get();
+			assertFalse(test.isCountCached());
+			assertEquals(2, test.rowCount());
+
+			test.enableCountCache();
+			assertTrue(test.isCountCached());
+			db.execute("INSERT INTO test VALUES (3, 'c')");
+			db.execute("DELETE FROM test WHERE a = 1");
+			assertEquals(2, test.rowCount());
+
+			Table copy = test.duplicate("test_copy");
+			assertTrue(copy.isCountCached());
+			assertEquals(2, copy.rowCount());
+
+			test.rename("renamed");
+			db.execute("INSERT INTO renamed VALUES (4, 'd')");
+			assertEquals(3, test.rowCount());
+
+			AlterTable alter = test.alter();
+			alter.addColumn(new TableColumn(test, new TableColumn.Properties() {
+				@Override
+				public boolean unique() {
+					return false;
+				}
+				@Override
+				public boolean primaryKey() {
+					return false;
+				}
+				@Override
+				public String check() {
+					return null;
+				}
+				@Override
+				public String name() {
+					return "c";
+				}
+				@Override
+				public String type() {
+					return "TEXT";
+				}
+				@Override
+				public boolean nullable() {
+					return true;
+				}
+			}));
+			alter.execute();
+			assertTrue(test.isCountCached());
+			assertEquals(3, test.rowCount());
+			assertEquals(2, test.triggers().filter(test::isCountTrigger).count());
+			db.execute("INSERT INTO renamed VALUES (5, 'e', 'x')");
+			assertEquals(4, test.rowCount());
+
+			test.truncate();
+			assertEquals(0, test.rowCount());
+			db.execute("INSERT INTO renamed (a, b) VALUES (6, 'f')");
+			assertEquals(1, test.rowCount());
+
+			test.disableCountCache();
+			assertFalse(test.isCountCached());
+			assertEquals(1, test.rowCount());
+		}
+	}
+
+	@Test
+	public void countCacheShouldFollowReplacedRows() throws SQLException {
+		try (Database db = Database.createEphemeral()) {
+			db.execute("CREATE TABLE test (a INT PRIMARY KEY, b TEXT UNIQUE)");
+			db.execute("INSERT INTO test VALUES (1, 'a'), (2, 'b')");
+			Table test = db.table("test").get();
+			test.enableCountCache();
+
+			db.execute("INSERT OR REPLACE INTO test VALUES (1, 'c')");
+			db.execute("REPLACE INTO test VALUES (2, 'd')");
+			assertEquals(2, test.rowCount());
+
+			db.execute("INSERT OR REPLACE INTO test VALUES (3, 'c')");
+			assertEquals(2, test.rowCount());
+			db.execute("UPDATE OR REPLACE test SET b = 'd' WHERE a = 3");
+			assertEquals(1, test.rowCount());
+			assertEquals(1, db.execute("SELECT COUNT(*) FROM test").mapFirst(Row::getInt).intValue());
+		}
+	}
 }
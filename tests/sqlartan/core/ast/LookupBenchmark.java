@@ -0,0 +1,228 @@
+package sqlartan.core.ast;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compares the allocation-free keyword and operator lookups with the
+ * previous path, which looked up substrings of the query in the maps of
+ * keywords and operators.
+ * <p>
+ * Run with "ant benchmark", or directly with the test classpath. Each path
+ * classifies every fragment of a sample of statements, and the time and
+ * bytes allocated per fragment are reported once the JIT has warmed up.
+ */
+public class LookupBenchmark {
+	/**
+	 * The statements whose fragments are classified
+	 */
+	private static final String[] statements = {
+		"SELECT a.id, b.label, COUNT(*) AS total FROM foo AS a LEFT OUTER JOIN bar AS b ON a.id = b.foo_id WHERE a.value >= 10 AND b.label <> 'x' GROUP BY a.id HAVING total > 1 ORDER BY total DESC LIMIT 10",
+		"INSERT INTO foo (id, label, value) VALUES (1, 'abc', 1.5), (2, 'def', 2.5)",
+		"UPDATE foo SET value = value * 2 || '' WHERE id IN (SELECT foo_id FROM bar WHERE label <> 'y')",
+		"CREATE TABLE IF NOT EXISTS baz (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL UNIQUE, created DEFAULT CURRENT_TIMESTAMP)",
+		"delete from foo where value << 2 = 8 or value >> 1 <= 3 and not exists (select 1 from bar)",
+		"CREATE TRIGGER foo_log AFTER INSERT ON foo FOR EACH ROW BEGIN INSERT INTO log VALUES (new.label); END",
+	};
+
+	/**
+	 * The number of measured rounds of each path
+	 */
+	private static final int ROUNDS = 5;
+
+	/**
+	 * The number of passes over the statements in a round
+	 */
+	private static final int PASSES = 20_000;
+
+	/**
+	 * A sink for the results, so that lookups are not eliminated
+	 */
+	private static volatile int sink;
+
+	/**
+	 * A fragment of a statement to classify.
+	 */
+	private static class Fragment {
+		/**
+		 * The statement containing the fragment
+		 */
+		private final String sql;
+
+		/**
+		 * The index of the first char
+		 */
+		private final int start;
+
+		/**
+		 * The index after the last char
+		 */
+		private final int end;
+
+		/**
+		 * Whether the fragment is a word, or a run of symbols
+		 */
+		private final boolean word;
+
+		/**
+		 * @param sql   the statement containing the fragment
+		 * @param start the index of the first char
+		 * @param end   the index after the last char
+		 * @param word  whether the fragment is a word
+		 */
+		private Fragment(String sql, int start, int end, boolean word) {
+			this.sql = sql;
+			this.start = start;
+			this.end = end;
+			this.word = word;
+		}
+	}
+
+	/**
+	 * A way of classifying fragments.
+	 */
+	@FunctionalInterface
+	private interface Path {
+		int classify(Fragment fragment);
+	}
+
+	/**
+	 * Classifies a fragment by looking up substrings in the maps, as the
+	 * tokenizer did before the perfect hash.
+	 *
+	 * @param fragment the fragment
+	 */
+	private static int mapLookup(Fragment fragment) {
+		if (fragment.word) {
+			return Keyword.from(fragment.sql.substring(fragment.start, fragment.end)).map(Enum::ordinal).orElse(-1);
+		}
+		int result = 0;
+		for (int i = fragment.start; i < fragment.end; ) {
+			int length = Math.min(Operator.maxLength, fragment.end - i);
+			Operator operator = null;
+			for (; length > 0 && operator == null; length--) {
+				operator = Operator.operators.get(fragment.sql.substring(i, i + length));
+			}
+			result += operator == null ? -1 : operator.ordinal();
+			i += length + 1;
+		}
+		return result;
+	}
+
+	/**
+	 * Classifies a fragment with the allocation-free lookups.
+	 *
+	 * @param fragment the fragment
+	 */
+	private static int perfectLookup(Fragment fragment) {
+		if (fragment.word) {
+			Keyword keyword = Keyword.lookup(fragment.sql, fragment.start, fragment.end);
+			return keyword == null ? -1 : keyword.ordinal();
+		}
+		int result = 0;
+		for (int i = fragment.start; i < fragment.end; ) {
+			Operator operator = i + 1 < fragment.end ? Operator.lookup(fragment.sql, i, i + 2) : null;
+			int length = 2;
+			if (operator == null) {
+				operator = Operator.lookup(fragment.sql, i, i + 1);
+				length = 1;
+			}
+			result += operator == null ? -1 : operator.ordinal();
+			i += length;
+		}
+		return result;
+	}
+
+	/**
+	 * Splits the statements in words and runs of symbols, skipping
+	 * whitespace and quoted strings.
+	 */
+	private static List<Fragment> fragments() {
+		List<Fragment> fragments = new ArrayList<>();
+		for (String sql : statements) {
+			int i = 0;
+			while (i < sql.length()) {
+				char c = sql.charAt(i);
+				int start = i;
+				if (Character.isWhitespace(c)) {
+					i++;
+				} else if (c == '\'') {
+					i = sql.indexOf('\'', i + 1) + 1;
+				} else if (Character.isDigit(c)) {
+					while (i < sql.length() && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) i++;
+				} else if (Character.isLetter(c) || c == '_') {
+					while (i < sql.length() && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_')) i++;
+					fragments.add(new Fragment(sql, start, i, true));
+				} else {
+					while (i < sql.length() && "=<>!|*/+-%&~(),;.".indexOf(sql.charAt(i)) >= 0) i++;
+					if (i == start) i++;
+					fragments.add(new Fragment(sql, start, i, false));
+				}
+			}
+		}
+		return fragments;
+	}
+
+	/**
+	 * Measures a path and prints its time and allocation per fragment.
+	 *
+	 * @param name      the name of the path
+	 * @param path      the path
+	 * @param fragments the fragments to classify
+	 */
+	private static void measure(String name, Path path, List<Fragment> fragments) {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean
+			? (com.sun.management.ThreadMXBean) threads : null;
+		long thread = Thread.currentThread().getId();
+		Fragment[] array = fragments.toArray(new Fragment[fragments.size()]);
+
+		// Warm up
+		for (int pass = 0; pass < PASSES; pass++) {
+			for (Fragment fragment : array) sink += path.classify(fragment);
+		}
+
+		long best = Long.MAX_VALUE;
+		long bytes = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			long allocated = allocations == null ? 0 : allocations.getThreadAllocatedBytes(thread);
+			long start = System.nanoTime();
+			int result = 0;
+			for (int pass = 0; pass < PASSES; pass++) {
+				for (Fragment fragment : array) result += path.classify(fragment);
+			}
+			best = Math.min(best, System.nanoTime() - start);
+			if (allocations != null) bytes = allocations.getThreadAllocatedBytes(thread) - allocated;
+			sink += result;
+		}
+
+		long operations = (long) PASSES * array.length;
+		System.out.println(String.format(Locale.ROOT, "%-10s %8.2f ns/fragment %10s",
+			name, (double) best / operations,
+			allocations == null ? "n/a" : String.format(Locale.ROOT, "%.2f B/fragment", (double) bytes / operations)));
+	}
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args unused
+	 */
+	public static void main(String[] args) {
+		List<Fragment> fragments = fragments();
+
+		// Both paths must classify every fragment identically, the samples
+		// avoid "==" and "!=" which only the new lookup recognizes
+		for (Fragment fragment : fragments) {
+			if (mapLookup(fragment) != perfectLookup(fragment)) {
+				throw new IllegalStateException("Mismatch on " + fragment.sql.substring(fragment.start, fragment.end));
+			}
+		}
+
+		System.out.println(fragments.size() + " fragments, " + PASSES + " passes, best of " + ROUNDS + " rounds");
+		measure("map", LookupBenchmark::mapLookup, fragments);
+		measure("perfect", LookupBenchmark::perfectLookup, fragments);
+	}
+}
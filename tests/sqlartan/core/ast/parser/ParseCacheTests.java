@@ -0,0 +1,30 @@
+package sqlartan.core.ast.parser;
+
+import org.junit.Test;
+import sqlartan.core.ast.SelectStatement;
+import static org.junit.Assert.*;
+
+public class ParseCacheTests {
+	private static final Parser<SelectStatement> parser = SelectStatement::parse;
+
+	@Test
+	public void cacheShouldReuseAndEvictResults() throws ParseException {
+		ParseCache cache = new ParseCache(2);
+
+		SelectStatement first = cache.parse("SELECT a FROM t", parser);
+		assertSame(first, cache.parse("SELECT a FROM t", parser));
+		assertEquals(1, cache.hits());
+		assertEquals(1, cache.misses());
+
+		assertFalse(cache.tryParse("SELECT FROM", parser).isPresent());
+		assertFalse(cache.tryParse("SELECT FROM", parser).isPresent());
+		assertEquals(2, cache.hits());
+
+		cache.parse("SELECT b FROM t", parser);
+		assertEquals(2, cache.size());
+		assertNotSame(first, cache.parse("SELECT a FROM t", parser));
+
+		cache.invalidate();
+		assertEquals(0, cache.size());
+	}
+}
@@ -0,0 +1,32 @@
+package sqlartan.core.ast.parser;
+
+import org.junit.Test;
+import sqlartan.core.ast.Statement;
+import sqlartan.core.ast.token.TokenSource;
+import sqlartan.core.ast.token.TokenizeException;
+import static org.junit.Assert.*;
+
+public class ParserContextTests {
+	private static String parse(String sql, int memoCapacity) throws TokenizeException {
+		TokenSource source = TokenSource.from(sql);
+		ParserContext context = new ParserContext(source, memoCapacity);
+		String result = Statement.parse(context).toSQL();
+		assertFalse(source.inTransaction());
+		return result;
+	}
+
+	@Test
+	public void memoizationShouldNotChangeResults() throws TokenizeException {
+		String[] queries = {
+			"SELECT a, t.*, CASE WHEN x IS NOT NULL THEN (1 + 2) * 3 ELSE -f(x, y) END AS b FROM t WHERE c = 1",
+			"SELECT * FROM ((t)) JOIN u USING (id) GROUP BY a HAVING count(*) > 1",
+			"CREATE TABLE t (id INTEGER PRIMARY KEY, a TEXT DEFAULT 'x', b INTEGER DEFAULT (1 + 2) CHECK (b > 0))",
+			"UPDATE t SET a = CAST(b AS TEXT) WHERE id = ?",
+		};
+		for (String query : queries) {
+			String expected = parse(query, 0);
+			assertEquals(expected, parse(query, 1 << 16));
+			assertEquals(expected, parse(query, 3));
+		}
+	}
+}
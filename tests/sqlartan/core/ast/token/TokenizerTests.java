@@ -1,9 +1,20 @@
 package sqlartan.core.ast.token;
 
 import org.junit.Test;
+import sqlartan.core.ast.Keyword;
+import sqlartan.core.ast.Operator;
 import sqlartan.core.ast.StatementList;
 import sqlartan.core.ast.parser.ParseException;
 import sqlartan.core.ast.parser.Parser;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.*;
 
 public class TokenizerTests {
 	@Test
@@ -18,4 +29,79 @@ public class TokenizerTests {
 		StatementList statementList = Parser.parse(source, StatementList::parse);
 		System.out.println(statementList.toSQL());
 	}
+
+	@Test
+	public void mappedFileShouldTokenize() throws IOException, TokenizeException {
+		Path file = Files.createTempFile("sqlartan", ".sql");
+		try {
+			Files.write(file, "\uFEFFSELECT 'l''été', \"col\" FROM t;".getBytes(StandardCharsets.UTF_8));
+			try (FileChannel channel = FileChannel.open(file)) {
+				List<Token> tokens = Tokenizer.tokenize(channel).tokens();
+				Token.Literal.Text text = (Token.Literal.Text) tokens.get(1);
+				assertEquals("l'été", text.value());
+				assertEquals(7, text.offset);
+				assertEquals(8, text.length);
+				assertEquals("col", ((Token.Identifier) tokens.get(3)).value());
+				assertEquals(Token.EndOfStream.class, tokens.get(tokens.size() - 1).getClass());
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void retokenizeShouldMatchFullTokenization() throws TokenizeException {
+		String[] edits = { "SELECT", " ", "'", "''", "--", "\n", "/*", "*/", "?", "?2", ":x", "<", ">", "=", "IS", "NOT", "1.5e", "3", "\"", ";", "a" };
+		Random random = new Random(42);
+		String sql = "SELECT a, 'b''c' FROM t WHERE x IS NOT ? -- comment\n AND y <= ?3 /* c */;";
+		TokenSource tokens = Tokenizer.tokenize(sql);
+
+		for (int n = 0; n < 2000; n++) {
+			int offset = random.nextInt(sql.length() + 1);
+			int removed = random.nextInt(Math.min(4, sql.length() - offset) + 1);
+			String insert = random.nextBoolean() ? edits[random.nextInt(edits.length)] : "";
+			String edited = sql.substring(0, offset) + insert + sql.substring(offset + removed);
+
+			TokenSource expected;
+			try {
+				expected = Tokenizer.tokenize(edited);
+			} catch (TokenizeException e) {
+				continue;
+			}
+
+			TokenSource actual = Tokenizer.retokenize(tokens, edited, offset, removed, insert.length());
+			assertEquals(edited, describe(expected), describe(actual));
+			sql = edited;
+			tokens = actual;
+		}
+	}
+
+	private static List<String> describe(TokenSource source) {
+		List<String> tokens = new ArrayList<>();
+		for (Token token : source.tokens()) {
+			tokens.add(token + "@" + token.offset + "+" + token.length);
+		}
+		return tokens;
+	}
+
+	@Test
+	public void lookupShouldMatchKeywordsAndOperators() throws TokenizeException {
+		for (Keyword keyword : Keyword.values()) {
+			if (keyword == Keyword.VOID) continue;
+			String name = "(" + keyword.name.toLowerCase() + ")";
+			assertEquals(keyword, Keyword.lookup(name, 1, name.length() - 1));
+		}
+		assertNull(Keyword.lookup("selects", 0, 7));
+		assertNull(Keyword.lookup("foo", 0, 3));
+
+		for (Operator operator : Operator.values()) {
+			assertEquals(operator, Operator.lookup(operator.symbol, 0, operator.symbol.length()));
+		}
+		assertNull(Operator.lookup("!", 0, 1));
+
+		List<Token> tokens = Tokenizer.tokenize("a == b != c").tokens();
+		assertEquals(Operator.EQ.token, tokens.get(1));
+		assertEquals(Operator.NOT_EQ.token, tokens.get(3));
+		assertEquals(6, tokens.size());
+	}
 }
@@ -0,0 +1,71 @@
+package sqlartan.core.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.*;
+import java.util.Random;
+import static org.junit.Assert.*;
+
+public class CompressionTests {
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private static byte[] sample(int size) {
+		byte[] data = new byte[size];
+		Random random = new Random(42);
+		for (int i = 0; i < size; i++) {
+			data[i] = (byte) ("INSERT INTO foo VALUES (1, 'bar');\n".charAt(i % 35) + (random.nextInt(16) == 0 ? 1 : 0));
+		}
+		return data;
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		for (int count; (count = in.read(buffer)) >= 0; ) out.write(buffer, 0, count);
+		return out.toByteArray();
+	}
+
+	@Test
+	public void formatShouldBeSelectedFromExtension() {
+		assertEquals(Compression.Gzip, Compression.forFile(new File("dump.sql.gz")));
+		assertEquals(Compression.Deflate, Compression.forFile(new File("dump.sql.zz")));
+		assertEquals(Compression.None, Compression.forFile(new File("dump.sql")));
+	}
+
+	@Test
+	public void filesShouldRoundTripInEveryFormat() throws IOException {
+		byte[] data = sample(300_000);
+		for (String name : new String[] { "a.sql", "b.sql.gz", "c.sql.zz" }) {
+			File file = folder.newFile(name);
+			try (OutputStream out = Compression.newOutputStream(file, 1)) {
+				out.write(data);
+			}
+
+			try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+				assertEquals(Compression.forFile(file), Compression.detect(in));
+			}
+
+			try (InputStream in = Compression.newInputStream(file)) {
+				assertArrayEquals(data, readAll(in));
+			}
+		}
+	}
+
+	@Test
+	public void parallelGzipShouldProduceValidMultiMemberStream() throws IOException {
+		byte[] data = sample(1_000_003);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (OutputStream out = new ParallelGzipOutputStream(compressed, 4, 64 * 1024)) {
+			out.write(data, 0, 10);
+			out.write(data[10]);
+			out.write(data, 11, data.length - 11);
+		}
+
+		try (InputStream in = new BufferedInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+			assertEquals(Compression.Gzip, Compression.detect(in));
+			assertArrayEquals(data, readAll(Compression.Gzip.decompress(in)));
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package sqlartan.core.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import sqlartan.core.Affinity;
+import sqlartan.core.Database;
+import sqlartan.core.Row;
+import sqlartan.core.Table;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+
+public class CsvImporterTests {
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void importShouldInferAffinitiesAndKeepOrder() throws IOException, SQLException {
+		File file = folder.newFile("data.csv");
+		StringBuilder csv = new StringBuilder("id,label,value\r\n");
+		for (int i = 0; i < 200_000; i++) {
+			csv.append(i).append(",\"line\n\"\"").append(i).append("\"\"\",").append(i * 0.5).append("\r\n");
+		}
+		Files.write(file.toPath(), csv.toString().getBytes(StandardCharsets.UTF_8));
+
+		try (Database db = Database.createEphemeral()) {
+			assertEquals(200_000, db.importCsv(file.toPath(), "data", new CsvOptions().parallelism(4)));
+
+			Table table = db.table("data").orElseThrow(AssertionError::new);
+			assertEquals(Affinity.Integer, table.column("id").get().affinity());
+			assertEquals(Affinity.Text, table.column("label").get().affinity());
+			assertEquals(Affinity.Real, table.column("value").get().affinity());
+
+			assertEquals(0, db.execute("SELECT COUNT(*) FROM data WHERE id <> rowid - 1").mapFirst(Row::getInt).intValue());
+			assertEquals("line\n\"42\"", db.execute("SELECT label FROM data WHERE id = 42").mapFirst(Row::getString));
+		}
+	}
+
+	@Test
+	public void importShouldAppendToExistingTable() throws IOException, SQLException {
+		File file = folder.newFile("data.tsv");
+		Files.write(file.toPath(), "b\ta\nx\t1\n\t2\n".getBytes(StandardCharsets.UTF_8));
+
+		try (Database db = Database.createEphemeral()) {
+			db.execute("CREATE TABLE data (a INTEGER, b TEXT, c TEXT DEFAULT 'c')");
+			db.execute("INSERT INTO data VALUES (0, 'w', 'z')");
+			assertEquals(2, db.importCsv(file.toPath(), "data", new CsvOptions().separator('\t')));
+			assertEquals(3, db.execute("SELECT COUNT(*) FROM data").mapFirst(Row::getInt).intValue());
+			assertEquals("", db.execute("SELECT b FROM data WHERE a = 2").mapFirst(Row::getString));
+		}
+	}
+
+	@Test
+	public void failedImportShouldNotRollBackOtherWriters() throws Exception {
+		File file = folder.newFile("data.csv");
+		StringBuilder csv = new StringBuilder("a\n");
+		for (int i = 0; i < 50_000; i++) {
+			csv.append(i).append("\n");
+		}
+		csv.append("1,2\n");
+		Files.write(file.toPath(), csv.toString().getBytes(StandardCharsets.UTF_8));
+
+		try (Database db = Database.createEphemeral()) {
+			db.execute("CREATE TABLE other (x INTEGER)");
+			db.enableConcurrentAccess(0);
+
+			// Other writes are submitted once the import has created its table
+			CountDownLatch started = new CountDownLatch(1);
+			db.registerListener(result -> {
+				if (result.query().startsWith("CREATE TABLE [main].[data]")) started.countDown();
+			});
+			Thread writer = new Thread(() -> {
+				try {
+					assertTrue(started.await(10, TimeUnit.SECONDS));
+					for (int i = 0; i < 50; i++) {
+						db.execute("INSERT INTO other VALUES (?)", i);
+					}
+				} catch (SQLException | InterruptedException e) {
+					throw new AssertionError(e);
+				}
+			});
+			writer.start();
+			try {
+				db.importCsv(file.toPath(), "data", new CsvOptions());
+				fail();
+			} catch (IOException expected) {}
+			writer.join();
+
+			assertFalse(db.table("data").isPresent());
+			assertEquals(50, db.execute("SELECT COUNT(*) FROM other").mapFirst(Row::getInt).intValue());
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package sqlartan.core.util;
+
+import org.junit.Test;
+import sqlartan.core.Database;
+import sqlartan.core.Result;
+import sqlartan.core.util.JsonExporter.Format;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import static org.junit.Assert.*;
+
+public class JsonExporterTests {
+	@Test
+	public void ndjsonShouldWriteOneObjectPerRow() throws SQLException, IOException {
+		try (Database db = Database.createEphemeral()) {
+			db.execute("CREATE TABLE foo (id INTEGER, label TEXT, amount NUMERIC, data BLOB)");
+			db.execute("INSERT INTO foo VALUES (1, 'a\"b\\\\c\n', 2.5, x'000102ff'), (-7, 'héllo', NULL, x'ff')");
+			try (Result res = db.execute("SELECT * FROM foo")) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				assertEquals(2, new JsonExporter(Format.Ndjson).export(res, out));
+				assertEquals("{\"id\":1,\"label\":\"a\\\"b\\\\\\\\c\\n\",\"amount\":2.5,\"data\":\"AAEC/w==\"}\n" +
+					"{\"id\":-7,\"label\":\"héllo\",\"amount\":null,\"data\":\"/w==\"}\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+			}
+		}
+	}
+
+	@Test
+	public void jsonShouldWrapRowsInAnArray() throws SQLException, IOException {
+		try (Database db = Database.createEphemeral(); Result res = db.execute("SELECT 1 AS a UNION ALL SELECT 2")) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			new JsonExporter(Format.Json).export(res, out);
+			assertEquals("[\n{\"a\":1},\n{\"a\":2}\n]\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package sqlartan.core.util;
+
+import org.junit.Test;
+import sqlartan.core.Database;
+import sqlartan.core.Result;
+import sqlartan.core.util.ResultExporter.Format;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.sql.SQLException;
+import static org.junit.Assert.*;
+
+public class ResultExporterTests {
+	private static final String QUERY = "SELECT 1 AS id, 'plain' AS label, NULL AS value " +
+		"UNION ALL SELECT -42, 'a,\"b\"', 1.5 " +
+		"UNION ALL SELECT 9223372036854775807, 'tab\tline\nback\\', x'00ff'";
+
+	@Test
+	public void csvShouldQuoteSpecialFields() throws SQLException, IOException {
+		try (Database db = Database.createEphemeral(); Result res = db.execute(QUERY)) {
+			StringWriter out = new StringWriter();
+			assertEquals(3, new ResultExporter(Format.Csv).export(res, out));
+			assertEquals("id,label,value\r\n" +
+				"1,plain,\r\n" +
+				"-42,\"a,\"\"b\"\"\",1.5\r\n" +
+				"9223372036854775807,\"tab\tline\nback\\\",00ff\r\n", out.toString());
+		}
+	}
+
+	@Test
+	public void tsvShouldEscapeSpecialChars() throws SQLException, IOException {
+		try (Database db = Database.createEphemeral(); Result res = db.execute(QUERY)) {
+			StringWriter out = new StringWriter();
+			new ResultExporter(Format.Tsv).header(false).export(res, out);
+			assertEquals("1\tplain\t\\N\n" +
+				"-42\ta,\"b\"\t1.5\n" +
+				"9223372036854775807\ttab\\tline\\nback\\\\\t00ff\n", out.toString());
+		}
+	}
+}
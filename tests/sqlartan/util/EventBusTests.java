@@ -0,0 +1,61 @@
+package sqlartan.util;
+
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+
+public class EventBusTests {
+	@Test
+	public void syncBusShouldDeliverOnPublisherThread() {
+		EventBus<Integer> bus = new EventBus<>();
+		List<Thread> threads = new ArrayList<>();
+		bus.register(e -> threads.add(Thread.currentThread()));
+		bus.publish(1);
+		assertEquals(Collections.singletonList(Thread.currentThread()), threads);
+	}
+
+	@Test
+	public void asyncBusShouldDeliverEveryEventInOrder() throws InterruptedException {
+		try (EventBus<Integer> bus = new EventBus<Integer>().async(16, EventBus.Overflow.Block)) {
+			List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+			bus.register(received::add);
+
+			for (int i = 0; i < 10_000; i++) bus.publish(i);
+			assertTrue(bus.awaitIdle(10, TimeUnit.SECONDS));
+
+			assertEquals(10_000, received.size());
+			for (int i = 0; i < 10_000; i++) assertEquals(i, (int) received.get(i));
+			assertEquals(0, bus.dropped());
+		}
+	}
+
+	@Test
+	public void asyncBusShouldApplyOverflowPolicy() throws InterruptedException {
+		for (EventBus.Overflow overflow : new EventBus.Overflow[] { EventBus.Overflow.Drop, EventBus.Overflow.Coalesce }) {
+			try (EventBus<Integer> bus = new EventBus<Integer>().async(4, overflow)) {
+				CountDownLatch release = new CountDownLatch(1);
+				List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+				bus.register(e -> {
+					try {
+						release.await();
+					} catch (InterruptedException ignored) {}
+					received.add(e);
+				});
+
+				for (int i = 0; i < 100; i++) bus.publish(i);
+				release.countDown();
+				assertTrue(bus.awaitIdle(10, TimeUnit.SECONDS));
+
+				assertTrue(bus.dropped() > 0);
+				assertEquals(100, received.size() + bus.dropped());
+				if (overflow == EventBus.Overflow.Coalesce) {
+					assertEquals(99, (int) received.get(received.size() - 1));
+				}
+			}
+		}
+	}
+}